@@ -3,6 +3,9 @@ package org.apache.olingo.odata2.janos.processor.api.data;
 import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
 import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Optimized read options.
  *
@@ -14,6 +17,7 @@ public final class ReadOptions {
   private String skipToken;
   private Integer skip;
   private Integer top;
+  private List<String> select;
 
   /**
    * None read options.
@@ -103,6 +107,10 @@ public final class ReadOptions {
 
   /**
    * Gets skipApplied token.
+   * <br/>
+   * Without an order the entries are read in the (typed) order of their keys and the token contains
+   * the key values of the first requested entry in the format of a key predicate
+   * (e.g. <code>Id='5'</code> or <code>Id=5,Name='n'</code>).
    *
    * @return the skipApplied token
    */
@@ -119,6 +127,21 @@ public final class ReadOptions {
     return top;
   }
 
+  /**
+   * Gets the names of the properties which are used of the read entries (e.g. for a <code>$select</code>)
+   * or <code>null</code> if all properties are used.
+   * <br/>
+   * The names contain the selected properties as well as the key properties and the properties of the ETag.
+   * A data store can read only these properties (a projection) as long as it applies the filter and the order
+   * itself (see {@link ReadResult#isFilterApplied()} and {@link ReadResult#isOrderApplied()}), because
+   * otherwise they are evaluated by the caller on the read entries.
+   *
+   * @return the names of the used properties or <code>null</code>
+   */
+  public List<String> getSelect() {
+    return select;
+  }
+
   /**
    * The type Builder.
    */
@@ -179,5 +202,16 @@ public final class ReadOptions {
       options.top = top;
       return this;
     }
+
+    /**
+     * Select builder.
+     *
+     * @param select the names of the used properties (or <code>null</code> for all properties)
+     * @return the builder
+     */
+    public Builder select(List<String> select) {
+      options.select = select == null ? null : Collections.unmodifiableList(select);
+      return this;
+    }
   }
 }
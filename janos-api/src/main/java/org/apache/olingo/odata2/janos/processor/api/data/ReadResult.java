@@ -3,31 +3,81 @@ package org.apache.olingo.odata2.janos.processor.api.data;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Created by mibo on 04.09.15.
+ * <br/>
+ * The result is either a collection (which is used as is, without creating a copy) or a stream
+ * (see {@link #forStream(Stream)}) which is consumed lazily and only once via {@link #stream()}.
+ * A streamed result is closed by the consumer via {@link #close()}.
+ * <br/>
+ * Without an order option an applied order (see {@link #isOrderApplied()}) means that the result
+ * is in the (default) order of the keys.
  * @param <T>  the type parameter
  */
-public final class ReadResult<T> {
-  private final Collection<T> result;
+public final class ReadResult<T> implements AutoCloseable {
+  private Collection<T> result;
+  private Stream<T> stream;
   private boolean appliedSkip = false;
   private boolean appliedTop = false;
   private boolean appliedOrder = false;
   private boolean appliedFilter = false;
 
   private ReadResult(Collection<T> result) {
-    this.result = new ArrayList<>(result);
+    this.result = result;
+  }
+
+  private ReadResult(Stream<T> stream) {
+    this.stream = stream;
   }
 
   /**
    * Gets result.
+   * A streamed result is read completely (and closed) on first call.
    *
    * @return the result
    */
   public Collection<T> getResult() {
+    if (stream != null) {
+      try (Stream<T> values = stream) {
+        result = values.collect(Collectors.toList());
+      }
+      stream = null;
+    }
     return Collections.unmodifiableCollection(result);
   }
 
+  /**
+   * Is the result a stream (which was not consumed via {@link #getResult()}).
+   *
+   * @return <code>true</code> if the result is streamed
+   */
+  public boolean isStreamed() {
+    return stream != null;
+  }
+
+  /**
+   * Get the result as stream.
+   * A streamed result can be consumed only once (and is closed via {@link #close()}).
+   *
+   * @return the result as stream
+   */
+  public Stream<T> stream() {
+    return stream != null ? stream : result.stream();
+  }
+
+  /**
+   * Close the result (the stream of a streamed result).
+   */
+  @Override
+  public void close() {
+    if (stream != null) {
+      stream.close();
+    }
+  }
+
   /**
    * Get first result from results collection
    * or <code>null</code> if result collection is empty.
@@ -36,10 +86,11 @@ public final class ReadResult<T> {
    *          or <code>null</code> if result collection is empty.
    */
   public T getFirst() {
-    if(result.isEmpty()) {
+    Collection<T> values = getResult();
+    if(values.isEmpty()) {
       return null;
     }
-    return result.iterator().next();
+    return values.iterator().next();
   }
 
   /**
@@ -90,6 +141,7 @@ public final class ReadResult<T> {
 
   /**
    * For result.
+   * The result is used as is (without creating a copy) and hence must not be modified afterwards.
    *
    * @param <T>  the type parameter
    * @param result the result
@@ -99,6 +151,18 @@ public final class ReadResult<T> {
     return new Builder<>(result);
   }
 
+  /**
+   * For a result which is read lazily from the given stream (e.g. in chunks from a database).
+   * The stream is consumed only once and closed by the consumer of the result (see {@link #close()}).
+   *
+   * @param <T>  the type parameter
+   * @param stream the result stream
+   * @return the builder
+   */
+  public static <T> Builder<T> forStream(Stream<T> stream) {
+    return new Builder<>(new ReadResult<>(stream));
+  }
+
   /**
    * Start building a result with applied settings from existing result.
    *
@@ -141,7 +205,11 @@ public final class ReadResult<T> {
      * @param result the result
      */
     public Builder(Collection<T> result) {
-      readResult = new ReadResult<>(result);
+      this(new ReadResult<>(result));
+    }
+
+    private Builder(ReadResult<T> readResult) {
+      this.readResult = readResult;
     }
 
     Builder<T> apply(ReadResult<T> result) {
@@ -193,11 +261,27 @@ public final class ReadResult<T> {
       return this;
     }
 
+    /**
+     * Set the values (which are used as is, without creating a copy).
+     *
+     * @param values the values
+     * @return the builder
+     */
     public Builder<T> values(Collection<T> values) {
-      if(!readResult.result.isEmpty()) {
-        readResult.result.clear();
-      }
-      readResult.result.addAll(values);
+      readResult.result = values;
+      readResult.stream = null;
+      return this;
+    }
+
+    /**
+     * Set the values as stream (see {@link ReadResult#forStream(Stream)}).
+     *
+     * @param values the values
+     * @return the builder
+     */
+    public Builder<T> values(Stream<T> values) {
+      readResult.result = null;
+      readResult.stream = values;
       return this;
     }
 
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.api.data.source;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Enables the caching of the results of an <code>EdmFunctionImport</code> annotated method
+ * (which has to be free of side effects and use the HTTP method <code>GET</code>).
+ * <br/>
+ * The results are cached per parameter values (array values, e.g. of binary parameters, are compared by content),
+ * expire after the time to live and are evicted (least recently used first) if the cache exceeds its maximum size.
+ * All results are invalidated if data of an entity set the function depends on is written
+ * (and again at the end of the unit of work the write belongs to).
+ * A cached result is shared by all calls and must not be modified.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD})
+public @interface CachedFunction {
+  /**
+   * Time in milliseconds after which a cached result expires.
+   *
+   * @return the time to live
+   */
+  long timeToLive() default 60000;
+
+  /**
+   * Maximum number of cached results (parameter combinations).
+   *
+   * @return the maximum size
+   */
+  int maxSize() default 1000;
+
+  /**
+   * Names of the entity sets the results of the function depend on.
+   *
+   * @return the entity set names
+   */
+  String[] dependsOn() default {};
+}
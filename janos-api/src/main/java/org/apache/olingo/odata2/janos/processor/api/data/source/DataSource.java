@@ -26,7 +26,20 @@ import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -46,6 +59,24 @@ import java.util.Map;
  */
 public interface DataSource {
 
+  /**
+   * Default page size for server driven paging.
+   */
+  int DEFAULT_PAGE_SIZE = 100;
+
+  /**
+   * Gets the page size for server driven paging of the specified entity set.
+   * A read of the entity set returns at most this number of entries and a next link to the further entries.
+   * A value which is not greater than zero results in the {@link #DEFAULT_PAGE_SIZE}.
+   *
+   * @param entitySet the requested entity set
+   * @return the page size
+   * @throws EdmException the edm exception
+   */
+  default int getPageSize(EdmEntitySet entitySet) throws EdmException {
+    return DEFAULT_PAGE_SIZE;
+  }
+
   /**
    * Retrieves the whole data list for the specified entity set.
    * @param entitySet the requested
@@ -59,6 +90,25 @@ public interface DataSource {
   ReadResult<?> readData(EdmEntitySet entitySet, ReadOptions readOptions)
       throws ODataNotImplementedException, ODataNotFoundException, EdmException, ODataApplicationException;
 
+  /**
+   * Counts the data objects of the specified entity set which match the filter of the read options
+   * (e.g. for <code>$count</code> or <code>$inlinecount=allpages</code>) without reading them.
+   * The order, skip token, skip and top of the read options are ignored.
+   * <p>The default implementation returns <code>null</code>, in which case the data is read and counted
+   * by the caller (see {@link #readData(EdmEntitySet, ReadOptions)}).</p>
+   * @param entitySet the requested entity set
+   * @param readOptions the read options
+   * @return the number of matching data objects or <code>null</code> if counting is not supported
+   * @throws ODataNotImplementedException the o data not implemented exception
+   * @throws ODataNotFoundException the o data not found exception
+   * @throws EdmException the edm exception
+   * @throws ODataApplicationException the o data application exception
+   */
+  default Integer countData(EdmEntitySet entitySet, ReadOptions readOptions)
+      throws ODataNotImplementedException, ODataNotFoundException, EdmException, ODataApplicationException {
+    return null;
+  }
+
   /**
    * Retrieves a single data object for the specified entity set and key.
    * @param entitySet the requested
@@ -91,9 +141,44 @@ public interface DataSource {
       Map<String, Object> targetKeys) throws ODataNotImplementedException, ODataNotFoundException, EdmException,
       ODataApplicationException;
 
+  /**
+   * <p>Retrieves the related data for each of the specified source data objects
+   * (e.g. for the <code>$expand</code> of a feed).</p>
+   * <p>The result maps each source data object (by identity) to its related data, which is a list for a target
+   * multiplicity '*' and otherwise a single data object. Source data objects without related data
+   * (or for which the related data was not found) are not contained in the result.</p>
+   * <p>The default implementation calls {@link #readRelatedData(EdmEntitySet, Object, EdmEntitySet, Map)}
+   * for each source data object.</p>
+   * @param sourceEntitySet the EdmEntitySet of the source entities
+   * @param sourceData the data objects of the source entities
+   * @param targetEntitySet the requested target
+   * @return the related data for each source data object
+   * @throws ODataNotImplementedException the o data not implemented exception
+   * @throws EdmException the edm exception
+   * @throws ODataApplicationException the o data application exception
+   */
+  default Map<Object, Object> readRelatedData(EdmEntitySet sourceEntitySet, Collection<?> sourceData,
+      EdmEntitySet targetEntitySet) throws ODataNotImplementedException, EdmException, ODataApplicationException {
+    Map<Object, Object> result = new IdentityHashMap<>();
+    for (Object data : sourceData) {
+      try {
+        Object relatedData = readRelatedData(sourceEntitySet, data, targetEntitySet,
+            Collections.<String, Object>emptyMap());
+        if (relatedData != null) {
+          result.put(data, relatedData);
+        }
+      } catch (ODataNotFoundException e) {
+        // no related data for this source data object
+      }
+    }
+    return result;
+  }
+
   /**
    * Retrieves the binary data and the MIME type for the media resource
    * associated to the specified media-link entry.
+   * The binary data can be streamed (see {@link BinaryData#BinaryData(Content, long, String)}),
+   * in which case it is read while the response is written (and only in the requested range).
    * @param entitySet the EdmEntitySet of the media-link entry
    * @param mediaLinkEntryData the data object of the media-link entry
    * @return the binary data and the MIME type of the media resource
@@ -123,12 +208,13 @@ public interface DataSource {
 
   /**
    * Writes the binary data for the media resource associated to the
-   * specified media-link entry.
+   * specified media-link entry (the media-link entry is written to the data store as well).
    * @param entitySet the
    * of the media-link entry
    * @param mediaLinkEntryData the data object of the media-link entry
    * @param binaryData the binary data of the media resource along with
-   * the MIME type of the binary data
+   * the MIME type of the binary data (an uploaded media resource is streamed from a temporary file
+   * which is deleted after the call, see {@link BinaryData#getFile()})
    * @throws ODataNotImplementedException the o data not implemented exception
    * @throws ODataNotFoundException the o data not found exception
    * @throws EdmException the edm exception
@@ -166,6 +252,65 @@ public interface DataSource {
   Object createData(EdmEntitySet entitySet, Object data) throws ODataNotImplementedException, EdmException,
       ODataApplicationException;
 
+  /**
+   * <p>Updates an instance of the entity list of the specified entity set
+   * (after its properties were changed by the processor).</p>
+   * <p>The default implementation returns the given data object, hence the changes of the data object
+   * must already be visible to the data source.</p>
+   *
+   * @param entitySet the EdmEntitySet the object must correspond to
+   * @param data the changed data object of the entity
+   * @return the updated object instance
+   * @throws ODataNotImplementedException the o data not implemented exception
+   * @throws EdmException the edm exception
+   * @throws ODataApplicationException the o data application exception
+   */
+  default Object updateData(EdmEntitySet entitySet, Object data) throws ODataNotImplementedException, EdmException,
+      ODataApplicationException {
+    return data;
+  }
+
+  /**
+   * <p>Begins the processing of a request on the current thread.</p>
+   * <p>Requests can be nested (e.g. the parts of a batch request), each call is followed by a call of
+   * {@link #endRequest()} (also if the processing failed), hence resources which are bound to the request
+   * (e.g. connections) can be released at the end of the outermost request.
+   * The default implementation does nothing.</p>
+   */
+  default void beginRequest() {
+  }
+
+  /**
+   * Ends the processing of a request on the current thread (see {@link #beginRequest()}).
+   */
+  default void endRequest() {
+  }
+
+  /**
+   * <p>Begins a unit of work (e.g. for a change set or a deep insert).</p>
+   * <p>All writes until the unit of work is committed ({@link #commitUnitOfWork()})
+   * or rolled back ({@link #rollbackUnitOfWork()}) are applied together (if supported by the data source).
+   * Units of work can be nested, only the outermost unit of work is committed.
+   * The default implementation does nothing (each write is applied on its own).</p>
+   */
+  default void beginUnitOfWork() {
+  }
+
+  /**
+   * Commits the current unit of work.
+   *
+   * @throws ODataApplicationException if the writes of the unit of work could not be applied
+   * (and hence were rolled back)
+   */
+  default void commitUnitOfWork() throws ODataApplicationException {
+  }
+
+  /**
+   * Rolls back the current unit of work (a nested unit of work marks the outermost unit of work for rollback).
+   */
+  default void rollbackUnitOfWork() {
+  }
+
   /**
    * Deletes the relation from the specified source data to a target entity
    * specified by entity set and key.
@@ -199,11 +344,29 @@ public interface DataSource {
       ODataApplicationException;
 
   /**
-   * Container to store binary data (as byte array) and the associated MIME type.
+   * Container to store binary data (as byte array or as streamed content) and the associated MIME type.
    */
   class BinaryData {
     private final byte[] data;
+    private final Content content;
+    private final long length;
     private final String mimeType;
+    private final Path file;
+    private final String digest;
+
+    /**
+     * Source of streamed binary data.
+     */
+    public interface Content {
+      /**
+       * Open a stream of the binary data which starts at the given offset.
+       *
+       * @param offset number of bytes which are skipped
+       * @return stream of the binary data (which is closed by the caller)
+       * @throws IOException if the binary data can not be read
+       */
+      InputStream open(long offset) throws IOException;
+    }
 
     /**
      * Instantiates a new Binary data.
@@ -213,16 +376,158 @@ public interface DataSource {
      */
     public BinaryData(final byte[] data, final String mimeType) {
       this.data = data;
+      this.content = null;
+      this.length = data == null ? 0 : data.length;
       this.mimeType = mimeType;
+      this.file = null;
+      this.digest = null;
+    }
+
+    /**
+     * Instantiates a new Binary data with a digest of its content.
+     *
+     * @param data the data
+     * @param mimeType the mime type
+     * @param digest the (hex encoded SHA-256) digest of the data
+     */
+    public BinaryData(final byte[] data, final String mimeType, final String digest) {
+      this.data = data;
+      this.content = null;
+      this.length = data == null ? 0 : data.length;
+      this.mimeType = mimeType;
+      this.file = null;
+      this.digest = digest;
+    }
+
+    /**
+     * Instantiates a new (streamed) Binary data.
+     *
+     * @param content the source of the data
+     * @param length number of bytes of the data
+     * @param mimeType the mime type
+     */
+    public BinaryData(final Content content, final long length, final String mimeType) {
+      this(content, length, mimeType, null, null);
+    }
+
+    private BinaryData(final Content content, final long length, final String mimeType,
+        final Path file, final String digest) {
+      this.data = null;
+      this.content = content;
+      this.length = length;
+      this.mimeType = mimeType;
+      this.file = file;
+      this.digest = digest;
+    }
+
+    /**
+     * Create a (streamed) Binary data for the given file.
+     * The file is read via a <code>FileChannel</code> which is positioned at the requested offset.
+     *
+     * @param file the file
+     * @param mimeType the mime type
+     * @return the binary data
+     * @throws IOException if the size of the file can not be read
+     */
+    public static BinaryData forFile(final Path file, final String mimeType) throws IOException {
+      return forFile(file, mimeType, null);
+    }
+
+    /**
+     * Create a (streamed) Binary data for the given file with a digest of its content.
+     *
+     * @param file the file
+     * @param mimeType the mime type
+     * @param digest the (hex encoded SHA-256) digest of the file content
+     * @return the binary data
+     * @throws IOException if the size of the file can not be read
+     */
+    public static BinaryData forFile(final Path file, final String mimeType, final String digest)
+        throws IOException {
+      return new BinaryData(offset -> {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+          channel.position(offset);
+        } catch (IOException e) {
+          channel.close();
+          throw e;
+        }
+        return Channels.newInputStream(channel);
+      }, Files.size(file), mimeType, file, digest);
     }
 
     /**
-     * Get data.
+     * Get data (a streamed data is read completely).
      *
      * @return the byte [ ]
      */
     public byte[] getData() {
-      return data;
+      if (content == null) {
+        return data;
+      }
+      try (InputStream in = content.open(0)) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(length, Integer.MAX_VALUE - 8));
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    /**
+     * Get a stream of the data which starts at the given offset.
+     *
+     * @param offset number of bytes which are skipped
+     * @return the stream (which has to be closed by the caller)
+     * @throws IOException if the data can not be read
+     */
+    public InputStream getStream(final long offset) throws IOException {
+      if (content != null) {
+        return content.open(offset);
+      }
+      final int start = (int) Math.min(Math.max(offset, 0), length);
+      return new ByteArrayInputStream(data == null ? new byte[0] : data, start, (int) length - start);
+    }
+
+    /**
+     * Is the data streamed (instead of held as byte array).
+     *
+     * @return <code>true</code> if the data is streamed
+     */
+    public boolean isStreamed() {
+      return content != null;
+    }
+
+    /**
+     * Gets the number of bytes of the data.
+     *
+     * @return the length
+     */
+    public long getLength() {
+      return length;
+    }
+
+    /**
+     * Gets the file which holds the data (if the data is streamed from a file).
+     * A data source may move an uploaded file to its own storage (instead of copying the data).
+     *
+     * @return the file or <code>null</code>
+     */
+    public Path getFile() {
+      return file;
+    }
+
+    /**
+     * Gets the (hex encoded SHA-256) digest of the data if it was computed (e.g. while the data was uploaded).
+     *
+     * @return the digest or <code>null</code>
+     */
+    public String getDigest() {
+      return digest;
     }
 
     /**
@@ -236,7 +541,7 @@ public interface DataSource {
 
     @Override
     public String toString() {
-      return "data=" + Arrays.toString(data) + ", mimeType=" + mimeType;
+      return (content == null ? "data=" + Arrays.toString(data) : "length=" + length) + ", mimeType=" + mimeType;
     }
   }
 }
@@ -18,6 +18,7 @@
  ******************************************************************************/
 package org.apache.olingo.odata2.janos.processor.api.data.source;
 
+import org.apache.olingo.odata2.api.edm.EdmEntitySet;
 import org.apache.olingo.odata2.api.edm.EdmException;
 import org.apache.olingo.odata2.api.edm.EdmFunctionImport;
 import org.apache.olingo.odata2.api.exception.ODataApplicationException;
@@ -57,4 +58,14 @@ public interface FunctionSource {
   Object executeFunction(EdmFunctionImport function, Map<String, Object> parameters, Map<String, Object> keys)
       throws ODataNotImplementedException, ODataNotFoundException, EdmException, ODataApplicationException;
 
+  /**
+   * <p>Notification that data of the specified entity set was written (created, updated or deleted),
+   * e.g. to invalidate cached function results (see {@link CachedFunction}).</p>
+   * <p>A write within a unit of work is notified directly and again after the unit of work was committed
+   * or rolled back (since results computed meanwhile can be based on data which was not yet committed).</p>
+   * @param entitySet the written entity set
+   * @throws EdmException the edm exception
+   */
+  default void dataChanged(EdmEntitySet entitySet) throws EdmException {
+  }
 }
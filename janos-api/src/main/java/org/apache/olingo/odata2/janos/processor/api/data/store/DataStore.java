@@ -19,6 +19,7 @@ package org.apache.olingo.odata2.janos.processor.api.data.store;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 
+import java.lang.reflect.Field;
 import java.util.Collection;
 
 /**
@@ -69,6 +70,10 @@ public interface DataStore<T> {
 
   /**
    * Read all object of this DataStore.
+   * <br/>
+   * The returned collection must not be modified by the caller. It can be a snapshot which is shared by all
+   * readers until the next write, in which case the first read after a write copies all objects
+   * (hence a read after each write costs as much as a copy of the DataStore).
    *
    * @return all object of this DataStore.
    */
@@ -76,12 +81,79 @@ public interface DataStore<T> {
 
   /**
    * Read read result.
+   * The result can be streamed (see {@link ReadResult#forStream(java.util.stream.Stream)}), in which case
+   * the entities are read while the result is consumed and the result is closed by the caller.
+   * A not streamed result can be a shared snapshot of the DataStore (see {@link #read()}).
    *
    * @param readOptions the read options
    * @return the read result
    */
   ReadResult<T> read(ReadOptions readOptions) throws DataStoreException;
 
+  /**
+   * Count all objects of this DataStore which match the filter of the given read options
+   * (the order, skip token, skip and top of the read options are ignored).
+   * <br/>
+   * The default implementation does not support counting and returns <code>null</code>,
+   * in which case the caller has to read (and count) the objects (see {@link #read(ReadOptions)}).
+   *
+   * @param readOptions the read options
+   * @return number of matching objects or <code>null</code> if counting (with the given filter) is not supported
+   * @throws DataStoreException the data store exception
+   */
+  default Integer count(ReadOptions readOptions) throws DataStoreException {
+    return null;
+  }
+
+  /**
+   * Read all objects of this DataStore which are key equal to any of the given objects
+   * (e.g. the targets of a single valued navigation for a page of source objects).
+   * Objects which are not found are not contained in the result.
+   * <br/>
+   * The default implementation does not support this lookup and returns <code>null</code>,
+   * in which case the caller has to read the objects one by one (see {@link #read(Object)}).
+   *
+   * @param objects the objects (with key fields set)
+   * @return the found objects or <code>null</code> if the lookup is not supported
+   * @throws DataStoreException the data store exception
+   */
+  default Collection<T> readAll(final Collection<?> objects) throws DataStoreException {
+    return null;
+  }
+
+  /**
+   * Read all objects of this DataStore which reference the given object via the given (single valued)
+   * navigation field (e.g. all rooms of a building via the building field of the rooms).
+   * The referenced object is matched by its key values.
+   * <br/>
+   * The default implementation does not support this lookup and returns <code>null</code>,
+   * in which case the caller has to check all objects of this DataStore (see {@link #read()}).
+   *
+   * @param field navigation field of the objects of this DataStore
+   * @param referencedObject the referenced object (with key fields set)
+   * @return the referencing objects or <code>null</code> if the lookup is not supported
+   * @throws DataStoreException the data store exception
+   */
+  default Collection<T> readRelated(final Field field, final Object referencedObject) throws DataStoreException {
+    return null;
+  }
+
+  /**
+   * Read all objects of this DataStore which reference any of the given objects via the given (single valued)
+   * navigation field (see {@link #readRelated(Field, Object)}).
+   * <br/>
+   * The default implementation does not support this lookup and returns <code>null</code>.
+   *
+   * @param field navigation field of the objects of this DataStore
+   * @param referencedObjects the referenced objects (with key fields set)
+   * @return the referencing objects or <code>null</code> if the lookup is not supported
+   * @throws DataStoreException the data store exception
+   */
+  default Collection<T> readAllRelated(final Field field, final Collection<?> referencedObjects)
+      throws DataStoreException {
+    return null;
+  }
+
   /**
    * Update object which is key equal to given object (based on #isKeyEqualChecked method).
    * If no according object can be found <code>null</code> is returned and nothing is updated.
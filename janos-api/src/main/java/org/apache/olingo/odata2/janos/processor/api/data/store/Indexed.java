@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.api.data.store;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an <code>EdmProperty</code> annotated field as indexed.
+ * A {@link DataStore} which supports secondary indexes uses them to answer
+ * <code>$filter</code> expressions on this property without scanning all entries.
+ * <br/>
+ * A field with this annotation must also be annotated with <code>EdmProperty</code>
+ * (otherwise it is not handled as property).
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD})
+public @interface Indexed {
+  /**
+   * Kind of index.
+   */
+  enum Type {
+    /** Hash based index, supports <code>eq</code> */
+    HASH,
+    /** Sorted index, supports <code>eq</code>, <code>lt</code>, <code>le</code>, <code>gt</code> and <code>ge</code> */
+    SORTED
+  }
+
+  /**
+   * Gets the kind of index.
+   *
+   * @return the kind of index
+   */
+  Type value() default Type.HASH;
+}
@@ -19,12 +19,14 @@
 package org.apache.olingo.odata2.janos.processor.core;
 
 import org.apache.olingo.odata2.api.ODataCallback;
+import org.apache.olingo.odata2.api.ODataServiceVersion;
 import org.apache.olingo.odata2.api.batch.BatchHandler;
 import org.apache.olingo.odata2.api.batch.BatchRequestPart;
 import org.apache.olingo.odata2.api.batch.BatchResponsePart;
 import org.apache.olingo.odata2.api.commons.HttpContentType;
 import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
 import org.apache.olingo.odata2.api.commons.InlineCount;
+import org.apache.olingo.odata2.api.commons.ODataHttpHeaders;
 import org.apache.olingo.odata2.api.edm.*;
 import org.apache.olingo.odata2.api.ep.*;
 import org.apache.olingo.odata2.api.ep.callback.*;
@@ -32,6 +34,7 @@ import org.apache.olingo.odata2.api.ep.entry.ODataEntry;
 import org.apache.olingo.odata2.api.ep.feed.ODataFeed;
 import org.apache.olingo.odata2.api.exception.*;
 import org.apache.olingo.odata2.api.processor.ODataContext;
+import org.apache.olingo.odata2.api.processor.ODataErrorContext;
 import org.apache.olingo.odata2.api.processor.ODataRequest;
 import org.apache.olingo.odata2.api.processor.ODataResponse;
 import org.apache.olingo.odata2.api.processor.ODataSingleProcessor;
@@ -44,6 +47,10 @@ import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource.BinaryData;
 import org.apache.olingo.odata2.janos.processor.api.data.source.FunctionSource;
+import org.apache.olingo.odata2.janos.processor.core.data.SkipToken;
+import org.apache.olingo.odata2.janos.processor.core.expression.CompiledFilter;
+import org.apache.olingo.odata2.janos.processor.core.expression.CompiledOrderBy;
+import org.apache.olingo.odata2.janos.processor.core.expression.ExpressionValues;
 
 import java.io.InputStream;
 import java.util.*;
@@ -53,16 +60,34 @@ import java.util.*;
  * allowing to use the simplified {@link DataSource} and {@link ValueAccess} for the
  * actual data handling.
  * <br/>
- * 
+ * The {@link ODataContext} is held per thread, hence one processor instance is shared by all requests.
  */
 public class DataSourceProcessor extends ODataSingleProcessor implements ODataProcessor {
 
-  // TODO: Paging size should be configurable.
-  private static final int SERVER_PAGING_SIZE = 100;
+  /** system property to enable gzip compressed variants of the metadata and service documents */
+  public static final String GZIP_DOCUMENTS = "JanosGzipDocumentsSystemProperty";
+  /** system property for the maximum size (in bytes) of an uploaded media resource (no limit by default) */
+  public static final String MAX_MEDIA_SIZE = "JanosMaxMediaSizeSystemProperty";
+  /** system property for the size (in bytes) up to which an uploaded media resource is kept in memory */
+  public static final String MEDIA_MEMORY_THRESHOLD = "JanosMediaMemoryThresholdSystemProperty";
+  private static final int DEFAULT_MEDIA_MEMORY_THRESHOLD = 64 * 1024;
 
   protected final DataSource dataSource;
   protected final ValueAccess valueAccess;
   protected final FunctionSource functionSource;
+  /** context of the request which is processed by the current thread */
+  private final ThreadLocal<ODataContext> requestContext = new ThreadLocal<>();
+  /** contexts of the (nested) calls which are processed by the current thread (see {@link #beginRequest()}) */
+  private final ThreadLocal<List<ODataContext>> callContexts = new ThreadLocal<>();
+  /** entity sets which were written within the units of work of the current thread */
+  private final ThreadLocal<UnitOfWorkChanges> unitOfWorkChanges = new ThreadLocal<>();
+  /** metadata and service documents (which are written once per entity data model) */
+  private final DocumentCache documentCache = new DocumentCache(Boolean.getBoolean(GZIP_DOCUMENTS));
+  /** reader of uploaded media resources (which spools large uploads into temporary files) */
+  private final MediaUpload mediaUpload = new MediaUpload(Long.getLong(MAX_MEDIA_SIZE, -1),
+      Integer.getInteger(MEDIA_MEMORY_THRESHOLD, DEFAULT_MEDIA_MEMORY_THRESHOLD));
+  /** compiled entity and complex types which provide the (lazy) value maps of written entries */
+  private final StructuralTypeValues.Cache typeValues;
 
   /**
    * Initialize a {@link DataSourceProcessor} in combination with given {@link DataSource} (providing data objects)
@@ -93,30 +118,146 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     this.dataSource = dataSource;
     this.valueAccess = valueAccess;
     this.functionSource = functionSource;
+    this.typeValues = new StructuralTypeValues.Cache(valueAccess);
+  }
+
+  /**
+   * Set the context of the request which is processed by the current thread.
+   * The processor itself is stateless and hence can be shared by all requests.
+   *
+   * @param context context of the request
+   */
+  @Override
+  public void setContext(final ODataContext context) {
+    requestContext.set(context);
+  }
+
+  /**
+   * Get the context of the request which is processed by the current thread.
+   *
+   * @return context of the request
+   */
+  @Override
+  public ODataContext getContext() {
+    return requestContext.get();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br/>
+   * The context of the call is remembered, hence it is restored at the end of a nested call
+   * (e.g. a part of a batch request which sets its own context).
+   */
+  @Override
+  public void beginRequest() {
+    dataSource.beginRequest();
+    List<ODataContext> contexts = callContexts.get();
+    if (contexts == null) {
+      contexts = new ArrayList<>();
+      callContexts.set(contexts);
+    }
+    contexts.add(getContext());
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br/>
+   * At the end of the outermost call the context is removed from the thread
+   * (hence it is not kept alive by pooled threads), otherwise the context of the enclosing call is restored.
+   */
+  @Override
+  public void endRequest() {
+    try {
+      dataSource.endRequest();
+    } finally {
+      List<ODataContext> contexts = callContexts.get();
+      if (contexts != null && !contexts.isEmpty()) {
+        contexts.remove(contexts.size() - 1);
+      }
+      if (contexts == null || contexts.isEmpty()) {
+        callContexts.remove();
+        requestContext.remove();
+      } else {
+        requestContext.set(contexts.get(contexts.size() - 1));
+      }
+    }
+  }
+
+  /**
+   * The metadata document is written once and served from the cache
+   * (with ETag and <code>If-None-Match</code> support).
+   */
+  @Override
+  public ODataResponse readMetadata(final GetMetadataUriInfo uriInfo, final String contentType)
+      throws ODataException {
+    final ODataContext context = getContext();
+    final Edm edm = context.getService().getEntityDataModel();
+    return documentCache.getResponse(context, edm, "$metadata", () -> {
+      final EdmServiceMetadata serviceMetadata = edm.getServiceMetadata();
+      return ODataResponse.status(HttpStatusCodes.OK)
+          .header(ODataHttpHeaders.DATASERVICEVERSION, serviceMetadata.getDataServiceVersion())
+          .entity(serviceMetadata.getMetadata())
+          .build();
+    });
+  }
+
+  /**
+   * The service document is written once per content type and service root and served from the cache
+   * (with ETag and <code>If-None-Match</code> support).
+   */
+  @Override
+  public ODataResponse readServiceDocument(final GetServiceDocumentUriInfo uriInfo, final String contentType)
+      throws ODataException {
+    final ODataContext context = getContext();
+    final Edm edm = context.getService().getEntityDataModel();
+    final String serviceRoot = context.getPathInfo().getServiceRoot().toASCIIString();
+    return documentCache.getResponse(context, edm, contentType + " " + serviceRoot, () -> {
+      final ODataResponse response = EntityProvider.writeServiceDocument(contentType, edm, serviceRoot);
+      return ODataResponse.fromResponse(response)
+          .header(ODataHttpHeaders.DATASERVICEVERSION, ODataServiceVersion.V10)
+          .build();
+    });
   }
 
   @Override
   public ODataResponse readEntitySet(final GetEntitySetUriInfo uriInfo, final String contentType)
       throws ODataException {
+    // the inline count is taken from the data source (if supported) instead of reading all entries
+    final Integer storedCount = uriInfo.getInlineCount() == InlineCount.ALLPAGES
+        ? countData(uriInfo.getStartEntitySet(), uriInfo.getKeyPredicates(), uriInfo.getFunctionImport(),
+            uriInfo.getNavigationSegments(), uriInfo.getFilter())
+        : null;
     ArrayList<Object> data = new ArrayList<>();
-    ReadResult result;
+    ReadResult<?> result;
     try {
-      result = retrieveData(uriInfo,
+      result = retrieveData(uriInfo, storedCount == null,
           uriInfo.getStartEntitySet(),
           uriInfo.getKeyPredicates(),
           uriInfo.getFunctionImport(),
           mapFunctionParameters(uriInfo.getFunctionImportParameters()),
           uriInfo.getNavigationSegments());
-      data.addAll(result.getResult());
     } catch (final ODataNotFoundException e) {
-      data.clear();
       result = ReadResult.empty();
     }
 
     final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
     final InlineCount inlineCountType = uriInfo.getInlineCount();
-    final Integer count = applySystemQueryOptions(entitySet, data,
-        new QueryOptionsHolder(uriInfo), result);
+    final QueryOptionsHolder queryOptions = new QueryOptionsHolder(uriInfo, storedCount == null);
+    Integer count;
+    try {
+      if (isStreamable(entitySet, result, queryOptions)) {
+        // only the requested page (and the first entry of the next page) is read from the stream
+        count = applySystemQueryOptions(entitySet, result, data, queryOptions, getPageSize(entitySet) + 1);
+      } else {
+        data.addAll(result.getResult());
+        count = applySystemQueryOptions(entitySet, data, queryOptions, result);
+      }
+    } finally {
+      result.close();
+    }
+    if (storedCount != null) {
+      count = storedCount;
+    }
 
     ODataContext context = getContext();
     String nextLink = null;
@@ -125,8 +266,9 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     // if there are further entities.
     // Almost all system query options in the current request must be carried
     // over to the URI for the "next" link, with the exception of $skiptoken
-    // and $skipApplied.
-    if (data.size() > SERVER_PAGING_SIZE) {
+    // and $skip.
+    final int pageSize = getPageSize(entitySet);
+    if (data.size() > pageSize) {
       if (uriInfo.getOrderBy() == null
           && uriInfo.getSkipToken() == null
           && uriInfo.getSkip() == null
@@ -137,17 +279,16 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
       nextLink = context.getPathInfo().getServiceRoot().relativize(context.getPathInfo().getRequestUri()).toString();
       nextLink = percentEncodeNextLink(nextLink);
       nextLink += (nextLink.contains("?") ? "&" : "?")
-          + "$skiptoken=" + getSkipToken(entitySet, data.get(SERVER_PAGING_SIZE));
+          + "$skiptoken=" + SkipToken.percentEncode(getSkipToken(entitySet, data.get(pageSize)));
 
-      while (data.size() > SERVER_PAGING_SIZE) {
-        data.remove(SERVER_PAGING_SIZE);
-      }
+      data.subList(pageSize, data.size()).clear();
     }
 
     final EdmEntityType entityType = entitySet.getEntityType();
-    List<Map<String, Object>> values = new ArrayList<>();
+    final StructuralTypeValues entityValues = typeValues.get(entityType);
+    List<Map<String, Object>> values = new ArrayList<>(data.size());
     for (final Object entryData : data) {
-      values.add(getStructuralTypeValueMap(entryData, entityType));
+      values.add(entityValues.values(entryData));
     }
 
     final EntityProviderWriteProperties feedProperties = EntityProviderWriteProperties
@@ -160,7 +301,12 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
         .build();
 
     final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "writeFeed");
-    final ODataResponse response = EntityProvider.writeFeed(contentType, entitySet, values, feedProperties);
+    final ODataResponse response;
+    try {
+      response = EntityProvider.writeFeed(contentType, entitySet, values, feedProperties);
+    } catch (final StructuralTypeValues.ValueReadException e) {
+      throw e.getCause();
+    }
 
     context.stopRuntimeMeasurement(timingHandle);
 
@@ -173,6 +319,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     }
 
     return link.replaceAll("\\$skiptoken=.+?(?:&|$)", "")
+        .replaceAll("\\$skip=.+?(?:&|$)", "")
         .replaceAll("\\$skipApplied=.+?(?:&|$)", "")
         .replaceFirst("(?:\\?|&)$", ""); // Remove potentially trailing "?" or "&" left over from remove actions
   }
@@ -180,6 +327,21 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   @Override
   public ODataResponse countEntitySet(final GetEntitySetCountUriInfo uriInfo, final String contentType)
       throws ODataException {
+    final QueryOptionsHolder queryOptions = new QueryOptionsHolder(uriInfo);
+    final Integer storedCount = countData(uriInfo.getStartEntitySet(), uriInfo.getKeyPredicates(),
+        uriInfo.getFunctionImport(), uriInfo.getNavigationSegments(), queryOptions.filter);
+    if (storedCount != null) {
+      // $skip and $top are applied on the count of the filtered entries
+      int count = storedCount;
+      if (queryOptions.skip != null && queryOptions.skip > 0) {
+        count = Math.max(0, count - queryOptions.skip);
+      }
+      if (queryOptions.top != null && queryOptions.top > 0) {
+        count = Math.min(count, queryOptions.top);
+      }
+      return ODataResponse.fromResponse(EntityProvider.writeText(String.valueOf(count))).build();
+    }
+
     ArrayList<Object> data = new ArrayList<>();
     try {
       ReadResult<?> result = retrieveData(
@@ -195,7 +357,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
 
     applySystemQueryOptions(
         uriInfo.getTargetEntitySet(),
-        data, new QueryOptionsHolder(uriInfo));
+        data, queryOptions);
 
     return ODataResponse.fromResponse(EntityProvider.writeText(String.valueOf(data.size()))).build();
   }
@@ -293,12 +455,19 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     dataSource.deleteData(
         uriInfo.getStartEntitySet(),
         mapKey(uriInfo.getKeyPredicates()));
+    dataChanged(uriInfo.getStartEntitySet());
     return ODataResponse.newBuilder().build();
   }
 
   @Override
   public ODataResponse createEntity(final PostUriInfo uriInfo, final InputStream content,
       final String requestContentType, final String contentType) throws ODataException {
+    // the entity, its inlined entities (deep insert) and the relations are created together
+    return executeInUnitOfWork(() -> createEntityData(uriInfo, content, requestContentType, contentType));
+  }
+
+  private ODataResponse createEntityData(final PostUriInfo uriInfo, final InputStream content,
+      final String requestContentType, final String contentType) throws ODataException {
     final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
     final EdmEntityType entityType = entitySet.getEntityType();
 
@@ -306,9 +475,14 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     ExpandSelectTreeNode expandSelectTree = null;
 
     if (entityType.hasStream()) {
-      data = dataSource.createData(entitySet, data);
-      dataSource.writeBinaryData(entitySet, data,
-          new BinaryData(EntityProvider.readBinary(content), requestContentType));
+      final BinaryData binaryData = mediaUpload.read(content, requestContentType);
+      try {
+        data = dataSource.createData(entitySet, data);
+        dataSource.writeBinaryData(entitySet, data, binaryData);
+        dataChanged(entitySet);
+      } finally {
+        MediaUpload.release(binaryData);
+      }
 
     } else {
       final EntityProviderReadProperties properties = EntityProviderReadProperties.init()
@@ -320,6 +494,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
       setStructuralTypeValuesFromMap(data, entityType, entryValues.getProperties(), false);
 
       data = dataSource.createData(entitySet, data);
+      dataChanged(entitySet);
 
       createInlinedEntities(entitySet, data, entryValues);
 
@@ -339,6 +514,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
       final EdmEntitySet previousEntitySet = previousSegments.isEmpty() ?
           uriInfo.getStartEntitySet() : previousSegments.get(previousSegments.size() - 1).getEntitySet();
       dataSource.writeRelation(previousEntitySet, sourceData, entitySet, getStructuralTypeValueMap(data, entityType));
+      dataChanged(previousEntitySet);
     }
 
     return ODataResponse.fromResponse(writeEntry(uriInfo.getTargetEntitySet(), expandSelectTree, data, contentType))
@@ -369,6 +545,8 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     final ODataEntry entryValues = parseEntry(entitySet, content, requestContentType, properties);
 
     setStructuralTypeValuesFromMap(data, entityType, entryValues.getProperties(), merge);
+    dataSource.updateData(entitySet, data);
+    dataChanged(entitySet);
 
     return ODataResponse.newBuilder().eTag(constructETag(entitySet, data)).build();
   }
@@ -440,6 +618,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     }
 
     dataSource.deleteRelation(entitySet, sourceData, targetEntitySet, keys);
+    dataChanged(entitySet, targetEntitySet);
 
     return ODataResponse.newBuilder().build();
   }
@@ -464,6 +643,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     final Map<String, Object> targetKeys = parseLink(targetEntitySet, content, requestContentType);
 
     dataSource.writeRelation(entitySet, sourceData, targetEntitySet, targetKeys);
+    dataChanged(entitySet, targetEntitySet);
 
     return ODataResponse.newBuilder().build();
   }
@@ -497,6 +677,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     final Map<String, Object> newKeys = parseLink(targetEntitySet, content, requestContentType);
 
     dataSource.writeRelation(entitySet, sourceData, targetEntitySet, newKeys);
+    dataChanged(entitySet, targetEntitySet);
 
     return ODataResponse.newBuilder().build();
   }
@@ -566,45 +747,48 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   @Override
   public ODataResponse deleteEntitySimplePropertyValue(final DeleteUriInfo uriInfo, final String contentType)
       throws ODataException {
-    Object data = retrieveData(
+    final Object entity = retrieveData(
         uriInfo.getStartEntitySet(),
         uriInfo.getKeyPredicates(),
         uriInfo.getFunctionImport(),
         mapFunctionParameters(uriInfo.getFunctionImportParameters()),
         uriInfo.getNavigationSegments()).getFirst();
 
-    if (data == null) {
+    if (entity == null) {
       throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
     }
 
     final List<EdmProperty> propertyPath = uriInfo.getPropertyPath();
     final EdmProperty property = propertyPath.get(propertyPath.size() - 1);
 
-    data = getPropertyValue(data, propertyPath.subList(0, propertyPath.size() - 1));
+    final Object data = getPropertyValue(entity, propertyPath.subList(0, propertyPath.size() - 1));
     valueAccess.setPropertyValue(data, property, null);
     valueAccess.setMappingValue(data, property.getMapping(), null);
 
+    dataSource.updateData(uriInfo.getTargetEntitySet(), entity);
+    dataChanged(uriInfo.getTargetEntitySet());
+
     return ODataResponse.newBuilder().build();
   }
 
   @Override
   public ODataResponse updateEntityComplexProperty(final PutMergePatchUriInfo uriInfo, final InputStream content,
       final String requestContentType, final boolean merge, final String contentType) throws ODataException {
-    Object data = retrieveData(
+    final Object entity = retrieveData(
         uriInfo.getStartEntitySet(),
         uriInfo.getKeyPredicates(),
         uriInfo.getFunctionImport(),
         mapFunctionParameters(uriInfo.getFunctionImportParameters()),
         uriInfo.getNavigationSegments()).getFirst();
 
-    if (!appliesFilter(data, uriInfo.getFilter())) {
+    if (!appliesFilter(entity, uriInfo.getFilter())) {
       throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
     }
 
     final List<EdmProperty> propertyPath = uriInfo.getPropertyPath();
     final EdmProperty property = propertyPath.get(propertyPath.size() - 1);
 
-    data = getPropertyValue(data, propertyPath.subList(0, propertyPath.size() - 1));
+    final Object data = getPropertyValue(entity, propertyPath.subList(0, propertyPath.size() - 1));
 
     ODataContext context = getContext();
     int timingHandle = context.startRuntimeMeasurement("EntityConsumer", "readProperty");
@@ -630,6 +814,9 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
           (EdmStructuralType) property.getType(), propertyValue, merge);
     }
 
+    dataSource.updateData(uriInfo.getTargetEntitySet(), entity);
+    dataChanged(uriInfo.getTargetEntitySet());
+
     return ODataResponse.newBuilder().eTag(constructETag(uriInfo.getTargetEntitySet(), data)).build();
   }
 
@@ -642,21 +829,21 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   @Override
   public ODataResponse updateEntitySimplePropertyValue(final PutMergePatchUriInfo uriInfo, final InputStream content,
       final String requestContentType, final String contentType) throws ODataException {
-    Object data = retrieveData(
+    final Object entity = retrieveData(
         uriInfo.getStartEntitySet(),
         uriInfo.getKeyPredicates(),
         uriInfo.getFunctionImport(),
         mapFunctionParameters(uriInfo.getFunctionImportParameters()),
         uriInfo.getNavigationSegments()).getFirst();
 
-    if (!appliesFilter(data, uriInfo.getFilter())) {
+    if (!appliesFilter(entity, uriInfo.getFilter())) {
       throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
     }
 
     final List<EdmProperty> propertyPath = uriInfo.getPropertyPath();
     final EdmProperty property = propertyPath.get(propertyPath.size() - 1);
 
-    data = getPropertyValue(data, propertyPath.subList(0, propertyPath.size() - 1));
+    final Object data = getPropertyValue(entity, propertyPath.subList(0, propertyPath.size() - 1));
 
     ODataContext context = getContext();
     int timingHandle = context.startRuntimeMeasurement("EntityConsumer", "readPropertyValue");
@@ -673,6 +860,9 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     valueAccess.setPropertyValue(data, property, value);
     valueAccess.setMappingValue(data, property.getMapping(), requestContentType);
 
+    dataSource.updateData(uriInfo.getTargetEntitySet(), entity);
+    dataChanged(uriInfo.getTargetEntitySet());
+
     return ODataResponse.newBuilder().eTag(constructETag(uriInfo.getTargetEntitySet(), data)).build();
   }
 
@@ -699,8 +889,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     final String mimeType = binaryData.getMimeType() == null ?
         HttpContentType.APPLICATION_OCTET_STREAM : binaryData.getMimeType();
 
-    return ODataResponse.fromResponse(EntityProvider.writeBinary(mimeType, binaryData.getData())).eTag(
-        constructETag(entitySet, data)).build();
+    return MediaRange.createResponse(getContext(), binaryData, mimeType, constructETag(entitySet, data));
   }
 
   @Override
@@ -717,6 +906,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     }
 
     dataSource.writeBinaryData(uriInfo.getTargetEntitySet(), data, new BinaryData(null, null));
+    dataChanged(uriInfo.getTargetEntitySet());
 
     return ODataResponse.newBuilder().build();
   }
@@ -736,14 +926,19 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     }
 
     ODataContext context = getContext();
-    final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "readBinary");
+    final int timingHandle = context.startRuntimeMeasurement("MediaUpload", "read");
 
-    final byte[] value = EntityProvider.readBinary(content);
+    final BinaryData binaryData = mediaUpload.read(content, requestContentType);
 
     context.stopRuntimeMeasurement(timingHandle);
 
     final EdmEntitySet entitySet = uriInfo.getTargetEntitySet();
-    dataSource.writeBinaryData(entitySet, data, new BinaryData(value, requestContentType));
+    try {
+      dataSource.writeBinaryData(entitySet, data, binaryData);
+      dataChanged(entitySet);
+    } finally {
+      MediaUpload.release(binaryData);
+    }
 
     return ODataResponse.newBuilder().eTag(constructETag(entitySet, data)).build();
   }
@@ -844,6 +1039,60 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     }
   }
 
+  /**
+   * Get the names of the properties of the target entity set which are written for a <code>$select</code>
+   * (see {@link ReadOptions#getSelect()}): the selected properties, the key properties and the ETag properties.
+   *
+   * @return the property names or <code>null</code> if all properties are used (no <code>$select</code>,
+   * a selected <code>*</code>, a navigation or an <code>$expand</code>)
+   */
+  private List<String> getProjection(final GetEntitySetUriInfo uriInfo) throws EdmException {
+    final List<SelectItem> select = uriInfo.getSelect();
+    if (select == null || select.isEmpty() || (uriInfo.getExpand() != null && !uriInfo.getExpand().isEmpty())) {
+      return null;
+    }
+    final EdmEntityType entityType = uriInfo.getTargetEntitySet().getEntityType();
+    Set<String> names = new LinkedHashSet<>(entityType.getKeyPropertyNames());
+    for (final SelectItem item : select) {
+      if (item.isStar() || item.getProperty() == null
+          || (item.getNavigationPropertySegments() != null && !item.getNavigationPropertySegments().isEmpty())) {
+        return null;
+      }
+      names.add(item.getProperty().getName());
+    }
+    for (final String propertyName : entityType.getPropertyNames()) {
+      final EdmFacets facets = ((EdmProperty) entityType.getProperty(propertyName)).getFacets();
+      if (facets != null && facets.getConcurrencyMode() == EdmConcurrencyMode.Fixed) {
+        names.add(propertyName);
+      }
+    }
+    return names.size() < entityType.getPropertyNames().size() ? new ArrayList<>(names) : null;
+  }
+
+  /**
+   * Count the entries of the entity set which match the filter via the data source
+   * (see {@link DataSource#countData(EdmEntitySet, ReadOptions)}), which is only possible for a (not navigated)
+   * entity set.
+   *
+   * @return the number of matching entries or <code>null</code> if they can not be counted by the data source
+   */
+  private Integer countData(final EdmEntitySet startEntitySet, final List<KeyPredicate> keyPredicates,
+      final EdmFunctionImport functionImport, final List<NavigationSegment> navigationSegments,
+      final FilterExpression filter) throws ODataException {
+    if (functionImport != null || !keyPredicates.isEmpty() || !navigationSegments.isEmpty()) {
+      return null;
+    }
+    ODataContext context = getContext();
+    final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "countData");
+    try {
+      return dataSource.countData(startEntitySet, ReadOptions.start(filter).build());
+    } catch (final ODataNotFoundException e) {
+      return 0;
+    } finally {
+      context.stopRuntimeMeasurement(timingHandle);
+    }
+  }
+
   private ReadResult<?> retrieveData(final EdmEntitySet startEntitySet, final List<KeyPredicate> keyPredicates,
       final EdmFunctionImport functionImport, final Map<String, Object> functionImportParameters,
       final List<NavigationSegment> navigationSegments)
@@ -854,15 +1103,29 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   }
 
 
-  private ReadResult<?> retrieveData(final GetEntitySetUriInfo uriInfo, final EdmEntitySet startEntitySet,
+  private ReadResult<?> retrieveData(final GetEntitySetUriInfo uriInfo, final boolean countEntries,
+                              final EdmEntitySet startEntitySet,
                               final List<KeyPredicate> keyPredicates, final EdmFunctionImport functionImport,
                               final Map<String, Object> functionImportParameters, final List<NavigationSegment> navigationSegments)
       throws ODataException {
+    // the inline count is based on all entries (before $skiptoken, $skip and $top),
+    // hence paging is applied after the read entries are counted
+    final boolean allPages = countEntries && uriInfo.getInlineCount() == InlineCount.ALLPAGES;
+    Integer top = uriInfo.getTop();
+    if (!allPages && (top == null || top > 0)) {
+      // at most one page (and the first entry of the next page for the next link) is needed
+      final int pageSize = getPageSize(uriInfo.getTargetEntitySet());
+      if (top == null || top > pageSize) {
+        top = pageSize + 1;
+      }
+    }
     ReadOptions readOptions = ReadOptions.start()
         .filter(uriInfo.getFilter())
         .order(uriInfo.getOrderBy())
-        .skip(uriInfo.getSkipToken(), uriInfo.getSkip())
-        .top(uriInfo.getTop()).build();
+        .skip(allPages ? null : uriInfo.getSkipToken(), allPages ? null : uriInfo.getSkip())
+        .top(allPages ? null : top)
+        .select(functionImport == null && navigationSegments.isEmpty() ? getProjection(uriInfo) : null)
+        .build();
 
     return retrieveData(readOptions, startEntitySet, keyPredicates,
         functionImport, functionImportParameters, navigationSegments);
@@ -890,6 +1153,10 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
         data = functionSource.executeFunction(functionImport, functionImportParameters, keys);
       }
 
+      if (data instanceof ReadResult && navigationSegments.isEmpty()) {
+        // keep a streamed result
+        return (ReadResult<?>) data;
+      }
       EdmEntitySet currentEntitySet =
           functionImport == null ? startEntitySet : functionImport.getEntitySet();
       Object innerData = data instanceof ReadResult ? ((ReadResult) data).getResult(): data;
@@ -915,6 +1182,19 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     }
   }
 
+  /**
+   * Notify the function source that data of the given entity sets was written.
+   */
+  private void dataChanged(final EdmEntitySet... entitySets) throws EdmException {
+    UnitOfWorkChanges changes = unitOfWorkChanges.get();
+    for (EdmEntitySet entitySet : entitySets) {
+      functionSource.dataChanged(entitySet);
+      if (changes != null) {
+        changes.entitySets.add(entitySet);
+      }
+    }
+  }
+
   private <T> String constructETag(final EdmEntitySet entitySet, final T data) throws ODataException {
     final EdmEntityType entityType = entitySet.getEntityType();
     String eTag = null;
@@ -945,8 +1225,17 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     }
   }
 
+  /**
+   * Callback for the <code>$expand</code> of the navigation properties of an entry or the entries of a feed.
+   * For a feed the entries are looked up via their keys and the related data of all entries
+   * is read with one call of the data source (per navigation property).
+   */
   private class WriteCallback implements OnWriteEntryContent, OnWriteFeedContent {
     private final Object data;
+    /** entries of the feed by their keys (created on first use) */
+    private Map<Map<String, Object>, Object> key2EntryData;
+    /** related data of the entries of the feed per navigation property */
+    private final Map<String, Map<Object, Object>> relatedData = new HashMap<>();
 
     private <T> WriteCallback(final T data) {
       this.data = data;
@@ -958,12 +1247,13 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
       try {
         final EdmEntityType entityType =
             context.getSourceEntitySet().getRelatedEntitySet(context.getNavigationProperty()).getEntityType();
+        final StructuralTypeValues entityValues = typeValues.get(entityType);
         List<Map<String, Object>> values = new ArrayList<>();
         Object relatedData = null;
         try {
           relatedData = readRelatedData(context);
           for (final Object entryData : (List<?>) relatedData) {
-            values.add(getStructuralTypeValueMap(entryData, entityType));
+            values.add(entityValues.values(entryData));
           }
         } catch (final ODataNotFoundException e) {
           values.clear();
@@ -998,7 +1288,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
         if (relatedData == null) {
           result.setEntryData(Collections.<String, Object> emptyMap());
         } else {
-          result.setEntryData(getStructuralTypeValueMap(relatedData, entityType));
+          result.setEntryData(typeValues.get(entityType).values(relatedData));
 
           EntityProviderWriteProperties inlineProperties =
               EntityProviderWriteProperties.serviceRoot(getContext().getPathInfo().getServiceRoot()).callbacks(
@@ -1014,36 +1304,46 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
 
     private Object readRelatedData(final WriteCallbackContext context) throws ODataException {
       final EdmEntitySet entitySet = context.getSourceEntitySet();
-      return dataSource.readRelatedData(
-          entitySet,
-          data instanceof List ? readEntryData((List<?>) data, entitySet.getEntityType(), context
-              .extractKeyFromEntryData()) : data,
-          entitySet.getRelatedEntitySet(context.getNavigationProperty()),
-          Collections.<String, Object> emptyMap());
+      final EdmEntitySet targetEntitySet = entitySet.getRelatedEntitySet(context.getNavigationProperty());
+      if (!(data instanceof List)) {
+        return dataSource.readRelatedData(entitySet, data, targetEntitySet, Collections.<String, Object> emptyMap());
+      }
+
+      // the related data of all entries of the feed is read together on the first callback
+      final String navigationPropertyName = context.getNavigationProperty().getName();
+      Map<Object, Object> entry2RelatedData = relatedData.get(navigationPropertyName);
+      if (entry2RelatedData == null) {
+        entry2RelatedData = dataSource.readRelatedData(entitySet, (List<?>) data, targetEntitySet);
+        relatedData.put(navigationPropertyName, entry2RelatedData);
+      }
+      final Object entryData = readEntryData(entitySet.getEntityType(), context.extractKeyFromEntryData());
+      final Object result = entryData == null ? null : entry2RelatedData.get(entryData);
+      if (result == null) {
+        throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
+      }
+      return result;
     }
 
-    private <T> T readEntryData(final List<T> data, final EdmEntityType entityType, final Map<String, Object> key)
+    private Object readEntryData(final EdmEntityType entityType, final Map<String, Object> key)
         throws ODataException {
-      for (final T entryData : data) {
-        boolean found = true;
-        for (final EdmProperty keyProperty : entityType.getKeyProperties()) {
-          if (!valueAccess.getPropertyValue(entryData, keyProperty).equals(key.get(keyProperty.getName()))) {
-            found = false;
-            break;
+      if (key2EntryData == null) {
+        key2EntryData = new HashMap<>();
+        for (final Object entryData : (List<?>) data) {
+          Map<String, Object> entryKey = new HashMap<>();
+          for (final EdmProperty keyProperty : entityType.getKeyProperties()) {
+            entryKey.put(keyProperty.getName(), valueAccess.getPropertyValue(entryData, keyProperty));
           }
-        }
-        if (found) {
-          return entryData;
+          key2EntryData.put(entryKey, entryData);
         }
       }
-      return null;
+      return key2EntryData.get(key);
     }
   }
 
   private <T> ODataResponse writeEntry(final EdmEntitySet entitySet, final ExpandSelectTreeNode expandSelectTree,
       final T data, final String contentType) throws ODataException {
     final EdmEntityType entityType = entitySet.getEntityType();
-    final Map<String, Object> values = getStructuralTypeValueMap(data, entityType);
+    final Map<String, Object> values = typeValues.get(entityType).values(data);
 
     ODataContext context = getContext();
     EntityProviderWriteProperties writeProperties = EntityProviderWriteProperties
@@ -1054,7 +1354,12 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
 
     final int timingHandle = context.startRuntimeMeasurement("EntityProvider", "writeEntry");
 
-    final ODataResponse response = EntityProvider.writeEntry(contentType, entitySet, values, writeProperties);
+    final ODataResponse response;
+    try {
+      response = EntityProvider.writeEntry(contentType, entitySet, values, writeProperties);
+    } catch (final StructuralTypeValues.ValueReadException e) {
+      throw e.getCause();
+    }
 
     context.stopRuntimeMeasurement(timingHandle);
 
@@ -1128,9 +1433,11 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
           final Map<String, Object> key = parseLinkUri(relatedEntitySet, uriString);
           if (key != null) {
             dataSource.writeRelation(entitySet, data, relatedEntitySet, key);
+            dataChanged(relatedEntitySet);
           }
         }
       } else {
+        dataChanged(relatedEntitySet);
         if (relatedValue instanceof ODataFeed) {
           ODataFeed feed = (ODataFeed) relatedValue;
           final List<ODataEntry> relatedValueList = feed.getEntries();
@@ -1176,8 +1483,16 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     final Integer top;
 
     public QueryOptionsHolder(GetEntitySetUriInfo uriInfo) {
+      this(uriInfo, true);
+    }
+
+    /**
+     * @param countEntries <code>false</code> if the inline count is not counted on the read entries
+     *                     (because it is counted by the data source)
+     */
+    public QueryOptionsHolder(GetEntitySetUriInfo uriInfo, boolean countEntries) {
       this.filter = uriInfo.getFilter();
-      this.inlineCount = uriInfo.getInlineCount();
+      this.inlineCount = countEntries ? uriInfo.getInlineCount() : null;
       this.orderBy = uriInfo.getOrderBy();
       this.skipToken = uriInfo.getSkipToken();
       this.skip = uriInfo.getSkip();
@@ -1216,45 +1531,59 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "applySystemQueryOptions");
 
     if (!readResult.isFilterApplied() && queryOptions.filter != null) {
-      // Remove all elements the filterApplied does not apply for.
-      // A for-each loop would not work with "remove", see Java documentation.
-      for (Iterator iterator = data.iterator(); iterator.hasNext();) {
-        if (!appliesFilter(iterator.next(), queryOptions.filter)) {
-          iterator.remove();
-        }
-      }
+      // Remove all elements the filter does not apply for
+      // (in one compaction instead of removing each element, large results are checked in parallel).
+      CompiledFilter.compile(queryOptions.filter, valueAccess).filter(data);
     }
 
     final Integer count = queryOptions.inlineCount == InlineCount.ALLPAGES ? data.size() : null;
 
-    if (!readResult.isOrderApplied() && queryOptions.orderBy != null) {
-      sort(data, queryOptions.orderBy);
+    // key values of the first requested entry (or null for a token in the former string based format)
+    final Object[] resumeKeys = getSkipTokenKeys(entitySet, queryOptions.skipToken);
+
+    if (queryOptions.orderBy != null) {
+      if (!readResult.isOrderApplied()) {
+        sort(data, queryOptions.orderBy);
+      }
+    } else if (queryOptions.skipToken != null && resumeKeys == null) {
+      sortInStringSkipTokenOrder(entitySet, data);
     } else if (queryOptions.skipToken != null || queryOptions.skip != null || queryOptions.top != null) {
       sortInDefaultOrder(entitySet, data);
     }
 
     if(!readResult.isSkipApplied()) {
       if (queryOptions.skipToken != null) {
-        while (!data.isEmpty() && !getSkipToken(entitySet, data.get(0)).equals(queryOptions.skipToken)) {
-          data.remove(0);
+        final int start;
+        if (resumeKeys == null) {
+          int index = 0;
+          while (index < data.size()
+              && !getStringSkipToken(entitySet, data.get(index)).equals(queryOptions.skipToken)) {
+            index++;
+          }
+          start = index;
+        } else if (queryOptions.orderBy == null) {
+          // entries are sorted by key, hence the first entry of the page is found via binary search
+          start = SkipToken.resumeIndex(data.size(),
+              index -> SkipToken.compareKeys(getKeyValues(entitySet, data.get(index)), resumeKeys));
+        } else {
+          int index = 0;
+          while (index < data.size()
+              && SkipToken.compareKeys(getKeyValues(entitySet, data.get(index)), resumeKeys) != 0) {
+            index++;
+          }
+          start = index;
         }
+        data.subList(0, start).clear();
       }
 
       if (queryOptions.skip != null && queryOptions.skip > 0) {
-        if (queryOptions.skip >= data.size()) {
-          data.clear();
-        } else {
-          for (int i = 0; i < queryOptions.skip; i++) {
-            data.remove(0);
-          }
-        }
+        data.subList(0, Math.min(queryOptions.skip, data.size())).clear();
       }
     }
 
-    if (!readResult.isTopApplied() && queryOptions.top != null && queryOptions.top > 0) {
-      while (data.size() > queryOptions.top) {
-        data.remove(queryOptions.top.intValue());
-      }
+    if (!readResult.isTopApplied() && queryOptions.top != null && queryOptions.top > 0
+        && data.size() > queryOptions.top) {
+      data.subList(queryOptions.top, data.size()).clear();
     }
 
     context.stopRuntimeMeasurement(timingHandle);
@@ -1262,45 +1591,124 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     return count;
   }
 
-  private <T> void sort(final List<T> data, final OrderByExpression orderBy) {
-    Collections.sort(data, (entity1, entity2) -> {
-      try {
-        int result = 0;
-        for (final OrderExpression expression : orderBy.getOrders()) {
-          String first = evaluateExpression(entity1, expression.getExpression());
-          String second = evaluateExpression(entity2, expression.getExpression());
-
-          if (first != null && second != null) {
-            result = first.compareTo(second);
-          } else if (first == null && second != null) {
-            result = 1;
-          } else if (first != null) {
-            result = -1;
-          }
+  /**
+   * Check whether the system query options can be applied while the (streamed) result is read,
+   * which is the case if the result is in the requested order (see {@link ReadResult#isOrderApplied()})
+   * and a skip token (if not applied) contains the key values of the first requested entry.
+   */
+  private boolean isStreamable(final EdmEntitySet entitySet, final ReadResult<?> readResult,
+      final QueryOptionsHolder queryOptions) throws ODataException {
+    return readResult.isStreamed() && readResult.isOrderApplied()
+        && (queryOptions.skipToken == null || readResult.isSkipApplied()
+            || getSkipTokenKeys(entitySet, queryOptions.skipToken) != null);
+  }
 
-          if (expression.getSortOrder() == SortOrder.desc) {
-            result = -result;
-          }
+  /**
+   * Apply the system query options while the given (streamed) result is read (see {@link #isStreamable}).
+   * The entries are filtered, resumed at the skip token and skipped on the fly and only the entries of
+   * the page are added to the given data list, hence the result is not materialized.
+   * For an inline count all entries are read (but not kept).
+   *
+   * @param limit maximum number of entries which are added to the data list
+   * @return the inline count (or <code>null</code> if not requested)
+   */
+  private Integer applySystemQueryOptions(final EdmEntitySet entitySet, final ReadResult<?> readResult,
+      final List<Object> data, final QueryOptionsHolder queryOptions, final int limit) throws ODataException {
+    ODataContext context = getContext();
+    final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "applySystemQueryOptions");
 
-          if (result != 0) {
-            break;
-          }
+    final CompiledFilter filter = readResult.isFilterApplied() || queryOptions.filter == null ? null
+        : CompiledFilter.compile(queryOptions.filter, valueAccess);
+    final boolean countAll = queryOptions.inlineCount == InlineCount.ALLPAGES;
+    final boolean skipApplied = readResult.isSkipApplied();
+    Object[] resumeKeys = skipApplied ? null : getSkipTokenKeys(entitySet, queryOptions.skipToken);
+    int skip = skipApplied || queryOptions.skip == null ? 0 : queryOptions.skip;
+    int max = limit;
+    if (!readResult.isTopApplied() && queryOptions.top != null && queryOptions.top > 0) {
+      max = Math.min(max, queryOptions.top);
+    }
+
+    int count = 0;
+    for (Iterator<?> iterator = readResult.stream().iterator(); iterator.hasNext();) {
+      final Object entry = iterator.next();
+      if (filter != null && !filter.matches(entry)) {
+        continue;
+      }
+      count++;
+      if (resumeKeys != null) {
+        // in the order of the keys the page starts at the first entry with greater or equal keys,
+        // otherwise at the entry with the keys of the skip token
+        final int compared = SkipToken.compareKeys(getKeyValues(entitySet, entry), resumeKeys);
+        if (queryOptions.orderBy == null ? compared < 0 : compared != 0) {
+          continue;
         }
-        return result;
-      } catch (final ODataException e) {
-        return 0;
+        resumeKeys = null;
       }
-    });
+      if (skip > 0) {
+        skip--;
+      } else if (data.size() < max) {
+        data.add(entry);
+      } else if (!countAll) {
+        break;
+      }
+    }
+
+    context.stopRuntimeMeasurement(timingHandle);
+
+    return countAll ? count : null;
   }
 
-  private <T> void sortInDefaultOrder(final EdmEntitySet entitySet, final List<T> data) {
-    Collections.sort(data, (first, second) -> {
-      try {
-        return getSkipToken(entitySet, first).compareTo(getSkipToken(entitySet, second));
-      } catch (final ODataException e) {
-        return 0;
-      }
-    });
+  /**
+   * Sort the data by the typed sort keys of the order by expression (see {@link CompiledOrderBy}).
+   * The sort keys of each entry are evaluated only once.
+   * Data with an order by expression which is not supported (or can not be evaluated) is not sorted.
+   */
+  private <T> void sort(final List<T> data, final OrderByExpression orderBy) {
+    try {
+      CompiledOrderBy.compile(orderBy, valueAccess).sortInPlace(data);
+    } catch (final ODataException e) {
+      // keep the order of the data
+    }
+  }
+
+  /**
+   * Sort the data in the (typed) order of the key values (which is the order for keyset based paging).
+   * The key values of each entry are read only once.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> void sortInDefaultOrder(final EdmEntitySet entitySet, final List<T> data) throws ODataException {
+    Map.Entry<Object[], T>[] entries = new Map.Entry[data.size()];
+    for (int i = 0; i < entries.length; i++) {
+      final T entry = data.get(i);
+      entries[i] = new AbstractMap.SimpleImmutableEntry<>(getKeyValues(entitySet, entry), entry);
+    }
+    CompiledOrderBy.sort(entries, (first, second) -> SkipToken.compareKeys(first.getKey(), second.getKey()));
+    for (int i = 0; i < entries.length; i++) {
+      data.set(i, entries[i].getValue());
+    }
+  }
+
+  /**
+   * Sort the data in the order of the former string based skip tokens.
+   * The skip token of each entry is created only once.
+   */
+  @SuppressWarnings("unchecked")
+  private <T> void sortInStringSkipTokenOrder(final EdmEntitySet entitySet, final List<T> data)
+      throws ODataException {
+    Map.Entry<String, T>[] entries = new Map.Entry[data.size()];
+    for (int i = 0; i < entries.length; i++) {
+      final T entry = data.get(i);
+      entries[i] = new AbstractMap.SimpleImmutableEntry<>(getStringSkipToken(entitySet, entry), entry);
+    }
+    CompiledOrderBy.sort(entries, Map.Entry.comparingByKey());
+    for (int i = 0; i < entries.length; i++) {
+      data.set(i, entries[i].getValue());
+    }
+  }
+
+  private int getPageSize(final EdmEntitySet entitySet) throws EdmException {
+    final int pageSize = dataSource.getPageSize(entitySet);
+    return pageSize > 0 ? pageSize : DataSource.DEFAULT_PAGE_SIZE;
   }
 
   private <T> boolean appliesFilter(final T data, final FilterExpression filter) throws ODataException {
@@ -1308,7 +1716,7 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "appliesFilter");
 
     try {
-      return data != null && (filter == null || evaluateExpression(data, filter.getExpression()).equals("true"));
+      return data != null && (filter == null || CompiledFilter.compile(filter, valueAccess).matches(data));
     } catch (final RuntimeException e) {
       return false;
     } finally {
@@ -1316,213 +1724,50 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
     }
   }
 
-  private <T> String evaluateExpression(final T data, final CommonExpression expression) throws ODataException {
-    switch (expression.getKind()) {
-    case UNARY:
-      final UnaryExpression unaryExpression = (UnaryExpression) expression;
-      final String operand = evaluateExpression(data, unaryExpression.getOperand());
-
-      switch (unaryExpression.getOperator()) {
-      case NOT:
-        return Boolean.toString(!Boolean.parseBoolean(operand));
-      case MINUS:
-        return operand.startsWith("-") ? operand.substring(1) : "-" + operand;
-      default:
-        throw new ODataNotImplementedException();
-      }
-
-    case BINARY:
-      final BinaryExpression binaryExpression = (BinaryExpression) expression;
-      final EdmSimpleType type = (EdmSimpleType) binaryExpression.getLeftOperand().getEdmType();
-      final String left = evaluateExpression(data, binaryExpression.getLeftOperand());
-      final String right = evaluateExpression(data, binaryExpression.getRightOperand());
-
-      switch (binaryExpression.getOperator()) {
-      case ADD:
-        if (binaryExpression.getEdmType() == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()) {
-          return Double.toString(Double.valueOf(left) + Double.valueOf(right));
-        } else {
-          return Long.toString(Long.valueOf(left) + Long.valueOf(right));
-        }
-      case SUB:
-        if (binaryExpression.getEdmType() == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()) {
-          return Double.toString(Double.valueOf(left) - Double.valueOf(right));
-        } else {
-          return Long.toString(Long.valueOf(left) - Long.valueOf(right));
-        }
-      case MUL:
-        if (binaryExpression.getEdmType() == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()) {
-          return Double.toString(Double.valueOf(left) * Double.valueOf(right));
-        } else {
-          return Long.toString(Long.valueOf(left) * Long.valueOf(right));
-        }
-      case DIV:
-        final String number = Double.toString(Double.valueOf(left) / Double.valueOf(right));
-        return number.endsWith(".0") ? number.replace(".0", "") : number;
-      case MODULO:
-        if (binaryExpression.getEdmType() == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
-            || binaryExpression.getEdmType() == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()) {
-          return Double.toString(Double.valueOf(left) % Double.valueOf(right));
-        } else {
-          return Long.toString(Long.valueOf(left) % Long.valueOf(right));
-        }
-      case AND:
-        return Boolean.toString(left.equals("true") && right.equals("true"));
-      case OR:
-        return Boolean.toString(left.equals("true") || right.equals("true"));
-      case EQ:
-        return Boolean.toString(left.equals(right));
-      case NE:
-        return Boolean.toString(!left.equals(right));
-      case LT:
-        if (type == EdmSimpleTypeKind.String.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTime.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Guid.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Time.getEdmSimpleTypeInstance()) {
-          return Boolean.toString(left.compareTo(right) < 0);
-        } else {
-          return Boolean.toString(Double.valueOf(left) < Double.valueOf(right));
-        }
-      case LE:
-        if (type == EdmSimpleTypeKind.String.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTime.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Guid.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Time.getEdmSimpleTypeInstance()) {
-          return Boolean.toString(left.compareTo(right) <= 0);
-        } else {
-          return Boolean.toString(Double.valueOf(left) <= Double.valueOf(right));
-        }
-      case GT:
-        if (type == EdmSimpleTypeKind.String.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTime.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Guid.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Time.getEdmSimpleTypeInstance()) {
-          return Boolean.toString(left.compareTo(right) > 0);
-        } else {
-          return Boolean.toString(Double.valueOf(left) > Double.valueOf(right));
-        }
-      case GE:
-        if (type == EdmSimpleTypeKind.String.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTime.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Guid.getEdmSimpleTypeInstance()
-            || type == EdmSimpleTypeKind.Time.getEdmSimpleTypeInstance()) {
-          return Boolean.toString(left.compareTo(right) >= 0);
-        } else {
-          return Boolean.toString(Double.valueOf(left) >= Double.valueOf(right));
-        }
-      case PROPERTY_ACCESS:
-        throw new ODataNotImplementedException();
-      default:
-        throw new ODataNotImplementedException();
-      }
+  private <T> String getSkipToken(final EdmEntitySet entitySet, final T data) throws ODataException {
+    List<String> names = new ArrayList<>();
+    List<EdmSimpleType> types = new ArrayList<>();
+    List<Object> values = new ArrayList<>();
+    for (final EdmProperty property : entitySet.getEntityType().getKeyProperties()) {
+      names.add(property.getName());
+      types.add((EdmSimpleType) property.getType());
+      values.add(valueAccess.getPropertyValue(data, property));
+    }
+    return SkipToken.create(names, types, values);
+  }
 
-    case PROPERTY:
-      final EdmProperty property = (EdmProperty) ((PropertyExpression) expression).getEdmProperty();
-      final EdmSimpleType propertyType = (EdmSimpleType) property.getType();
-      return propertyType.valueToString(valueAccess.getPropertyValue(data, property), EdmLiteralKind.DEFAULT,
-          property.getFacets());
-
-    case MEMBER:
-      final MemberExpression memberExpression = (MemberExpression) expression;
-      final PropertyExpression propertyExpression = (PropertyExpression) memberExpression.getProperty();
-      final EdmProperty memberProperty = (EdmProperty) propertyExpression.getEdmProperty();
-      final EdmSimpleType memberType = (EdmSimpleType) memberExpression.getEdmType();
-      List<EdmProperty> propertyPath = new ArrayList<>();
-      CommonExpression currentExpression = memberExpression;
-      while (currentExpression != null) {
-        final PropertyExpression currentPropertyExpression =
-            (PropertyExpression) (currentExpression.getKind() == ExpressionKind.MEMBER ?
-                ((MemberExpression) currentExpression).getProperty() : currentExpression);
-        final EdmTyped currentProperty = currentPropertyExpression.getEdmProperty();
-        final EdmTypeKind kind = currentProperty.getType().getKind();
-        if (kind == EdmTypeKind.SIMPLE || kind == EdmTypeKind.COMPLEX) {
-          propertyPath.add(0, (EdmProperty) currentProperty);
-        } else {
-          throw new ODataNotImplementedException();
-        }
-        currentExpression =
-            currentExpression.getKind() == ExpressionKind.MEMBER ? ((MemberExpression) currentExpression).getPath()
-                : null;
-      }
-      return memberType.valueToString(getPropertyValue(data, propertyPath), EdmLiteralKind.DEFAULT, memberProperty
-          .getFacets());
-
-    case LITERAL:
-      final LiteralExpression literal = (LiteralExpression) expression;
-      final EdmSimpleType literalType = (EdmSimpleType) literal.getEdmType();
-      return literalType.valueToString(literalType.valueOfString(literal.getUriLiteral(), EdmLiteralKind.URI, null,
-          literalType.getDefaultType()),
-          EdmLiteralKind.DEFAULT, null);
-
-    case METHOD:
-      final MethodExpression methodExpression = (MethodExpression) expression;
-      final String first = evaluateExpression(data, methodExpression.getParameters().get(0));
-      final String second = methodExpression.getParameterCount() > 1 ?
-          evaluateExpression(data, methodExpression.getParameters().get(1)) : null;
-      final String third = methodExpression.getParameterCount() > 2 ?
-          evaluateExpression(data, methodExpression.getParameters().get(2)) : null;
-
-      switch (methodExpression.getMethod()) {
-      case ENDSWITH:
-        return Boolean.toString(first.endsWith(second));
-      case INDEXOF:
-        return Integer.toString(first.indexOf(second));
-      case STARTSWITH:
-        return Boolean.toString(first.startsWith(second));
-      case TOLOWER:
-        return first.toLowerCase(Locale.ROOT);
-      case TOUPPER:
-        return first.toUpperCase(Locale.ROOT);
-      case TRIM:
-        return first.trim();
-      case SUBSTRING:
-        final int offset = Integer.parseInt(second);
-        return first.substring(offset, offset + Integer.parseInt(third));
-      case SUBSTRINGOF:
-        return Boolean.toString(second.contains(first));
-      case CONCAT:
-        return first + second;
-      case LENGTH:
-        return Integer.toString(first.length());
-      case YEAR:
-        return String.valueOf(Integer.parseInt(first.substring(0, 4)));
-      case MONTH:
-        return String.valueOf(Integer.parseInt(first.substring(5, 7)));
-      case DAY:
-        return String.valueOf(Integer.parseInt(first.substring(8, 10)));
-      case HOUR:
-        return String.valueOf(Integer.parseInt(first.substring(11, 13)));
-      case MINUTE:
-        return String.valueOf(Integer.parseInt(first.substring(14, 16)));
-      case SECOND:
-        return String.valueOf(Integer.parseInt(first.substring(17, 19)));
-      case ROUND:
-        return Long.toString(Math.round(Double.valueOf(first)));
-      case FLOOR:
-        return Long.toString(Math.round(Math.floor(Double.valueOf(first))));
-      case CEILING:
-        return Long.toString(Math.round(Math.ceil(Double.valueOf(first))));
-      default:
-        throw new ODataNotImplementedException();
-      }
+  /**
+   * Get the (normalized) key values of the first requested entry from the given skip token.
+   *
+   * @return the key values or <code>null</code> if no skip token is given or the skip token
+   * is in the former string based format
+   */
+  private Object[] getSkipTokenKeys(final EdmEntitySet entitySet, final String skipToken) throws ODataException {
+    final SkipToken token = skipToken == null ? null : SkipToken.parse(skipToken);
+    if (token == null) {
+      return null;
+    }
+    List<String> names = new ArrayList<>();
+    List<EdmSimpleType> types = new ArrayList<>();
+    for (final EdmProperty property : entitySet.getEntityType().getKeyProperties()) {
+      names.add(property.getName());
+      types.add((EdmSimpleType) property.getType());
+    }
+    return token.getValues(names, types);
+  }
 
-    default:
-      throw new ODataNotImplementedException();
+  private <T> Object[] getKeyValues(final EdmEntitySet entitySet, final T data) throws ODataException {
+    final List<EdmProperty> keyProperties = entitySet.getEntityType().getKeyProperties();
+    Object[] values = new Object[keyProperties.size()];
+    for (int i = 0; i < values.length; i++) {
+      final EdmProperty property = keyProperties.get(i);
+      values[i] = ExpressionValues.normalize(valueAccess.getPropertyValue(data, property),
+          (EdmSimpleType) property.getType(), property.getFacets());
     }
+    return values;
   }
 
-  private <T> String getSkipToken(final EdmEntitySet entitySet, final T data) throws ODataException {
+  private <T> String getStringSkipToken(final EdmEntitySet entitySet, final T data) throws ODataException {
     String skipToken = "";
     for (final EdmProperty property : entitySet.getEntityType().getKeyProperties()) {
       final EdmSimpleType type = (EdmSimpleType) property.getType();
@@ -1563,9 +1808,6 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
 
   private <T> Map<String, Object> getStructuralTypeValueMap(final T data, final EdmStructuralType type)
       throws ODataException {
-    ODataContext context = getContext();
-    final int timingHandle = context.startRuntimeMeasurement(getClass().getSimpleName(), "getStructuralTypeValueMap");
-
     Map<String, Object> valueMap = new HashMap<>();
 
     EdmMapping mapping = type.getMapping();
@@ -1589,8 +1831,6 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
       }
     }
 
-    context.stopRuntimeMeasurement(timingHandle);
-
     return valueMap;
   }
 
@@ -1691,16 +1931,107 @@ public class DataSourceProcessor extends ODataSingleProcessor implements ODataPr
   public BatchResponsePart executeChangeSet(final BatchHandler handler, final List<ODataRequest> requests)
       throws ODataException {
     List<ODataResponse> responses = new ArrayList<>();
-    for (ODataRequest request : requests) {
-      ODataResponse response = handler.handleRequest(request);
-      if (response.getStatus().getStatusCode() >= HttpStatusCodes.BAD_REQUEST.getStatusCode()) {
-        // Rollback
-        List<ODataResponse> errorResponses = new ArrayList<>(1);
-        errorResponses.add(response);
-        return BatchResponsePart.responses(errorResponses).changeSet(false).build();
+    beginUnitOfWork();
+    boolean finished = false;
+    try {
+      for (ODataRequest request : requests) {
+        ODataResponse response = handler.handleRequest(request);
+        if (response.getStatus().getStatusCode() >= HttpStatusCodes.BAD_REQUEST.getStatusCode()) {
+          // Rollback (in finally)
+          List<ODataResponse> errorResponses = new ArrayList<>(1);
+          errorResponses.add(response);
+          return BatchResponsePart.responses(errorResponses).changeSet(false).build();
+        }
+        responses.add(response);
+      }
+      finished = true;
+      endUnitOfWork(true);
+    } catch (final ODataApplicationException e) {
+      ODataErrorContext errorContext = new ODataErrorContext();
+      errorContext.setContentType(HttpContentType.APPLICATION_XML);
+      errorContext.setHttpStatus(HttpStatusCodes.INTERNAL_SERVER_ERROR);
+      errorContext.setMessage(e.getMessage());
+      errorContext.setLocale(Locale.ENGLISH);
+      errorContext.setException(e);
+      List<ODataResponse> errorResponses = new ArrayList<>(1);
+      errorResponses.add(EntityProvider.writeErrorDocument(errorContext));
+      return BatchResponsePart.responses(errorResponses).changeSet(false).build();
+    } finally {
+      if (!finished) {
+        endUnitOfWork(false);
       }
-      responses.add(response);
     }
     return BatchResponsePart.responses(responses).changeSet(true).build();
   }
+
+  /**
+   * Work which is executed within a unit of work of the data source.
+   */
+  private interface UnitOfWork<R> {
+    R execute() throws ODataException;
+  }
+
+  /**
+   * Execute the given work within a unit of work of the data source,
+   * which is committed if the work succeeds and otherwise rolled back.
+   */
+  private <R> R executeInUnitOfWork(final UnitOfWork<R> work) throws ODataException {
+    beginUnitOfWork();
+    boolean finished = false;
+    try {
+      R result = work.execute();
+      finished = true;
+      endUnitOfWork(true);
+      return result;
+    } finally {
+      if (!finished) {
+        endUnitOfWork(false);
+      }
+    }
+  }
+
+  /**
+   * Entity sets which were written within the (nested) units of work of a thread.
+   */
+  private static final class UnitOfWorkChanges {
+    private final Set<EdmEntitySet> entitySets = new LinkedHashSet<>();
+    private int depth;
+  }
+
+  private void beginUnitOfWork() {
+    dataSource.beginUnitOfWork();
+    UnitOfWorkChanges changes = unitOfWorkChanges.get();
+    if (changes == null) {
+      changes = new UnitOfWorkChanges();
+      unitOfWorkChanges.set(changes);
+    }
+    changes.depth++;
+  }
+
+  /**
+   * Commit or roll back the current unit of work of the data source.
+   * At the end of the outermost unit of work the function source is notified again about the written entity sets,
+   * since function results which were computed (and cached) during the unit of work can be based on data which was
+   * not yet committed (or was rolled back).
+   *
+   * @param commit <code>true</code> to commit, <code>false</code> to roll back
+   * @throws ODataException if the unit of work could not be committed
+   */
+  private void endUnitOfWork(final boolean commit) throws ODataException {
+    try {
+      if (commit) {
+        dataSource.commitUnitOfWork();
+      } else {
+        dataSource.rollbackUnitOfWork();
+      }
+    } finally {
+      UnitOfWorkChanges changes = unitOfWorkChanges.get();
+      if (changes != null && --changes.depth == 0) {
+        unitOfWorkChanges.remove();
+        for (EdmEntitySet entitySet : changes.entitySets) {
+          functionSource.dataChanged(entitySet);
+        }
+      }
+    }
+  }
 }
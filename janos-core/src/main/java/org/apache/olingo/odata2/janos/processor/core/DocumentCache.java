@@ -0,0 +1,267 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.processor.ODataContext;
+import org.apache.olingo.odata2.api.processor.ODataResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cache for the documents which only depend on the (unchangeable) entity data model
+ * (the metadata document and the service document).
+ * <br/>
+ * A document is written once per key (e.g. content type and service root) into a byte array
+ * (and optionally a gzip compressed variant) with a strong ETag.
+ * Responses are served from the cached array (without copying) and with status
+ * <code>304 Not Modified</code> if the <code>If-None-Match</code> header of the request matches the ETag.
+ */
+final class DocumentCache {
+
+  /** maximum number of cached documents (keys contain the service root which is taken from the request) */
+  private static final int MAX_DOCUMENTS = 32;
+  private static final String ETAG = "ETag";
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String ACCEPT_ENCODING = "Accept-Encoding";
+  private static final String CONTENT_ENCODING = "Content-Encoding";
+  private static final String VARY = "Vary";
+  private static final String GZIP = "gzip";
+
+  private final boolean gzip;
+  private final ConcurrentMap<String, Document> documents = new ConcurrentHashMap<>();
+  /** the Edm for which the documents are cached */
+  private volatile Edm cachedEdm;
+
+  /**
+   * Writer for a document which is not cached yet.
+   */
+  interface DocumentWriter {
+    ODataResponse write() throws ODataException;
+  }
+
+  /**
+   * @param gzip <code>true</code> if a gzip compressed variant of each document is cached
+   *             (and served to clients which accept the gzip encoding)
+   */
+  DocumentCache(final boolean gzip) {
+    this.gzip = gzip;
+  }
+
+  /**
+   * Get the response for the document with given key (the document is written with the given writer
+   * if it is not cached for the given Edm).
+   *
+   * @param context context of the current request
+   * @param edm the entity data model of the document
+   * @param key key of the document
+   * @param writer writer of the document
+   * @return response for the document
+   * @throws ODataException if the document could not be written
+   */
+  ODataResponse getResponse(final ODataContext context, final Edm edm, final String key,
+      final DocumentWriter writer) throws ODataException {
+    if (cachedEdm != edm) {
+      documents.clear();
+      cachedEdm = edm;
+    }
+    Document document = documents.get(key);
+    if (document == null) {
+      document = new Document(writer.write(), gzip);
+      if (documents.size() < MAX_DOCUMENTS) {
+        documents.putIfAbsent(key, document);
+      }
+    }
+    return document.createResponse(context);
+  }
+
+  static String getRequestHeader(final ODataContext context, final String name) throws ODataException {
+    Map<String, List<String>> headers = context.getRequestHeaders();
+    if (headers != null) {
+      for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+        if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+          return String.join(",", header.getValue());
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return <code>true</code> if the given <code>Accept-Encoding</code> header value contains
+   * the gzip encoding (without a quality of zero)
+   */
+  static boolean acceptsGzip(final String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.split(";");
+      String name = parts[0].trim();
+      if (GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+        for (int i = 1; i < parts.length; i++) {
+          String parameter = parts[i].trim().replace(" ", "");
+          if (parameter.startsWith("q=") && parameter.substring(2).matches("0(\\.0*)?")) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return <code>true</code> if the given <code>If-None-Match</code> header value contains
+   * one of the given entity tags (or is <code>*</code>)
+   */
+  static boolean matches(final String ifNoneMatch, final String... eTags) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String requested : ifNoneMatch.split(",")) {
+      String tag = requested.trim();
+      if ("*".equals(tag)) {
+        return true;
+      }
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      for (String eTag : eTags) {
+        if (tag.equals(eTag)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A written document with its headers (except the ETag) and the content header of the written response.
+   */
+  private static final class Document {
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final String contentHeader;
+    private final byte[] content;
+    private final String eTag;
+    private final byte[] gzipContent;
+    private final String gzipETag;
+
+    Document(final ODataResponse response, final boolean gzip) throws ODataException {
+      for (String name : response.getHeaderNames()) {
+        if (!ETAG.equalsIgnoreCase(name)) {
+          headers.put(name, response.getHeader(name));
+        }
+      }
+      contentHeader = response.getContentHeader();
+      content = readContent(response.getEntity());
+      eTag = createETag(content);
+      if (gzip) {
+        gzipContent = compress(content);
+        gzipETag = eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+      } else {
+        gzipContent = null;
+        gzipETag = null;
+      }
+    }
+
+    ODataResponse createResponse(final ODataContext context) throws ODataException {
+      final boolean compressed = gzipContent != null && acceptsGzip(getRequestHeader(context, ACCEPT_ENCODING));
+      final String usedETag = compressed ? gzipETag : eTag;
+      if (matches(getRequestHeader(context, IF_NONE_MATCH), eTag, gzipETag)) {
+        return ODataResponse.status(HttpStatusCodes.NOT_MODIFIED).eTag(usedETag).build();
+      }
+
+      ODataResponse.ODataResponseBuilder builder = ODataResponse.status(HttpStatusCodes.OK).eTag(usedETag);
+      for (Map.Entry<String, String> header : headers.entrySet()) {
+        builder.header(header.getKey(), header.getValue());
+      }
+      if (contentHeader != null) {
+        builder.contentHeader(contentHeader);
+      }
+      if (gzipContent != null) {
+        builder.header(VARY, ACCEPT_ENCODING);
+      }
+      if (compressed) {
+        builder.header(CONTENT_ENCODING, GZIP);
+      }
+      return builder.entity(new ByteArrayInputStream(compressed ? gzipContent : content)).build();
+    }
+
+    private static byte[] readContent(final Object entity) throws ODataException {
+      if (entity == null) {
+        return new byte[0];
+      } else if (entity instanceof byte[]) {
+        return (byte[]) entity;
+      } else if (entity instanceof String) {
+        return ((String) entity).getBytes(StandardCharsets.UTF_8);
+      } else if (entity instanceof InputStream) {
+        try (InputStream in = (InputStream) entity) {
+          ByteArrayOutputStream out = new ByteArrayOutputStream();
+          byte[] buffer = new byte[8192];
+          int read;
+          while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+          }
+          return out.toByteArray();
+        } catch (IOException e) {
+          throw new ODataException("Unable to read document content.", e);
+        }
+      }
+      throw new ODataException("Unexpected document content of type '" + entity.getClass().getName() + "'.");
+    }
+
+    private static String createETag(final byte[] content) throws ODataException {
+      try {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+        StringBuilder tag = new StringBuilder(2 + digest.length * 2).append('"');
+        for (byte b : digest) {
+          tag.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return tag.append('"').toString();
+      } catch (NoSuchAlgorithmException e) {
+        throw new ODataException("Unable to create ETag for document.", e);
+      }
+    }
+
+    private static byte[] compress(final byte[] content) throws ODataException {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+      try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+        gzipOut.write(content);
+      } catch (IOException e) {
+        throw new ODataException("Unable to compress document content.", e);
+      }
+      return out.toByteArray();
+    }
+  }
+}
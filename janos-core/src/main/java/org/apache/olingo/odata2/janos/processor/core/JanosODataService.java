@@ -19,8 +19,18 @@ public class JanosODataService implements ODataService {
   private final Edm edm;
 
   public JanosODataService(EdmProvider edmProvider, org.apache.olingo.odata2.janos.processor.core.ODataProcessor processor) {
+    this(RuntimeDelegate.createEdm(edmProvider), processor);
+  }
+
+  /**
+   * Create a service for an already created (and shared) Edm.
+   *
+   * @param edm the entity data model
+   * @param processor the (shared) processor
+   */
+  public JanosODataService(Edm edm, org.apache.olingo.odata2.janos.processor.core.ODataProcessor processor) {
     this.processor = processor;
-    this.edm = RuntimeDelegate.createEdm(edmProvider);
+    this.edm = edm;
   }
 
   @Override
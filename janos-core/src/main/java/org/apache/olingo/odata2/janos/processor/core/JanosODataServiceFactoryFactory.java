@@ -1,8 +1,12 @@
 package org.apache.olingo.odata2.janos.processor.core;
 
 import org.apache.olingo.odata2.api.ODataService;
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.edm.EdmEntitySet;
 import org.apache.olingo.odata2.api.edm.provider.EdmProvider;
+import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.api.processor.ODataContext;
+import org.apache.olingo.odata2.api.rt.RuntimeDelegate;
 import org.apache.olingo.odata2.janos.processor.api.JanosServiceFactory;
 import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
@@ -19,6 +23,8 @@ public class JanosODataServiceFactoryFactory extends JanosServiceFactory {
   private final ValueAccess valueAccess;
   private final FunctionSource functionSource;
   private final ExtensionRegistry extensionRegistry;
+  /** service (with Edm and processor) which is shared by all requests (created on first request) */
+  private volatile JanosODataService service;
 
   public JanosODataServiceFactoryFactory(EdmProvider edmProvider, DataSource dataSource, ValueAccess valueAccess,
                                          FunctionSource functionSource, ExtensionRegistry extensionRegistry) {
@@ -31,8 +37,35 @@ public class JanosODataServiceFactoryFactory extends JanosServiceFactory {
 
   @Override
   public ODataService createService(ODataContext context) {
-    DataSourceProcessor dsProcessor = new DataSourceProcessor(dataSource, valueAccess, functionSource);
-    ODataProcessor wrappedProcessor = ExtensionProcessor.wrap(dsProcessor).extensions(extensionRegistry).finish(context);
-    return new JanosODataService(this.edmProvider, wrappedProcessor);
+    JanosODataService result = service;
+    if (result == null) {
+      synchronized (this) {
+        result = service;
+        if (result == null) {
+          DataSourceProcessor dsProcessor = new DataSourceProcessor(dataSource, valueAccess, functionSource);
+          ODataProcessor wrappedProcessor = ExtensionProcessor.wrap(dsProcessor).extensions(extensionRegistry).finish();
+          result = new JanosODataService(createEdm(edmProvider), wrappedProcessor);
+          service = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Create the Edm for the given provider and load all entity sets (with their entity types)
+   * and function imports once, so that they are cached by the Edm for all requests.
+   */
+  private static Edm createEdm(EdmProvider edmProvider) {
+    Edm edm = RuntimeDelegate.createEdm(edmProvider);
+    try {
+      for (EdmEntitySet entitySet : edm.getEntitySets()) {
+        entitySet.getEntityType().getPropertyNames();
+      }
+      edm.getFunctionImports();
+    } catch (ODataException e) {
+      // errors of the model are reported on processing of the according requests
+    }
+    return edm;
   }
 }
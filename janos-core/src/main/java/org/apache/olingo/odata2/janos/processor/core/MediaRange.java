@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.processor.ODataContext;
+import org.apache.olingo.odata2.api.processor.ODataResponse;
+import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource.BinaryData;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A (single) byte range of a media resource which is requested via the <code>Range</code> header
+ * (see {@link #createResponse(ODataContext, BinaryData, String, String)}).
+ * <br/>
+ * The media resource is streamed into the response and only the requested range is read.
+ * A range is only served if a given <code>If-Range</code> header matches the (strong) ETag of the entry,
+ * multiple ranges are not supported (hence the whole media resource is served).
+ */
+final class MediaRange {
+
+  private static final String RANGE = "Range";
+  private static final String IF_RANGE = "If-Range";
+  private static final String ACCEPT_RANGES = "Accept-Ranges";
+  private static final String CONTENT_RANGE = "Content-Range";
+  private static final String CONTENT_LENGTH = "Content-Length";
+  private static final String BYTES = "bytes";
+  /** range which can not be satisfied */
+  static final MediaRange UNSATISFIABLE = new MediaRange(-1, -1);
+
+  private final long first;
+  private final long last;
+
+  private MediaRange(final long first, final long last) {
+    this.first = first;
+    this.last = last;
+  }
+
+  long getFirst() {
+    return first;
+  }
+
+  long getLast() {
+    return last;
+  }
+
+  /**
+   * Parse the given <code>Range</code> header value.
+   *
+   * @param range the header value (e.g. <code>bytes=0-499</code>, <code>bytes=500-</code> or <code>bytes=-500</code>)
+   * @param length length of the media resource
+   * @return the range, {@link #UNSATISFIABLE} or <code>null</code> if the header is ignored
+   * (e.g. no or an invalid header, another unit or multiple ranges)
+   */
+  static MediaRange parse(final String range, final long length) {
+    if (range == null) {
+      return null;
+    }
+    final String value = range.trim();
+    if (!value.regionMatches(true, 0, BYTES + "=", 0, BYTES.length() + 1)) {
+      return null;
+    }
+    final String spec = value.substring(BYTES.length() + 1).trim();
+    final int dash = spec.indexOf('-');
+    if (dash < 0 || spec.indexOf(',') >= 0) {
+      return null;
+    }
+    try {
+      final String start = spec.substring(0, dash).trim();
+      final String end = spec.substring(dash + 1).trim();
+      if (start.isEmpty()) {
+        // suffix range with the last bytes
+        final long suffix = Long.parseLong(end);
+        if (suffix <= 0 || length == 0) {
+          return UNSATISFIABLE;
+        }
+        return new MediaRange(Math.max(0, length - suffix), length - 1);
+      }
+      final long first = Long.parseLong(start);
+      final long last = end.isEmpty() ? Long.MAX_VALUE : Long.parseLong(end);
+      if (first < 0 || last < first) {
+        return null;
+      }
+      return first >= length ? UNSATISFIABLE : new MediaRange(first, Math.min(last, length - 1));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Create the response for the given media resource, which is the requested range (with status
+   * <code>206 Partial Content</code>) or the whole media resource.
+   *
+   * @param context context of the current request
+   * @param binaryData the media resource
+   * @param mimeType the MIME type of the media resource
+   * @param eTag the ETag of the media link entry (or <code>null</code>)
+   * @return the response
+   * @throws ODataException if the media resource can not be read
+   */
+  static ODataResponse createResponse(final ODataContext context, final BinaryData binaryData,
+      final String mimeType, final String eTag) throws ODataException {
+    final long length = binaryData.getLength();
+    final String ifRange = DocumentCache.getRequestHeader(context, IF_RANGE);
+    // an If-Range validator is compared strongly (hence a weak ETag never matches)
+    final boolean rangeValid = ifRange == null
+        || (eTag != null && !eTag.startsWith("W/") && eTag.equals(ifRange.trim()));
+    final MediaRange range = rangeValid ? parse(DocumentCache.getRequestHeader(context, RANGE), length) : null;
+
+    if (range == UNSATISFIABLE) {
+      return ODataResponse.status(HttpStatusCodes.REQUESTED_RANGE_NOT_SATISFIABLE)
+          .header(CONTENT_RANGE, BYTES + " */" + length)
+          .header(ACCEPT_RANGES, BYTES)
+          .build();
+    }
+    try {
+      if (range == null) {
+        return ODataResponse.status(HttpStatusCodes.OK)
+            .contentHeader(mimeType)
+            .header(CONTENT_LENGTH, String.valueOf(length))
+            .header(ACCEPT_RANGES, BYTES)
+            .eTag(eTag)
+            .entity(binaryData.getStream(0))
+            .build();
+      }
+      final long rangeLength = range.last - range.first + 1;
+      return ODataResponse.status(HttpStatusCodes.PARTIAL_CONTENT)
+          .contentHeader(mimeType)
+          .header(CONTENT_RANGE, BYTES + " " + range.first + "-" + range.last + "/" + length)
+          .header(CONTENT_LENGTH, String.valueOf(rangeLength))
+          .header(ACCEPT_RANGES, BYTES)
+          .eTag(eTag)
+          .entity(new BoundedInputStream(binaryData.getStream(range.first), rangeLength))
+          .build();
+    } catch (IOException e) {
+      throw new ODataException("Unable to read media resource.", e);
+    }
+  }
+
+  /**
+   * Stream which ends after the given number of bytes of the wrapped stream.
+   */
+  private static final class BoundedInputStream extends FilterInputStream {
+    private long remaining;
+
+    BoundedInputStream(final InputStream in, final long remaining) {
+      super(in);
+      this.remaining = remaining;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      final int read = super.read();
+      if (read >= 0) {
+        remaining--;
+      }
+      return read;
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+      if (remaining <= 0) {
+        return -1;
+      }
+      final int read = super.read(buffer, offset, (int) Math.min(length, remaining));
+      if (read > 0) {
+        remaining -= read;
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      final long skipped = super.skip(Math.min(n, remaining));
+      remaining -= skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (int) Math.min(super.available(), remaining);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.apache.olingo.odata2.api.exception.ODataApplicationException;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource.BinaryData;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reader of uploaded media resources (see {@link #read(InputStream, String)}).
+ * <br/>
+ * The request body is streamed (and its SHA-256 digest is computed on the fly). Up to the memory threshold
+ * the content is kept in memory, a larger content is spooled into a temporary file
+ * (and provided as streamed {@link BinaryData}), so that the heap usage of an upload does not depend
+ * on its size. An upload which exceeds the maximum size is rejected with
+ * <code>413 Request Entity Too Large</code>.
+ */
+final class MediaUpload {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final long maxSize;
+  private final int memoryThreshold;
+
+  /**
+   * @param maxSize maximum number of bytes of an upload (or a negative value for no limit)
+   * @param memoryThreshold maximum number of bytes which are kept in memory
+   */
+  MediaUpload(final long maxSize, final int memoryThreshold) {
+    this.maxSize = maxSize < 0 ? Long.MAX_VALUE : maxSize;
+    this.memoryThreshold = Math.max(0, memoryThreshold);
+  }
+
+  /**
+   * Read the given upload.
+   * A returned binary data which is spooled into a temporary file has to be released
+   * (see {@link #release(BinaryData)}).
+   *
+   * @param content the uploaded content
+   * @param mimeType the MIME type of the content
+   * @return the binary data (with the digest of the content)
+   * @throws ODataException if the content can not be read or exceeds the maximum size
+   */
+  BinaryData read(final InputStream content, final String mimeType) throws ODataException {
+    final MessageDigest digest = createDigest();
+    byte[] buffer = new byte[Math.min(BUFFER_SIZE, memoryThreshold + 1)];
+    int length = 0;
+    try (InputStream in = content) {
+      int read;
+      while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+        length += read;
+        checkSize(length);
+        if (length > memoryThreshold) {
+          digest.update(buffer, 0, length);
+          return spool(in, buffer, length, digest, mimeType);
+        } else if (length == buffer.length) {
+          buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, memoryThreshold + 1));
+        }
+      }
+    } catch (IOException e) {
+      throw new ODataException("Unable to read media resource.", e);
+    }
+    digest.update(buffer, 0, length);
+    return new BinaryData(Arrays.copyOf(buffer, length), mimeType, toHex(digest.digest()));
+  }
+
+  /**
+   * Delete the temporary file of the given binary data (if it was not moved by the data source).
+   *
+   * @param binaryData binary data which was read by this reader
+   */
+  static void release(final BinaryData binaryData) {
+    if (binaryData != null && binaryData.getFile() != null) {
+      try {
+        Files.deleteIfExists(binaryData.getFile());
+      } catch (IOException e) {
+        binaryData.getFile().toFile().deleteOnExit();
+      }
+    }
+  }
+
+  private BinaryData spool(final InputStream in, final byte[] head, final int headLength,
+      final MessageDigest digest, final String mimeType) throws IOException, ODataException {
+    final Path file = Files.createTempFile("janos-media", ".tmp");
+    boolean spooled = false;
+    try {
+      try (OutputStream out = Files.newOutputStream(file)) {
+        out.write(head, 0, headLength);
+        final byte[] buffer = head.length >= BUFFER_SIZE ? head : new byte[BUFFER_SIZE];
+        long length = headLength;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          length += read;
+          checkSize(length);
+          digest.update(buffer, 0, read);
+          out.write(buffer, 0, read);
+        }
+      }
+      final BinaryData binaryData = BinaryData.forFile(file, mimeType, toHex(digest.digest()));
+      spooled = true;
+      return binaryData;
+    } finally {
+      if (!spooled) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+
+  private void checkSize(final long length) throws ODataApplicationException {
+    if (length > maxSize) {
+      throw new ODataApplicationException("Media resource exceeds the maximum size of " + maxSize + " bytes.",
+          Locale.ROOT, HttpStatusCodes.REQUEST_ENTITY_TOO_LARGE);
+    }
+  }
+
+  private static MessageDigest createDigest() throws ODataException {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new ODataException("Unable to create digest for media resource.", e);
+    }
+  }
+
+  private static String toHex(final byte[] digest) {
+    StringBuilder hex = new StringBuilder(digest.length * 2);
+    for (byte b : digest) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
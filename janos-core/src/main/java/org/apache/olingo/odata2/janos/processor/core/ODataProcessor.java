@@ -9,4 +9,18 @@ import org.apache.olingo.odata2.api.processor.part.*;
 public interface ODataProcessor extends MetadataProcessor, ServiceDocumentProcessor, EntityProcessor, EntitySetProcessor,
     EntityComplexPropertyProcessor, EntityLinkProcessor, EntityLinksProcessor, EntityMediaProcessor, EntitySimplePropertyProcessor,
     EntitySimplePropertyValueProcessor, FunctionImportProcessor, FunctionImportValueProcessor, BatchProcessor, CustomContentType {
+
+  /**
+   * Begin the processing of a call on the current thread (after the context of the call was set).
+   * Calls can be nested (e.g. the parts of a batch request), each call is followed by {@link #endRequest()}.
+   */
+  default void beginRequest() {
+  }
+
+  /**
+   * End the processing of a call on the current thread (see {@link #beginRequest()}),
+   * the state which is bound to the thread is released at the end of the outermost call.
+   */
+  default void endRequest() {
+  }
 }
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.edm.EdmException;
+import org.apache.olingo.odata2.api.edm.EdmMapping;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
+import org.apache.olingo.odata2.api.edm.EdmStructuralType;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The properties of a structural (entity or complex) type, compiled once per type, which provide
+ * the values of data objects as (lazy) value maps for the entity provider (see {@link #values(Object)}).
+ * <br/>
+ * A value map reads a property value of the data object only when it is requested by the entity provider
+ * (which requests only the selected properties, the keys and the ETag properties) and keeps it for further
+ * requests; no map is filled upfront. An error on reading a value is thrown as {@link ValueReadException}.
+ */
+final class StructuralTypeValues {
+
+  private final EdmStructuralType type;
+  private final ValueAccess valueAccess;
+  private final EdmProperty[] properties;
+  private final Map<String, Integer> name2Index;
+  /** values of the complex properties (or <code>null</code> for simple properties) */
+  private final StructuralTypeValues[] complexValues;
+  /** properties with a mapping to a media resource MIME type */
+  private final boolean[] mimeTypeMapped;
+  private final EdmMapping mapping;
+  private final String mimeTypeKey;
+
+  private StructuralTypeValues(final EdmStructuralType type, final ValueAccess valueAccess,
+      final Cache cache) throws EdmException {
+    this.type = type;
+    this.valueAccess = valueAccess;
+    final List<String> propertyNames = type.getPropertyNames();
+    properties = new EdmProperty[propertyNames.size()];
+    complexValues = new StructuralTypeValues[properties.length];
+    mimeTypeMapped = new boolean[properties.length];
+    name2Index = new HashMap<>();
+    for (int i = 0; i < properties.length; i++) {
+      final EdmProperty property = (EdmProperty) type.getProperty(propertyNames.get(i));
+      properties[i] = property;
+      name2Index.put(propertyNames.get(i), i);
+      if (property.isSimple()) {
+        mimeTypeMapped[i] = property.getMapping() != null
+            && property.getMapping().getMediaResourceMimeTypeKey() != null;
+      } else {
+        complexValues[i] = cache.get((EdmStructuralType) property.getType());
+      }
+    }
+    mapping = type.getMapping();
+    mimeTypeKey = mapping == null ? null : mapping.getMediaResourceMimeTypeKey();
+  }
+
+  /**
+   * Get the value map for the given data object.
+   *
+   * @param data the data object
+   * @return the (lazy) value map
+   */
+  Map<String, Object> values(final Object data) {
+    return new Values(data);
+  }
+
+  /**
+   * Unchecked wrapper of an exception which occurred on reading a value (which is thrown by the value map).
+   */
+  static final class ValueReadException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    ValueReadException(final ODataException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized ODataException getCause() {
+      return (ODataException) super.getCause();
+    }
+  }
+
+  /**
+   * Compiled types per (qualified) type name.
+   * The types of an Edm are created once (and the Edm is shared), hence a type is compiled again
+   * only for a new Edm.
+   */
+  static final class Cache {
+    private final ValueAccess valueAccess;
+    private final ConcurrentMap<String, StructuralTypeValues> name2Values = new ConcurrentHashMap<>();
+
+    Cache(final ValueAccess valueAccess) {
+      this.valueAccess = valueAccess;
+    }
+
+    StructuralTypeValues get(final EdmStructuralType type) throws EdmException {
+      final String name = type.getNamespace() + '.' + type.getName();
+      StructuralTypeValues values = name2Values.get(name);
+      if (values == null || values.type != type) {
+        values = new StructuralTypeValues(type, valueAccess, this);
+        name2Values.put(name, values);
+      }
+      return values;
+    }
+  }
+
+  /**
+   * Value map which reads the values of the data object on first access.
+   */
+  private final class Values extends AbstractMap<String, Object> {
+    private final Object data;
+    private final Object[] values = new Object[properties.length];
+    private final boolean[] read = new boolean[properties.length];
+    private Object mimeType;
+    private boolean mimeTypeRead;
+
+    Values(final Object data) {
+      this.data = data;
+    }
+
+    @Override
+    public Object get(final Object key) {
+      final Integer index = name2Index.get(key);
+      if (index != null) {
+        if (!read[index]) {
+          values[index] = readValue(index);
+          read[index] = true;
+        }
+        return values[index];
+      } else if (mimeTypeKey != null && mimeTypeKey.equals(key)) {
+        if (!mimeTypeRead) {
+          mimeType = readMappingValue(data, mapping);
+          mimeTypeRead = true;
+        }
+        return mimeType;
+      }
+      return null;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+      return name2Index.containsKey(key) || (mimeTypeKey != null && mimeTypeKey.equals(key));
+    }
+
+    @Override
+    public int size() {
+      return properties.length + (mimeTypeKey == null ? 0 : 1);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+      Map<String, Object> all = new LinkedHashMap<>();
+      if (mimeTypeKey != null) {
+        all.put(mimeTypeKey, get(mimeTypeKey));
+      }
+      for (Map.Entry<String, Integer> entry : name2Index.entrySet()) {
+        all.put(entry.getKey(), get(entry.getKey()));
+      }
+      return all.entrySet();
+    }
+
+    private Object readValue(final int index) {
+      final EdmProperty property = properties[index];
+      try {
+        final Object value = valueAccess.getPropertyValue(data, property);
+        if (complexValues[index] != null) {
+          return complexValues[index].values(value);
+        } else if (mimeTypeMapped[index]) {
+          Map<String, Object> valueWithMimeType = new HashMap<>();
+          valueWithMimeType.put(property.getName(), value);
+          valueWithMimeType.put(property.getMapping().getMediaResourceMimeTypeKey(),
+              valueAccess.getMappingValue(data, property.getMapping()));
+          return valueWithMimeType;
+        }
+        return value;
+      } catch (final ODataException e) {
+        throw new ValueReadException(e);
+      }
+    }
+
+    private Object readMappingValue(final Object data, final EdmMapping mapping) {
+      try {
+        return valueAccess.getMappingValue(data, mapping);
+      } catch (final ODataException e) {
+        throw new ValueReadException(e);
+      }
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data;
+
+import org.apache.olingo.odata2.api.edm.EdmLiteralKind;
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.janos.processor.core.expression.ExpressionValues;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keyset based <code>$skiptoken</code> for server driven paging.
+ * <br/>
+ * The token contains the typed key values of the first entry of the requested page in the format of a key
+ * predicate (e.g. <code>Id='5'</code> or <code>Id=5,Name='n'</code>). Entries are paged in the order of their
+ * (normalized, see {@link ExpressionValues}) key values, hence a page is resumed via a binary search
+ * on the entries sorted by key instead of comparing the token with each entry.
+ */
+public final class SkipToken {
+
+  private static final String SAFE_CHARACTERS =
+      "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-._~'(),:";
+
+  private final Map<String, String> literals;
+
+  /**
+   * Compares the entry at an index of a list with searched key values.
+   */
+  public interface KeyComparison {
+    int compareAt(int index) throws ODataException;
+  }
+
+  private SkipToken(final Map<String, String> literals) {
+    this.literals = literals;
+  }
+
+  /**
+   * Create the token for the given key values.
+   *
+   * @param names names of the key properties
+   * @param types types of the key properties
+   * @param values values of the key properties
+   * @return the token
+   * @throws ODataException if a key value can not be converted
+   */
+  public static String create(final List<String> names, final List<EdmSimpleType> types, final List<?> values)
+      throws ODataException {
+    StringBuilder token = new StringBuilder();
+    for (int i = 0; i < names.size(); i++) {
+      if (i > 0) {
+        token.append(',');
+      }
+      token.append(names.get(i)).append('=')
+          .append(types.get(i).valueToString(values.get(i), EdmLiteralKind.URI, null));
+    }
+    return token.toString();
+  }
+
+  /**
+   * Parse the given token.
+   *
+   * @param token the token from the request
+   * @return the parsed token or <code>null</code> if the token is not a key predicate
+   * (e.g. a token which was created in a former (string based) format)
+   */
+  public static SkipToken parse(final String token) {
+    Map<String, String> literals = new LinkedHashMap<>();
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i <= token.length(); i++) {
+      if (i == token.length() || (token.charAt(i) == ',' && !quoted)) {
+        String part = token.substring(start, i);
+        int separator = part.indexOf('=');
+        if (separator <= 0) {
+          return null;
+        }
+        literals.put(part.substring(0, separator), part.substring(separator + 1));
+        start = i + 1;
+      } else if (token.charAt(i) == '\'') {
+        quoted = !quoted;
+      }
+    }
+    return new SkipToken(literals);
+  }
+
+  /**
+   * Get the (normalized) key values of this token.
+   *
+   * @param names names of the key properties
+   * @param types types of the key properties
+   * @return the key values (in order of the given names) or <code>null</code> if the token does not
+   * contain exactly the given key properties
+   * @throws ODataException if a key value is not valid for its type
+   */
+  public Object[] getValues(final List<String> names, final List<EdmSimpleType> types) throws ODataException {
+    if (names.size() != literals.size()) {
+      return null;
+    }
+    Object[] values = new Object[names.size()];
+    for (int i = 0; i < values.length; i++) {
+      String literal = literals.get(names.get(i));
+      if (literal == null) {
+        return null;
+      }
+      EdmSimpleType type = types.get(i);
+      values[i] = ExpressionValues.normalize(
+          type.valueOfString(literal, EdmLiteralKind.URI, null, type.getDefaultType()), type, null);
+    }
+    return values;
+  }
+
+  /**
+   * Get the literal of a key property of this token.
+   *
+   * @param name name of the key property
+   * @return the literal (in URI format) or <code>null</code> if the token does not contain the key property
+   */
+  public String getLiteral(final String name) {
+    return literals.get(name);
+  }
+
+  /**
+   * Gets the number of key properties of this token.
+   *
+   * @return the number of key properties
+   */
+  public int size() {
+    return literals.size();
+  }
+
+  /**
+   * Compare two (normalized) key values, <code>null</code> values are sorted first.
+   *
+   * @param keys the first key values
+   * @param otherKeys the second key values
+   * @return a negative number, zero, or a positive number if the first key values are sorted before,
+   *         equal to or after the second key values
+   */
+  public static int compareKeys(final Object[] keys, final Object[] otherKeys) {
+    for (int i = 0; i < keys.length; i++) {
+      final int result;
+      if (keys[i] == null || otherKeys[i] == null) {
+        result = keys[i] == null ? (otherKeys[i] == null ? 0 : -1) : 1;
+      } else {
+        Integer compared = ExpressionValues.compare(keys[i], otherKeys[i]);
+        result = compared == null ? 0 : compared;
+      }
+      if (result != 0) {
+        return result;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Get the index of the first entry of a list sorted by key (see {@link #compareKeys(Object[], Object[])})
+   * which is not sorted before the given key values.
+   *
+   * @param size size of the sorted list
+   * @param compareWithKeys compares the entry at an index with the searched key values
+   * @return the index of the first entry (or <code>size</code> if all entries are sorted before)
+   * @throws ODataException if the key values of an entry could not be read
+   */
+  public static int resumeIndex(final int size, final KeyComparison compareWithKeys) throws ODataException {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (compareWithKeys.compareAt(middle) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Percent encode the token for the use as query option value in a (next) link.
+   *
+   * @param token the token
+   * @return the encoded token
+   */
+  public static String percentEncode(final String token) {
+    StringBuilder encoded = new StringBuilder();
+    for (byte b : token.getBytes(StandardCharsets.UTF_8)) {
+      char character = (char) (b & 0xFF);
+      if (b >= 0 && SAFE_CHARACTERS.indexOf(character) >= 0) {
+        encoded.append(character);
+      } else {
+        encoded.append('%').append(String.format("%02X", b & 0xFF));
+      }
+    }
+    return encoded.toString();
+  }
+}
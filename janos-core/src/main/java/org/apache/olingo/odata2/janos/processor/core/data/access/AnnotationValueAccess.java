@@ -24,12 +24,27 @@ import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
 import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- *
+ * Value access for EDM annotated data objects.
+ * <br/>
+ * The fields of the properties are looked up once per class and property and then
+ * accessed via a cached {@link PropertyAccessor}.
  */
 public class AnnotationValueAccess implements ValueAccess {
-  private final AnnotationHelper annotationHelper = new AnnotationHelper();
+  private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
+  private static final ClassValue<ClassAccessors> ACCESSORS = new ClassValue<ClassAccessors>() {
+    @Override
+    protected ClassAccessors computeValue(final Class<?> type) {
+      return new ClassAccessors(type);
+    }
+  };
 
   /**
    * Retrieves the value of an EDM property for the given data object.
@@ -41,8 +56,10 @@ public class AnnotationValueAccess implements ValueAccess {
   public <T> Object getPropertyValue(final T data, final EdmProperty property) throws ODataException {
     if (data == null) {
       return null;
-    } else if (annotationHelper.isEdmAnnotated(data)) {
-      return annotationHelper.getValueForProperty(data, property.getName());
+    }
+    ClassAccessors accessors = ACCESSORS.get(data.getClass());
+    if (accessors.edmAnnotated) {
+      return getValue(data, accessors, property.getName());
     }
     throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
   }
@@ -56,8 +73,9 @@ public class AnnotationValueAccess implements ValueAccess {
   @Override
   public <T, V> void setPropertyValue(final T data, final EdmProperty property, final V value) throws ODataException {
     if (data != null) {
-      if (annotationHelper.isEdmAnnotated(data)) {
-        annotationHelper.setValueForProperty(data, property.getName(), value);
+      ClassAccessors accessors = ACCESSORS.get(data.getClass());
+      if (accessors.edmAnnotated) {
+        setValue(data, accessors, property.getName(), value);
       } else {
         throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
       }
@@ -74,8 +92,10 @@ public class AnnotationValueAccess implements ValueAccess {
   public <T> Class<?> getPropertyType(final T data, final EdmProperty property) throws ODataException {
     if (data == null) {
       return null;
-    } else if (annotationHelper.isEdmAnnotated(data)) {
-      Class<?> fieldType = annotationHelper.getFieldTypeForProperty(data, property.getName());
+    }
+    ClassAccessors accessors = ACCESSORS.get(data.getClass());
+    if (accessors.edmAnnotated) {
+      Class<?> fieldType = accessors.getAccessor(property.getName()).getType();
       if (fieldType == null) {
         throw new ODataException("No field type found for property " + property);
       }
@@ -93,7 +113,8 @@ public class AnnotationValueAccess implements ValueAccess {
   @Override
   public <T> Object getMappingValue(final T data, final EdmMapping mapping) throws ODataException {
     if (mapping != null && mapping.getMediaResourceMimeTypeKey() != null) {
-      return annotationHelper.getValueForProperty(data, mapping.getMediaResourceMimeTypeKey());
+      return data == null ?
+          null : getValue(data, ACCESSORS.get(data.getClass()), mapping.getMediaResourceMimeTypeKey());
     }
     return null;
   }
@@ -107,7 +128,65 @@ public class AnnotationValueAccess implements ValueAccess {
   @Override
   public <T, V> void setMappingValue(final T data, final EdmMapping mapping, final V value) throws ODataException {
     if (mapping != null && mapping.getMediaResourceMimeTypeKey() != null) {
-      annotationHelper.setValueForProperty(data, mapping.getMediaResourceMimeTypeKey(), value);
+      if (data != null) {
+        setValue(data, ACCESSORS.get(data.getClass()), mapping.getMediaResourceMimeTypeKey(), value);
+      }
+    }
+  }
+
+  private Object getValue(final Object data, final ClassAccessors accessors, final String propertyName)
+      throws ODataException {
+    PropertyAccessor accessor = accessors.getAccessor(propertyName);
+    if (accessor == PropertyAccessor.NONE) {
+      throw new AnnotationHelper.ODataAnnotationException("No field for property '" + propertyName
+          + "' found at class '" + data.getClass() + "'.");
+    }
+    try {
+      return accessor.get(data);
+    } catch (IllegalArgumentException | IllegalAccessException | InvocationTargetException e) {
+      throw new AnnotationRuntimeException(e);
+    }
+  }
+
+  private void setValue(final Object data, final ClassAccessors accessors, final String propertyName,
+      final Object value) {
+    PropertyAccessor accessor = accessors.getAccessor(propertyName);
+    if (accessor == PropertyAccessor.NONE) {
+      return;
+    }
+    if (value instanceof String && accessor.getType() != String.class) {
+      // string values are converted according to the EDM type of the property
+      ANNOTATION_HELPER.setValueForProperty(data, propertyName, value);
+      return;
+    }
+    try {
+      accessor.set(data, value);
+    } catch (IllegalArgumentException | IllegalAccessException | InvocationTargetException e) {
+      throw new AnnotationRuntimeException(e);
+    }
+  }
+
+  /**
+   * Accessors for the properties of a class (created on first access of a property).
+   */
+  private static final class ClassAccessors {
+    private final Class<?> type;
+    private final boolean edmAnnotated;
+    private final ConcurrentMap<String, PropertyAccessor> accessors = new ConcurrentHashMap<>();
+
+    ClassAccessors(final Class<?> type) {
+      this.type = type;
+      this.edmAnnotated = ANNOTATION_HELPER.isEdmAnnotated(type);
+    }
+
+    PropertyAccessor getAccessor(final String propertyName) {
+      PropertyAccessor accessor = accessors.get(propertyName);
+      if (accessor == null) {
+        Field field = ANNOTATION_HELPER.getFieldForProperty(type, propertyName);
+        accessor = field == null ? PropertyAccessor.NONE : PropertyAccessor.forField(field);
+        accessors.putIfAbsent(propertyName, accessor);
+      }
+      return accessor;
     }
   }
 }
@@ -27,15 +27,27 @@ import org.apache.olingo.odata2.api.exception.ODataHttpException;
 import org.apache.olingo.odata2.api.exception.ODataNotFoundException;
 import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 
+import java.lang.reflect.Array;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Data access.
+ * <br/>
+ * The getter and setter methods are looked up once per class and method name and then
+ * invoked via a cached {@link PropertyAccessor}.
  */
 public class BeanPropertyAccess implements ValueAccess {
 
+  private static final ClassValue<BeanAccessors> ACCESSORS = new ClassValue<BeanAccessors>() {
+    @Override
+    protected BeanAccessors computeValue(final Class<?> type) {
+      return new BeanAccessors(type);
+    }
+  };
+
   @Override
   public <T> Object getPropertyValue(final T data, final EdmProperty property) throws ODataException {
     return getValue(data, getGetterMethodName(property));
@@ -92,8 +104,8 @@ public class BeanPropertyAccess implements ValueAccess {
     for (final String method : methodName.split("\\.", -1)) {
       if (dataObject != null) {
         try {
-          dataObject = dataObject.getClass().getMethod(method).invoke(dataObject);
-        } catch (SecurityException | NoSuchMethodException | IllegalAccessException
+          dataObject = getGetter(dataObject.getClass(), method).get(dataObject);
+        } catch (SecurityException | IllegalAccessException
             | IllegalArgumentException | InvocationTargetException e) {
           throw new ODataNotFoundException(ODataHttpException.COMMON, e);
         }
@@ -105,37 +117,31 @@ public class BeanPropertyAccess implements ValueAccess {
 
   private <T, V> void setValue(final T data, final String methodName, final V value)
       throws ODataNotFoundException {
+    final PropertyAccessor setter = ACCESSORS.get(data.getClass()).getSetter(methodName);
+    if (setter == PropertyAccessor.NONE) {
+      throw new ODataNotFoundException(null);
+    }
     try {
-      boolean found = false;
-      for (final Method method : Arrays.asList(data.getClass().getMethods())) {
-        if (method.getName().equals(methodName)) {
-          found = true;
-          final Class<?> type = method.getParameterTypes()[0];
-          if (value == null) {
-            if (type.equals(byte.class) || type.equals(short.class) || type.equals(int.class)
-                || type.equals(long.class) || type.equals(char.class)) {
-              method.invoke(data, 0);
-            } else if (type.equals(float.class) || type.equals(double.class)) {
-              method.invoke(data, 0.0);
-            } else if (type.equals(boolean.class)) {
-              method.invoke(data, false);
-            } else {
-              method.invoke(data, new Object[]{null});
-            }
-          } else {
-            method.invoke(data, value);
-          }
-          break;
-        }
-      }
-      if (!found) {
-        throw new ODataNotFoundException(null);
+      final Class<?> type = setter.getType();
+      if (value == null && type.isPrimitive()) {
+        // default value of the primitive type
+        setter.set(data, Array.get(Array.newInstance(type, 1), 0));
+      } else {
+        setter.set(data, value);
       }
     } catch (SecurityException | IllegalArgumentException | IllegalAccessException | InvocationTargetException e) {
       throw new ODataNotFoundException(null, e);
     }
   }
 
+  private PropertyAccessor getGetter(final Class<?> type, final String methodName) throws ODataNotFoundException {
+    final PropertyAccessor getter = ACCESSORS.get(type).getGetter(methodName);
+    if (getter == PropertyAccessor.NONE) {
+      throw new ODataNotFoundException(ODataHttpException.COMMON);
+    }
+    return getter;
+  }
+
   private <T> Class<?> getType(final T data, final String methodName) throws ODataNotFoundException {
     if (data == null) {
       throw new ODataNotFoundException(ODataHttpException.COMMON);
@@ -144,7 +150,7 @@ public class BeanPropertyAccess implements ValueAccess {
     Class<?> type = data.getClass();
     for (final String method : methodName.split("\\.", -1)) {
       try {
-        type = type.getMethod(method).getReturnType();
+        type = getGetter(type, method).getType();
         if (type.isPrimitive()) {
           if (type == boolean.class) {
             type = Boolean.class;
@@ -162,10 +168,51 @@ public class BeanPropertyAccess implements ValueAccess {
             type = Double.class;
           }
         }
-      } catch (final SecurityException | NoSuchMethodException e) {
+      } catch (final SecurityException e) {
         throw new ODataNotFoundException(ODataHttpException.COMMON, e);
       }
     }
     return type;
   }
+
+  /**
+   * Accessors for the getter and setter methods of a class (created on first access of a method).
+   */
+  private static final class BeanAccessors {
+    private final Class<?> type;
+    private final ConcurrentMap<String, PropertyAccessor> getters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PropertyAccessor> setters = new ConcurrentHashMap<>();
+
+    BeanAccessors(final Class<?> type) {
+      this.type = type;
+    }
+
+    PropertyAccessor getGetter(final String methodName) {
+      PropertyAccessor getter = getters.get(methodName);
+      if (getter == null) {
+        try {
+          getter = PropertyAccessor.forGetter(type.getMethod(methodName));
+        } catch (NoSuchMethodException e) {
+          getter = PropertyAccessor.NONE;
+        }
+        getters.putIfAbsent(methodName, getter);
+      }
+      return getter;
+    }
+
+    PropertyAccessor getSetter(final String methodName) {
+      PropertyAccessor setter = setters.get(methodName);
+      if (setter == null) {
+        setter = PropertyAccessor.NONE;
+        for (final Method method : type.getMethods()) {
+          if (method.getName().equals(methodName) && method.getParameterTypes().length == 1) {
+            setter = PropertyAccessor.forSetter(method);
+            break;
+          }
+        }
+        setters.putIfAbsent(methodName, setter);
+      }
+      return setter;
+    }
+  }
 }
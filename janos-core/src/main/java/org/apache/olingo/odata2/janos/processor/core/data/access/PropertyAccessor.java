@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.access;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Accessor for a property of a data object (a field or a getter/setter method).
+ * <br/>
+ * The accessor is created once per class and property and reads and writes the property via a {@link MethodHandle}
+ * of a fixed type instead of a reflective call. Values which can not be passed to the method handle
+ * without a conversion (e.g. <code>null</code> for a primitive or an <code>Integer</code> for a <code>long</code>)
+ * as well as final and static fields are accessed reflectively (with the according reflection semantics).
+ */
+final class PropertyAccessor {
+
+  /** Accessor for a property which does not exist */
+  static final PropertyAccessor NONE = new PropertyAccessor(null, null, null, null);
+
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+  private final AccessibleObject member;
+  private final Class<?> type;
+  private final Class<?> wrapperType;
+  private final MethodHandle getter;
+  private final MethodHandle setter;
+
+  private PropertyAccessor(final AccessibleObject member, final Class<?> type,
+      final MethodHandle getter, final MethodHandle setter) {
+    this.member = member;
+    this.type = type;
+    this.wrapperType = type == null ? null : MethodType.methodType(type).wrap().returnType();
+    this.getter = getter;
+    this.setter = setter;
+  }
+
+  /**
+   * Create an accessor which reads and writes the given field.
+   *
+   * @param field the field
+   * @return the accessor
+   */
+  static PropertyAccessor forField(final Field field) {
+    makeAccessible(field);
+    MethodHandle getter = null;
+    MethodHandle setter = null;
+    if (!Modifier.isStatic(field.getModifiers())) {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      try {
+        getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+        if (!Modifier.isFinal(field.getModifiers())) {
+          setter = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+        }
+      } catch (IllegalAccessException e) {
+        // use reflective access
+      }
+    }
+    return new PropertyAccessor(field, field.getType(), getter, setter);
+  }
+
+  /**
+   * Create an accessor which reads a property via the given getter method (without parameters).
+   *
+   * @param method the getter method
+   * @return the accessor
+   */
+  static PropertyAccessor forGetter(final Method method) {
+    makeAccessible(method);
+    MethodHandle getter = null;
+    if (!Modifier.isStatic(method.getModifiers())) {
+      try {
+        getter = MethodHandles.lookup().unreflect(method).asType(GETTER_TYPE);
+      } catch (IllegalAccessException e) {
+        // use reflective access
+      }
+    }
+    return new PropertyAccessor(method, method.getReturnType(), getter, null);
+  }
+
+  /**
+   * Create an accessor which writes a property via the given setter method (with one parameter).
+   *
+   * @param method the setter method
+   * @return the accessor
+   */
+  static PropertyAccessor forSetter(final Method method) {
+    makeAccessible(method);
+    MethodHandle setter = null;
+    if (!Modifier.isStatic(method.getModifiers())) {
+      try {
+        setter = MethodHandles.lookup().unreflect(method).asType(SETTER_TYPE);
+      } catch (IllegalAccessException e) {
+        // use reflective access
+      }
+    }
+    return new PropertyAccessor(method, method.getParameterTypes()[0], null, setter);
+  }
+
+  private static void makeAccessible(final AccessibleObject member) {
+    try {
+      member.setAccessible(true);
+    } catch (SecurityException e) {
+      // access is checked on each call
+    }
+  }
+
+  /**
+   * Get the (declared) type of the property or <code>null</code> if the property does not exist.
+   *
+   * @return type of the property
+   */
+  Class<?> getType() {
+    return type;
+  }
+
+  /**
+   * Read the property value of the given instance.
+   *
+   * @param instance the instance
+   * @return the property value
+   * @throws IllegalAccessException if the property is not accessible
+   * @throws InvocationTargetException if the getter method throws an exception
+   */
+  Object get(final Object instance) throws IllegalAccessException, InvocationTargetException {
+    if (getter == null) {
+      return member instanceof Field ? ((Field) member).get(instance) : ((Method) member).invoke(instance);
+    }
+    try {
+      return (Object) getter.invokeExact(instance);
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new InvocationTargetException(e);
+    }
+  }
+
+  /**
+   * Write the property value of the given instance.
+   *
+   * @param instance the instance
+   * @param value the new property value
+   * @throws IllegalAccessException if the property is not accessible
+   * @throws IllegalArgumentException if the value is not assignable to the property
+   * @throws InvocationTargetException if the setter method throws an exception
+   */
+  void set(final Object instance, final Object value) throws IllegalAccessException, InvocationTargetException {
+    if (setter == null || (value == null ? type.isPrimitive() : !wrapperType.isInstance(value))) {
+      if (member instanceof Field) {
+        ((Field) member).set(instance, value);
+      } else {
+        ((Method) member).invoke(instance, value);
+      }
+      return;
+    }
+    try {
+      setter.invokeExact(instance, value);
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new InvocationTargetException(e);
+    }
+  }
+}
@@ -28,21 +28,39 @@ import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
+import org.apache.olingo.odata2.janos.processor.api.data.source.PageSize;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
+import org.apache.olingo.odata2.janos.processor.core.data.store.JpaRequestScope;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
 import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
 
+import javax.persistence.PersistenceException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
 
 public class AnnotationDataSource implements DataSource {
 
+  /**
+   * system property for the directory of media resources which are held as files
+   * (required for media resource content fields of type <code>Path</code> or <code>File</code>)
+   */
+  public static final String MEDIA_DIRECTORY = "JanosMediaDirectorySystemProperty";
+
   private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
 
   private final DataStoreManager dataStoreManager;
+  /** media files of the (nested) units of work of the current thread which are deleted after the commit */
+  private final ThreadLocal<MediaFileDeletions> mediaFileDeletions = new ThreadLocal<>();
 
   public AnnotationDataSource(final Collection<Class<?>> annotatedClasses, final DataStoreManager dataStoreManager)
       throws ODataException {
@@ -95,6 +113,25 @@ public class AnnotationDataSource implements DataSource {
     throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
   }
 
+  @Override
+  public Integer countData(final EdmEntitySet entitySet, final ReadOptions readOptions)
+      throws ODataNotFoundException, EdmException, ODataApplicationException {
+
+    DataStore<Object> store = getDataStore(entitySet);
+    if (store != null) {
+      return store.count(readOptions);
+    }
+
+    throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
+  }
+
+  @Override
+  public int getPageSize(final EdmEntitySet entitySet) throws EdmException {
+    DataStore<Object> dataStore = dataStoreManager.getDataStore(entitySet.getName());
+    PageSize pageSize = dataStore == null ? null : dataStore.getDataTypeClass().getAnnotation(PageSize.class);
+    return pageSize == null ? DEFAULT_PAGE_SIZE : pageSize.value();
+  }
+
   @Override
   public Object readData(final EdmEntitySet entitySet, final Map<String, Object> keys)
       throws ODataNotFoundException, EdmException, ODataApplicationException {
@@ -140,7 +177,123 @@ public class AnnotationDataSource implements DataSource {
   }
 
   /**
-   * Read the result data from the target store based on <code>sourceData</code> and <code>sourceField</code>
+   * {@inheritDoc}
+   * <p>The related entities of all source entities are read together (instead of one read per source entity):
+   * related entities with a back reference to the source are read via
+   * {@link DataStore#readAllRelated(Field, Collection)} and assigned to the source entities via their keys,
+   * related entities which are referenced by the source entities (e.g. all single valued navigations)
+   * are read by their (distinct) keys via {@link DataStore#readAll(Collection)}.
+   * If the target store does not support the lookup, the related entities are read per source entity.</p>
+   */
+  @Override
+  public Map<Object, Object> readRelatedData(final EdmEntitySet sourceEntitySet, final Collection<?> sourceData,
+      final EdmEntitySet targetEntitySet) throws ODataNotImplementedException, EdmException,
+      ODataApplicationException {
+    DataStore<?> sourceStore = dataStoreManager.getDataStore(sourceEntitySet.getName());
+    DataStore<?> targetStore = dataStoreManager.getDataStore(targetEntitySet.getName());
+
+    AnnotationHelper.AnnotatedNavInfo navInfo = ANNOTATION_HELPER.getCommonNavigationInfo(
+        sourceStore.getDataTypeClass(), targetStore.getDataTypeClass());
+    Field sourceField = navInfo == null ? null : navInfo.isBiDirectional() ? navInfo.getToField()
+        : navInfo.getFromField();
+    if (sourceField == null) {
+      return DataSource.super.readRelatedData(sourceEntitySet, sourceData, targetEntitySet);
+    }
+
+    final Map<Object, Object> result;
+    if (!navInfo.isBiDirectional() && navInfo.getToMultiplicity() == EdmMultiplicity.MANY) {
+      result = readReferencingData(targetStore, sourceData, navInfo);
+    } else {
+      result = readReferencedData(targetStore, sourceData, sourceField, navInfo.getToMultiplicity());
+    }
+    return result == null ? DataSource.super.readRelatedData(sourceEntitySet, sourceData, targetEntitySet) : result;
+  }
+
+  /**
+   * Read the related entities which reference the source entities via their back reference.
+   *
+   * @return the related entities per source entity or <code>null</code> if the lookup is not supported
+   */
+  private Map<Object, Object> readReferencingData(final DataStore<?> targetStore, final Collection<?> sourceData,
+      final AnnotationHelper.AnnotatedNavInfo navInfo) throws DataStoreException {
+    Collection<?> related = targetStore.readAllRelated(navInfo.getToField(), sourceData);
+    if (related == null) {
+      return null;
+    }
+    Map<Map<String, Object>, List<Object>> sourceKey2Related = new HashMap<>();
+    for (Object targetInstance : related) {
+      Object backInstance = ClassHelper.getFieldValue(targetInstance, navInfo.getToField());
+      sourceKey2Related.computeIfAbsent(ANNOTATION_HELPER.getValueForAnnotatedFields(backInstance, EdmKey.class),
+          key -> new ArrayList<>()).add(targetInstance);
+    }
+    Map<Object, Object> result = new IdentityHashMap<>();
+    for (Object source : sourceData) {
+      if (getValue(navInfo.getFromField(), source) != null) {
+        List<Object> resultData = sourceKey2Related.get(
+            ANNOTATION_HELPER.getValueForAnnotatedFields(source, EdmKey.class));
+        result.put(source, resultData == null ? new ArrayList<>() : resultData);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Read the related entities which are referenced by the source entities via the source field
+   * (with one read of the distinct keys of all referenced entities).
+   *
+   * @return the related entities per source entity or <code>null</code> if the lookup is not supported
+   */
+  private Map<Object, Object> readReferencedData(final DataStore<?> targetStore, final Collection<?> sourceData,
+      final Field sourceField, final EdmMultiplicity toMultiplicity) throws DataStoreException {
+    List<Object> referenced = new ArrayList<>();
+    for (Object source : sourceData) {
+      Object navigationInstance = getValue(sourceField, source);
+      if (navigationInstance instanceof Collection) {
+        referenced.addAll((Collection<?>) navigationInstance);
+      } else if (navigationInstance != null) {
+        referenced.add(navigationInstance);
+      }
+    }
+    Collection<?> related = referenced.isEmpty() ? Collections.emptyList() : targetStore.readAll(referenced);
+    if (related == null) {
+      return null;
+    }
+    Map<Map<String, Object>, Object> key2Related = new HashMap<>();
+    for (Object targetInstance : related) {
+      key2Related.put(ANNOTATION_HELPER.getValueForAnnotatedFields(targetInstance, EdmKey.class), targetInstance);
+    }
+
+    Map<Object, Object> result = new IdentityHashMap<>();
+    for (Object source : sourceData) {
+      Object navigationInstance = getValue(sourceField, source);
+      if (toMultiplicity == EdmMultiplicity.MANY) {
+        List<Object> resultData = new ArrayList<>();
+        if (navigationInstance instanceof Collection) {
+          for (Object element : (Collection<?>) navigationInstance) {
+            Object targetInstance = key2Related.get(
+                ANNOTATION_HELPER.getValueForAnnotatedFields(element, EdmKey.class));
+            if (targetInstance != null) {
+              resultData.add(targetInstance);
+            }
+          }
+        }
+        result.put(source, resultData);
+      } else if (navigationInstance != null) {
+        Object targetInstance = key2Related.get(
+            ANNOTATION_HELPER.getValueForAnnotatedFields(navigationInstance, EdmKey.class));
+        if (targetInstance != null) {
+          result.put(source, targetInstance);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Read the result data from the target store based on <code>sourceData</code> and <code>sourceField</code>.
+   * A single related entity is read via its keys, related entities with a back reference
+   * to the source are read via {@link DataStore#readRelated(Field, Object)} (if supported by the target store).
+   * Otherwise all entities of the target store are checked.
    * 
    * @param targetStore
    * @param sourceData
@@ -148,6 +301,7 @@ public class AnnotationDataSource implements DataSource {
    * @return
    * @throws DataStoreException
    */
+  @SuppressWarnings("unchecked")
   private List<Object> readResultData(final DataStore<?> targetStore, final Object sourceData, 
           final Field sourceField, final AnnotationHelper.AnnotatedNavInfo navInfo)
       throws DataStoreException {
@@ -155,7 +309,19 @@ public class AnnotationDataSource implements DataSource {
     if (navigationInstance == null) {
       return Collections.emptyList();
     }
-    
+
+    if (!(navigationInstance instanceof Collection)) {
+      if (targetStore.getDataTypeClass() == navigationInstance.getClass()) {
+        Object related = ((DataStore<Object>) targetStore).read(navigationInstance);
+        return related == null ? Collections.emptyList() : Collections.singletonList(related);
+      }
+    } else if (!navInfo.isBiDirectional()) {
+      Collection<?> related = targetStore.readRelated(navInfo.getToField(), sourceData);
+      if (related != null) {
+        return new ArrayList<>(related);
+      }
+    }
+
     List<Object> resultData = new ArrayList<>();
     for (Object targetInstance : targetStore.read()) {
       if (navigationInstance instanceof Collection) {
@@ -224,6 +390,17 @@ public class AnnotationDataSource implements DataSource {
       }
     }
 
+    // media resources which are held as files are streamed (instead of read into memory)
+    if (data instanceof File) {
+      data = ((File) data).toPath();
+    }
+    if (data instanceof Path) {
+      try {
+        return BinaryData.forFile((Path) data, String.valueOf(mimeType));
+      } catch (IOException e) {
+        throw new DataStoreException("Unable to read media resource file '" + data + "'.", e);
+      }
+    }
     return new BinaryData((byte[]) data, String.valueOf(mimeType));
   }
 
@@ -250,10 +427,17 @@ public class AnnotationDataSource implements DataSource {
       if (readEntry == null) {
         throw new ODataNotFoundException(ODataNotFoundException.ENTITY);
       } else {
+        Object previousContent = ANNOTATION_HELPER.getValueForField(readEntry, EdmMediaResourceContent.class);
+        Object content = toMediaContent(mediaEntityInstance, binaryData);
         ANNOTATION_HELPER.setValueForAnnotatedField(
-            mediaEntityInstance, EdmMediaResourceContent.class, binaryData.getData());
+            mediaEntityInstance, EdmMediaResourceContent.class, content);
         ANNOTATION_HELPER.setValueForAnnotatedField(
             mediaEntityInstance, EdmMediaResourceMimeType.class, binaryData.getMimeType());
+        dataStore.update(mediaEntityInstance);
+        // the file of a replaced (or deleted) media resource is not referenced anymore
+        if (previousContent != null && !previousContent.equals(content)) {
+          deleteMediaFileAfterCommit(previousContent);
+        }
       }
     } catch (AnnotationHelper.ODataAnnotationException e) {
       throw new AnnotationRuntimeException("Invalid media resource annotation at entity set '" + entitySet.getName()
@@ -261,6 +445,93 @@ public class AnnotationDataSource implements DataSource {
     }
   }
 
+  /**
+   * Get the value for the media resource content field of the given instance.
+   * For a field of type <code>Path</code> or <code>File</code> the binary data is stored as a new file
+   * in the media directory (hence each file is referenced by one entity only and can be deleted if the media
+   * resource is replaced or deleted), an uploaded file is moved there (instead of copied),
+   * otherwise the binary data is read as byte array.
+   */
+  private Object toMediaContent(final Object mediaEntityInstance, final BinaryData binaryData)
+      throws DataStoreException {
+    List<Field> fields = ANNOTATION_HELPER.getAnnotatedFields(mediaEntityInstance, EdmMediaResourceContent.class);
+    Class<?> fieldType = fields.size() == 1 ? fields.get(0).getType() : byte[].class;
+    if (fieldType != Path.class && fieldType != File.class) {
+      return binaryData.getData();
+    } else if (!binaryData.isStreamed() && binaryData.getData() == null) {
+      return null;
+    }
+
+    try {
+      Path directory = getMediaDirectory();
+      Files.createDirectories(directory);
+      Path target = directory.resolve(UUID.randomUUID().toString());
+      if (binaryData.getFile() != null) {
+        Files.move(binaryData.getFile(), target, StandardCopyOption.REPLACE_EXISTING);
+      } else {
+        try (InputStream content = binaryData.getStream(0)) {
+          Files.copy(content, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+      return fieldType == File.class ? target.toFile() : target;
+    } catch (IOException e) {
+      throw new DataStoreException("Unable to store media resource file.", e);
+    }
+  }
+
+  private static Path getMediaDirectory() throws DataStoreException {
+    String directory = System.getProperty(MEDIA_DIRECTORY);
+    if (directory == null || directory.isEmpty()) {
+      throw new DataStoreException("No directory for media resource files configured (system property '"
+          + MEDIA_DIRECTORY + "').");
+    }
+    return Paths.get(directory);
+  }
+
+  private static boolean isFileContent(final Object instance) {
+    List<Field> fields = ANNOTATION_HELPER.getAnnotatedFields(instance, EdmMediaResourceContent.class);
+    return fields.size() == 1 && (fields.get(0).getType() == Path.class || fields.get(0).getType() == File.class);
+  }
+
+  /**
+   * Delete the file of a media resource which is not referenced anymore after a successful write.
+   * Within a unit of work the file is deleted after the commit of the outermost unit of work
+   * (and kept if the unit of work is rolled back, since the entity references it again).
+   *
+   * @param content value of a media resource content field (or <code>null</code>)
+   * @throws DataStoreException if the file can not be deleted
+   */
+  private void deleteMediaFileAfterCommit(final Object content) throws DataStoreException {
+    MediaFileDeletions deletions = mediaFileDeletions.get();
+    if (deletions == null) {
+      deleteMediaFile(content);
+    } else if (content != null) {
+      deletions.contents.add(content);
+    }
+  }
+
+  /**
+   * Delete the file of a media resource which is not referenced anymore.
+   * Only files in the media directory are deleted (which were stored by {@link #toMediaContent(Object, BinaryData)}),
+   * other values are ignored.
+   *
+   * @param content value of a media resource content field (or <code>null</code>)
+   * @throws DataStoreException if the file can not be deleted
+   */
+  private static void deleteMediaFile(final Object content) throws DataStoreException {
+    Path file = content instanceof File ? ((File) content).toPath() : content instanceof Path ? (Path) content : null;
+    String directory = System.getProperty(MEDIA_DIRECTORY);
+    if (file == null || directory == null || directory.isEmpty()
+        || !file.toAbsolutePath().normalize().startsWith(Paths.get(directory).toAbsolutePath().normalize())) {
+      return;
+    }
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      throw new DataStoreException("Unable to delete media resource file '" + file + "'.", e);
+    }
+  }
+
   /**
    * <p>Updates a single data object identified by the specified entity set and key fields of
    * the data object.</p>
@@ -271,6 +542,7 @@ public class AnnotationDataSource implements DataSource {
    * @throws org.apache.olingo.odata2.api.edm.EdmException
    * @throws org.apache.olingo.odata2.api.exception.ODataApplicationException
    */
+  @Override
   public Object updateData(final EdmEntitySet entitySet, final Object data)
       throws EdmException, ODataApplicationException {
 
@@ -284,7 +556,14 @@ public class AnnotationDataSource implements DataSource {
     DataStore<Object> dataStore = getDataStore(entitySet);
     Object keyInstance = dataStore.createInstance();
     ANNOTATION_HELPER.setKeyFields(keyInstance, keys);
+    // the file of a media resource is not referenced anymore after the entity is deleted
+    Object mediaContent = null;
+    if (isFileContent(keyInstance)) {
+      Object readEntry = dataStore.read(keyInstance);
+      mediaContent = ANNOTATION_HELPER.getValueForField(readEntry, EdmMediaResourceContent.class);
+    }
     dataStore.delete(keyInstance);
+    deleteMediaFileAfterCommit(mediaContent);
   }
 
   @Override
@@ -295,6 +574,89 @@ public class AnnotationDataSource implements DataSource {
     return dataStore.create(data);
   }
 
+  /**
+   * {@inheritDoc}
+   * <p>The <code>EntityManager</code>s of JPA data stores are scoped to the request
+   * (see {@link JpaRequestScope}).</p>
+   */
+  @Override
+  public void beginRequest() {
+    JpaRequestScope.begin();
+  }
+
+  @Override
+  public void endRequest() {
+    JpaRequestScope.end();
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>The writes of JPA data stores are executed in one transaction (see {@link JpaRequestScope}),
+   * writes of in memory data stores are applied directly.</p>
+   */
+  @Override
+  public void beginUnitOfWork() {
+    JpaRequestScope.beginUnitOfWork();
+    MediaFileDeletions deletions = mediaFileDeletions.get();
+    if (deletions == null) {
+      deletions = new MediaFileDeletions();
+      mediaFileDeletions.set(deletions);
+    }
+    deletions.depth++;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p>Media files which are not referenced anymore are deleted after the commit of the outermost unit of work
+   * (a file which can not be deleted then is left in the media directory, since the unit of work
+   * is committed already).</p>
+   */
+  @Override
+  public void commitUnitOfWork() throws ODataApplicationException {
+    List<Object> deletions = endUnitOfWork();
+    try {
+      JpaRequestScope.commitUnitOfWork();
+    } catch (PersistenceException e) {
+      throw new DataStoreException("Unable to commit unit of work.", e);
+    }
+    for (Object content : deletions) {
+      try {
+        deleteMediaFile(content);
+      } catch (DataStoreException e) {
+        // the file is not referenced anymore and is left in the media directory
+      }
+    }
+  }
+
+  @Override
+  public void rollbackUnitOfWork() {
+    endUnitOfWork();
+    JpaRequestScope.rollbackUnitOfWork();
+  }
+
+  /**
+   * Media files which are not referenced anymore after the (nested) units of work of a thread are committed.
+   */
+  private static final class MediaFileDeletions {
+    private final List<Object> contents = new ArrayList<>();
+    private int depth;
+  }
+
+  /**
+   * End the current unit of work for the media file deletions.
+   *
+   * @return the media resource contents which are not referenced anymore if the outermost unit of work was ended,
+   * otherwise an empty list (the contents are kept for the enclosing unit of work)
+   */
+  private List<Object> endUnitOfWork() {
+    MediaFileDeletions deletions = mediaFileDeletions.get();
+    if (deletions == null || --deletions.depth > 0) {
+      return Collections.emptyList();
+    }
+    mediaFileDeletions.remove();
+    return deletions.contents;
+  }
+
   @Override
   public void deleteRelation(final EdmEntitySet sourceEntitySet, final Object sourceData,
       final EdmEntitySet targetEntitySet,
@@ -334,6 +696,17 @@ public class AnnotationDataSource implements DataSource {
     if (targetField != null) {
       setValueAtNavigationField(targetEntity, targetField, sourceEntity);
     }
+    // update the references (foreign keys) in the stores
+    if (!isCollection(sourceField)) {
+      sourceStore.update(sourceEntity);
+    }
+    if (targetField != null && !isCollection(targetField)) {
+      targetStore.update(targetEntity);
+    }
+  }
+
+  private boolean isCollection(final Field field) {
+    return Collection.class.isAssignableFrom(field.getType()) || field.getType().isArray();
   }
 
   /**
@@ -2,10 +2,13 @@ package org.apache.olingo.odata2.janos.processor.core.data.source;
 
 import org.apache.olingo.odata2.api.annotation.edm.EdmFunctionImport;
 import org.apache.olingo.odata2.api.annotation.edm.EdmFunctionImportParameter;
+import org.apache.olingo.odata2.api.edm.EdmEntitySet;
 import org.apache.olingo.odata2.api.edm.EdmException;
 import org.apache.olingo.odata2.api.exception.ODataApplicationException;
 import org.apache.olingo.odata2.api.exception.ODataNotFoundException;
 import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
+import org.apache.olingo.odata2.janos.processor.api.data.source.CachedFunction;
 import org.apache.olingo.odata2.janos.processor.api.data.source.FunctionExecutor;
 import org.apache.olingo.odata2.janos.processor.api.data.source.FunctionSource;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
@@ -13,8 +16,12 @@ import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
 import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
 import java.util.*;
 
@@ -24,6 +31,8 @@ public class AnnotationFunctionSource implements FunctionSource {
 
   private AnnotationHelper annotationHelper = new AnnotationHelper();
   private Map<String, FunctionHolder> functionHolders = new HashMap<>();
+  /** result caches of the functions per entity set the functions depend on */
+  private Map<String, List<FunctionResultCache>> dependentCaches = new HashMap<>();
   private DataStoreManager dataStoreManager;
 
   private AnnotationFunctionSource() { /* private ctor because of builder */ }
@@ -51,8 +60,10 @@ public class AnnotationFunctionSource implements FunctionSource {
       FunctionHolder holder = new FunctionHolder();
       holder.method = method;
       holder.executor = annotatedClass.newInstance();
+      holder.handle = createHandle(method, holder.executor);
       holder.functionImport = efi;
       holder.functionParameters = parameters;
+      holder.cache = createCache(method, efi);
       //
       callInitMethods(holder.executor);
 
@@ -63,6 +74,37 @@ public class AnnotationFunctionSource implements FunctionSource {
 
   }
 
+  /**
+   * Create the handle which invokes the given method (bound to the executor instance)
+   * with the parameters as array.
+   */
+  private MethodHandle createHandle(Method method, Object executor) throws IllegalAccessException {
+    method.setAccessible(true);
+    MethodHandle handle = MethodHandles.lookup().unreflect(method);
+    if (!Modifier.isStatic(method.getModifiers())) {
+      handle = handle.bindTo(executor);
+    }
+    return handle.asSpreader(Object[].class, method.getParameterCount())
+        .asType(MethodType.methodType(Object.class, Object[].class));
+  }
+
+  /**
+   * Create the result cache for a function with a {@link CachedFunction} annotation
+   * (only functions which are called via <code>GET</code> and do not return a streamed result are cached).
+   */
+  private FunctionResultCache createCache(Method method, EdmFunctionImport efi) {
+    CachedFunction cached = method.getAnnotation(CachedFunction.class);
+    if (cached == null || efi.httpMethod() != EdmFunctionImport.HttpMethod.GET
+        || ReadResult.class.isAssignableFrom(method.getReturnType())) {
+      return null;
+    }
+    FunctionResultCache cache = new FunctionResultCache(cached.timeToLive(), cached.maxSize());
+    for (String entitySetName : cached.dependsOn()) {
+      dependentCaches.computeIfAbsent(entitySetName, name -> new ArrayList<>()).add(cache);
+    }
+    return cache;
+  }
+
   private void callInitMethods(Object functionInstance) {
     if(functionInstance instanceof FunctionExecutor) {
       ((FunctionExecutor) functionInstance).init(dataStoreManager);
@@ -99,11 +141,53 @@ public class AnnotationFunctionSource implements FunctionSource {
     FunctionHolder holder = functionHolders.get(functionName);
     if(holder != null) {
       Object[] exParameters = mapParameters(holder, parameters);
+      if (holder.cache != null) {
+        return holder.cache.get(createCacheKey(exParameters), () -> holder.execute(exParameters));
+      }
       return holder.execute(exParameters);
     }
     return null;
   }
 
+  /**
+   * Create the cache key for the given parameter values of a call.
+   * Arrays (e.g. the <code>byte[]</code> of a binary parameter) are replaced by lists of their (boxed) elements,
+   * hence they are compared by content and a later change of an array (e.g. by the function) does not change
+   * the key.
+   *
+   * @param parameters the parameter values
+   * @return the cache key
+   */
+  static List<Object> createCacheKey(Object[] parameters) {
+    List<Object> key = new ArrayList<>(parameters.length);
+    for (Object parameter : parameters) {
+      key.add(toKeyValue(parameter));
+    }
+    return key;
+  }
+
+  private static Object toKeyValue(Object value) {
+    if (value == null || !value.getClass().isArray()) {
+      return value;
+    }
+    final int length = Array.getLength(value);
+    List<Object> elements = new ArrayList<>(length);
+    for (int i = 0; i < length; i++) {
+      elements.add(toKeyValue(Array.get(value, i)));
+    }
+    return elements;
+  }
+
+  @Override
+  public void dataChanged(EdmEntitySet entitySet) throws EdmException {
+    List<FunctionResultCache> caches = dependentCaches.get(entitySet.getName());
+    if (caches != null) {
+      for (FunctionResultCache cache : caches) {
+        cache.invalidate();
+      }
+    }
+  }
+
   private Object[] mapParameters(FunctionHolder holder, Map<String, Object> parameters) {
     List<Object> resParameters = new ArrayList<>();
     for (Map.Entry<String, EdmFunctionImportParameter> s : holder.functionParameters.entrySet()) {
@@ -118,13 +202,19 @@ public class AnnotationFunctionSource implements FunctionSource {
   static class FunctionHolder {
     Object executor;
     Method method;
+    /** handle of the method (bound to the executor) which takes the parameters as array */
+    MethodHandle handle;
     EdmFunctionImport functionImport;
     LinkedHashMap<String, EdmFunctionImportParameter> functionParameters;
+    /** result cache (or <code>null</code> if the results are not cached) */
+    FunctionResultCache cache;
 
     public Object execute(Object... parameters) {
       try {
-        return method.invoke(executor, parameters);
-      } catch (IllegalAccessException | InvocationTargetException e) {
+        return (Object) handle.invokeExact(parameters);
+      } catch (Error e) {
+        throw e;
+      } catch (Throwable e) {
         throw new AnnotationRuntimeException("Exception in methods access.", e);
       }
     }
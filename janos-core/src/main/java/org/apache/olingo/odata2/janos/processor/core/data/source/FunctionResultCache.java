@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.source;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the results of one function import per (ordered) parameter values.
+ * <br/>
+ * Results expire after the time to live, the least recently used result is evicted if the cache
+ * exceeds its maximum size and all results are removed on {@link #invalidate()}.
+ * A result which is computed while the cache is invalidated is not cached.
+ */
+final class FunctionResultCache {
+
+  private final long timeToLive;
+  private final int maxSize;
+  private final LongSupplier clock;
+  private final Map<List<Object>, Entry> entries;
+  /** incremented on each invalidation (to detect results computed with outdated data) */
+  private long generation;
+
+  FunctionResultCache(final long timeToLive, final int maxSize) {
+    this(timeToLive, maxSize, System::currentTimeMillis);
+  }
+
+  FunctionResultCache(final long timeToLive, final int maxSize, final LongSupplier clock) {
+    this.timeToLive = timeToLive;
+    this.maxSize = Math.max(1, maxSize);
+    this.clock = clock;
+    this.entries = new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(final Map.Entry<List<Object>, Entry> eldest) {
+        return size() > FunctionResultCache.this.maxSize;
+      }
+    };
+  }
+
+  /**
+   * Get the cached result for the given parameter values or compute (and cache) it.
+   *
+   * @param parameters the parameter values (in order of the function parameters)
+   * @param function computation of the result
+   * @return the result
+   */
+  Object get(final List<Object> parameters, final Supplier<Object> function) {
+    final long generationBefore;
+    synchronized (this) {
+      Entry entry = entries.get(parameters);
+      if (entry != null) {
+        if (entry.expires > clock.getAsLong()) {
+          return entry.result;
+        }
+        entries.remove(parameters);
+      }
+      generationBefore = generation;
+    }
+
+    // the function is executed outside of the lock (concurrent calls with the same parameters may both execute it)
+    final Object result = function.get();
+    synchronized (this) {
+      if (generation == generationBefore) {
+        entries.put(parameters, new Entry(result, clock.getAsLong() + timeToLive));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Remove all cached results.
+   */
+  synchronized void invalidate() {
+    entries.clear();
+    generation++;
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  private static final class Entry {
+    final Object result;
+    final long expires;
+
+    Entry(final Object result, final long expires) {
+      this.result = result;
+      this.expires = expires;
+    }
+  }
+}
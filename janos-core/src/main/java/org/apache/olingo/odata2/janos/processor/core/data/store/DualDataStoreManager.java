@@ -21,8 +21,11 @@ import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreExceptio
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
 
 import javax.persistence.Entity;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -33,6 +36,9 @@ public class DualDataStoreManager implements DataStoreManager {
 
   private final Map<String, DataStore<Object>> dataStores = new HashMap<>();
 
+  /** EntityManagerFactory per persistence unit name (shared by all JPA data stores of this manager) */
+  private final Map<String, EntityManagerFactory> entityManagerFactories = new ConcurrentHashMap<>();
+
 
   @Override
   public <T> DataStore<T> createDataStore(Class<T> clz) throws DataStoreException {
@@ -81,15 +87,28 @@ public class DualDataStoreManager implements DataStoreManager {
   
   public <T> DataStore<T>  createInstance(Class<T> clz, boolean keepPersistent) throws DataStoreException {
     if(isJpaAnnotated(clz)) {
-      String persistenceName = System.getProperty(JpaAnnotationDataStore.PERSISTENCE_NAME);
-      if(persistenceName == null) {
-        return JpaAnnotationDataStore.createInstance(clz);
-      }
-      return JpaAnnotationDataStore.createInstance(clz, persistenceName);
+      String persistenceName = System.getProperty(JpaAnnotationDataStore.PERSISTENCE_NAME,
+          JpaAnnotationDataStore.DEFAULT_PERSISTENCE_NAME);
+      return JpaAnnotationDataStore.createInstance(clz,
+          entityManagerFactories.computeIfAbsent(persistenceName, this::createEntityManagerFactory));
     }
     return InMemoryDataStore.createInMemory(clz, keepPersistent);
   }
 
+  /**
+   * Create the EntityManagerFactory for the given persistence unit
+   * with JDBC batch writing enabled (for the writes within a unit of work).
+   */
+  private EntityManagerFactory createEntityManagerFactory(String persistenceName) {
+    Map<String, String> jpaProperties = new HashMap<>();
+    String batchSize = String.valueOf(JpaAnnotationDataStore.FLUSH_SIZE);
+    jpaProperties.put("eclipselink.jdbc.batch-writing", "JDBC");
+    jpaProperties.put("eclipselink.jdbc.batch-writing.size", batchSize);
+    jpaProperties.put("hibernate.jdbc.batch_size", batchSize);
+    jpaProperties.put("hibernate.order_inserts", "true");
+    return Persistence.createEntityManagerFactory(persistenceName, jpaProperties);
+  }
+
   private boolean isJpaAnnotated(Class<?> clz) {
     return clz.getAnnotation(Entity.class) != null;
   }
@@ -19,27 +19,84 @@
 package org.apache.olingo.odata2.janos.processor.core.data.store;
 
 import org.apache.olingo.odata2.api.annotation.edm.EdmKey;
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.uri.expression.*;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
+import org.apache.olingo.odata2.janos.processor.api.data.store.Indexed;
+import org.apache.olingo.odata2.janos.processor.core.data.SkipToken;
+import org.apache.olingo.odata2.janos.processor.core.data.access.AnnotationValueAccess;
+import org.apache.olingo.odata2.janos.processor.core.expression.CompiledFilter;
+import org.apache.olingo.odata2.janos.processor.core.expression.CompiledOrderBy;
+import org.apache.olingo.odata2.janos.processor.core.expression.ExpressionValues;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
 import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
 
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- *
+ * In memory {@link DataStore}.
+ * <br/>
+ * For all {@link Indexed} annotated properties secondary indexes are maintained which are used
+ * to answer the <code>$filter</code> of a {@link #read(ReadOptions)} (if possible).
+ * For all single valued navigation properties a {@link RelationIndex} is maintained which is used
+ * to answer a {@link #readRelated(Field, Object)} and {@link #readAllRelated(Field, Collection)}
+ * (the targets of single valued navigations are looked up by their keys, see {@link #readAll(Collection)}).
+ * A <code>$orderby</code> (together with <code>$skip</code> and <code>$top</code>) is applied
+ * on the filtered result via a bounded top-k selection. Without an order the entries are paged in the order
+ * of their keys and a <code>$skiptoken</code> (see {@link SkipToken}) is resumed via binary search.
+ * <br/>
+ * The number of entries is maintained on each write, hence a {@link #count(ReadOptions)} without a filter
+ * is answered in constant time. A filter is counted like a {@link #read(ReadOptions)}: the entries found via
+ * the indexes are checked against the whole filter (an index is not authoritative, e.g. for an entry which was
+ * changed without an update).
+ * <br/>
+ * The store is backed by a {@link ConcurrentHashMap}: reads do not block and writes are only
+ * serialized per key (the indexes of an entry are updated within the same atomic map operation).
+ * <br/>
+ * Collection reads ({@link #read()} and not filtered {@link #read(ReadOptions)}) return an immutable snapshot
+ * of the store. Each write publishes a new version; the snapshot for a version is created once (by the
+ * first reader after a write) and then shared by all readers until the next write. Creating a snapshot copies
+ * all values, hence a collection read after each write costs O(n) (as each collection read did before the
+ * snapshots were shared); reads without a write in between do not copy.
  */
 public class InMemoryDataStore<T> implements DataStore<T> {
 
   private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
-  private final Map<KeyElement, T> dataStore;
+  private static final AnnotationValueAccess VALUE_ACCESS = new AnnotationValueAccess();
+  private final ConcurrentMap<KeyElement, T> dataStore;
   private final Class<T> dataTypeClass;
   private final KeyAccess keyAccess;
+  private final Map<String, PropertyIndex<KeyElement>> indexes;
+  private final Map<Field, RelationIndex<KeyElement>> relationIndexes;
+  private final AtomicLong version = new AtomicLong();
+  /** number of entries (maintained within the atomic map operations of the writes) */
+  private final AtomicInteger size = new AtomicInteger();
+  private volatile Snapshot<T> snapshot = new Snapshot<>(0, Collections.emptyList());
+
+  /**
+   * Immutable point-in-time view of all values for a version of the store.
+   */
+  private static class Snapshot<T> {
+    private final long version;
+    private final List<T> values;
+    /** values in order of their keys (created on first use) */
+    private volatile List<T> valuesByKey;
+
+    Snapshot(final long version, final List<T> values) {
+      this.version = version;
+      this.values = values;
+    }
+  }
 
   private static class InMemoryDataStoreHolder {
     private static final Map<Class<?>, InMemoryDataStore<?>> c2ds = new HashMap<>();
@@ -67,14 +124,12 @@ public class InMemoryDataStore<T> implements DataStore<T> {
     return (InMemoryDataStore<T>) InMemoryDataStoreHolder.getInstance(clazz, !keepExisting);
   }
 
-  private InMemoryDataStore(final Map<KeyElement, T> wrapStore, final Class<T> clz) throws DataStoreException {
-    dataStore = Collections.synchronizedMap(wrapStore);
+  private InMemoryDataStore(final Class<T> clz) throws DataStoreException {
+    dataStore = new ConcurrentHashMap<>();
     dataTypeClass = clz;
     keyAccess = new KeyAccess(clz);
-  }
-
-  private InMemoryDataStore(final Class<T> clz) throws DataStoreException {
-    this(new HashMap<>(), clz);
+    indexes = PropertyIndex.createIndexes(clz);
+    relationIndexes = RelationIndex.createIndexes(clz);
   }
 
   @Override
@@ -104,12 +159,353 @@ public class InMemoryDataStore<T> implements DataStore<T> {
 
   @Override
   public Collection<T> read() {
-    return Collections.unmodifiableCollection(dataStore.values());
+    return getSnapshot().values;
+  }
+
+  @Override
+  public Collection<T> readAll(final Collection<?> objects) {
+    Set<KeyElement> keys = new LinkedHashSet<>();
+    for (Object object : objects) {
+      if (!dataTypeClass.isInstance(object)) {
+        return null;
+      }
+      keys.add(getKeys(dataTypeClass.cast(object)));
+    }
+    List<T> result = new ArrayList<>(keys.size());
+    for (KeyElement key : keys) {
+      T value = dataStore.get(key);
+      if (value != null) {
+        result.add(value);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public Collection<T> readRelated(final Field field, final Object referencedObject) {
+    return readAllRelated(field, Collections.singleton(referencedObject));
+  }
+
+  @Override
+  public Collection<T> readAllRelated(final Field field, final Collection<?> referencedObjects) {
+    RelationIndex<KeyElement> index = relationIndexes.get(field);
+    if (index == null) {
+      return null;
+    }
+    Set<KeyElement> keys = new HashSet<>();
+    for (Object referencedObject : referencedObjects) {
+      Set<KeyElement> referencingKeys = index.lookup(referencedObject);
+      if (referencingKeys == null) {
+        return null;
+      }
+      keys.addAll(referencingKeys);
+    }
+    List<T> result = new ArrayList<>(keys.size());
+    for (KeyElement key : keys) {
+      T value = dataStore.get(key);
+      if (value != null) {
+        result.add(value);
+      }
+    }
+    return result;
+  }
+
+  private Snapshot<T> getSnapshot() {
+    final Snapshot<T> current = snapshot;
+    // read the version before the values are copied, hence the copy contains at least all writes of this version
+    final long currentVersion = version.get();
+    if (current.version == currentVersion) {
+      return current;
+    }
+    final Snapshot<T> created =
+        new Snapshot<>(currentVersion, Collections.unmodifiableList(new ArrayList<>(dataStore.values())));
+    snapshot = created;
+    return created;
+  }
+
+  private List<T> getValuesByKey(final Snapshot<T> current) throws ODataException {
+    List<T> valuesByKey = current.valuesByKey;
+    if (valuesByKey == null) {
+      valuesByKey = Collections.unmodifiableList(sortByKey(current.values));
+      current.valuesByKey = valuesByKey;
+    }
+    return valuesByKey;
+  }
+
+  private List<T> sortByKey(final Collection<T> values) throws ODataException {
+    List<Map.Entry<Object[], T>> entries = new ArrayList<>(values.size());
+    for (T value : values) {
+      entries.add(new AbstractMap.SimpleImmutableEntry<>(keyAccess.getNormalizedKeyValues(value), value));
+    }
+    entries.sort((first, second) -> SkipToken.compareKeys(first.getKey(), second.getKey()));
+    List<T> result = new ArrayList<>(entries.size());
+    for (Map.Entry<Object[], T> entry : entries) {
+      result.add(entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Publish a new version after a write (must be called after the change is visible in the map).
+   */
+  private void publish() {
+    version.incrementAndGet();
   }
 
   @Override
   public ReadResult<T> read(ReadOptions readOptions) {
-    return ReadResult.forResult(new ArrayList<>(dataStore.values())).build();
+    final ReadResult<T> filtered = readFiltered(readOptions);
+    if (readOptions.getFilter() != null && !filtered.isFilterApplied()) {
+      // order, skip and top can only be applied on the filtered result
+      return filtered;
+    } else if (readOptions.getOrderBy() != null) {
+      return readOrdered(readOptions, filtered);
+    } else if (readOptions.getSkipToken() != null || readOptions.getSkip() != null
+        || readOptions.getTop() != null) {
+      return readPage(readOptions, filtered);
+    }
+    return filtered;
+  }
+
+  private ReadResult<T> readFiltered(final ReadOptions readOptions) {
+    final FilterExpression filter = readOptions.getFilter();
+    if (filter != null && !indexes.isEmpty()) {
+      try {
+        final CompiledFilter compiledFilter = CompiledFilter.compile(filter, VALUE_ACCESS);
+        Set<KeyElement> keys = lookup(filter.getExpression());
+        if (keys != null) {
+          // the index lookup can return more entries than necessary (e.g. for an 'and' with not indexed
+          // properties or entries which were deleted in the meantime), hence the whole filter is applied
+          // on the found entries
+          List<T> result = new ArrayList<>(keys.size());
+          for (KeyElement key : keys) {
+            T object = dataStore.get(key);
+            if (compiledFilter.matches(object)) {
+              result.add(object);
+            }
+          }
+          return ReadResult.forResult(result).filterApplied().build();
+        }
+      } catch (ODataException e) {
+        // filter can not be handled via indexes, hence it is applied by the caller
+      }
+    }
+    return ReadResult.forResult(getSnapshot().values).build();
+  }
+
+  /**
+   * Apply <code>$skiptoken</code>, <code>$skip</code> and <code>$top</code> (without an order) on the filtered
+   * result. The entries are paged in the order of their keys; a page is resumed via a binary search for
+   * the key values of the skip token on the entries sorted by key (which is cached for not filtered reads).
+   *
+   * @param readOptions the read options
+   * @param filtered the filtered result
+   * @return the requested page (or the filtered result if the skip token can not be handled)
+   */
+  private ReadResult<T> readPage(final ReadOptions readOptions, final ReadResult<T> filtered) {
+    try {
+      final Object[] resumeKeys;
+      if (readOptions.getSkipToken() == null) {
+        resumeKeys = null;
+      } else {
+        final SkipToken token = SkipToken.parse(readOptions.getSkipToken());
+        resumeKeys = token == null ? null : token.getValues(keyAccess.keyNames, keyAccess.keyTypes);
+        if (resumeKeys == null) {
+          // token in a not supported format, hence paging is applied by the caller
+          return filtered;
+        }
+      }
+      final boolean shared = !filtered.isFilterApplied();
+      final List<T> sorted = shared ? getValuesByKey(getSnapshot()) : sortByKey(filtered.getResult());
+      int from = resumeKeys == null ? 0 : SkipToken.resumeIndex(sorted.size(),
+          index -> SkipToken.compareKeys(keyAccess.getNormalizedKeyValues(sorted.get(index)), resumeKeys));
+      final Integer skip = readOptions.getSkip();
+      if (skip != null && skip > 0) {
+        from = (int) Math.min((long) from + skip, sorted.size());
+      }
+      final Integer top = readOptions.getTop();
+      final boolean topApplied = top != null && top > 0;
+      final int to = topApplied ? (int) Math.min((long) from + top, sorted.size()) : sorted.size();
+
+      final List<T> page = sorted.subList(from, to);
+      ReadResult.Builder<T> builder = shared ? ReadResult.forResult(page) : ReadResult.fromResult(filtered, page);
+      builder.skipApplied();
+      return topApplied ? builder.topApplied().build() : builder.build();
+    } catch (ODataException e) {
+      // paging can not be handled, hence it is applied by the caller
+      return filtered;
+    }
+  }
+
+  /**
+   * Apply the <code>$orderby</code> (and with it <code>$skip</code> and <code>$top</code>) on the filtered result.
+   * For a <code>$top</code> only the first <code>$skip + $top</code> entries are kept in a bounded heap
+   * instead of sorting the whole result. A <code>$skiptoken</code> together with an order is applied by the caller.
+   *
+   * @param readOptions the read options
+   * @param filtered the filtered result
+   * @return the ordered result (or the filtered result if the order can not be applied)
+   */
+  private ReadResult<T> readOrdered(final ReadOptions readOptions, final ReadResult<T> filtered) {
+    final OrderByExpression orderBy = readOptions.getOrderBy();
+    if (orderBy == null) {
+      return filtered;
+    }
+    try {
+      final CompiledOrderBy compiledOrderBy = CompiledOrderBy.compile(orderBy, VALUE_ACCESS);
+      final Collection<T> values = filtered.getResult();
+      final Integer skip = readOptions.getSkip();
+      final Integer top = readOptions.getTop();
+      if (readOptions.getSkipToken() != null || (skip == null && top == null)) {
+        return ReadResult.fromResult(filtered, compiledOrderBy.sort(values)).orderApplied().build();
+      }
+      final int skipCount = skip == null || skip < 0 ? 0 : skip;
+      final List<T> result;
+      if (top != null && top > 0) {
+        result = compiledOrderBy.top(values, skipCount, top);
+      } else {
+        List<T> sorted = compiledOrderBy.sort(values);
+        result = sorted.subList(Math.min(skipCount, sorted.size()), sorted.size());
+      }
+      ReadResult.Builder<T> builder = ReadResult.fromResult(filtered, result).orderApplied().skipApplied();
+      return top != null && top > 0 ? builder.topApplied().build() : builder.build();
+    } catch (ODataException e) {
+      // order can not be handled, hence it is applied by the caller
+      return filtered;
+    }
+  }
+
+  @Override
+  public Integer count(final ReadOptions readOptions) {
+    final FilterExpression filter = readOptions.getFilter();
+    if (filter == null) {
+      return size.get();
+    }
+    try {
+      final CompiledFilter compiledFilter = CompiledFilter.compile(filter, VALUE_ACCESS);
+      // as for a read the entries found via the indexes are checked against the whole filter
+      final Set<KeyElement> keys = indexes.isEmpty() ? null : lookup(filter.getExpression());
+      int count = 0;
+      if (keys == null) {
+        for (T object : dataStore.values()) {
+          if (compiledFilter.matches(object)) {
+            count++;
+          }
+        }
+      } else {
+        for (KeyElement key : keys) {
+          T object = dataStore.get(key);
+          if (object != null && compiledFilter.matches(object)) {
+            count++;
+          }
+        }
+      }
+      return count;
+    } catch (ODataException e) {
+      // filter can not be handled, hence the caller has to read and count the entries
+      return null;
+    }
+  }
+
+  /**
+   * Get the keys of all entries which match given filter expression based on the indexes.
+   *
+   * @param expression the filter expression
+   * @return the keys of all (potentially) matching entries or <code>null</code> if the expression
+   * can not be answered by the indexes
+   * @throws ODataException if a literal value can not be converted
+   */
+  private Set<KeyElement> lookup(final CommonExpression expression) throws ODataException {
+    if (expression.getKind() != ExpressionKind.BINARY) {
+      return null;
+    }
+    final BinaryExpression binaryExpression = (BinaryExpression) expression;
+    switch (binaryExpression.getOperator()) {
+    case AND:
+      Set<KeyElement> left = lookup(binaryExpression.getLeftOperand());
+      Set<KeyElement> right = lookup(binaryExpression.getRightOperand());
+      if (left == null || right == null) {
+        return left == null ? right : left;
+      }
+      if (left.size() > right.size()) {
+        right.retainAll(left);
+        return right;
+      }
+      left.retainAll(right);
+      return left;
+    case OR:
+      Set<KeyElement> first = lookup(binaryExpression.getLeftOperand());
+      if (first == null) {
+        return null;
+      }
+      Set<KeyElement> second = lookup(binaryExpression.getRightOperand());
+      if (second == null) {
+        return null;
+      }
+      first.addAll(second);
+      return first;
+    case EQ:
+    case LT:
+    case LE:
+    case GT:
+    case GE:
+      return lookupComparison(binaryExpression);
+    default:
+      return null;
+    }
+  }
+
+  private Set<KeyElement> lookupComparison(final BinaryExpression expression) throws ODataException {
+    return queryIndex(expression, PropertyIndex::lookup);
+  }
+
+  /**
+   * Query of a {@link PropertyIndex} for a comparison.
+   */
+  private interface IndexQuery<R> {
+    R query(PropertyIndex<KeyElement> index, BinaryOperator operator, Object literalValue);
+  }
+
+  /**
+   * Query the index of the property of given comparison (<code>property operator literal</code>
+   * or <code>literal operator property</code>).
+   *
+   * @param expression the comparison expression
+   * @param query the query of the index
+   * @return the result of the query or <code>null</code> if the comparison can not be answered by an index
+   * @throws ODataException if the literal value can not be converted
+   */
+  private <R> R queryIndex(final BinaryExpression expression, final IndexQuery<R> query) throws ODataException {
+    switch (expression.getOperator()) {
+    case EQ:
+    case LT:
+    case LE:
+    case GT:
+    case GE:
+      break;
+    default:
+      return null;
+    }
+    CommonExpression property = expression.getLeftOperand();
+    CommonExpression literal = expression.getRightOperand();
+    BinaryOperator operator = expression.getOperator();
+    if (property.getKind() == ExpressionKind.LITERAL && literal.getKind() == ExpressionKind.PROPERTY) {
+      // literal on the left side (e.g. '5 lt Age'), hence switch sides
+      property = expression.getRightOperand();
+      literal = expression.getLeftOperand();
+      operator = operator == BinaryOperator.LT ? BinaryOperator.GT :
+          operator == BinaryOperator.LE ? BinaryOperator.GE :
+          operator == BinaryOperator.GT ? BinaryOperator.LT :
+          operator == BinaryOperator.GE ? BinaryOperator.LE : operator;
+    }
+    if (property.getKind() != ExpressionKind.PROPERTY || literal.getKind() != ExpressionKind.LITERAL) {
+      return null;
+    }
+    PropertyIndex<KeyElement> index = indexes.get(((PropertyExpression) property).getEdmProperty().getName());
+    if (index == null) {
+      return null;
+    }
+    return query.query(index, operator, ExpressionValues.literalValue((LiteralExpression) literal));
   }
 
   @Override
@@ -118,33 +514,73 @@ public class InMemoryDataStore<T> implements DataStore<T> {
     return create(object, keyElement);
   }
 
-    private T create(final T object, final KeyElement keyElement) throws DataStoreException {
-      synchronized (dataStore) {
-        final boolean replaceKeys = dataStore.containsKey(keyElement);
-        if (keyElement.keyValuesMissing() || replaceKeys) {
-          KeyElement newKey = createSetAndGetKeys(object, replaceKeys);
-          return this.create(object, newKey);
-        }
-        dataStore.put(keyElement, object);
-      }
-      return object;
+  /**
+   * Atomic create-if-absent.
+   * If key values are missing or an entry with the same keys already exists,
+   * new keys are generated (and set at the object) until the object could be stored.
+   */
+  private T create(final T object, final KeyElement keyElement) throws DataStoreException {
+    KeyElement currentKey = keyElement;
+    if (currentKey.keyValuesMissing()) {
+      currentKey = createSetAndGetKeys(object, false);
     }
+    while (!putIfAbsent(currentKey, object)) {
+      currentKey = createSetAndGetKeys(object, true);
+    }
+    publish();
+    return object;
+  }
+
+  private boolean putIfAbsent(final KeyElement keyElement, final T object) {
+    final boolean[] created = new boolean[1];
+    dataStore.computeIfAbsent(keyElement, key -> {
+      updateIndexes(key, object);
+      size.incrementAndGet();
+      created[0] = true;
+      return object;
+    });
+    return created[0];
+  }
 
   @Override
   public T update(final T object) {
     KeyElement keyElement = getKeys(object);
-    synchronized (dataStore) {
-      dataStore.remove(keyElement);
-      dataStore.put(keyElement, object);
-    }
+    dataStore.compute(keyElement, (key, existing) -> {
+      updateIndexes(key, object);
+      if (existing == null) {
+        size.incrementAndGet();
+      }
+      return object;
+    });
+    publish();
     return object;
   }
 
   @Override
   public T delete(final T object) {
     KeyElement keyElement = getKeys(object);
-    synchronized (dataStore) {
-      return dataStore.remove(keyElement);
+    final List<T> removed = new ArrayList<>(1);
+    dataStore.computeIfPresent(keyElement, (key, existing) -> {
+      for (PropertyIndex<KeyElement> index : indexes.values()) {
+        index.remove(key);
+      }
+      for (RelationIndex<KeyElement> index : relationIndexes.values()) {
+        index.remove(key);
+      }
+      removed.add(existing);
+      size.decrementAndGet();
+      return null;
+    });
+    publish();
+    return removed.isEmpty() ? null : removed.get(0);
+  }
+
+  private void updateIndexes(final KeyElement keyElement, final T object) {
+    for (PropertyIndex<KeyElement> index : indexes.values()) {
+      index.add(keyElement, object);
+    }
+    for (RelationIndex<KeyElement> index : relationIndexes.values()) {
+      index.add(keyElement, object);
     }
   }
   
@@ -190,7 +626,7 @@ public class InMemoryDataStore<T> implements DataStore<T> {
   }
 
 
-  private class KeyElement {
+  private static class KeyElement {
     private int cachedHashCode = 42;
     private final List<Object> keyValues;
 
@@ -236,6 +672,8 @@ public class InMemoryDataStore<T> implements DataStore<T> {
 
   private class KeyAccess {
     final List<Field> keyFields;
+    final List<String> keyNames = new ArrayList<>();
+    final List<EdmSimpleType> keyTypes = new ArrayList<>();
     final AtomicInteger idCounter = new AtomicInteger(1);
 
     KeyAccess(final Class<?> clazz) throws DataStoreException {
@@ -243,6 +681,19 @@ public class InMemoryDataStore<T> implements DataStore<T> {
       if (keyFields.isEmpty()) {
         throw new DataStoreException("No EdmKey annotated fields found for class " + clazz);
       }
+      for (Field field : keyFields) {
+        keyNames.add(ANNOTATION_HELPER.getPropertyName(field));
+        keyTypes.add(ANNOTATION_HELPER.getEdmSimpleType(field));
+      }
+    }
+
+    Object[] getNormalizedKeyValues(final T object) throws ODataException {
+      Object[] values = new Object[keyFields.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = ExpressionValues.normalize(ClassHelper.getFieldValue(object, keyFields.get(i)),
+            keyTypes.get(i), null);
+      }
+      return values;
     }
 
     KeyElement getKeyValues(final T object) {
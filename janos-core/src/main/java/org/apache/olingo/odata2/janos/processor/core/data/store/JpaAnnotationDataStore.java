@@ -16,40 +16,83 @@
 package org.apache.olingo.odata2.janos.processor.core.data.store;
 
 import org.apache.olingo.odata2.api.annotation.edm.EdmKey;
+import org.apache.olingo.odata2.api.annotation.edm.EdmMediaResourceMimeType;
+import org.apache.olingo.odata2.api.annotation.edm.EdmMediaResourceSource;
+import org.apache.olingo.odata2.api.annotation.edm.EdmNavigationProperty;
+import org.apache.olingo.odata2.api.annotation.edm.EdmProperty;
+import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
+import org.apache.olingo.odata2.janos.processor.core.data.SkipToken;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
 import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
+import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
 
 import javax.persistence.*;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
- *
+ * DataStore for JPA entities.
+ * <br/>
+ * The store uses the <code>EntityManager</code> of the active {@link JpaRequestScope} (hence one per request)
+ * or (if no request scope is active) an <code>EntityManager</code> per operation.
+ * Each write operation is executed in its own transaction.
+ * <br/>
+ * A {@link #read(ReadOptions)} in a deterministic order is streamed: the entities are read lazily in chunks of
+ * {@link #CHUNK_SIZE} entities (one query per chunk) while the result is consumed.
+ * For a selection of properties (see {@link ReadOptions#getSelect()}) only the selected columns are queried and
+ * the entities are created from the rows, hence not selected (e.g. large binary) properties are not loaded.
  */
 public class JpaAnnotationDataStore<T> implements DataStore<T> {
 
   public static final String DEFAULT_PERSISTENCE_NAME = "JpaAnnotationDataStorePersistence";
   public static final String PERSISTENCE_NAME = "JpaAnnotationDataStorePersistenceNameSystemProperty";
+  /** Number of writes within a unit of work after which the persistence context is flushed */
+  public static final int FLUSH_SIZE = 100;
+  /** Maximum number of values in the <code>IN</code> condition of a query */
+  public static final int IN_SIZE = 500;
+  /** Number of entities which are read with one query of a streamed read */
+  public static final int CHUNK_SIZE = 500;
 
   private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
 
   protected Class<T> dataTypeClass;
-  protected EntityManager entityManager;
+  protected EntityManagerFactory entityManagerFactory;
 
   public static <T> DataStore<T> createInstance(Class<T> clz) {
     return createInstance(clz, DEFAULT_PERSISTENCE_NAME);
   }
 
   public static <T> DataStore<T> createInstance(Class<T> clz, String persistenceName) {
-    return new JpaAnnotationDataStore<>(clz, persistenceName);
+    return createInstance(clz, Persistence.createEntityManagerFactory(persistenceName));
+  }
+
+  /**
+   * Create a data store which uses the given (shared) <code>EntityManagerFactory</code>.
+   *
+   * @param clz the entity class
+   * @param entityManagerFactory the factory for the entity class
+   * @return the data store
+   */
+  public static <T> DataStore<T> createInstance(Class<T> clz, EntityManagerFactory entityManagerFactory) {
+    return new JpaAnnotationDataStore<>(clz, entityManagerFactory);
   }
 
-  private JpaAnnotationDataStore(final Class<T> clz, String persistenceName) {
-    EntityManagerFactory emf = Persistence.createEntityManagerFactory(persistenceName);
-    entityManager = emf.createEntityManager();
+  private JpaAnnotationDataStore(final Class<T> clz, EntityManagerFactory entityManagerFactory) {
+    this.entityManagerFactory = entityManagerFactory;
     this.dataTypeClass = clz;
   }
 
@@ -74,38 +117,42 @@ public class JpaAnnotationDataStore<T> implements DataStore<T> {
 
   @Override
   public T create(T object) throws DataStoreException {
-    EntityTransaction t = this.entityManager.getTransaction();
-    try {
-      t.begin();
-      this.entityManager.persist(object);
-      this.entityManager.flush();
-      t.commit();
-    } catch(Exception e) {
-      if(t != null && t.isActive()) {
-        t.rollback();
+    return write(entityManager -> {
+      reattachReferences(entityManager, object);
+      entityManager.persist(object);
+      return object;
+    }, object);
+  }
+
+  /**
+   * Replace the detached entities which are referenced by the single valued navigation fields of the given
+   * new entity with their managed instances (if they exist in the database).
+   * The persistence context of the request is cleared periodically (see {@link #write(EntityManagerWork, Object)}),
+   * hence a previously written or read entity can be detached (and must not be passed to <code>persist</code>).
+   * Updates and deletes merge the given entity, hence they do not depend on managed references.
+   */
+  private void reattachReferences(EntityManager entityManager, T object) {
+    for (Field field : ANNOTATION_HELPER.getAnnotatedFields(dataTypeClass, EdmNavigationProperty.class)) {
+      Object related = ClassHelper.getFieldValue(object, field);
+      if (related == null || related instanceof Collection || related.getClass().isArray()
+          || entityManager.contains(related)) {
+        continue;
+      }
+      Object key = ANNOTATION_HELPER.getValueForField(related, EdmKey.class);
+      Object managed = key == null ? null : entityManager.find(related.getClass(), key);
+      if (managed != null) {
+        ClassHelper.setFieldValue(object, field, managed);
       }
     }
-    
-    return object;
   }
 
   @Override
-  public T delete(T object) {
-    EntityTransaction t = this.entityManager.getTransaction();
-    try {
-      t.begin();
-      object = this.entityManager.merge(object);
-      this.entityManager.remove(object);
-      this.entityManager.flush();
-      t.commit();
-
-      return object;
-    } catch(Exception e) {
-      if(t != null && t.isActive()) {
-        t.rollback();
-      }
-    }
-    return null;
+  public T delete(T object) throws DataStoreException {
+    return write(entityManager -> {
+      T merged = entityManager.merge(object);
+      entityManager.remove(merged);
+      return merged;
+    }, null);
   }
 
   @Override
@@ -116,46 +163,461 @@ public class JpaAnnotationDataStore<T> implements DataStore<T> {
   @Override
   public T read(T object) {
     Object key = ANNOTATION_HELPER.getValueForField(object, EdmKey.class);
-    return this.entityManager.find(dataTypeClass, key);
+    if (key == null) {
+      return null;
+    }
+    return withEntityManager(entityManager -> entityManager.find(dataTypeClass, key));
   }
 
   @Override
   public Collection<T> read() {
-    Query query = entityManager.createQuery("SELECT t FROM " + dataTypeClass.getSimpleName() + " t");
-    return query.getResultList();
+    return withEntityManager(entityManager -> {
+      Query query = entityManager.createQuery("SELECT t FROM " + dataTypeClass.getSimpleName() + " t");
+      return (Collection<T>) query.getResultList();
+    });
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br/>
+   * The objects are read with one query (per {@link #IN_SIZE} objects) on their key,
+   * hence this is only supported for entities with a single key field.
+   */
+  @Override
+  public Collection<T> readAll(Collection<?> objects) {
+    List<Field> keyFields = ANNOTATION_HELPER.getAnnotatedFields(dataTypeClass, EdmKey.class);
+    if (keyFields.size() != 1) {
+      return null;
+    }
+    Set<Object> keys = new LinkedHashSet<>();
+    for (Object object : objects) {
+      Object key = ANNOTATION_HELPER.getValueForField(object, EdmKey.class);
+      if (key == null) {
+        return null;
+      }
+      keys.add(key);
+    }
+    List<Object> keyList = new ArrayList<>(keys);
+    String jpql = "SELECT t FROM " + dataTypeClass.getSimpleName() + " t WHERE t."
+        + keyFields.get(0).getName() + " IN ?1";
+    try {
+      return withEntityManager(entityManager -> {
+        List<T> result = new ArrayList<>();
+        for (int start = 0; start < keyList.size(); start += IN_SIZE) {
+          Query query = entityManager.createQuery(jpql);
+          query.setParameter(1, keyList.subList(start, Math.min(start + IN_SIZE, keyList.size())));
+          result.addAll((Collection<T>) query.getResultList());
+        }
+        return result;
+      });
+    } catch (PersistenceException | IllegalArgumentException e) {
+      // the key is no persistent field, hence the caller has to read the objects one by one
+      return null;
+    }
+  }
+
+  @Override
+  public Collection<T> readRelated(Field field, Object referencedObject) {
+    if (ANNOTATION_HELPER.getValueForField(referencedObject, EdmKey.class) == null) {
+      return null;
+    }
+    try {
+      return withEntityManager(entityManager -> {
+        Query query = entityManager.createQuery("SELECT t FROM " + dataTypeClass.getSimpleName() + " t WHERE t."
+            + field.getName() + " = ?1");
+        query.setParameter(1, referencedObject);
+        return (Collection<T>) query.getResultList();
+      });
+    } catch (PersistenceException | IllegalArgumentException e) {
+      // the field is no persistent relation, hence the caller has to check all objects
+      return null;
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <br/>
+   * The objects are read with one query (per {@link #IN_SIZE} referenced objects) on the key of the
+   * referenced objects, hence this is only supported for referenced objects with a single key field.
+   */
+  @Override
+  public Collection<T> readAllRelated(Field field, Collection<?> referencedObjects) {
+    List<Field> keyFields = ANNOTATION_HELPER.getAnnotatedFields(field.getType(), EdmKey.class);
+    if (keyFields.size() != 1) {
+      return null;
+    }
+    List<Object> keys = new ArrayList<>(referencedObjects.size());
+    for (Object referencedObject : referencedObjects) {
+      Object key = ANNOTATION_HELPER.getValueForField(referencedObject, EdmKey.class);
+      if (key == null) {
+        return null;
+      }
+      keys.add(key);
+    }
+    String jpql = "SELECT t FROM " + dataTypeClass.getSimpleName() + " t WHERE t." + field.getName()
+        + "." + keyFields.get(0).getName() + " IN ?1";
+    try {
+      return withEntityManager(entityManager -> {
+        List<T> result = new ArrayList<>();
+        for (int start = 0; start < keys.size(); start += IN_SIZE) {
+          Query query = entityManager.createQuery(jpql);
+          query.setParameter(1, keys.subList(start, Math.min(start + IN_SIZE, keys.size())));
+          result.addAll((Collection<T>) query.getResultList());
+        }
+        return result;
+      });
+    } catch (PersistenceException | IllegalArgumentException e) {
+      // the field is no persistent relation, hence the caller has to check all objects
+      return null;
+    }
   }
 
   @Override
   public ReadResult<T> read(ReadOptions readOptions) {
     ReadResult.Builder<T> result = ReadResult.start();
-    Query query = entityManager.createQuery("SELECT t FROM " + dataTypeClass.getSimpleName() + " t");
-    if(readOptions.getTop() != null) {
-      query.setMaxResults(readOptions.getTop());
-      result.topApplied();
+    JpqlTranslator translator = new JpqlTranslator(dataTypeClass, "t");
+    // skip token, skip and top can only be applied if all options before them are applied
+    boolean pageable = true;
+
+    StringBuilder jpql = new StringBuilder(" FROM ").append(dataTypeClass.getSimpleName()).append(" t");
+    String where = null;
+    if (readOptions.getFilter() != null) {
+      where = translate(() -> translator.where(readOptions.getFilter()));
+      if (where == null) {
+        pageable = false;
+      } else {
+        result.filterApplied();
+      }
     }
-    if(readOptions.getSkip() != null) {
-      query.setFirstResult(readOptions.getSkip());
-      result.skipApplied();
+    // without an order entries are paged in the order of their keys
+    String orderBy = null;
+    if (readOptions.getOrderBy() != null) {
+      orderBy = translate(() -> translator.orderBy(readOptions.getOrderBy()));
+      if (orderBy == null) {
+        pageable = false;
+      } else {
+        result.orderApplied();
+      }
+    }
+    if (orderBy == null) {
+      // the entries are (as for paging) in the order of their keys
+      orderBy = translate(() -> translator.orderBy(null));
+      if (orderBy != null && !orderBy.isEmpty() && readOptions.getOrderBy() == null) {
+        result.orderApplied();
+      }
+    }
+    // only the used properties are read if the filter and the order are not evaluated by the caller
+    final List<Field> projection = pageable ? getProjection(readOptions.getSelect()) : null;
+    jpql.insert(0, projection == null ? "SELECT t" : "SELECT " + getColumns(projection));
+    if (readOptions.getSkipToken() != null) {
+      // a skip token is resumed via its key values only in the order of the keys
+      SkipToken skipToken = SkipToken.parse(readOptions.getSkipToken());
+      String keySet = pageable && readOptions.getOrderBy() == null && skipToken != null
+          ? translate(() -> translator.keySet(skipToken)) : null;
+      if (keySet == null) {
+        pageable = false;
+      } else {
+        where = where == null ? keySet : where + " AND " + keySet;
+      }
+    }
+    if (where != null) {
+      jpql.append(" WHERE ").append(where);
+    }
+    if (orderBy != null && !orderBy.isEmpty()) {
+      jpql.append(" ORDER BY ").append(orderBy);
     }
 
-    return result.values(query.getResultList()).build();
+    if (pageable) {
+      if (readOptions.getTop() != null) {
+        result.topApplied();
+      }
+      if (readOptions.getSkip() != null || readOptions.getSkipToken() != null) {
+        result.skipApplied();
+      }
+    }
+    final Integer skip = pageable ? readOptions.getSkip() : null;
+    final Integer top = pageable ? readOptions.getTop() : null;
+    try {
+      if (orderBy == null || orderBy.isEmpty()) {
+        // without a deterministic order the entries can not be read in chunks
+        return result.values(readChunk(jpql.toString(), translator.getParameters(), skip, top, projection)).build();
+      }
+      return result.values(readChunked(jpql.toString(), translator.getParameters(), skip, top, projection)).build();
+    } catch (PersistenceException | IllegalArgumentException e) {
+      // the query is not supported by the database, hence all options are applied by the caller
+      return ReadResult.<T>start().values(read()).build();
+    }
   }
 
+  /**
+   * {@inheritDoc}
+   * <br/>
+   * The entities are counted by the database (<code>SELECT COUNT</code>) if the filter can be translated to JPQL.
+   */
   @Override
-  public T update(T object) {
-    EntityTransaction t = this.entityManager.getTransaction();
+  public Integer count(ReadOptions readOptions) {
+    JpqlTranslator translator = new JpqlTranslator(dataTypeClass, "t");
+    StringBuilder jpql = new StringBuilder("SELECT COUNT(t) FROM ").append(dataTypeClass.getSimpleName()).append(" t");
+    if (readOptions.getFilter() != null) {
+      String where = translate(() -> translator.where(readOptions.getFilter()));
+      if (where == null) {
+        return null;
+      }
+      jpql.append(" WHERE ").append(where);
+    }
     try {
-      t.begin();
-      object = this.entityManager.merge(object);
-      this.entityManager.flush();
-      t.commit();
+      return withEntityManager(entityManager -> {
+        Query query = entityManager.createQuery(jpql.toString());
+        List<Object> parameters = translator.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+          query.setParameter(i + 1, parameters.get(i));
+        }
+        return ((Number) query.getSingleResult()).intValue();
+      });
+    } catch (PersistenceException | IllegalArgumentException e) {
+      // the query is not supported by the database, hence the caller has to read and count the entities
+      return null;
+    }
+  }
 
-      return object;
-    } catch(Exception e) {
-      if(t != null && t.isActive()) {
-        t.rollback();
+  /**
+   * Read the entities of the given (ordered) query lazily in chunks of {@link #CHUNK_SIZE} entities.
+   * The first chunk is read immediately (hence errors of the query are thrown by this method).
+   * Before the next chunk is read the entities of the consumed chunk are detached
+   * (see {@link #releaseChunk(List, List)}),
+   * hence the persistence context of the request does not grow with the size of the result.
+   *
+   * @param jpql the query
+   * @param parameters the (positional) parameters of the query
+   * @param skip number of entities to skip (or <code>null</code>)
+   * @param top maximum number of entities (or <code>null</code>)
+   * @param projection the queried fields (or <code>null</code> if the entities are queried)
+   * @return stream of the entities
+   */
+  private Stream<T> readChunked(String jpql, List<Object> parameters, Integer skip, Integer top,
+      List<Field> projection) {
+    final int first = skip == null ? 0 : skip;
+    final List<T> firstChunk = readChunk(jpql, parameters, first, chunkSize(top, 0), projection);
+    Iterator<T> iterator = new Iterator<T>() {
+      private List<T> chunk = firstChunk;
+      private int index;
+      private int read = firstChunk.size();
+
+      @Override
+      public boolean hasNext() {
+        if (index < chunk.size()) {
+          return true;
+        }
+        // a not completely filled chunk is the last one
+        if (chunk.size() < CHUNK_SIZE || (top != null && read >= top)) {
+          return false;
+        }
+        releaseChunk(chunk, projection);
+        chunk = readChunk(jpql, parameters, first + read, chunkSize(top, read), projection);
+        index = 0;
+        read += chunk.size();
+        return !chunk.isEmpty();
+      }
+
+      @Override
+      public T next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return chunk.get(index++);
+      }
+    };
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED), false);
+  }
+
+  /**
+   * Detach the entities of a consumed chunk from the persistence context of the request scope.
+   * Only the entities of the chunk are detached (instead of clearing the persistence context), hence
+   * the other entities of the request (e.g. read by an expand or by a former read) stay managed.
+   * Within a unit of work the persistence context holds the not yet committed writes and nothing is detached.
+   * Without a request scope each chunk is read with its own <code>EntityManager</code> and projected entities
+   * are not managed at all.
+   *
+   * @param chunk the consumed chunk
+   * @param projection the queried fields (or <code>null</code> if the entities are queried)
+   */
+  private void releaseChunk(List<T> chunk, List<Field> projection) {
+    JpaRequestScope scope = JpaRequestScope.current();
+    if (projection == null && scope != null && !scope.isUnitOfWork()) {
+      EntityManager entityManager = scope.getEntityManager(entityManagerFactory);
+      for (T entity : chunk) {
+        entityManager.detach(entity);
+      }
+    }
+  }
+
+  private static int chunkSize(Integer top, int read) {
+    return top == null ? CHUNK_SIZE : Math.min(top - read, CHUNK_SIZE);
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<T> readChunk(String jpql, List<Object> parameters, Integer first, Integer max,
+      List<Field> projection) {
+    return withEntityManager(entityManager -> {
+      Query query = entityManager.createQuery(jpql);
+      for (int i = 0; i < parameters.size(); i++) {
+        query.setParameter(i + 1, parameters.get(i));
       }
+      if (max != null) {
+        query.setMaxResults(max);
+      }
+      if (first != null) {
+        query.setFirstResult(first);
+      }
+      return projection == null ? (List<T>) query.getResultList() : project(query.getResultList(), projection);
+    });
+  }
+
+  /**
+   * Get the fields which are queried for the given property names (see {@link ReadOptions#getSelect()}),
+   * which are the fields of the properties together with the key fields and the media resource fields.
+   *
+   * @param select names of the used properties (or <code>null</code>)
+   * @return the queried fields or <code>null</code> if all properties are used
+   */
+  private List<Field> getProjection(List<String> select) {
+    if (select == null) {
+      return null;
+    }
+    List<Field> projection = new ArrayList<>();
+    boolean all = true;
+    for (Field field : ANNOTATION_HELPER.getAnnotatedFields(dataTypeClass, EdmProperty.class)) {
+      if (select.contains(ANNOTATION_HELPER.getPropertyName(field))
+          || field.getAnnotation(EdmKey.class) != null
+          || field.getAnnotation(EdmMediaResourceMimeType.class) != null
+          || field.getAnnotation(EdmMediaResourceSource.class) != null) {
+        projection.add(field);
+      } else {
+        all = false;
+      }
+    }
+    return all || projection.isEmpty() ? null : projection;
+  }
+
+  private static String getColumns(List<Field> projection) {
+    StringBuilder columns = new StringBuilder();
+    for (Field field : projection) {
+      columns.append(columns.length() == 0 ? "t." : ", t.").append(field.getName());
+    }
+    return columns.toString();
+  }
+
+  /**
+   * Create the entities from the rows of a projection query (only the queried fields are set).
+   */
+  private List<T> project(List<?> rows, List<Field> projection) {
+    List<T> entities = new ArrayList<>(rows.size());
+    for (Object row : rows) {
+      // a query with a single column returns the values instead of arrays
+      Object[] values = projection.size() == 1 ? new Object[] {row} : (Object[]) row;
+      T entity = createInstance();
+      for (int i = 0; i < values.length; i++) {
+        ClassHelper.setFieldValue(entity, projection.get(i), values[i]);
+      }
+      entities.add(entity);
+    }
+    return entities;
+  }
+
+  /**
+   * Part of a query translated by a {@link JpqlTranslator}.
+   */
+  private interface Translation {
+    String translate() throws ODataException;
+  }
+
+  private static String translate(Translation translation) {
+    try {
+      return translation.translate();
+    } catch (ODataException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public T update(T object) throws DataStoreException {
+    return write(entityManager -> entityManager.merge(object), null);
+  }
+
+  /**
+   * Work which is executed with an <code>EntityManager</code>.
+   */
+  private interface EntityManagerWork<R> {
+    R execute(EntityManager entityManager);
+  }
+
+  /**
+   * Execute the given write work.
+   * Within a unit of work (see {@link JpaRequestScope#beginUnitOfWork()}) the work joins the transaction of the
+   * unit of work and the persistence context is flushed and cleared after each {@link #FLUSH_SIZE} writes (hence
+   * the statements can be sent in JDBC batches and the persistence context does not grow with the size of the
+   * unit of work), otherwise the work is executed (and committed) in its own transaction.
+   * <br/>
+   * After a clear the entities which were written before are detached. Later writes of the unit of work
+   * merge the given entities (updates and deletes) or replace detached references with the managed instances
+   * (creates, see {@link #reattachReferences(EntityManager, Object)}). Changes which are applied to a detached
+   * entity without writing it again (e.g. an entity which was only added to a not owning collection) are not
+   * persisted.
+   *
+   * @param work the write work
+   * @param failed the result if the work failed in its own transaction
+   * @return the result of the work
+   * @throws DataStoreException if the work failed within a unit of work
+   */
+  private <R> R write(EntityManagerWork<R> work, R failed) throws DataStoreException {
+    JpaRequestScope scope = JpaRequestScope.current();
+    if (scope != null && scope.isUnitOfWork()) {
+      EntityManager entityManager = scope.getEntityManager(entityManagerFactory);
+      try {
+        if (!entityManager.getTransaction().isActive()) {
+          entityManager.getTransaction().begin();
+        }
+        R result = work.execute(entityManager);
+        if (scope.countWrite() % FLUSH_SIZE == 0) {
+          entityManager.flush();
+          entityManager.clear();
+        }
+        return result;
+      } catch (PersistenceException e) {
+        throw new DataStoreException("Unable to write data of class '" + dataTypeClass + "'.", e);
+      }
+    }
+    return withEntityManager(entityManager -> {
+      EntityTransaction t = entityManager.getTransaction();
+      try {
+        t.begin();
+        R result = work.execute(entityManager);
+        entityManager.flush();
+        t.commit();
+        return result;
+      } catch(Exception e) {
+        if(t.isActive()) {
+          t.rollback();
+        }
+      }
+      return failed;
+    });
+  }
+
+  /**
+   * Execute the given work with the <code>EntityManager</code> of the active request scope
+   * or (if no request scope is active) with a new <code>EntityManager</code> which is closed afterwards.
+   */
+  private <R> R withEntityManager(EntityManagerWork<R> work) {
+    JpaRequestScope scope = JpaRequestScope.current();
+    if (scope != null) {
+      return work.execute(scope.getEntityManager(entityManagerFactory));
+    }
+    EntityManager entityManager = entityManagerFactory.createEntityManager();
+    try {
+      return work.execute(entityManager);
+    } finally {
+      JpaRequestScope.close(entityManager);
     }
-    return null;
   }
 }
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.PersistenceException;
+import javax.persistence.RollbackException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Scope of the <code>EntityManager</code>s which are used by the {@link JpaAnnotationDataStore}s
+ * during the processing of one request (on the current thread).
+ * <br/>
+ * An <code>EntityManager</code> is created on first use per <code>EntityManagerFactory</code> and is closed
+ * (after a still active transaction was rolled back and the persistence context was cleared) at the
+ * end of the request, hence no <code>EntityManager</code> is shared between concurrent requests and
+ * the persistence context does not grow over several requests.
+ * Scopes can be nested (e.g. for the parts of a batch request), the <code>EntityManager</code>s are
+ * closed at the end of the outermost scope.
+ * <br/>
+ * Within a unit of work (e.g. a change set or a deep insert) all writes of the data stores are executed
+ * in one transaction per <code>EntityManager</code>, which is committed (or rolled back) at the end of
+ * the outermost unit of work.
+ */
+public final class JpaRequestScope {
+
+  private static final ThreadLocal<JpaRequestScope> CURRENT = new ThreadLocal<>();
+
+  private final Map<EntityManagerFactory, EntityManager> entityManagers = new IdentityHashMap<>();
+  private int depth;
+  private int unitOfWorkDepth;
+  private int writes;
+  private boolean rollbackOnly;
+
+  private JpaRequestScope() {
+  }
+
+  /**
+   * Begin a request scope on the current thread (or enter the already active scope).
+   */
+  public static void begin() {
+    JpaRequestScope scope = CURRENT.get();
+    if (scope == null) {
+      scope = new JpaRequestScope();
+      CURRENT.set(scope);
+    }
+    scope.depth++;
+  }
+
+  /**
+   * End the request scope on the current thread.
+   * At the end of the outermost scope all <code>EntityManager</code>s of the scope are closed.
+   */
+  public static void end() {
+    JpaRequestScope scope = CURRENT.get();
+    if (scope != null && --scope.depth == 0) {
+      CURRENT.remove();
+      scope.close();
+    }
+  }
+
+  /**
+   * Begin a unit of work (within a new or the already active request scope).
+   * Units of work can be nested, only the outermost unit of work is committed.
+   */
+  public static void beginUnitOfWork() {
+    begin();
+    CURRENT.get().unitOfWorkDepth++;
+  }
+
+  /**
+   * Commit the current unit of work.
+   * If it is the outermost unit of work the transactions of all <code>EntityManager</code>s of the scope
+   * are committed (or rolled back if a nested unit of work was rolled back).
+   *
+   * @throws PersistenceException if a transaction could not be committed
+   * (all not yet committed transactions are rolled back)
+   */
+  public static void commitUnitOfWork() {
+    JpaRequestScope scope = CURRENT.get();
+    try {
+      if (--scope.unitOfWorkDepth == 0) {
+        scope.writes = 0;
+        boolean rollbackOnly = scope.rollbackOnly;
+        scope.rollbackOnly = false;
+        if (rollbackOnly) {
+          scope.rollback();
+          throw new RollbackException("Unit of work was marked for rollback.");
+        }
+        scope.commit();
+      }
+    } finally {
+      end();
+    }
+  }
+
+  /**
+   * Roll back the current unit of work.
+   * If it is a nested unit of work the outermost unit of work is marked for rollback.
+   */
+  public static void rollbackUnitOfWork() {
+    JpaRequestScope scope = CURRENT.get();
+    try {
+      if (--scope.unitOfWorkDepth == 0) {
+        scope.writes = 0;
+        scope.rollbackOnly = false;
+        scope.rollback();
+      } else {
+        scope.rollbackOnly = true;
+      }
+    } finally {
+      end();
+    }
+  }
+
+  /**
+   * Gets the active request scope of the current thread.
+   *
+   * @return the scope or <code>null</code> if no request scope is active
+   */
+  static JpaRequestScope current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Gets the <code>EntityManager</code> of this scope for the given factory (which is created on first use).
+   *
+   * @param entityManagerFactory the factory
+   * @return the entity manager
+   */
+  EntityManager getEntityManager(final EntityManagerFactory entityManagerFactory) {
+    EntityManager entityManager = entityManagers.get(entityManagerFactory);
+    if (entityManager == null) {
+      entityManager = entityManagerFactory.createEntityManager();
+      entityManagers.put(entityManagerFactory, entityManager);
+    }
+    return entityManager;
+  }
+
+  /**
+   * Check whether a unit of work is active in this scope
+   * (hence writes are executed in the transaction of the unit of work).
+   *
+   * @return <code>true</code> if a unit of work is active
+   */
+  boolean isUnitOfWork() {
+    return unitOfWorkDepth > 0;
+  }
+
+  /**
+   * Count a write within the unit of work.
+   *
+   * @return the number of writes within the unit of work (including this write)
+   */
+  int countWrite() {
+    return ++writes;
+  }
+
+  private void commit() {
+    try {
+      for (EntityManager entityManager : entityManagers.values()) {
+        EntityTransaction transaction = entityManager.getTransaction();
+        if (transaction.isActive()) {
+          transaction.commit();
+        }
+      }
+    } catch (PersistenceException e) {
+      rollback();
+      throw e;
+    }
+  }
+
+  private void rollback() {
+    for (EntityManager entityManager : entityManagers.values()) {
+      EntityTransaction transaction = entityManager.getTransaction();
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+      // rolled back entities must not be used anymore
+      entityManager.clear();
+    }
+  }
+
+  private void close() {
+    for (EntityManager entityManager : entityManagers.values()) {
+      close(entityManager);
+    }
+    entityManagers.clear();
+  }
+
+  /**
+   * Close the given entity manager (a still active transaction is rolled back).
+   *
+   * @param entityManager the entity manager
+   */
+  static void close(final EntityManager entityManager) {
+    try {
+      EntityTransaction transaction = entityManager.getTransaction();
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+      entityManager.clear();
+    } finally {
+      entityManager.close();
+    }
+  }
+}
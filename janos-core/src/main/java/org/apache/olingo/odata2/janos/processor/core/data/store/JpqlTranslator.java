@@ -0,0 +1,549 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.annotation.edm.EdmKey;
+import org.apache.olingo.odata2.api.annotation.edm.EdmNavigationProperty;
+import org.apache.olingo.odata2.api.edm.EdmLiteralKind;
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeKind;
+import org.apache.olingo.odata2.api.edm.EdmType;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
+import org.apache.olingo.odata2.api.uri.expression.*;
+import org.apache.olingo.odata2.janos.processor.core.data.SkipToken;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
+
+import javax.persistence.*;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Translates <code>$filter</code> and <code>$orderby</code> expressions (and a keyset <code>$skiptoken</code>)
+ * into the parts of a JPQL query on an entity class.
+ * <br/>
+ * All literal values are bound as positional parameters (see {@link #getParameters()}).
+ * The translated conditions select the same entries as the in memory evaluation of the expressions
+ * (e.g. a <code>ne</code> comparison applies to <code>null</code> values). Expressions which have no (portable) JPQL equivalent with the same semantic (e.g. the date and
+ * math methods, navigation properties, a <code>div</code> of integral numbers or a <code>not</code> of a comparison
+ * with a nullable property) result in an {@link ODataNotImplementedException}, hence the caller can fall back
+ * to apply the expression itself.
+ */
+class JpqlTranslator {
+
+  private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
+  private static final char LIKE_ESCAPE = '\\';
+
+  private final Class<?> entityClass;
+  private final String alias;
+  private final List<Object> parameters = new ArrayList<>();
+
+  /**
+   * Translated path of a property (or member) expression.
+   */
+  private static final class Path {
+    private final String jpql;
+    private final Field field;
+
+    private Path(final String jpql, final Field field) {
+      this.jpql = jpql;
+      this.field = field;
+    }
+  }
+
+  JpqlTranslator(final Class<?> entityClass, final String alias) {
+    this.entityClass = entityClass;
+    this.alias = alias;
+  }
+
+  /**
+   * Gets the values of the positional parameters (<code>?1</code> is the first value).
+   *
+   * @return the parameter values
+   */
+  List<Object> getParameters() {
+    return parameters;
+  }
+
+  /**
+   * Translate the given filter into a JPQL condition.
+   *
+   * @param filter the filter expression
+   * @return the condition
+   * @throws ODataException if the filter can not be translated
+   */
+  String where(final FilterExpression filter) throws ODataException {
+    final int parameterCount = parameters.size();
+    try {
+      return predicate(filter.getExpression());
+    } catch (ODataException e) {
+      parameters.subList(parameterCount, parameters.size()).clear();
+      throw e;
+    }
+  }
+
+  /**
+   * Translate the given order by into a JPQL order by list (without the <code>ORDER BY</code> keyword).
+   * The keys of the entity are appended, hence the order is unique (e.g. for paging with $skip and $top).
+   * Only properties which can not be <code>null</code> can be ordered by, since JPQL (of JPA 2.0) has no
+   * portable way to sort <code>null</code> values last (as in memory).
+   *
+   * @param orderBy the order by expression (or <code>null</code> to order only by key)
+   * @return the order by list
+   * @throws ODataException if the order by can not be translated
+   */
+  String orderBy(final OrderByExpression orderBy) throws ODataException {
+    StringBuilder result = new StringBuilder();
+    if (orderBy != null) {
+      for (OrderExpression order : orderBy.getOrders()) {
+        final String direction = order.getSortOrder() == SortOrder.desc ? " DESC" : " ASC";
+        final Path path = path(order.getExpression());
+        if (isNullable(path.field)) {
+          // the databases sort null values first or last
+          throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+        }
+        result.append(result.length() == 0 ? "" : ", ").append(path.jpql).append(direction);
+      }
+    }
+    for (Field keyField : ANNOTATION_HELPER.getAnnotatedFields(entityClass, EdmKey.class)) {
+      result.append(result.length() == 0 ? "" : ", ").append(alias).append('.').append(keyField.getName());
+    }
+    return result.toString();
+  }
+
+  /**
+   * Translate the given keyset skip token into a JPQL condition which selects all entries
+   * with keys greater than or equal to the keys of the token (in key order).
+   *
+   * @param skipToken the skip token
+   * @return the condition
+   * @throws ODataException if the token does not match the keys of the entity class
+   */
+  String keySet(final SkipToken skipToken) throws ODataException {
+    List<Field> keyFields = ANNOTATION_HELPER.getAnnotatedFields(entityClass, EdmKey.class);
+    List<String> keyPaths = new ArrayList<>();
+    List<Object> keyValues = new ArrayList<>();
+    for (Field keyField : keyFields) {
+      String literal = skipToken.getLiteral(ANNOTATION_HELPER.getPropertyName(keyField));
+      if (literal == null || keyFields.size() != skipToken.size()) {
+        throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+      }
+      EdmSimpleType type = ANNOTATION_HELPER.getEdmSimpleType(keyField);
+      keyPaths.add(alias + "." + keyField.getName());
+      keyValues.add(type.valueOfString(literal, EdmLiteralKind.URI, null, boxed(keyField.getType())));
+    }
+    List<Integer> keyParameters = new ArrayList<>();
+    for (Object keyValue : keyValues) {
+      keyParameters.add(addParameter(keyValue));
+    }
+    // (k1 > ?1) OR (k1 = ?1 AND k2 > ?2) OR ... OR (k1 = ?1 AND ... AND kn >= ?n)
+    StringBuilder condition = new StringBuilder("(");
+    for (int i = 0; i < keyPaths.size(); i++) {
+      condition.append(i == 0 ? "(" : " OR (");
+      for (int j = 0; j < i; j++) {
+        condition.append(keyPaths.get(j)).append(" = ?").append(keyParameters.get(j)).append(" AND ");
+      }
+      condition.append(keyPaths.get(i)).append(i == keyPaths.size() - 1 ? " >= ?" : " > ?")
+          .append(keyParameters.get(i)).append(')');
+    }
+    return condition.append(')').toString();
+  }
+
+  /**
+   * Translate an expression which is used as condition
+   * (a boolean property or literal is compared with <code>TRUE</code>).
+   */
+  private String predicate(final CommonExpression expression) throws ODataException {
+    switch (expression.getKind()) {
+    case PROPERTY:
+    case MEMBER:
+    case LITERAL:
+      return "(" + value(expression, Boolean.class) + " = TRUE)";
+    case UNARY:
+      UnaryExpression unary = (UnaryExpression) expression;
+      if (unary.getOperator() == UnaryOperator.NOT && isTwoValued(unary.getOperand())) {
+        return "(NOT " + predicate(unary.getOperand()) + ")";
+      }
+      break;
+    case BINARY:
+      return binary((BinaryExpression) expression);
+    case METHOD:
+      return method((MethodExpression) expression);
+    default:
+      break;
+    }
+    throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+  }
+
+  /**
+   * Translate an expression which results in a value.
+   *
+   * @param expression the expression
+   * @param literalType java type for a literal value (or <code>null</code> for the default type of the literal)
+   */
+  private String value(final CommonExpression expression, final Class<?> literalType) throws ODataException {
+    switch (expression.getKind()) {
+    case PROPERTY:
+    case MEMBER:
+      return path(expression).jpql;
+    case LITERAL:
+      return literal((LiteralExpression) expression, literalType);
+    case UNARY:
+      UnaryExpression unary = (UnaryExpression) expression;
+      if (unary.getOperator() == UnaryOperator.MINUS) {
+        return "(-" + value(unary.getOperand(), null) + ")";
+      }
+      return predicate(expression);
+    case BINARY:
+      BinaryExpression binary = (BinaryExpression) expression;
+      switch (binary.getOperator()) {
+      case ADD:
+        return arithmetic(binary, " + ");
+      case SUB:
+        return arithmetic(binary, " - ");
+      case MUL:
+        return arithmetic(binary, " * ");
+      case DIV:
+        // JPQL divides integral operands without remainder, in memory they are divided as floating point numbers
+        if (!isFloatingOrDecimal(binary.getEdmType())) {
+          throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+        }
+        return arithmetic(binary, " / ");
+      case MODULO:
+        return "MOD(" + value(binary.getLeftOperand(), null) + ", " + value(binary.getRightOperand(), null) + ")";
+      default:
+        return predicate(expression);
+      }
+    case METHOD:
+      return method((MethodExpression) expression);
+    default:
+      throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+    }
+  }
+
+  private String arithmetic(final BinaryExpression expression, final String operator) throws ODataException {
+    return "(" + value(expression.getLeftOperand(), null) + operator + value(expression.getRightOperand(), null) + ")";
+  }
+
+  private String binary(final BinaryExpression expression) throws ODataException {
+    final CommonExpression left = expression.getLeftOperand();
+    final CommonExpression right = expression.getRightOperand();
+    switch (expression.getOperator()) {
+    case AND:
+      return "(" + predicate(left) + " AND " + predicate(right) + ")";
+    case OR:
+      return "(" + predicate(left) + " OR " + predicate(right) + ")";
+    case EQ:
+      return equality(left, right, false);
+    case NE:
+      return equality(left, right, true);
+    case LT:
+      return comparison(left, right, " < ");
+    case LE:
+      return comparison(left, right, " <= ");
+    case GT:
+      return comparison(left, right, " > ");
+    case GE:
+      return comparison(left, right, " >= ");
+    default:
+      throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+    }
+  }
+
+  /**
+   * Translate <code>eq</code> and <code>ne</code> with the same <code>null</code> handling as in memory
+   * (two <code>null</code> values are equal, a <code>null</code> and a non <code>null</code> value are not).
+   * The translated condition is never <code>UNKNOWN</code>, hence it can be negated.
+   */
+  private String equality(final CommonExpression left, final CommonExpression right, final boolean not)
+      throws ODataException {
+    if (isNullLiteral(left) || isNullLiteral(right)) {
+      String operand = isNullLiteral(left) ? value(right, null) : value(left, null);
+      if (isNullLiteral(left) && isNullLiteral(right)) {
+        return not ? "(1 = 0)" : "(1 = 1)";
+      }
+      return "(" + operand + (not ? " IS NOT NULL)" : " IS NULL)");
+    }
+    final String first = value(left, literalType(right));
+    final String second = value(right, literalType(left));
+    final boolean firstNullable = isNullable(left);
+    final boolean secondNullable = isNullable(right);
+    StringBuilder condition = new StringBuilder("((").append(first).append(not ? " <> " : " = ").append(second);
+    if (firstNullable) {
+      condition.append(" AND ").append(first).append(" IS NOT NULL");
+    }
+    if (secondNullable) {
+      condition.append(" AND ").append(second).append(" IS NOT NULL");
+    }
+    condition.append(')');
+    if (not) {
+      if (firstNullable) {
+        condition.append(" OR (").append(first).append(" IS NULL")
+            .append(secondNullable ? " AND " + second + " IS NOT NULL)" : ")");
+      }
+      if (secondNullable) {
+        condition.append(" OR (").append(second).append(" IS NULL")
+            .append(firstNullable ? " AND " + first + " IS NOT NULL)" : ")");
+      }
+    } else if (firstNullable && secondNullable) {
+      condition.append(" OR (").append(first).append(" IS NULL AND ").append(second).append(" IS NULL)");
+    }
+    return condition.append(')').toString();
+  }
+
+  private String comparison(final CommonExpression left, final CommonExpression right, final String operator)
+      throws ODataException {
+    if (isNullLiteral(left) || isNullLiteral(right)) {
+      // a comparison with null never applies
+      return "(1 = 0)";
+    }
+    return "(" + value(left, literalType(right)) + operator + value(right, literalType(left)) + ")";
+  }
+
+  private String method(final MethodExpression expression) throws ODataException {
+    final List<CommonExpression> parameters = expression.getParameters();
+    switch (expression.getMethod()) {
+    case STARTSWITH:
+      return like(parameters.get(0), parameters.get(1), false, true);
+    case ENDSWITH:
+      return like(parameters.get(0), parameters.get(1), true, false);
+    case SUBSTRINGOF:
+      return like(parameters.get(1), parameters.get(0), true, true);
+    case INDEXOF:
+      return "(LOCATE(" + string(parameters.get(1)) + ", " + string(parameters.get(0)) + ") - 1)";
+    case TOLOWER:
+      return "LOWER(" + string(parameters.get(0)) + ")";
+    case TOUPPER:
+      return "UPPER(" + string(parameters.get(0)) + ")";
+    case TRIM:
+      return "TRIM(" + string(parameters.get(0)) + ")";
+    case LENGTH:
+      return "LENGTH(" + string(parameters.get(0)) + ")";
+    case CONCAT:
+      return "CONCAT(" + string(parameters.get(0)) + ", " + string(parameters.get(1)) + ")";
+    case SUBSTRING:
+      // OData positions are zero based, JPQL positions one based
+      StringBuilder substring = new StringBuilder("SUBSTRING(").append(string(parameters.get(0)))
+          .append(", (").append(value(parameters.get(1), Integer.class)).append(" + 1)");
+      if (parameters.size() > 2) {
+        substring.append(", ").append(value(parameters.get(2), Integer.class));
+      }
+      return substring.append(')').toString();
+    default:
+      throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+    }
+  }
+
+  /**
+   * Translate a check whether <code>value</code> contains <code>part</code> (at its start and/or end).
+   * A literal part results in a <code>LIKE</code> pattern (which can use an index for a prefix),
+   * otherwise <code>LOCATE</code> is used.
+   */
+  private String like(final CommonExpression value, final CommonExpression part, final boolean anyPrefix,
+      final boolean anySuffix) throws ODataException {
+    if (part.getKind() == ExpressionKind.LITERAL && !isNullLiteral(part)) {
+      final LiteralExpression literal = (LiteralExpression) part;
+      final EdmSimpleType type = (EdmSimpleType) literal.getEdmType();
+      final String text = type.valueOfString(literal.getUriLiteral(), EdmLiteralKind.URI, null, String.class);
+      final String pattern = (anyPrefix ? "%" : "") + escapeLike(text) + (anySuffix ? "%" : "");
+      return "(" + string(value) + " LIKE ?" + addParameter(pattern) + " ESCAPE '" + LIKE_ESCAPE + "')";
+    }
+    final String locate = "LOCATE(" + string(part) + ", " + string(value) + ")";
+    if (anyPrefix && anySuffix) {
+      return "(" + locate + " > 0)";
+    } else if (anySuffix) {
+      return "(" + locate + " = 1)";
+    }
+    // LOCATE only finds the first occurrence, hence a not literal suffix is checked in memory
+    throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+  }
+
+  private String string(final CommonExpression expression) throws ODataException {
+    return value(expression, String.class);
+  }
+
+  private Path path(final CommonExpression expression) throws ODataException {
+    if (expression.getKind() == ExpressionKind.PROPERTY) {
+      return path(alias, entityClass, (PropertyExpression) expression);
+    } else if (expression.getKind() == ExpressionKind.MEMBER) {
+      MemberExpression member = (MemberExpression) expression;
+      if (member.getProperty().getKind() == ExpressionKind.PROPERTY) {
+        Path base = path(member.getPath());
+        if (isNullable(base.field) && base.field.getAnnotation(Embedded.class) == null) {
+          // the path of an optional relationship is an inner join which would remove the entries without relation
+          throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+        }
+        return path(base.jpql, base.field.getType(), (PropertyExpression) member.getProperty());
+      }
+    }
+    throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+  }
+
+  private Path path(final String base, final Class<?> clazz, final PropertyExpression property)
+      throws ODataException {
+    Field field = ANNOTATION_HELPER.getFieldForProperty(clazz, property.getEdmProperty().getName());
+    if (field == null || field.getAnnotation(EdmNavigationProperty.class) != null) {
+      throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+    }
+    return new Path(base + "." + field.getName(), field);
+  }
+
+  private String literal(final LiteralExpression literal, final Class<?> literalType) throws ODataException {
+    final EdmSimpleType type = (EdmSimpleType) literal.getEdmType();
+    if (isNullLiteral(literal)) {
+      throw new ODataNotImplementedException(ODataNotImplementedException.COMMON);
+    }
+    final Class<?> targetType = literalType == null ? type.getDefaultType() : literalType;
+    Object value;
+    try {
+      value = type.valueOfString(literal.getUriLiteral(), EdmLiteralKind.URI, null, targetType);
+    } catch (ODataException e) {
+      // literal can not be converted into the type of the compared property, hence the default type is used
+      value = type.valueOfString(literal.getUriLiteral(), EdmLiteralKind.URI, null, type.getDefaultType());
+    }
+    return "?" + addParameter(value);
+  }
+
+  /**
+   * Get the java type into which a literal compared with the given expression is converted.
+   */
+  private Class<?> literalType(final CommonExpression compared) throws ODataException {
+    if (compared.getKind() == ExpressionKind.PROPERTY || compared.getKind() == ExpressionKind.MEMBER) {
+      return boxed(path(compared).field.getType());
+    }
+    return null;
+  }
+
+  /**
+   * Check whether the translated condition is never <code>UNKNOWN</code> (in the three valued logic of JPQL),
+   * hence its negation selects the same entries as the negation in memory.
+   */
+  private boolean isTwoValued(final CommonExpression expression) throws ODataException {
+    switch (expression.getKind()) {
+    case PROPERTY:
+    case MEMBER:
+      return !isNullable(path(expression).field);
+    case LITERAL:
+      return !isNullLiteral(expression);
+    case UNARY:
+      UnaryExpression unary = (UnaryExpression) expression;
+      return unary.getOperator() == UnaryOperator.NOT && isTwoValued(unary.getOperand());
+    case BINARY:
+      BinaryExpression binary = (BinaryExpression) expression;
+      switch (binary.getOperator()) {
+      case AND:
+      case OR:
+        return isTwoValued(binary.getLeftOperand()) && isTwoValued(binary.getRightOperand());
+      case EQ:
+      case NE:
+        // translated with explicit null checks
+        return true;
+      case LT:
+      case LE:
+      case GT:
+      case GE:
+        return isNullLiteral(binary.getLeftOperand()) || isNullLiteral(binary.getRightOperand())
+            || isTwoValued(binary.getLeftOperand()) && isTwoValued(binary.getRightOperand());
+      default:
+        return false;
+      }
+    default:
+      return false;
+    }
+  }
+
+  private int addParameter(final Object value) {
+    parameters.add(value);
+    return parameters.size();
+  }
+
+  /**
+   * Check whether the given field can contain a <code>null</code> value.
+   */
+  private static boolean isNullable(final Field field) {
+    if (field.getType().isPrimitive() || field.getAnnotation(EdmKey.class) != null
+        || field.getAnnotation(Id.class) != null) {
+      return false;
+    }
+    Column column = field.getAnnotation(Column.class);
+    OneToOne oneToOne = field.getAnnotation(OneToOne.class);
+    ManyToOne manyToOne = field.getAnnotation(ManyToOne.class);
+    return (column == null || column.nullable())
+        && (oneToOne == null || oneToOne.optional())
+        && (manyToOne == null || manyToOne.optional());
+  }
+
+  /**
+   * Check whether the given operand can result in a <code>null</code> value.
+   */
+  private boolean isNullable(final CommonExpression expression) throws ODataException {
+    if (isPath(expression)) {
+      return isNullable(path(expression).field);
+    }
+    return expression.getKind() != ExpressionKind.LITERAL;
+  }
+
+  private static boolean isPath(final CommonExpression expression) {
+    return expression.getKind() == ExpressionKind.PROPERTY || expression.getKind() == ExpressionKind.MEMBER;
+  }
+
+  private static boolean isFloatingOrDecimal(final EdmType type) {
+    return type == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
+        || type == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()
+        || type == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance();
+  }
+
+  private static boolean isNullLiteral(final CommonExpression expression) {
+    return expression.getKind() == ExpressionKind.LITERAL
+        && expression.getEdmType() == EdmSimpleTypeKind.Null.getEdmSimpleTypeInstance();
+  }
+
+  private static String escapeLike(final String text) {
+    StringBuilder escaped = new StringBuilder();
+    for (char character : text.toCharArray()) {
+      if (character == '%' || character == '_' || character == LIKE_ESCAPE) {
+        escaped.append(LIKE_ESCAPE);
+      }
+      escaped.append(character);
+    }
+    return escaped.toString();
+  }
+
+  private static Class<?> boxed(final Class<?> type) {
+    if (!type.isPrimitive()) {
+      return type;
+    } else if (type == int.class) {
+      return Integer.class;
+    } else if (type == long.class) {
+      return Long.class;
+    } else if (type == short.class) {
+      return Short.class;
+    } else if (type == byte.class) {
+      return Byte.class;
+    } else if (type == boolean.class) {
+      return Boolean.class;
+    } else if (type == double.class) {
+      return Double.class;
+    } else if (type == float.class) {
+      return Float.class;
+    }
+    return Character.class;
+  }
+}
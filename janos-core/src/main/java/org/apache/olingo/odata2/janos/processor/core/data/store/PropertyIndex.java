@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.uri.expression.BinaryOperator;
+import org.apache.olingo.odata2.janos.processor.api.data.store.Indexed;
+import org.apache.olingo.odata2.janos.processor.core.expression.ExpressionValues;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationRuntimeException;
+import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
+
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.util.*;
+
+/**
+ * Secondary index for an {@link Indexed} annotated property of the data objects in a data store.
+ * <br/>
+ * Maps the (normalized, see {@link ExpressionValues}) property values to the keys of the data objects.
+ * Because data objects are mutable (and normally already changed when they are updated in the store)
+ * the last indexed value of each entry is remembered to be able to remove it again.
+ * <br/>
+ * All operations are synchronized on the index, hence concurrent writers are only serialized per index.
+ * Keeping the index consistent with the data (for concurrent writes on the same key) is up to the data store.
+ *
+ * @param <K> type of the data object keys
+ */
+class PropertyIndex<K> {
+
+  private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
+
+  private final Field field;
+  private final String propertyName;
+  private final EdmSimpleType type;
+  private final boolean sorted;
+  private final Map<Object, Set<K>> values;
+  private final Set<K> nullValues = new HashSet<>();
+  private final Map<K, Object> indexedValues = new HashMap<>();
+
+  PropertyIndex(final Field field) {
+    this.field = field;
+    propertyName = ANNOTATION_HELPER.getPropertyName(field);
+    type = ANNOTATION_HELPER.getEdmSimpleType(field);
+    sorted = field.getAnnotation(Indexed.class).value() == Indexed.Type.SORTED;
+    if (sorted) {
+      values = new TreeMap<>(ExpressionValues::compare);
+    } else {
+      values = new HashMap<>();
+    }
+  }
+
+  /**
+   * Create indexes for all {@link Indexed} annotated fields of given class.
+   *
+   * @param clazz class of the data objects
+   * @return property name to index
+   */
+  static <K> Map<String, PropertyIndex<K>> createIndexes(final Class<?> clazz) {
+    Map<String, PropertyIndex<K>> indexes = new HashMap<>();
+    for (Field field : ANNOTATION_HELPER.getAnnotatedFields(clazz, Indexed.class)) {
+      PropertyIndex<K> index = new PropertyIndex<>(field);
+      indexes.put(index.getPropertyName(), index);
+    }
+    return indexes;
+  }
+
+  String getPropertyName() {
+    return propertyName;
+  }
+
+  synchronized void add(final K key, final Object data) {
+    remove(key);
+    final Object value = indexValue(ClassHelper.getFieldValue(data, field));
+    indexedValues.put(key, value);
+    if (value == null) {
+      nullValues.add(key);
+    } else {
+      values.computeIfAbsent(value, v -> new HashSet<>()).add(key);
+    }
+  }
+
+  synchronized void remove(final K key) {
+    if (!indexedValues.containsKey(key)) {
+      return;
+    }
+    final Object value = indexedValues.remove(key);
+    if (value == null) {
+      nullValues.remove(key);
+    } else {
+      Set<K> keys = values.get(value);
+      if (keys != null) {
+        keys.remove(key);
+        if (keys.isEmpty()) {
+          values.remove(value);
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the keys of all entries for which <code>property operator value</code> applies.
+   *
+   * @param operator the comparison operator
+   * @param literalValue the (normalized) value to compare with
+   * @return the matching keys or <code>null</code> if the operator is not supported by this index
+   */
+  synchronized Set<K> lookup(final BinaryOperator operator, final Object literalValue) {
+    final Collection<Set<K>> matching = matching(operator, literalValue);
+    if (matching == null) {
+      return null;
+    }
+    Set<K> result = new HashSet<>();
+    for (Set<K> keys : matching) {
+      result.addAll(keys);
+    }
+    return result;
+  }
+
+  /**
+   * @return the (not copied) key sets of all matching values or <code>null</code> if the operator is not supported
+   */
+  @SuppressWarnings("unchecked")
+  private Collection<Set<K>> matching(final BinaryOperator operator, final Object literalValue) {
+    if (operator == BinaryOperator.EQ) {
+      if (literalValue == null) {
+        return Collections.singleton(nullValues);
+      }
+      Set<K> keys = values.get(sorted ? literalValue : hashKey(literalValue));
+      return keys == null ? Collections.<Set<K>>emptySet() : Collections.singleton(keys);
+    } else if (!sorted) {
+      return null;
+    } else if (literalValue == null) {
+      // comparison with null never applies
+      return Collections.emptySet();
+    }
+
+    NavigableMap<Object, Set<K>> sortedValues = (NavigableMap<Object, Set<K>>) values;
+    switch (operator) {
+    case LT:
+      return sortedValues.headMap(literalValue, false).values();
+    case LE:
+      return sortedValues.headMap(literalValue, true).values();
+    case GT:
+      return sortedValues.tailMap(literalValue, false).values();
+    case GE:
+      return sortedValues.tailMap(literalValue, true).values();
+    default:
+      return null;
+    }
+  }
+
+  private Object indexValue(final Object fieldValue) {
+    try {
+      Object value = ExpressionValues.normalize(fieldValue, type, null);
+      return sorted ? value : hashKey(value);
+    } catch (ODataException e) {
+      throw new AnnotationRuntimeException("Unable to index value of field '" + field + "'.", e);
+    }
+  }
+
+  /**
+   * Bring a normalized value into a representation for which <code>equals</code> and <code>hashCode</code>
+   * are consistent with {@link ExpressionValues#isEqual(Object, Object)}
+   * (e.g. <code>5L</code>, <code>5.0d</code> and <code>5.00</code> are all equal).
+   */
+  private static Object hashKey(final Object value) {
+    if (value instanceof Double) {
+      double number = (Double) value;
+      if (Double.isInfinite(number) || Double.isNaN(number)) {
+        return value;
+      }
+      return hashKey(BigDecimal.valueOf(number));
+    } else if (value instanceof BigDecimal) {
+      BigDecimal number = ((BigDecimal) value).stripTrailingZeros();
+      if (number.scale() <= 0) {
+        try {
+          return number.longValueExact();
+        } catch (ArithmeticException e) {
+          return number;
+        }
+      }
+      return number;
+    } else if (value instanceof Calendar) {
+      return new Date(((Calendar) value).getTimeInMillis());
+    }
+    return value;
+  }
+}
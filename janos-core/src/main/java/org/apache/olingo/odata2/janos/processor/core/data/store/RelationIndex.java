@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.annotation.edm.EdmKey;
+import org.apache.olingo.odata2.api.annotation.edm.EdmNavigationProperty;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
+import org.apache.olingo.odata2.janos.processor.core.util.ClassHelper;
+
+import java.lang.reflect.Field;
+import java.util.*;
+
+/**
+ * Relationship index for a single valued {@link EdmNavigationProperty} annotated field
+ * of the data objects in a data store.
+ * <br/>
+ * Maps the key values of the referenced objects (the foreign keys) to the keys of the referencing data objects,
+ * hence all data objects which reference an object can be found without checking all data objects.
+ * <br/>
+ * Keys of referenced objects might be generated after the reference was set (e.g. if the referenced object
+ * is created after the referencing one). Such references are resolved on the next lookup.
+ * <br/>
+ * All operations are synchronized on the index (see {@link PropertyIndex}).
+ *
+ * @param <K> type of the data object keys
+ */
+class RelationIndex<K> {
+
+  private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
+
+  private final Field field;
+  private final Map<Map<String, Object>, Set<K>> references = new HashMap<>();
+  private final Map<K, Map<String, Object>> indexedReferences = new HashMap<>();
+  private final Map<K, Object> unresolved = new HashMap<>();
+
+  RelationIndex(final Field field) {
+    this.field = field;
+  }
+
+  /**
+   * Create indexes for all single valued {@link EdmNavigationProperty} annotated fields of given class.
+   *
+   * @param clazz class of the data objects
+   * @return navigation field to index
+   */
+  static <K> Map<Field, RelationIndex<K>> createIndexes(final Class<?> clazz) {
+    Map<Field, RelationIndex<K>> indexes = new HashMap<>();
+    for (Field field : ANNOTATION_HELPER.getAnnotatedFields(clazz, EdmNavigationProperty.class)) {
+      Class<?> type = field.getType();
+      if (!Collection.class.isAssignableFrom(type) && !type.isArray()) {
+        indexes.put(field, new RelationIndex<>(field));
+      }
+    }
+    return indexes;
+  }
+
+  synchronized void add(final K key, final Object data) {
+    remove(key);
+    final Object referenced = ClassHelper.getFieldValue(data, field);
+    if (referenced == null) {
+      return;
+    }
+    final Map<String, Object> referencedKey = getKeyValues(referenced);
+    if (referencedKey == null) {
+      unresolved.put(key, data);
+    } else {
+      indexedReferences.put(key, referencedKey);
+      references.computeIfAbsent(referencedKey, k -> new HashSet<>()).add(key);
+    }
+  }
+
+  synchronized void remove(final K key) {
+    unresolved.remove(key);
+    final Map<String, Object> referencedKey = indexedReferences.remove(key);
+    if (referencedKey != null) {
+      Set<K> keys = references.get(referencedKey);
+      if (keys != null) {
+        keys.remove(key);
+        if (keys.isEmpty()) {
+          references.remove(referencedKey);
+        }
+      }
+    }
+  }
+
+  /**
+   * Get the keys of all entries which reference given object.
+   *
+   * @param referencedObject the referenced object
+   * @return the matching keys or <code>null</code> if the key values of the referenced object are not set
+   */
+  synchronized Set<K> lookup(final Object referencedObject) {
+    final Map<String, Object> referencedKey = getKeyValues(referencedObject);
+    if (referencedKey == null) {
+      return null;
+    }
+    resolve();
+    Set<K> keys = references.get(referencedKey);
+    return keys == null ? new HashSet<>() : new HashSet<>(keys);
+  }
+
+  private void resolve() {
+    if (unresolved.isEmpty()) {
+      return;
+    }
+    for (Map.Entry<K, Object> entry : new ArrayList<>(unresolved.entrySet())) {
+      add(entry.getKey(), entry.getValue());
+    }
+  }
+
+  private static Map<String, Object> getKeyValues(final Object referenced) {
+    Map<String, Object> keyValues = ANNOTATION_HELPER.getValueForAnnotatedFields(referenced, EdmKey.class);
+    if (keyValues.isEmpty() || keyValues.containsValue(null)) {
+      return null;
+    }
+    return keyValues;
+  }
+}
@@ -44,6 +44,9 @@ public class AnnotationEdmProvider extends EdmProvider {
   private final Map<String, EntityContainer> name2Container = new HashMap<>();
   private final Map<String, ContainerBuilder> containerName2ContainerBuilder = new HashMap<>();
   private final Map<String, Schema> namespace2Schema = new HashMap<>();
+  /** lookup tables of the schemas and containers (created by finish and only read afterwards) */
+  private final Map<String, SchemaIndex> namespace2SchemaIndex = new HashMap<>();
+  private final Map<String, ContainerIndex> name2ContainerIndex = new HashMap<>();
   private EntityContainer defaultContainer;
 
   /**
@@ -88,54 +91,22 @@ public class AnnotationEdmProvider extends EdmProvider {
 
   @Override
   public Association getAssociation(final FullQualifiedName edmFQName) throws ODataException {
-    Schema schema = namespace2Schema.get(edmFQName.getNamespace());
-    if (schema != null) {
-      List<Association> associations = schema.getAssociations();
-      for (Association association : associations) {
-        if (association.getName().equals(edmFQName.getName())) {
-          return association;
-        }
-      }
-    }
-    return null;
+    SchemaIndex index = namespace2SchemaIndex.get(edmFQName.getNamespace());
+    return index == null ? null : index.associations.get(edmFQName.getName());
   }
 
   @Override
   public AssociationSet getAssociationSet(final String entityContainer, final FullQualifiedName association,
       final String sourceEntitySetName, final String sourceEntitySetRole) throws ODataException {
-    EntityContainer container = name2Container.get(entityContainer);
-    if (container != null) {
-      List<AssociationSet> associations = container.getAssociationSets();
-      for (AssociationSet associationSet : associations) {
-        if (associationSet.getAssociation().equals(association)) {
-          final AssociationSetEnd endOne = associationSet.getEnd1();
-          if (endOne.getRole().equals(sourceEntitySetRole)
-              && endOne.getEntitySet().equals(sourceEntitySetName)) {
-            return associationSet;
-          }
-          final AssociationSetEnd endTwo = associationSet.getEnd2();
-          if (endTwo.getRole().equals(sourceEntitySetRole)
-              && endTwo.getEntitySet().equals(sourceEntitySetName)) {
-            return associationSet;
-          }
-        }
-      }
-    }
-    return null;
+    ContainerIndex index = name2ContainerIndex.get(entityContainer);
+    return index == null ? null : index.associationSets.get(
+        ContainerIndex.associationSetKey(association, sourceEntitySetRole, sourceEntitySetName));
   }
 
   @Override
   public ComplexType getComplexType(final FullQualifiedName edmFQName) throws ODataException {
-    Schema schema = namespace2Schema.get(edmFQName.getNamespace());
-    if (schema != null) {
-      List<ComplexType> complexTypes = schema.getComplexTypes();
-      for (ComplexType complexType : complexTypes) {
-        if (complexType.getName().equals(edmFQName.getName())) {
-          return complexType;
-        }
-      }
-    }
-    return null;
+    SchemaIndex index = namespace2SchemaIndex.get(edmFQName.getNamespace());
+    return index == null ? null : index.complexTypes.get(edmFQName.getName());
   }
 
   @Override
@@ -161,45 +132,20 @@ public class AnnotationEdmProvider extends EdmProvider {
 
   @Override
   public EntitySet getEntitySet(final String entityContainer, final String name) throws ODataException {
-    EntityContainer container = name2Container.get(entityContainer);
-    if (container != null) {
-      List<EntitySet> entitySets = container.getEntitySets();
-      for (EntitySet entitySet : entitySets) {
-        if (entitySet.getName().equals(name)) {
-          return entitySet;
-        }
-      }
-    }
-
-    return null;
+    ContainerIndex index = name2ContainerIndex.get(entityContainer);
+    return index == null ? null : index.entitySets.get(name);
   }
 
   @Override
   public EntityType getEntityType(final FullQualifiedName edmFQName) throws ODataException {
-    Schema schema = namespace2Schema.get(edmFQName.getNamespace());
-    if (schema != null) {
-      List<EntityType> complexTypes = schema.getEntityTypes();
-      for (EntityType complexType : complexTypes) {
-        if (complexType.getName().equals(edmFQName.getName())) {
-          return complexType;
-        }
-      }
-    }
-    return null;
+    SchemaIndex index = namespace2SchemaIndex.get(edmFQName.getNamespace());
+    return index == null ? null : index.entityTypes.get(edmFQName.getName());
   }
 
   @Override
   public FunctionImport getFunctionImport(final String entityContainer, final String name) throws ODataException {
-    EntityContainer container = name2Container.get(entityContainer);
-    if (container != null) {
-      List<FunctionImport> functionImports = container.getFunctionImports();
-      for (FunctionImport functionImport : functionImports) {
-        if (functionImport.getName().equals(name)) {
-          return functionImport;
-        }
-      }
-    }
-    return null;
+    ContainerIndex index = name2ContainerIndex.get(entityContainer);
+    return index == null ? null : index.functionImports.get(name);
   }
 
   @Override
@@ -330,6 +276,7 @@ public class AnnotationEdmProvider extends EdmProvider {
       final EntityContainer container = containerBuilder.build();
       schemaBuilder.addEntityContainer(container);
       name2Container.put(container.getName(), container);
+      name2ContainerIndex.put(container.getName(), new ContainerIndex(container));
       if (container.isDefaultEntityContainer()) {
         defaultContainer = container;
       }
@@ -339,6 +286,72 @@ public class AnnotationEdmProvider extends EdmProvider {
     for (SchemaBuilder schemaBuilder : schemaBuilders) {
       final Schema schema = schemaBuilder.build();
       namespace2Schema.put(schema.getNamespace(), schema);
+      namespace2SchemaIndex.put(schema.getNamespace(), new SchemaIndex(schema));
+    }
+  }
+
+  /**
+   * Immutable lookup tables (by name) for the types and associations of a schema.
+   * For equal names the first element (as in the schema lists) is used.
+   */
+  private static final class SchemaIndex {
+    private final Map<String, EntityType> entityTypes;
+    private final Map<String, ComplexType> complexTypes;
+    private final Map<String, Association> associations;
+
+    SchemaIndex(final Schema schema) {
+      Map<String, EntityType> name2EntityType = new HashMap<>();
+      for (EntityType entityType : schema.getEntityTypes()) {
+        name2EntityType.putIfAbsent(entityType.getName(), entityType);
+      }
+      Map<String, ComplexType> name2ComplexType = new HashMap<>();
+      for (ComplexType complexType : schema.getComplexTypes()) {
+        name2ComplexType.putIfAbsent(complexType.getName(), complexType);
+      }
+      Map<String, Association> name2Association = new HashMap<>();
+      for (Association association : schema.getAssociations()) {
+        name2Association.putIfAbsent(association.getName(), association);
+      }
+      entityTypes = Collections.unmodifiableMap(name2EntityType);
+      complexTypes = Collections.unmodifiableMap(name2ComplexType);
+      associations = Collections.unmodifiableMap(name2Association);
+    }
+  }
+
+  /**
+   * Immutable lookup tables for the entity sets and function imports (by name) and
+   * the association sets (by association, role and entity set of an end) of a container.
+   * For equal keys the first element (as in the container lists) is used.
+   */
+  private static final class ContainerIndex {
+    private final Map<String, EntitySet> entitySets;
+    private final Map<String, FunctionImport> functionImports;
+    private final Map<String, AssociationSet> associationSets;
+
+    ContainerIndex(final EntityContainer container) {
+      Map<String, EntitySet> name2EntitySet = new HashMap<>();
+      for (EntitySet entitySet : container.getEntitySets()) {
+        name2EntitySet.putIfAbsent(entitySet.getName(), entitySet);
+      }
+      Map<String, FunctionImport> name2FunctionImport = new HashMap<>();
+      for (FunctionImport functionImport : container.getFunctionImports()) {
+        name2FunctionImport.putIfAbsent(functionImport.getName(), functionImport);
+      }
+      Map<String, AssociationSet> key2AssociationSet = new HashMap<>();
+      for (AssociationSet associationSet : container.getAssociationSets()) {
+        for (AssociationSetEnd end : Arrays.asList(associationSet.getEnd1(), associationSet.getEnd2())) {
+          key2AssociationSet.putIfAbsent(
+              associationSetKey(associationSet.getAssociation(), end.getRole(), end.getEntitySet()), associationSet);
+        }
+      }
+      entitySets = Collections.unmodifiableMap(name2EntitySet);
+      functionImports = Collections.unmodifiableMap(name2FunctionImport);
+      associationSets = Collections.unmodifiableMap(key2AssociationSet);
+    }
+
+    static String associationSetKey(final FullQualifiedName association, final String role,
+        final String entitySetName) {
+      return association.getNamespace() + '.' + association.getName() + '/' + role + '/' + entitySetName;
     }
   }
 
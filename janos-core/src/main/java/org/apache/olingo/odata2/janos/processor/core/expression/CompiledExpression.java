@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.expression;
+
+import org.apache.olingo.odata2.api.edm.*;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
+import org.apache.olingo.odata2.api.uri.expression.*;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * A (filter or order by) expression compiled into a tree of typed evaluation nodes.
+ * <br/>
+ * The expression tree is walked only once (in {@link #compile(CommonExpression, ValueAccess)}).
+ * Afterwards each data object is evaluated against the compiled nodes, which read the property values
+ * via the {@link ValueAccess} and work on the typed values (numbers, booleans, dates and strings, see
+ * {@link ExpressionValues}) instead of converting each intermediate result into its string representation.
+ */
+public final class CompiledExpression {
+
+  private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+
+  /**
+   * A compiled (sub) expression which evaluates to a typed value for a given data object.
+   */
+  private interface Node {
+    Object evaluate(Object data) throws ODataException;
+  }
+
+  private final Node root;
+
+  private CompiledExpression(final Node root) {
+    this.root = root;
+  }
+
+  /**
+   * Compile the given expression.
+   *
+   * @param expression the expression (e.g. of a filter or an order by)
+   * @param valueAccess used to read the property values of the data objects
+   * @return the compiled expression
+   * @throws ODataException if the expression contains a (sub) expression which is not supported
+   */
+  public static CompiledExpression compile(final CommonExpression expression, final ValueAccess valueAccess)
+      throws ODataException {
+    return new CompiledExpression(new Compiler(valueAccess).compile(expression));
+  }
+
+  /**
+   * Evaluate the expression for the given data object.
+   *
+   * @param data the data object
+   * @return the (normalized) value of the expression
+   * @throws ODataException if a property value could not be read
+   */
+  public Object evaluate(final Object data) throws ODataException {
+    return root.evaluate(data);
+  }
+
+  private static final class Compiler {
+    private final ValueAccess valueAccess;
+
+    private Compiler(final ValueAccess valueAccess) {
+      this.valueAccess = valueAccess;
+    }
+
+    private Node compile(final CommonExpression expression) throws ODataException {
+      switch (expression.getKind()) {
+      case UNARY:
+        return compileUnary((UnaryExpression) expression);
+      case BINARY:
+        return compileBinary((BinaryExpression) expression);
+      case PROPERTY:
+        return compileProperty((PropertyExpression) expression);
+      case MEMBER:
+        return compileMember((MemberExpression) expression);
+      case LITERAL:
+        return compileLiteral((LiteralExpression) expression);
+      case METHOD:
+        return compileMethod((MethodExpression) expression);
+      default:
+        throw new ODataNotImplementedException();
+      }
+    }
+
+    private Node compileUnary(final UnaryExpression expression) throws ODataException {
+      final Node operand = compile(expression.getOperand());
+      switch (expression.getOperator()) {
+      case NOT:
+        return data -> {
+          Object value = operand.evaluate(data);
+          return value == null ? null : !((Boolean) value);
+        };
+      case MINUS:
+        return data -> negate(operand.evaluate(data));
+      default:
+        throw new ODataNotImplementedException();
+      }
+    }
+
+    private Node compileBinary(final BinaryExpression expression) throws ODataException {
+      final Node left = compile(expression.getLeftOperand());
+      final Node right = compile(expression.getRightOperand());
+      final NumberKind numberKind = NumberKind.of(expression.getEdmType());
+
+      switch (expression.getOperator()) {
+      case ADD:
+      case SUB:
+      case MUL:
+      case DIV:
+      case MODULO:
+        final BinaryOperator operator = expression.getOperator();
+        return data -> {
+          Object first = left.evaluate(data);
+          Object second = right.evaluate(data);
+          return first == null || second == null ? null : calculate(operator, numberKind, first, second);
+        };
+      case AND:
+        return data -> Boolean.TRUE.equals(left.evaluate(data)) && Boolean.TRUE.equals(right.evaluate(data));
+      case OR:
+        return data -> Boolean.TRUE.equals(left.evaluate(data)) || Boolean.TRUE.equals(right.evaluate(data));
+      case EQ:
+        return data -> ExpressionValues.isEqual(left.evaluate(data), right.evaluate(data));
+      case NE:
+        return data -> !ExpressionValues.isEqual(left.evaluate(data), right.evaluate(data));
+      case LT:
+        return data -> {
+          Integer result = ExpressionValues.compare(left.evaluate(data), right.evaluate(data));
+          return result != null && result < 0;
+        };
+      case LE:
+        return data -> {
+          Integer result = ExpressionValues.compare(left.evaluate(data), right.evaluate(data));
+          return result != null && result <= 0;
+        };
+      case GT:
+        return data -> {
+          Integer result = ExpressionValues.compare(left.evaluate(data), right.evaluate(data));
+          return result != null && result > 0;
+        };
+      case GE:
+        return data -> {
+          Integer result = ExpressionValues.compare(left.evaluate(data), right.evaluate(data));
+          return result != null && result >= 0;
+        };
+      default:
+        throw new ODataNotImplementedException();
+      }
+    }
+
+    private Node compileProperty(final PropertyExpression expression) throws ODataException {
+      final EdmProperty property = (EdmProperty) expression.getEdmProperty();
+      if (property.getType().getKind() != EdmTypeKind.SIMPLE) {
+        throw new ODataNotImplementedException();
+      }
+      final EdmSimpleType type = (EdmSimpleType) property.getType();
+      final EdmFacets facets = property.getFacets();
+      return data -> ExpressionValues.normalize(valueAccess.getPropertyValue(data, property), type, facets);
+    }
+
+    private Node compileMember(final MemberExpression memberExpression) throws ODataException {
+      final PropertyExpression propertyExpression = (PropertyExpression) memberExpression.getProperty();
+      final EdmFacets facets = ((EdmProperty) propertyExpression.getEdmProperty()).getFacets();
+      final EdmSimpleType type = (EdmSimpleType) memberExpression.getEdmType();
+
+      final List<EdmProperty> propertyPath = new ArrayList<>();
+      CommonExpression currentExpression = memberExpression;
+      while (currentExpression != null) {
+        final PropertyExpression currentPropertyExpression =
+            (PropertyExpression) (currentExpression.getKind() == ExpressionKind.MEMBER ?
+                ((MemberExpression) currentExpression).getProperty() : currentExpression);
+        final EdmTyped currentProperty = currentPropertyExpression.getEdmProperty();
+        final EdmTypeKind kind = currentProperty.getType().getKind();
+        if (kind == EdmTypeKind.SIMPLE || kind == EdmTypeKind.COMPLEX) {
+          propertyPath.add(0, (EdmProperty) currentProperty);
+        } else {
+          throw new ODataNotImplementedException();
+        }
+        currentExpression =
+            currentExpression.getKind() == ExpressionKind.MEMBER ? ((MemberExpression) currentExpression).getPath()
+                : null;
+      }
+      final EdmProperty[] path = propertyPath.toArray(new EdmProperty[propertyPath.size()]);
+
+      return data -> {
+        Object value = data;
+        for (EdmProperty property : path) {
+          if (value == null) {
+            return null;
+          }
+          value = valueAccess.getPropertyValue(value, property);
+        }
+        return ExpressionValues.normalize(value, type, facets);
+      };
+    }
+
+    private Node compileLiteral(final LiteralExpression literal) throws ODataException {
+      final Object value = ExpressionValues.literalValue(literal);
+      return data -> value;
+    }
+
+    private Node compileMethod(final MethodExpression expression) throws ODataException {
+      final List<CommonExpression> parameters = expression.getParameters();
+      final Node first = compile(parameters.get(0));
+      final Node second = parameters.size() > 1 ? compile(parameters.get(1)) : null;
+      final Node third = parameters.size() > 2 ? compile(parameters.get(2)) : null;
+
+      switch (expression.getMethod()) {
+      case ENDSWITH:
+        return data -> {
+          String value = asString(first.evaluate(data));
+          String suffix = asString(second.evaluate(data));
+          return value == null || suffix == null ? null : value.endsWith(suffix);
+        };
+      case STARTSWITH:
+        return data -> {
+          String value = asString(first.evaluate(data));
+          String prefix = asString(second.evaluate(data));
+          return value == null || prefix == null ? null : value.startsWith(prefix);
+        };
+      case SUBSTRINGOF:
+        return data -> {
+          String part = asString(first.evaluate(data));
+          String value = asString(second.evaluate(data));
+          return value == null || part == null ? null : value.contains(part);
+        };
+      case INDEXOF:
+        return data -> {
+          String value = asString(first.evaluate(data));
+          String part = asString(second.evaluate(data));
+          return value == null || part == null ? null : (long) value.indexOf(part);
+        };
+      case TOLOWER:
+        return data -> {
+          String value = asString(first.evaluate(data));
+          return value == null ? null : value.toLowerCase(Locale.ROOT);
+        };
+      case TOUPPER:
+        return data -> {
+          String value = asString(first.evaluate(data));
+          return value == null ? null : value.toUpperCase(Locale.ROOT);
+        };
+      case TRIM:
+        return data -> {
+          String value = asString(first.evaluate(data));
+          return value == null ? null : value.trim();
+        };
+      case SUBSTRING:
+        return data -> {
+          String value = asString(first.evaluate(data));
+          Object offset = second.evaluate(data);
+          if (value == null || offset == null) {
+            return null;
+          }
+          int start = ExpressionValues.toNumber(offset).intValue();
+          if (third == null) {
+            return value.substring(start);
+          }
+          Object length = third.evaluate(data);
+          return length == null ? null : value.substring(start, start + ExpressionValues.toNumber(length).intValue());
+        };
+      case CONCAT:
+        return data -> {
+          String value = asString(first.evaluate(data));
+          String other = asString(second.evaluate(data));
+          return value == null || other == null ? null : value + other;
+        };
+      case LENGTH:
+        return data -> {
+          String value = asString(first.evaluate(data));
+          return value == null ? null : (long) value.length();
+        };
+      case YEAR:
+        return calendarField(first, Calendar.YEAR, 0);
+      case MONTH:
+        return calendarField(first, Calendar.MONTH, 1);
+      case DAY:
+        return calendarField(first, Calendar.DAY_OF_MONTH, 0);
+      case HOUR:
+        return calendarField(first, Calendar.HOUR_OF_DAY, 0);
+      case MINUTE:
+        return calendarField(first, Calendar.MINUTE, 0);
+      case SECOND:
+        return calendarField(first, Calendar.SECOND, 0);
+      case ROUND:
+        return data -> {
+          Object value = first.evaluate(data);
+          return value == null ? null : Math.round(ExpressionValues.toNumber(value).doubleValue());
+        };
+      case FLOOR:
+        return data -> {
+          Object value = first.evaluate(data);
+          return value == null ? null : Math.round(Math.floor(ExpressionValues.toNumber(value).doubleValue()));
+        };
+      case CEILING:
+        return data -> {
+          Object value = first.evaluate(data);
+          return value == null ? null : Math.round(Math.ceil(ExpressionValues.toNumber(value).doubleValue()));
+        };
+      default:
+        throw new ODataNotImplementedException();
+      }
+    }
+
+    private static Node calendarField(final Node operand, final int field, final int offset) {
+      return data -> {
+        Object value = operand.evaluate(data);
+        return value == null ? null : (long) (toCalendar(value).get(field) + offset);
+      };
+    }
+  }
+
+  /**
+   * Numeric representation used for arithmetic operations (based on the result type of the operation).
+   */
+  private enum NumberKind {
+    INTEGRAL, FLOATING, DECIMAL;
+
+    static NumberKind of(final EdmType type) {
+      if (type == EdmSimpleTypeKind.Decimal.getEdmSimpleTypeInstance()) {
+        return DECIMAL;
+      } else if (type == EdmSimpleTypeKind.Double.getEdmSimpleTypeInstance()
+          || type == EdmSimpleTypeKind.Single.getEdmSimpleTypeInstance()) {
+        return FLOATING;
+      }
+      return INTEGRAL;
+    }
+  }
+
+  private static Object calculate(final BinaryOperator operator, final NumberKind kind,
+                                  final Object firstValue, final Object secondValue) {
+    final Number first = ExpressionValues.toNumber(firstValue);
+    final Number second = ExpressionValues.toNumber(secondValue);
+    if (kind == NumberKind.DECIMAL) {
+      final BigDecimal left = ExpressionValues.toBigDecimal(first);
+      final BigDecimal right = ExpressionValues.toBigDecimal(second);
+      switch (operator) {
+      case ADD:
+        return left.add(right);
+      case SUB:
+        return left.subtract(right);
+      case MUL:
+        return left.multiply(right);
+      case DIV:
+        return left.divide(right, MathContext.DECIMAL128);
+      default:
+        return left.remainder(right);
+      }
+    } else if (kind == NumberKind.FLOATING || operator == BinaryOperator.DIV) {
+      final double left = first.doubleValue();
+      final double right = second.doubleValue();
+      switch (operator) {
+      case ADD:
+        return left + right;
+      case SUB:
+        return left - right;
+      case MUL:
+        return left * right;
+      case DIV:
+        return left / right;
+      default:
+        return left % right;
+      }
+    }
+    final long left = first.longValue();
+    final long right = second.longValue();
+    switch (operator) {
+    case ADD:
+      return left + right;
+    case SUB:
+      return left - right;
+    case MUL:
+      return left * right;
+    default:
+      return left % right;
+    }
+  }
+
+  private static Object negate(final Object value) {
+    if (value == null) {
+      return null;
+    } else if (value instanceof Long) {
+      return -((Long) value);
+    } else if (value instanceof BigDecimal) {
+      return ((BigDecimal) value).negate();
+    }
+    return -ExpressionValues.toNumber(value).doubleValue();
+  }
+
+  private static String asString(final Object value) {
+    return value == null ? null : value.toString();
+  }
+
+  private static Calendar toCalendar(final Object value) {
+    if (value instanceof Calendar) {
+      return (Calendar) value;
+    }
+    Calendar calendar = Calendar.getInstance(GMT);
+    calendar.setTime((Date) value);
+    return calendar;
+  }
+}
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.expression;
+
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A <code>$filter</code> expression compiled into a tree of typed evaluation nodes
+ * (see {@link CompiledExpression}).
+ * <br/>
+ * The filter expression is compiled once per request and afterwards each data object
+ * is checked against the compiled expression.
+ * <br/>
+ * Lists with at least {@link #PARALLEL_THRESHOLD} elements are filtered ({@link #filter(List)})
+ * in chunks on a dedicated fork-join pool with {@link #PARALLELISM} threads.
+ * Both can be configured via the according system properties.
+ */
+public final class CompiledFilter {
+
+  /** system property for the minimum number of data objects which are filtered in parallel */
+  public static final String PARALLEL_THRESHOLD = "JanosParallelFilterThresholdSystemProperty";
+  /** system property for the number of threads of the pool for parallel filtering */
+  public static final String PARALLELISM = "JanosParallelFilterParallelismSystemProperty";
+
+  private static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 15;
+  private static final int MIN_CHUNK_SIZE = 1 << 10;
+  private static final int PARALLEL_THRESHOLD_VALUE =
+      Math.max(MIN_CHUNK_SIZE, Integer.getInteger(PARALLEL_THRESHOLD, DEFAULT_PARALLEL_THRESHOLD));
+
+  private final CompiledExpression expression;
+
+  private CompiledFilter(final CompiledExpression expression) {
+    this.expression = expression;
+  }
+
+  /**
+   * Compile the given filter expression.
+   *
+   * @param filter the filter expression from the request
+   * @param valueAccess used to read the property values of the data objects
+   * @return the compiled filter
+   * @throws ODataException if the filter contains an expression which is not supported
+   */
+  public static CompiledFilter compile(final FilterExpression filter, final ValueAccess valueAccess)
+      throws ODataException {
+    return new CompiledFilter(CompiledExpression.compile(filter.getExpression(), valueAccess));
+  }
+
+  /**
+   * Check whether the given data object matches this filter.
+   * A <code>null</code> data object never matches and a runtime error during evaluation
+   * (e.g. an invalid substring index) is handled as not matching.
+   *
+   * @param data the data object
+   * @return <code>true</code> if the filter applies for the data object
+   * @throws ODataException if a property value could not be read
+   */
+  public boolean matches(final Object data) throws ODataException {
+    if (data == null) {
+      return false;
+    }
+    try {
+      return Boolean.TRUE.equals(expression.evaluate(data));
+    } catch (final RuntimeException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Remove all data objects from the given list which do not match this filter
+   * (the order of the remaining data objects is kept).
+   * The matching data objects are moved to the front of the list and the rest of the list is cleared at once,
+   * instead of removing each not matching data object.
+   * Large lists (see {@link #PARALLEL_THRESHOLD}) are checked in parallel.
+   *
+   * @param data the data objects (the list must support {@link List#set(int, Object)})
+   * @throws ODataException if a property value could not be read
+   */
+  public <T> void filter(final List<T> data) throws ODataException {
+    final int size = data.size();
+    final boolean[] matching = size >= PARALLEL_THRESHOLD_VALUE ? matchParallel(data) : null;
+    int target = 0;
+    for (int i = 0; i < size; i++) {
+      final T value = data.get(i);
+      if (matching == null ? matches(value) : matching[i]) {
+        if (target != i) {
+          data.set(target, value);
+        }
+        target++;
+      }
+    }
+    data.subList(target, size).clear();
+  }
+
+  private boolean[] matchParallel(final List<?> data) throws ODataException {
+    final boolean[] matching = new boolean[data.size()];
+    final int chunkSize = Math.max(MIN_CHUNK_SIZE, data.size() / (FilterPool.POOL.getParallelism() * 4));
+    try {
+      FilterPool.POOL.invoke(new MatchTask(data, matching, 0, data.size(), chunkSize));
+    } catch (final MatchException e) {
+      throw e.getCause();
+    }
+    return matching;
+  }
+
+  /**
+   * Checks a range of the data objects (split into chunks of at most <code>chunkSize</code> data objects).
+   */
+  private final class MatchTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private final List<?> data;
+    private final boolean[] matching;
+    private final int from;
+    private final int to;
+    private final int chunkSize;
+
+    MatchTask(final List<?> data, final boolean[] matching, final int from, final int to, final int chunkSize) {
+      this.data = data;
+      this.matching = matching;
+      this.from = from;
+      this.to = to;
+      this.chunkSize = chunkSize;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= chunkSize) {
+        try {
+          for (int i = from; i < to; i++) {
+            matching[i] = matches(data.get(i));
+          }
+        } catch (final ODataException e) {
+          throw new MatchException(e);
+        }
+      } else {
+        final int middle = (from + to) >>> 1;
+        invokeAll(new MatchTask(data, matching, from, middle, chunkSize),
+            new MatchTask(data, matching, middle, to, chunkSize));
+      }
+    }
+  }
+
+  /**
+   * Transports an exception of a parallel check to the calling thread.
+   */
+  private static final class MatchException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    MatchException(final ODataException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized ODataException getCause() {
+      return (ODataException) super.getCause();
+    }
+  }
+
+  /**
+   * The (lazily created) pool for parallel filtering.
+   */
+  private static final class FilterPool {
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+        Math.max(1, Integer.getInteger(PARALLELISM, Runtime.getRuntime().availableProcessors())),
+        pool -> {
+          final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+          thread.setName("janos-filter-" + thread.getPoolIndex());
+          return thread;
+        }, null, false);
+  }
+}
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.expression;
+
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
+import org.apache.olingo.odata2.api.uri.expression.OrderExpression;
+import org.apache.olingo.odata2.api.uri.expression.SortOrder;
+import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
+
+import java.util.*;
+
+/**
+ * A <code>$orderby</code> expression compiled into typed sort keys (see {@link CompiledExpression}).
+ * <br/>
+ * The sort keys of each data object are evaluated only once ({@link #sortKeys(Object)})
+ * and afterwards compared with {@link ExpressionValues#compare(Object, Object)}.
+ * A <code>null</code> value is sorted after all other values in ascending order
+ * (and hence before all other values in descending order).
+ * <br/>
+ * Inputs with at least {@link #PARALLEL_SORT_THRESHOLD} elements are sorted with {@link Arrays#parallelSort}
+ * (which is stable as the sequential sort).
+ */
+public final class CompiledOrderBy {
+
+  /** minimum number of elements for which the (stable) parallel sort is used */
+  public static final int PARALLEL_SORT_THRESHOLD = 1 << 16;
+
+  private final CompiledExpression[] expressions;
+  private final boolean[] descending;
+
+  private CompiledOrderBy(final CompiledExpression[] expressions, final boolean[] descending) {
+    this.expressions = expressions;
+    this.descending = descending;
+  }
+
+  /**
+   * Compile the given order by expression.
+   *
+   * @param orderBy the order by expression from the request
+   * @param valueAccess used to read the property values of the data objects
+   * @return the compiled order by
+   * @throws ODataException if the order by contains an expression which is not supported
+   */
+  public static CompiledOrderBy compile(final OrderByExpression orderBy, final ValueAccess valueAccess)
+      throws ODataException {
+    List<OrderExpression> orders = orderBy.getOrders();
+    CompiledExpression[] expressions = new CompiledExpression[orders.size()];
+    boolean[] descending = new boolean[orders.size()];
+    for (int i = 0; i < expressions.length; i++) {
+      expressions[i] = CompiledExpression.compile(orders.get(i).getExpression(), valueAccess);
+      descending[i] = orders.get(i).getSortOrder() == SortOrder.desc;
+    }
+    return new CompiledOrderBy(expressions, descending);
+  }
+
+  /**
+   * Evaluate the sort keys of the given data object.
+   * A runtime error during evaluation (e.g. an invalid substring index) results in a <code>null</code> key.
+   *
+   * @param data the data object
+   * @return the sort keys (one per order expression)
+   * @throws ODataException if a property value could not be read
+   */
+  public Object[] sortKeys(final Object data) throws ODataException {
+    Object[] keys = new Object[expressions.length];
+    for (int i = 0; i < keys.length; i++) {
+      try {
+        keys[i] = expressions[i].evaluate(data);
+      } catch (final RuntimeException e) {
+        keys[i] = null;
+      }
+    }
+    return keys;
+  }
+
+  /**
+   * Compare the sort keys of two data objects.
+   *
+   * @param keys the sort keys of the first data object
+   * @param otherKeys the sort keys of the second data object
+   * @return a negative number, zero, or a positive number if the first data object is sorted before,
+   *         equal to or after the second data object
+   */
+  public int compareKeys(final Object[] keys, final Object[] otherKeys) {
+    for (int i = 0; i < keys.length; i++) {
+      int result = compareKey(keys[i], otherKeys[i]);
+      if (result != 0) {
+        return descending[i] ? -result : result;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Sort the given data objects (the sort keys are evaluated only once per data object).
+   *
+   * @param data the data objects
+   * @return the sorted data objects
+   * @throws ODataException if a property value could not be read
+   */
+  public <T> List<T> sort(final Collection<T> data) throws ODataException {
+    SortEntry<T>[] entries = sortedEntries(data);
+    List<T> result = new ArrayList<>(entries.length);
+    for (SortEntry<T> entry : entries) {
+      result.add(entry.value);
+    }
+    return result;
+  }
+
+  /**
+   * Sort the given list of data objects in place (the sort keys are evaluated only once per data object).
+   *
+   * @param data the data objects
+   * @throws ODataException if a property value could not be read
+   */
+  public <T> void sortInPlace(final List<T> data) throws ODataException {
+    SortEntry<T>[] entries = sortedEntries(data);
+    for (int i = 0; i < entries.length; i++) {
+      data.set(i, entries[i].value);
+    }
+  }
+
+  /**
+   * Sort the given array with the given comparator,
+   * with {@link Arrays#parallelSort} for at least {@link #PARALLEL_SORT_THRESHOLD} elements.
+   *
+   * @param entries the entries to sort
+   * @param comparator the comparator
+   */
+  public static <T> void sort(final T[] entries, final Comparator<? super T> comparator) {
+    if (entries.length >= PARALLEL_SORT_THRESHOLD) {
+      Arrays.parallelSort(entries, comparator);
+    } else {
+      Arrays.sort(entries, comparator);
+    }
+  }
+
+  /**
+   * Get the data objects at positions <code>skip</code> to <code>skip + top</code> of the sorted data objects.
+   * Only <code>skip + top</code> data objects are kept (in a bounded heap) while the data is processed,
+   * hence the effort is <code>O(n log(skip + top))</code> instead of <code>O(n log n)</code> for a full sort.
+   *
+   * @param data the data objects
+   * @param skip number of data objects to skip
+   * @param top maximum number of data objects to return
+   * @return the sorted data objects of the requested range
+   * @throws ODataException if a property value could not be read
+   */
+  public <T> List<T> top(final Collection<T> data, final int skip, final int top) throws ODataException {
+    final long limit = (long) skip + top;
+    if (limit >= data.size()) {
+      List<T> sorted = sort(data);
+      return sorted.subList(Math.min(skip, sorted.size()), sorted.size());
+    } else if (top <= 0) {
+      return new ArrayList<>();
+    }
+    final int capacity = (int) limit;
+    // max heap which keeps the 'capacity' smallest entries
+    PriorityQueue<SortEntry<T>> heap = new PriorityQueue<>(capacity, (a, b) -> compare(b, a));
+    for (T item : data) {
+      SortEntry<T> entry = new SortEntry<>(sortKeys(item), item);
+      if (heap.size() < capacity) {
+        heap.add(entry);
+      } else if (compare(entry, heap.peek()) < 0) {
+        heap.poll();
+        heap.add(entry);
+      }
+    }
+    List<SortEntry<T>> entries = new ArrayList<>(heap);
+    entries.sort(this::compare);
+    return values(entries.subList(skip, entries.size()));
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> SortEntry<T>[] sortedEntries(final Collection<T> data) throws ODataException {
+    SortEntry<T>[] entries = new SortEntry[data.size()];
+    int index = 0;
+    for (T item : data) {
+      entries[index++] = new SortEntry<>(sortKeys(item), item);
+    }
+    sort(entries, this::compare);
+    return entries;
+  }
+
+  private int compare(final SortEntry<?> entry, final SortEntry<?> other) {
+    return compareKeys(entry.keys, other.keys);
+  }
+
+  private static <T> List<T> values(final List<SortEntry<T>> entries) {
+    List<T> result = new ArrayList<>(entries.size());
+    for (SortEntry<T> entry : entries) {
+      result.add(entry.value);
+    }
+    return result;
+  }
+
+  private static int compareKey(final Object key, final Object otherKey) {
+    if (key == null) {
+      return otherKey == null ? 0 : 1;
+    } else if (otherKey == null) {
+      return -1;
+    }
+    Integer result = ExpressionValues.compare(key, otherKey);
+    return result == null ? 0 : result;
+  }
+
+  private static final class SortEntry<T> {
+    private final Object[] keys;
+    private final T value;
+
+    private SortEntry(final Object[] keys, final T value) {
+      this.keys = keys;
+      this.value = value;
+    }
+  }
+}
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.expression;
+
+import org.apache.olingo.odata2.api.edm.EdmFacets;
+import org.apache.olingo.odata2.api.edm.EdmLiteralKind;
+import org.apache.olingo.odata2.api.edm.EdmSimpleType;
+import org.apache.olingo.odata2.api.edm.EdmSimpleTypeKind;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.uri.expression.LiteralExpression;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+
+/**
+ * Typed value handling shared by the compiled expressions (and all components which have to
+ * evaluate values in the same way, e.g. indexes of a data store).
+ * <br/>
+ * Values are normalized so that integral numbers are represented as <code>Long</code>,
+ * floating point numbers as <code>Double</code>, and types without a natural Java ordering
+ * (e.g. Guid, Time or Binary) as their string representation.
+ */
+public final class ExpressionValues {
+
+  private ExpressionValues() {}
+
+  /**
+   * Bring a property or literal value into the normalized representation.
+   *
+   * @param value the value
+   * @param type the EDM type of the value
+   * @param facets the facets of the property (or <code>null</code>)
+   * @return the normalized value
+   * @throws ODataException if the value can not be converted
+   */
+  public static Object normalize(final Object value, final EdmSimpleType type, final EdmFacets facets)
+      throws ODataException {
+    if (value == null || value instanceof String || value instanceof Boolean) {
+      return value;
+    } else if (type == EdmSimpleTypeKind.Time.getEdmSimpleTypeInstance()
+        || type == EdmSimpleTypeKind.Guid.getEdmSimpleTypeInstance()
+        || type == EdmSimpleTypeKind.Binary.getEdmSimpleTypeInstance()) {
+      return type.valueToString(value, EdmLiteralKind.DEFAULT, facets);
+    } else if (value instanceof Long && (type == EdmSimpleTypeKind.DateTime.getEdmSimpleTypeInstance()
+        || type == EdmSimpleTypeKind.DateTimeOffset.getEdmSimpleTypeInstance())) {
+      // date values given as milliseconds
+      return new Date((Long) value);
+    } else if (value instanceof Long || value instanceof Double || value instanceof BigDecimal
+        || value instanceof Calendar || value instanceof Date) {
+      return value;
+    } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+      return ((Number) value).longValue();
+    } else if (value instanceof Float) {
+      return ((Float) value).doubleValue();
+    } else if (value instanceof BigInteger) {
+      return new BigDecimal((BigInteger) value);
+    } else if (value instanceof Character) {
+      return value.toString();
+    }
+    return type.valueToString(value, EdmLiteralKind.DEFAULT, facets);
+  }
+
+  /**
+   * Gets the normalized value of a literal.
+   *
+   * @param literal the literal expression
+   * @return the normalized value (<code>null</code> for the <code>null</code> literal)
+   * @throws ODataException if the literal can not be converted
+   */
+  public static Object literalValue(final LiteralExpression literal) throws ODataException {
+    final EdmSimpleType type = (EdmSimpleType) literal.getEdmType();
+    if (type == EdmSimpleTypeKind.Null.getEdmSimpleTypeInstance()) {
+      return null;
+    }
+    return normalize(type.valueOfString(literal.getUriLiteral(), EdmLiteralKind.URI, null,
+        type.getDefaultType()), type, null);
+  }
+
+  /**
+   * Check whether both normalized values are equal.
+   * Two <code>null</code> values are equal, a <code>null</code> and a non <code>null</code> value are not.
+   *
+   * @param first first value
+   * @param second second value
+   * @return <code>true</code> if both values are equal
+   */
+  public static boolean isEqual(final Object first, final Object second) {
+    if (first == null || second == null) {
+      return first == second;
+    }
+    Integer result = compare(first, second);
+    return result == null ? first.equals(second) : result == 0;
+  }
+
+  /**
+   * Compare both normalized values.
+   *
+   * @param first first value
+   * @param second second value
+   * @return the comparison result or <code>null</code> if one of the values is <code>null</code>
+   */
+  @SuppressWarnings("unchecked")
+  public static Integer compare(final Object first, final Object second) {
+    if (first == null || second == null) {
+      return null;
+    } else if (first instanceof Number && second instanceof Number) {
+      return compareNumbers((Number) first, (Number) second);
+    } else if (isDate(first) && isDate(second)) {
+      return Long.compare(toMillis(first), toMillis(second));
+    } else if (first.getClass() == second.getClass() && first instanceof Comparable) {
+      return ((Comparable<Object>) first).compareTo(second);
+    }
+    return first.toString().compareTo(second.toString());
+  }
+
+  private static int compareNumbers(final Number first, final Number second) {
+    if (first instanceof Long && second instanceof Long) {
+      return Long.compare(first.longValue(), second.longValue());
+    } else if (first instanceof BigDecimal || second instanceof BigDecimal) {
+      return toBigDecimal(first).compareTo(toBigDecimal(second));
+    }
+    return Double.compare(first.doubleValue(), second.doubleValue());
+  }
+
+  static Number toNumber(final Object value) {
+    if (value instanceof Number) {
+      return (Number) value;
+    }
+    return new BigDecimal(value.toString());
+  }
+
+  static BigDecimal toBigDecimal(final Number value) {
+    if (value instanceof BigDecimal) {
+      return (BigDecimal) value;
+    } else if (value instanceof Long) {
+      return BigDecimal.valueOf(value.longValue());
+    }
+    return BigDecimal.valueOf(value.doubleValue());
+  }
+
+  static boolean isDate(final Object value) {
+    return value instanceof Calendar || value instanceof Date;
+  }
+
+  static long toMillis(final Object value) {
+    return value instanceof Calendar ? ((Calendar) value).getTimeInMillis() : ((Date) value).getTime();
+  }
+}
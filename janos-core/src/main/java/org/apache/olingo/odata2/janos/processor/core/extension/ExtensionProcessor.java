@@ -3,33 +3,45 @@ package org.apache.olingo.odata2.janos.processor.core.extension;
 import org.apache.olingo.odata2.api.edm.EdmException;
 import org.apache.olingo.odata2.api.processor.ODataContext;
 import org.apache.olingo.odata2.api.processor.ODataResponse;
+import org.apache.olingo.odata2.api.processor.feature.CustomContentType;
 import org.apache.olingo.odata2.api.processor.feature.ODataProcessorFeature;
 import org.apache.olingo.odata2.api.uri.UriInfo;
 import org.apache.olingo.odata2.janos.processor.api.extension.Extension;
 import org.apache.olingo.odata2.janos.processor.api.extension.ExtensionContext;
 import org.apache.olingo.odata2.janos.processor.core.ODataProcessor;
-import org.omg.CORBA.portable.InputStream;
 
+import java.io.InputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
+ * Processing of one call of a wrapped processor which checks for extensions.
+ * <br/>
+ * The wrapped processor (see {@link #wrap(ODataProcessor)}) is stateless and shared by all requests,
+ * an <code>ExtensionProcessor</code> is created per call.
+ *
  * Created by mibo on 27.02.16.
  */
 public class ExtensionProcessor<T extends ODataProcessor> {
 
-  private final ProcessorInvocationHandler handler;
-  private final ExtensionRegistry extensionRegistry;
-  private final ODataContext context;
+  private static final Object[] NO_PARAMETERS = new Object[0];
 
-  ExtensionProcessor(T processor, ExtensionRegistry extensionRegistry, ODataContext context) {
-    this.extensionRegistry = extensionRegistry;
-    this.handler = new ProcessorInvocationHandler<>(this, processor);
-    this.context = context;
+  private final ProcessorInvocationHandler<T> handler;
+  private final Method method;
+  private final Object[] parameters;
+
+  ExtensionProcessor(ProcessorInvocationHandler<T> handler, Method method, Object[] parameters) {
+    this.handler = handler;
+    this.method = method;
+    this.parameters = parameters;
   }
 
   public static <T extends ODataProcessor> Builder<T> wrap(T processor) {
@@ -45,26 +57,27 @@ public class ExtensionProcessor<T extends ODataProcessor> {
   Object process() throws Exception {
     //
     // get uri info and map to according methods
-    UriInfo info = (UriInfo) handler.getParameter(UriInfo.class);
+    UriInfo info = getParameter(UriInfo.class);
     if(info != null && info.getTargetEntitySet() != null) {
-      if(context != null) {
+      ODataContext context = handler.getContext();
+      // the contexts of batch parts have no http method
+      if(context != null && context.getHttpMethod() != null) {
         String httpMethod = context.getHttpMethod();
         return dispatch(httpMethod, info);
       }
     }
-    return handler.process();
+    return handler.process(method, parameters);
   }
 
-  private Object dispatch(String httpMethod, UriInfo info)
-      throws InvocationTargetException, IllegalAccessException, EdmException {
+  private Object dispatch(String httpMethod, UriInfo info) throws Exception {
 
     Extension.Method method = mapMethod(httpMethod);
-    ExtensionRegistry.ExtensionHolder ext = extensionRegistry.getExtension(method,
+    ExtensionRegistry.ExtensionHolder ext = handler.getExtensionRegistry().getExtension(method,
         info.getTargetEntitySet().getName());
     if(ext != null) {
       return ext.process(this);
     }
-    return handler.process();
+    return handler.process(this.method, parameters);
   }
 
   private Extension.Method mapMethod(String httpMethod) {
@@ -84,7 +97,7 @@ public class ExtensionProcessor<T extends ODataProcessor> {
    * @throws Exception
    */
   public ODataResponse proceed() throws Exception {
-    Object o = this.handler.process();
+    Object o = handler.process(method, parameters);
     if(o instanceof ODataResponse) {
       return (ODataResponse) o;
     }
@@ -95,16 +108,21 @@ public class ExtensionProcessor<T extends ODataProcessor> {
   public ExtensionContext createContext() {
     BasicExtensionContext context = new BasicExtensionContext(this);
 
-    context.addParameter(ExtensionContext.PARA_REQUEST_TYPE, handler.getMethod());
-    context.addParameter(ExtensionContext.PARA_URI_INFO, handler.getParameter(UriInfo.class));
-    context.addParameter(ExtensionContext.PARA_ACCEPT_HEADER, handler.getParameter(String.class));
-    context.addParameter(ExtensionContext.PARA_REQUEST_BODY, handler.getParameter(InputStream.class));
+    context.addParameter(ExtensionContext.PARA_REQUEST_TYPE, method);
+    context.addParameter(ExtensionContext.PARA_URI_INFO, getParameter(UriInfo.class));
+    context.addParameter(ExtensionContext.PARA_ACCEPT_HEADER, getParameter(String.class));
+    context.addParameter(ExtensionContext.PARA_REQUEST_BODY, getParameter(InputStream.class));
 
     return context;
   }
 
-  InvocationHandler getInvocationHandler() {
-    return handler;
+  private <P> P getParameter(Class<P> parameterClass) {
+    for (Object parameter : parameters) {
+      if (parameter != null && parameterClass.isAssignableFrom(parameter.getClass())) {
+        return parameterClass.cast(parameter);
+      }
+    }
+    return null;
   }
 
   public static class Builder<T extends ODataProcessor> {
@@ -115,13 +133,26 @@ public class ExtensionProcessor<T extends ODataProcessor> {
       this.processor = processor;
     }
 
-    public ODataProcessor finish(ODataContext context) {
+    /**
+     * Create the wrapping processor which can be shared by all requests
+     * (the context of a request is taken from the wrapped processor).
+     *
+     * @return the wrapping processor
+     */
+    public ODataProcessor finish() {
       if(extensionRegistry == null) {
         extensionRegistry = ExtensionRegistry.getInstance();
       }
-      ExtensionProcessor extProc = new ExtensionProcessor<>(processor, extensionRegistry, context);
       return (ODataProcessor) Proxy.newProxyInstance(this.getClass().getClassLoader(),
-          new Class[]{ODataProcessor.class}, extProc.getInvocationHandler());
+          new Class[]{ODataProcessor.class}, new ProcessorInvocationHandler<>(processor, extensionRegistry));
+    }
+
+    /**
+     * @deprecated the wrapping processor is not bound to a context anymore, use {@link #finish()}
+     */
+    @Deprecated
+    public ODataProcessor finish(ODataContext context) {
+      return finish();
     }
 
     public Builder<T> extensions(ExtensionRegistry extensionRegistry) {
@@ -132,34 +163,52 @@ public class ExtensionProcessor<T extends ODataProcessor> {
 
   /**
    * InvocationHandler which is used as proxy for the Processor method.
+   * The processor methods are called via method handles which are bound to the wrapped instance
+   * (created once per method).
    */
   private static class ProcessorInvocationHandler<T extends ODataProcessor> implements InvocationHandler {
+    private static final MethodType PROCESS_TYPE = MethodType.methodType(Object.class, Object[].class);
+
     private final T wrappedInstance;
-    private final ExtensionProcessor<T> extensionProcessor;
-    private Method invokeMethod;
-    private Object[] invokeParameters;
+    private final ExtensionRegistry extensionRegistry;
+    private final ConcurrentMap<Method, MethodHandle> methodHandles = new ConcurrentHashMap<>();
 
-    public ProcessorInvocationHandler(ExtensionProcessor<T> extensionProcessor, T wrappedInstance) {
-      this.extensionProcessor = extensionProcessor;
+    public ProcessorInvocationHandler(T wrappedInstance, ExtensionRegistry extensionRegistry) {
       this.wrappedInstance = wrappedInstance;
+      this.extensionRegistry = extensionRegistry;
     }
 
     @Override
     public Object invoke(Object o, Method method, Object[] objects) throws Throwable {
-      // XXX: change
-      if (isValid(method)) {
-        invokeMethod = method;
-        if (objects != null) {
-        	invokeParameters = Arrays.copyOf(objects, objects.length);
-        } else {
-        	invokeParameters = new Object[0];
-        }
-      } else {
+      if (!isValid(method)) {
         throw new RuntimeException("Invalid class '" + method.getDeclaringClass() +
             "' can not wrapped for asynchronous processing.");
       }
 
-      return extensionProcessor.process();
+      final boolean call = isCall(method);
+      if (call) {
+        wrappedInstance.beginRequest();
+      }
+      try {
+        return new ExtensionProcessor<>(this, method, objects == null ? NO_PARAMETERS : objects).process();
+      } catch (InvocationTargetException e) {
+        // throw the (declared) exception of the extension method
+        throw e.getCause();
+      } finally {
+        if (call) {
+          wrappedInstance.endRequest();
+        }
+      }
+    }
+
+    /**
+     * The context accessors and the custom content types are no calls of their own
+     * (they are used by the request handler before the request is dispatched).
+     */
+    private boolean isCall(Method method) {
+      final Class<?> declaringClass = method.getDeclaringClass();
+      return declaringClass != org.apache.olingo.odata2.api.processor.ODataProcessor.class
+          && declaringClass != CustomContentType.class;
     }
 
     private boolean isValid(Method method) {
@@ -167,26 +216,28 @@ public class ExtensionProcessor<T extends ODataProcessor> {
           || ODataProcessorFeature.class.isAssignableFrom(method.getDeclaringClass());
     }
 
-
-    Object process() throws InvocationTargetException, IllegalAccessException {
-      return invokeMethod.invoke(wrappedInstance, invokeParameters);
+    ODataContext getContext() throws Exception {
+      return wrappedInstance.getContext();
     }
 
-    <P> P getParameter(Class<P> parameterClass) {
-      for (Object parameter : invokeParameters) {
-        if (parameter != null && parameterClass.isAssignableFrom(parameter.getClass())) {
-          return parameterClass.cast(parameter);
-        }
-      }
-      return null;
+    ExtensionRegistry getExtensionRegistry() {
+      return extensionRegistry;
     }
 
-    /**
-     * Method which was invoked (and wrapped by this ProcessorInvocationHandler instance).
-     * @return Method which was invoked
-     */
-    public Object getMethod() {
-      return this.invokeMethod;
+    Object process(Method method, Object[] parameters) throws Exception {
+      MethodHandle handle = methodHandles.get(method);
+      if (handle == null) {
+        handle = MethodHandles.publicLookup().unreflect(method).bindTo(wrappedInstance)
+            .asSpreader(Object[].class, method.getParameterTypes().length).asType(PROCESS_TYPE);
+        methodHandles.putIfAbsent(method, handle);
+      }
+      try {
+        return (Object) handle.invokeExact(parameters);
+      } catch (Exception | Error e) {
+        throw e;
+      } catch (Throwable e) {
+        throw new UndeclaredThrowableException(e);
+      }
     }
   }
 
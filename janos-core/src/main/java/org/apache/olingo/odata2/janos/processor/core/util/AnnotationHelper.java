@@ -501,13 +501,24 @@ public class AnnotationHelper {
     return null;
   }
 
+  /**
+   * Get the field of the given class (or one of its super classes) for the given property name.
+   *
+   * @param clazz the class
+   * @param propertyName the name of the property
+   * @return the field or <code>null</code> if the class has no field for the property
+   */
+  public Field getFieldForProperty(final Class<?> clazz, final String propertyName) {
+    return getFieldForPropertyName(propertyName, clazz);
+  }
+
   public Class<?> getFieldTypeForProperty(final Class<?> clazz, final String propertyName)
       throws ODataAnnotationException {
     if (clazz == null) {
       return null;
     }
 
-    Field field = getFieldForPropertyName(propertyName, clazz, true);
+    Field field = getFieldForPropertyName(propertyName, clazz);
     if (field == null) {
       throw new ODataAnnotationException("No field for property '" + propertyName
           + "' found at class '" + clazz + "'.");
@@ -529,7 +540,7 @@ public class AnnotationHelper {
       return null;
     }
 
-    Field field = getFieldForPropertyName(propertyName, instance.getClass(), true);
+    Field field = getFieldForPropertyName(propertyName, instance.getClass());
     if (field == null) {
       throw new ODataAnnotationException("No field for property '" + propertyName
           + "' found at class '" + instance.getClass() + "'.");
@@ -539,38 +550,15 @@ public class AnnotationHelper {
 
   public void setValueForProperty(final Object instance, final String propertyName, final Object propertyValue) {
     if (instance != null) {
-      Field field = getFieldForPropertyName(propertyName, instance.getClass(), true);
+      Field field = getFieldForPropertyName(propertyName, instance.getClass());
       if (field != null) {
         setFieldValue(instance, field, propertyValue);
       }
     }
   }
 
-  private Field getFieldForPropertyName(final String propertyName,
-      final Class<?> resultClass, final boolean inherited) {
-
-    Field[] fields = resultClass.getDeclaredFields();
-    for (Field field : fields) {
-      EdmProperty property = field.getAnnotation(EdmProperty.class);
-      if (property == null) {
-        if(getCanonicalName(field).equals(propertyName)) {
-          return field;
-        }
-      } else {
-        if (property.name().isEmpty() && getCanonicalName(field).equals(propertyName)) {
-          return field;
-        } else if (property.name().equals(propertyName)) {
-          return field;
-        }
-      }
-    }
-
-    Class<?> superClass = resultClass.getSuperclass();
-    if (inherited && superClass != Object.class) {
-      return getFieldForPropertyName(propertyName, superClass, true);
-    }
-
-    return null;
+  private Field getFieldForPropertyName(final String propertyName, final Class<?> resultClass) {
+    return ClassMetadata.of(resultClass).getFieldForProperty(propertyName);
   }
 
   public Object getValueForField(final Object instance, final String fieldName,
@@ -603,21 +591,13 @@ public class AnnotationHelper {
 
   private Map<String, Object> getValueForAnnotatedFields(final Object instance, final Class<?> resultClass,
       final Class<? extends Annotation> annotation, final boolean inherited) {
-    Field[] fields = resultClass.getDeclaredFields();
     Map<String, Object> fieldName2Value = new HashMap<>();
 
-    for (Field field : fields) {
-      if (field.getAnnotation(annotation) != null) {
-        Object value = getFieldValue(instance, field);
-        final String name = extractPropertyName(field);
-        fieldName2Value.put(name, value);
-      }
-    }
-
-    Class<?> superClass = resultClass.getSuperclass();
-    if (inherited && superClass != Object.class) {
-      Map<String, Object> tmp = getValueForAnnotatedFields(instance, superClass, annotation, true);
-      fieldName2Value.putAll(tmp);
+    // fields of super classes (at the end of the list) overwrite the fields of the class
+    for (Field field : getAnnotatedFields(resultClass, annotation, inherited)) {
+      Object value = getFieldValue(instance, field);
+      final String name = extractPropertyName(field);
+      fieldName2Value.put(name, value);
     }
 
     return fieldName2Value;
@@ -813,22 +793,18 @@ public class AnnotationHelper {
       return null;
     }
 
-    Field[] fields = resultClass.getDeclaredFields();
-    List<Field> annotatedFields = new ArrayList<>();
-
-    for (Field field : fields) {
-      if (field.getAnnotation(annotation) != null) {
-        annotatedFields.add(field);
-      }
+    List<Field> annotatedFields = ClassMetadata.of(resultClass).getAnnotatedFields(annotation);
+    if (inherited) {
+      return annotatedFields;
     }
 
-    Class<?> superClass = resultClass.getSuperclass();
-    if (inherited && superClass != Object.class) {
-      List<Field> tmp = getAnnotatedFields(superClass, annotation, true);
-      annotatedFields.addAll(tmp);
+    List<Field> declaredFields = new ArrayList<>();
+    for (Field field : annotatedFields) {
+      if (field.getDeclaringClass() == resultClass) {
+        declaredFields.add(field);
+      }
     }
-
-    return annotatedFields;
+    return declaredFields;
   }
 
   private Object getValueForField(final Object instance, final String fieldName, final Class<?> resultClass,
@@ -837,29 +813,18 @@ public class AnnotationHelper {
       return null;
     }
 
-    Field[] fields = resultClass.getDeclaredFields();
-    for (Field field : fields) {
-      if (field.getAnnotation(annotation) != null
-          && (fieldName == null || field.getName().equals(fieldName))) {
+    for (Field field : getAnnotatedFields(resultClass, annotation, inherited)) {
+      if (fieldName == null || field.getName().equals(fieldName)) {
         return getFieldValue(instance, field);
       }
     }
 
-    Class<?> superClass = resultClass.getSuperclass();
-    if (inherited && superClass != Object.class) {
-      return getValueForField(instance, fieldName, superClass, annotation, true);
-    }
-
     return null;
   }
 
   private Object getFieldValue(final Object instance, final Field field) {
     try {
-      boolean access = field.isAccessible();
-      field.setAccessible(true);
-      Object value = field.get(instance);
-      field.setAccessible(access);
-      return value;
+      return field.get(instance);
     } catch (IllegalArgumentException | IllegalAccessException ex) { // should never happen
       throw new AnnotationRuntimeException(ex);
     }
@@ -873,10 +838,7 @@ public class AnnotationHelper {
           && value.getClass() == String.class) {
         usedValue = convert(field, (String) value);
       }
-      boolean access = field.isAccessible();
-      field.setAccessible(true);
       field.set(instance, usedValue);
-      field.setAccessible(access);
     } catch (IllegalArgumentException | IllegalAccessException ex) { // should never happen
       throw new AnnotationRuntimeException(ex);
     }
@@ -940,24 +902,12 @@ public class AnnotationHelper {
     if (clazz == null) {
       return false;
     } else {
-      // TODO: mibo: do next checks only if first was not true
-      final boolean isEntity = null != clazz.getAnnotation(EdmEntityType.class);
-      final boolean isEntitySet = null != clazz.getAnnotation(EdmEntitySet.class);
-      final boolean isComplexEntity = null != clazz.getAnnotation(EdmComplexType.class);
-      final boolean hasFunctionImport = hasEdmFunction(clazz);
-
-      return isEntity || isEntitySet || isComplexEntity || hasFunctionImport;
+      return ClassMetadata.of(clazz).isEdmAnnotated();
     }
   }
 
   public boolean hasEdmFunction(final Class<?> clazz) {
-    Method[] methods = clazz.getMethods();
-    for (Method method : methods) {
-      if (method.getAnnotation(EdmFunctionImport.class) != null) {
-        return true;
-      }
-    }
-    return false;
+    return ClassMetadata.of(clazz).hasEdmFunction();
   }
 
   public String getCanonicalName(final Field field) {
@@ -975,6 +925,22 @@ public class AnnotationHelper {
     return content.substring(0, 1).toUpperCase(Locale.ENGLISH) + content.substring(1);
   }
 
+  /**
+   * Get the simple type of the property for given field
+   * (the type set at the <code>EdmProperty</code> annotation or else the type mapped from the field type).
+   *
+   * @param field the property field
+   * @return the simple type
+   */
+  public EdmSimpleType getEdmSimpleType(final Field field) {
+    EdmProperty edmProperty = field.getAnnotation(EdmProperty.class);
+    EdmType edmType = edmProperty == null ? EdmType.NULL : edmProperty.type();
+    if (edmType == EdmType.NULL) {
+      edmType = mapType(field.getType());
+    }
+    return mapTypeKind(edmType).getEdmSimpleTypeInstance();
+  }
+
   public EdmSimpleTypeKind mapTypeKind(final org.apache.olingo.odata2.api.annotation.edm.EdmType type) {
     switch (type) {
     case BINARY:
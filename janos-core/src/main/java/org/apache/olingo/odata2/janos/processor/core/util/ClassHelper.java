@@ -181,34 +181,45 @@ public class ClassHelper {
     }
   }
 
-
+  /**
+   * Get the value of the field for the given instance.
+   * The field is made accessible (once) if necessary, hence concurrent calls are not synchronized.
+   *
+   * @param instance the instance
+   * @param field the field
+   * @return the value of the field
+   */
   public static Object getFieldValue(final Object instance, final Field field) {
     try {
-      synchronized (field) {
-        boolean access = field.isAccessible();
-        field.setAccessible(true);
-        Object value = field.get(instance);
-        field.setAccessible(access);
-        return value;
-      }
+      makeAccessible(field);
+      return field.get(instance);
     } catch (IllegalArgumentException | IllegalAccessException ex) { // should never happen
       throw new AnnotationRuntimeException(ex);
     }
   }
 
+  /**
+   * Set the value of the field for the given instance (see {@link #getFieldValue(Object, Field)}).
+   *
+   * @param instance the instance
+   * @param field the field
+   * @param value the new value of the field
+   */
   public static void setFieldValue(final Object instance, final Field field, final Object value) {
     try {
-      synchronized (field) {
-        boolean access = field.isAccessible();
-        field.setAccessible(true);
-        field.set(instance, value);
-        field.setAccessible(access);
-      }
+      makeAccessible(field);
+      field.set(instance, value);
     } catch (IllegalArgumentException | IllegalAccessException ex) { // should never happen
       throw new AnnotationRuntimeException(ex);
     }
   }
 
+  private static void makeAccessible(final Field field) {
+    if (!field.isAccessible()) {
+      field.setAccessible(true);
+    }
+  }
+
   private static File[] listSubFolder(final File folder) {
     File[] subfolders = folder.listFiles(FOLDER_FILTER);
     if (subfolders == null) {
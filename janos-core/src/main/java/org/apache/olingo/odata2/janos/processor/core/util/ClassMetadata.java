@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.util;
+
+import org.apache.olingo.odata2.api.annotation.edm.EdmComplexType;
+import org.apache.olingo.odata2.api.annotation.edm.EdmEntitySet;
+import org.apache.olingo.odata2.api.annotation.edm.EdmEntityType;
+import org.apache.olingo.odata2.api.annotation.edm.EdmFunctionImport;
+import org.apache.olingo.odata2.api.annotation.edm.EdmProperty;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Annotation metadata of a class (and its super classes) which is created once per class
+ * (see {@link #of(Class)}) instead of scanning the fields and methods of the class on each call.
+ * <br/>
+ * The fields are made accessible once on creation, the field lists are in the order
+ * of the former scans (declared fields of the class before the fields of its super classes).
+ */
+final class ClassMetadata {
+
+  private static final AnnotationHelper ANNOTATION_HELPER = new AnnotationHelper();
+  private static final ClassValue<ClassMetadata> METADATA = new ClassValue<ClassMetadata>() {
+    @Override
+    protected ClassMetadata computeValue(final Class<?> type) {
+      return new ClassMetadata(type);
+    }
+  };
+
+  private final List<Field> fields;
+  private final Map<String, Field> propertyName2Field;
+  private final boolean edmFunction;
+  private final boolean edmAnnotated;
+  private final ConcurrentMap<Class<? extends Annotation>, List<Field>> annotatedFields = new ConcurrentHashMap<>();
+
+  private ClassMetadata(final Class<?> type) {
+    List<Field> allFields = new ArrayList<>();
+    Map<String, Field> propertyFields = new HashMap<>();
+    for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+      for (Field field : current.getDeclaredFields()) {
+        makeAccessible(field);
+        allFields.add(field);
+        propertyFields.putIfAbsent(getPropertyName(field), field);
+      }
+    }
+    fields = Collections.unmodifiableList(allFields);
+    propertyName2Field = propertyFields;
+
+    boolean hasFunction = false;
+    for (Method method : type.getMethods()) {
+      if (method.getAnnotation(EdmFunctionImport.class) != null) {
+        hasFunction = true;
+        break;
+      }
+    }
+    edmFunction = hasFunction;
+    edmAnnotated = type.getAnnotation(EdmEntityType.class) != null
+        || type.getAnnotation(EdmEntitySet.class) != null
+        || type.getAnnotation(EdmComplexType.class) != null
+        || edmFunction;
+  }
+
+  /**
+   * Get the metadata of the given class.
+   *
+   * @param type the class
+   * @return metadata of the class
+   */
+  static ClassMetadata of(final Class<?> type) {
+    return METADATA.get(type);
+  }
+
+  private static void makeAccessible(final Field field) {
+    try {
+      field.setAccessible(true);
+    } catch (RuntimeException e) {
+      // e.g. fields of JDK classes, access is checked on each call
+    }
+  }
+
+  private static String getPropertyName(final Field field) {
+    final EdmProperty property = field.getAnnotation(EdmProperty.class);
+    if (property == null || property.name().isEmpty()) {
+      return ANNOTATION_HELPER.getCanonicalName(field);
+    }
+    return property.name();
+  }
+
+  /**
+   * @return all fields of the class and its super classes
+   */
+  List<Field> getFields() {
+    return fields;
+  }
+
+  /**
+   * @param annotation the annotation
+   * @return all (unmodifiable) fields of the class and its super classes which are annotated with the annotation
+   */
+  List<Field> getAnnotatedFields(final Class<? extends Annotation> annotation) {
+    List<Field> result = annotatedFields.get(annotation);
+    if (result == null) {
+      List<Field> annotated = new ArrayList<>();
+      for (Field field : fields) {
+        if (field.getAnnotation(annotation) != null) {
+          annotated.add(field);
+        }
+      }
+      result = Collections.unmodifiableList(annotated);
+      annotatedFields.putIfAbsent(annotation, result);
+    }
+    return result;
+  }
+
+  /**
+   * @param propertyName name of the property
+   * @return the field for the property or <code>null</code> if the class has no such field
+   */
+  Field getFieldForProperty(final String propertyName) {
+    return propertyName2Field.get(propertyName);
+  }
+
+  /**
+   * @return <code>true</code> if the class has an {@link EdmFunctionImport} annotated method
+   */
+  boolean hasEdmFunction() {
+    return edmFunction;
+  }
+
+  /**
+   * @return <code>true</code> if the class is EDM annotated (see {@link AnnotationHelper#isEdmAnnotated(Class)})
+   */
+  boolean isEdmAnnotated() {
+    return edmAnnotated;
+  }
+}
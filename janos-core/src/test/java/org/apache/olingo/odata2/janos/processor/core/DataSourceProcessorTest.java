@@ -16,25 +16,35 @@
 package org.apache.olingo.odata2.janos.processor.core;
 
 import com.google.gson.internal.LinkedTreeMap;
+import org.apache.olingo.odata2.api.batch.BatchHandler;
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.apache.olingo.odata2.api.commons.InlineCount;
 import org.apache.olingo.odata2.api.edm.Edm;
 import org.apache.olingo.odata2.api.edm.EdmEntitySet;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
 import org.apache.olingo.odata2.api.exception.ODataException;
 import org.apache.olingo.odata2.api.processor.ODataContext;
+import org.apache.olingo.odata2.api.processor.ODataRequest;
 import org.apache.olingo.odata2.api.processor.ODataResponse;
+import org.apache.olingo.odata2.api.processor.feature.CustomContentType;
+import org.apache.olingo.odata2.api.processor.part.EntityProcessor;
 import org.apache.olingo.odata2.api.uri.PathInfo;
 import org.apache.olingo.odata2.api.uri.UriInfo;
 import org.apache.olingo.odata2.api.uri.expression.FilterExpression;
 import org.apache.olingo.odata2.api.uri.expression.OrderByExpression;
+import org.apache.olingo.odata2.api.uri.info.DeleteUriInfo;
 import org.apache.olingo.odata2.api.uri.info.GetEntitySetUriInfo;
 import org.apache.olingo.odata2.core.uri.UriParserImpl;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
 import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.access.ValueAccess;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
+import org.apache.olingo.odata2.janos.processor.api.data.source.FunctionSource;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
 import org.apache.olingo.odata2.janos.processor.core.data.access.AnnotationValueAccess;
 import org.apache.olingo.odata2.janos.processor.core.data.access.BeanPropertyAccess;
 import org.apache.olingo.odata2.janos.processor.core.data.source.AnnotationDataSource;
+import org.apache.olingo.odata2.janos.processor.core.extension.ExtensionProcessor;
 import org.apache.olingo.odata2.janos.processor.core.model.Building;
 import org.apache.olingo.odata2.janos.processor.core.model.Room;
 import org.apache.olingo.odata2.testutil.helper.JsonHelper;
@@ -42,11 +52,15 @@ import org.apache.olingo.odata2.testutil.helper.StringHelper;
 import org.apache.olingo.odata2.testutil.mock.EdmMock;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  *
@@ -149,6 +163,29 @@ public class DataSourceProcessorTest {
   }
 
 
+  @Test
+  public void readStreamed() throws Exception {
+    GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
+    Mockito.when(uriInfo.getTop()).thenReturn(5);
+    Mockito.when(uriInfo.getSkip()).thenReturn(2);
+
+    // rooms in order of their keys, of which only the requested page is read
+    List<Room> rooms = createRooms(1, 10);
+    AtomicInteger consumed = new AtomicInteger();
+    ReadResult<Room> readResult = ReadResult.forStream(rooms.stream().peek(room -> consumed.incrementAndGet()))
+        .orderApplied().build();
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) readResult);
+
+    ODataResponse result = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+    StringHelper.Stream resultStream = StringHelper.toStream(result.getEntityAsStream());
+    List<LinkedTreeMap<?, ?>> parsedResults = JsonHelper.getResults(resultStream.asString());
+    Assert.assertEquals(5, parsedResults.size());
+    Assert.assertEquals("Room with id: 3", parsedResults.get(0).get("Name"));
+    Assert.assertEquals("Room with id: 7", parsedResults.get(4).get("Name"));
+    Assert.assertEquals(8, consumed.get());
+  }
+
   @Test
   public void readOrder() throws Exception {
     GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
@@ -172,6 +209,31 @@ public class DataSourceProcessorTest {
     Assert.assertEquals("Room with id: 9", parsedResults.get(9).get("Name"));
   }
 
+  @Test
+  public void readOrderNumeric() throws Exception {
+    GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
+    Edm edm = EdmMock.createMockEdm();
+
+    OrderByExpression exp = UriParserImpl.parseOrderBy(edm, edm.getEntityType("RefScenario", "Room"), "Seats desc");
+    Mockito.when(uriInfo.getOrderBy()).thenReturn(exp);
+
+    // seats from 11 to 105 (which are sorted differently as strings)
+    List<Room> results = createRooms(1, 95);
+    Collections.shuffle(results);
+    ReadResult<Room> readResult = ReadResult.forResult(results).build();
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult)readResult);
+
+    ODataResponse result = dataSourceProcessor.readEntitySet(uriInfo, "application/json");
+
+    StringHelper.Stream resultStream = StringHelper.toStream(result.getEntityAsStream());
+    List<LinkedTreeMap<?, ?>> parsedResults = JsonHelper.getResults(resultStream.asString());
+    Assert.assertEquals(95, parsedResults.size());
+    for (int i = 0; i < parsedResults.size(); i++) {
+      Assert.assertEquals("Room with id: " + (95 - i), parsedResults.get(i).get("Name"));
+    }
+  }
+
   @Test
   public void optimizedReadOrder() throws Exception {
     GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
@@ -191,8 +253,10 @@ public class DataSourceProcessorTest {
     StringHelper.Stream resultStream = StringHelper.toStream(result.getEntityAsStream());
     List<LinkedTreeMap<?, ?>> parsedResults = JsonHelper.getResults(resultStream.asString());
     Assert.assertEquals(10, parsedResults.size());
-    Assert.assertEquals("Room with id: 1", parsedResults.get(0).get("Name"));
-    Assert.assertEquals("Room with id: 9", parsedResults.get(9).get("Name"));
+    // order applied by the data source is kept
+    for (int i = 0; i < results.size(); i++) {
+      Assert.assertEquals(results.get(i).getName(), parsedResults.get(i).get("Name"));
+    }
   }
 
   @Test
@@ -281,6 +345,145 @@ public class DataSourceProcessorTest {
     Assert.assertEquals("Room with id: 9", parsedResults.get(9).get("Name"));
   }
 
+  @Test
+  public void readServerPagingWithSkipToken() throws Exception {
+    Mockito.when(mockedDataSource.getPageSize(Mockito.any(EdmEntitySet.class))).thenReturn(3);
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) ReadResult.forResult(createRooms(1, 10)).build());
+
+    GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
+    Mockito.when(uriInfo.getTop()).thenReturn(null);
+    PathInfo pathInfo = dataSourceProcessor.getContext().getPathInfo();
+    Mockito.when(pathInfo.getServiceRoot()).thenReturn(new URI("http://localhost/"));
+    Mockito.when(pathInfo.getRequestUri()).thenReturn(new URI("http://localhost/Rooms"));
+
+    // pages are in (string) key order: 1, 10, 2, 3, ...
+    String content = StringHelper.toStream(
+        dataSourceProcessor.readEntitySet(uriInfo, "application/json").getEntityAsStream()).asString();
+    List<LinkedTreeMap<?, ?>> parsedResults = JsonHelper.getResults(content);
+    Assert.assertEquals(3, parsedResults.size());
+    Assert.assertEquals("Room with id: 2", parsedResults.get(2).get("Name"));
+    Assert.assertTrue(content, content.contains("Rooms?$skiptoken=Id%3D'3'"));
+
+    Mockito.when(uriInfo.getSkipToken()).thenReturn("Id='3'");
+    content = StringHelper.toStream(
+        dataSourceProcessor.readEntitySet(uriInfo, "application/json").getEntityAsStream()).asString();
+    parsedResults = JsonHelper.getResults(content);
+    Assert.assertEquals(3, parsedResults.size());
+    Assert.assertEquals("Room with id: 3", parsedResults.get(0).get("Name"));
+    Assert.assertEquals("Room with id: 5", parsedResults.get(2).get("Name"));
+    Assert.assertTrue(content, content.contains("Rooms?$skiptoken=Id%3D'6'"));
+  }
+
+  @Test
+  public void inlineCountWithSkipTokenNotCountedByDataSource() throws Exception {
+    Mockito.when(mockedDataSource.getPageSize(Mockito.any(EdmEntitySet.class))).thenReturn(3);
+    Mockito.when(mockedDataSource.countData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn(null);
+    Mockito.when(mockedDataSource.readData(Mockito.any(EdmEntitySet.class), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) ReadResult.forResult(createRooms(1, 10)).build());
+
+    GetEntitySetUriInfo uriInfo = createMockedUriInfo("Rooms");
+    Mockito.when(uriInfo.getTop()).thenReturn(null);
+    Mockito.when(uriInfo.getInlineCount()).thenReturn(InlineCount.ALLPAGES);
+    Mockito.when(uriInfo.getSkipToken()).thenReturn("Id='3'");
+    PathInfo pathInfo = dataSourceProcessor.getContext().getPathInfo();
+    Mockito.when(pathInfo.getServiceRoot()).thenReturn(new URI("http://localhost/"));
+    Mockito.when(pathInfo.getRequestUri()).thenReturn(new URI("http://localhost/Rooms"));
+
+    String content = StringHelper.toStream(
+        dataSourceProcessor.readEntitySet(uriInfo, "application/json").getEntityAsStream()).asString();
+
+    // the skip token is applied after all entries are counted
+    ArgumentCaptor<ReadOptions> readOptions = ArgumentCaptor.forClass(ReadOptions.class);
+    Mockito.verify(mockedDataSource).readData(Mockito.any(EdmEntitySet.class), readOptions.capture());
+    Assert.assertNull(readOptions.getValue().getSkipToken());
+    Assert.assertTrue(content, content.contains("\"__count\":\"10\""));
+    List<LinkedTreeMap<?, ?>> parsedResults = JsonHelper.getResults(content);
+    Assert.assertEquals(3, parsedResults.size());
+    Assert.assertEquals("Room with id: 3", parsedResults.get(0).get("Name"));
+  }
+
+  @Test
+  public void contextRemovedAtEndOfRequest() throws Exception {
+    ODataContext context = Mockito.mock(ODataContext.class);
+    ODataContext partContext = Mockito.mock(ODataContext.class);
+
+    dataSourceProcessor.setContext(context);
+    dataSourceProcessor.beginRequest();
+    // nested call (e.g. a batch part) with its own context
+    dataSourceProcessor.setContext(partContext);
+    dataSourceProcessor.beginRequest();
+    Assert.assertSame(partContext, dataSourceProcessor.getContext());
+    dataSourceProcessor.endRequest();
+    Assert.assertSame(context, dataSourceProcessor.getContext());
+    dataSourceProcessor.endRequest();
+
+    Assert.assertNull(dataSourceProcessor.getContext());
+    Mockito.verify(mockedDataSource, Mockito.times(2)).beginRequest();
+    Mockito.verify(mockedDataSource, Mockito.times(2)).endRequest();
+  }
+
+  @Test
+  public void contextKeptForCustomContentTypes() throws Exception {
+    ODataContext context = Mockito.mock(ODataContext.class);
+    org.apache.olingo.odata2.api.processor.ODataProcessor processor =
+        ExtensionProcessor.wrap(dataSourceProcessor).finish();
+
+    processor.setContext(context);
+    // used by the request handler before the request is dispatched
+    ((CustomContentType) processor).getCustomContentTypes(EntityProcessor.class);
+
+    Assert.assertSame(context, processor.getContext());
+    Mockito.verify(mockedDataSource, Mockito.never()).beginRequest();
+  }
+
+  @Test
+  public void functionSourceNotifiedAfterCommit() throws Exception {
+    FunctionSource functionSource = Mockito.mock(FunctionSource.class);
+    DataSourceProcessor processor = new DataSourceProcessor(mockedDataSource, mockedValueAccess, functionSource);
+    EdmEntitySet rooms = EdmMock.getEntitySet(EdmMock.createMockEdm(), "Rooms");
+    DeleteUriInfo uriInfo = Mockito.mock(DeleteUriInfo.class);
+    Mockito.when(uriInfo.getStartEntitySet()).thenReturn(rooms);
+    BatchHandler handler = Mockito.mock(BatchHandler.class);
+    Mockito.when(handler.handleRequest(Mockito.any(ODataRequest.class))).thenAnswer(invocation -> {
+      processor.deleteEntity(uriInfo, null);
+      return ODataResponse.status(HttpStatusCodes.NO_CONTENT).build();
+    });
+
+    processor.executeChangeSet(handler, Collections.singletonList(Mockito.mock(ODataRequest.class)));
+
+    // notified on the write and again after the commit of the change set
+    InOrder order = Mockito.inOrder(mockedDataSource, functionSource);
+    order.verify(mockedDataSource).beginUnitOfWork();
+    order.verify(functionSource).dataChanged(rooms);
+    order.verify(mockedDataSource).commitUnitOfWork();
+    order.verify(functionSource).dataChanged(rooms);
+  }
+
+  @Test
+  public void deletedPropertyValueIsWritten() throws Exception {
+    FunctionSource functionSource = Mockito.mock(FunctionSource.class);
+    DataSourceProcessor processor = new DataSourceProcessor(mockedDataSource, mockedValueAccess, functionSource);
+    EdmEntitySet rooms = createMockedUriInfo("Rooms").getTargetEntitySet();
+    processor.setContext(dataSourceProcessor.getContext());
+    Room room = createRoom(1);
+    ReadResult<Room> readResult = ReadResult.forResult(Collections.singletonList(room)).build();
+    Mockito.when(mockedDataSource.readData(Mockito.eq(rooms), Mockito.any(ReadOptions.class)))
+        .thenReturn((ReadResult) readResult);
+    EdmProperty name = (EdmProperty) rooms.getEntityType().getProperty("Name");
+    DeleteUriInfo uriInfo = Mockito.mock(DeleteUriInfo.class);
+    Mockito.when(uriInfo.getStartEntitySet()).thenReturn(rooms);
+    Mockito.when(uriInfo.getTargetEntitySet()).thenReturn(rooms);
+    Mockito.when(uriInfo.getPropertyPath()).thenReturn(Collections.singletonList(name));
+
+    processor.deleteEntitySimplePropertyValue(uriInfo, null);
+
+    Assert.assertNull(room.getName());
+    Mockito.verify(mockedDataSource).updateData(rooms, room);
+    Mockito.verify(functionSource).dataChanged(rooms);
+  }
+
   private UriInfo createMockedUriInfo(String entitySetName) throws ODataException {
     Edm edm = EdmMock.createMockEdm();
     UriInfo uriInfo = Mockito.mock(UriInfo.class);
@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class MediaRangeTest {
+
+  @Test
+  public void parseRanges() {
+    assertRange(MediaRange.parse("bytes=0-499", 1000), 0, 499);
+    assertRange(MediaRange.parse("bytes=500-", 1000), 500, 999);
+    assertRange(MediaRange.parse("bytes=-100", 1000), 900, 999);
+    assertRange(MediaRange.parse("bytes=900-2000", 1000), 900, 999);
+    assertRange(MediaRange.parse("bytes=-2000", 1000), 0, 999);
+  }
+
+  @Test
+  public void ignoredRanges() {
+    Assert.assertNull(MediaRange.parse(null, 1000));
+    Assert.assertNull(MediaRange.parse("items=0-1", 1000));
+    Assert.assertNull(MediaRange.parse("bytes=0-1,5-6", 1000));
+    Assert.assertNull(MediaRange.parse("bytes=10-1", 1000));
+    Assert.assertNull(MediaRange.parse("bytes=a-b", 1000));
+  }
+
+  @Test
+  public void unsatisfiableRanges() {
+    Assert.assertSame(MediaRange.UNSATISFIABLE, MediaRange.parse("bytes=1000-", 1000));
+    Assert.assertSame(MediaRange.UNSATISFIABLE, MediaRange.parse("bytes=-0", 1000));
+    Assert.assertSame(MediaRange.UNSATISFIABLE, MediaRange.parse("bytes=-10", 0));
+  }
+
+  private void assertRange(final MediaRange range, final long first, final long last) {
+    Assert.assertNotNull(range);
+    Assert.assertEquals(first, range.getFirst());
+    Assert.assertEquals(last, range.getLast());
+  }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.apache.olingo.odata2.api.exception.ODataApplicationException;
+import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource.BinaryData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ *
+ */
+public class MediaUploadTest {
+
+  private static final String SHA_256_ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+  @Test
+  public void smallUploadInMemory() throws Exception {
+    BinaryData binaryData = new MediaUpload(-1, 16).read(new ByteArrayInputStream("abc".getBytes("UTF-8")),
+        "text/plain");
+
+    Assert.assertFalse(binaryData.isStreamed());
+    Assert.assertNull(binaryData.getFile());
+    Assert.assertEquals("abc", new String(binaryData.getData(), "UTF-8"));
+    Assert.assertEquals("text/plain", binaryData.getMimeType());
+    Assert.assertEquals(SHA_256_ABC, binaryData.getDigest());
+  }
+
+  @Test
+  public void largeUploadSpooled() throws Exception {
+    BinaryData binaryData = new MediaUpload(-1, 2).read(new ByteArrayInputStream("abc".getBytes("UTF-8")),
+        "text/plain");
+
+    Path file = binaryData.getFile();
+    Assert.assertTrue(binaryData.isStreamed());
+    Assert.assertTrue(Files.exists(file));
+    Assert.assertEquals(3, binaryData.getLength());
+    Assert.assertEquals("abc", new String(binaryData.getData(), "UTF-8"));
+    Assert.assertEquals(SHA_256_ABC, binaryData.getDigest());
+
+    MediaUpload.release(binaryData);
+    Assert.assertFalse(Files.exists(file));
+  }
+
+  @Test
+  public void tooLargeUpload() throws Exception {
+    try {
+      new MediaUpload(2, 0).read(new ByteArrayInputStream("abc".getBytes("UTF-8")), "text/plain");
+      Assert.fail("Expected ODataApplicationException");
+    } catch (ODataApplicationException e) {
+      Assert.assertEquals(HttpStatusCodes.REQUEST_ENTITY_TOO_LARGE, e.getHttpStatus());
+    }
+  }
+}
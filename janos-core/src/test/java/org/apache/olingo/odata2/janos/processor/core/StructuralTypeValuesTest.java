@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core;
+
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.edm.EdmEntityType;
+import org.apache.olingo.odata2.api.edm.EdmProperty;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.janos.processor.core.data.access.BeanPropertyAccess;
+import org.apache.olingo.odata2.janos.processor.core.model.Room;
+import org.apache.olingo.odata2.testutil.mock.EdmMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ */
+public class StructuralTypeValuesTest {
+
+  private final List<String> readProperties = new ArrayList<>();
+  private final StructuralTypeValues.Cache cache = new StructuralTypeValues.Cache(new BeanPropertyAccess() {
+    @Override
+    public <T> Object getPropertyValue(final T data, final EdmProperty property) throws ODataException {
+      readProperties.add(property.getName());
+      return super.getPropertyValue(data, property);
+    }
+  });
+
+  @Test
+  public void valuesAreReadOnAccess() throws Exception {
+    Edm edm = EdmMock.createMockEdm();
+    EdmEntityType roomType = edm.getEntityType("RefScenario", "Room");
+    Room room = new Room(1, "Room with id: 1");
+    room.setSeats(11);
+    room.setVersion(2);
+
+    Map<String, Object> values = cache.get(roomType).values(room);
+    Assert.assertTrue(readProperties.isEmpty());
+    Assert.assertEquals(4, values.size());
+    Assert.assertTrue(values.containsKey("Seats"));
+    Assert.assertFalse(values.containsKey("Unknown"));
+
+    Assert.assertEquals("Room with id: 1", values.get("Name"));
+    Assert.assertEquals("Room with id: 1", values.get("Name"));
+    Assert.assertEquals(11, ((Number) values.get("Seats")).intValue());
+    Assert.assertNull(values.get("Unknown"));
+    Assert.assertEquals(Arrays.asList("Name", "Seats"), readProperties);
+
+    Assert.assertEquals(4, values.entrySet().size());
+    Assert.assertEquals(4, readProperties.size());
+  }
+
+  @Test
+  public void typesAreCompiledOnce() throws Exception {
+    Edm edm = EdmMock.createMockEdm();
+    EdmEntityType roomType = edm.getEntityType("RefScenario", "Room");
+
+    Assert.assertSame(cache.get(roomType), cache.get(roomType));
+    Assert.assertNotSame(cache.get(roomType),
+        cache.get(EdmMock.createMockEdm().getEntityType("RefScenario", "Room")));
+  }
+}
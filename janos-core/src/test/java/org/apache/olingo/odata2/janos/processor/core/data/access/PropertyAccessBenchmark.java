@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.access;
+
+import org.apache.olingo.odata2.api.edm.EdmProperty;
+import org.apache.olingo.odata2.janos.processor.core.model.Room;
+import org.apache.olingo.odata2.janos.processor.core.util.AnnotationHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the cached property accessors of {@link AnnotationValueAccess} and {@link BeanPropertyAccess}
+ * with the reflective access (as done before by the value access implementations).
+ * <br/>
+ * Run via the <code>main</code> method from the test classpath (it is no unit test).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PropertyAccessBenchmark {
+
+  private final AnnotationHelper annotationHelper = new AnnotationHelper();
+  private final AnnotationValueAccess annotationValueAccess = new AnnotationValueAccess();
+  private final BeanPropertyAccess beanPropertyAccess = new BeanPropertyAccess();
+  private Room room;
+  private EdmProperty seatsProperty;
+  private EdmProperty nameProperty;
+
+  @Setup
+  public void setup() {
+    room = new Room(1, "Room 1");
+    room.setSeats(42);
+    seatsProperty = property("Seats");
+    nameProperty = property("Name");
+  }
+
+  @Benchmark
+  public Object annotationGetReflective() throws Exception {
+    return annotationHelper.isEdmAnnotated(room) ? annotationHelper.getValueForProperty(room, "Seats") : null;
+  }
+
+  @Benchmark
+  public Object annotationGetAccessor() throws Exception {
+    return annotationValueAccess.getPropertyValue(room, seatsProperty);
+  }
+
+  @Benchmark
+  public void annotationSetReflective() throws Exception {
+    if (annotationHelper.isEdmAnnotated(room)) {
+      annotationHelper.setValueForProperty(room, "Seats", 7);
+    }
+  }
+
+  @Benchmark
+  public void annotationSetAccessor() throws Exception {
+    annotationValueAccess.setPropertyValue(room, seatsProperty, 7);
+  }
+
+  @Benchmark
+  public Object beanGetReflective() throws Exception {
+    return room.getClass().getMethod("getName").invoke(room);
+  }
+
+  @Benchmark
+  public Object beanGetAccessor() throws Exception {
+    return beanPropertyAccess.getPropertyValue(room, nameProperty);
+  }
+
+  /**
+   * Minimal (non mocked) property which only provides its name,
+   * so that the benchmark is not dominated by the overhead of a mock.
+   */
+  private static EdmProperty property(final String name) {
+    return (EdmProperty) Proxy.newProxyInstance(EdmProperty.class.getClassLoader(),
+        new Class<?>[] { EdmProperty.class }, (proxy, method, args) -> {
+          if ("getName".equals(method.getName())) {
+            return name;
+          }
+          return "isSimple".equals(method.getName()) ? Boolean.TRUE : null;
+        });
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(PropertyAccessBenchmark.class.getSimpleName()).build()).run();
+  }
+}
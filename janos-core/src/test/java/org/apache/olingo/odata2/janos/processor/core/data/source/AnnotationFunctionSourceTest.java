@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.data.source;
+
+import org.apache.olingo.odata2.api.annotation.edm.EdmFunctionImport;
+import org.apache.olingo.odata2.api.annotation.edm.EdmFunctionImport.ReturnType;
+import org.apache.olingo.odata2.api.annotation.edm.EdmFunctionImportParameter;
+import org.apache.olingo.odata2.api.annotation.edm.EdmType;
+import org.apache.olingo.odata2.api.edm.EdmEntitySet;
+import org.apache.olingo.odata2.janos.processor.api.data.source.CachedFunction;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ *
+ */
+public class AnnotationFunctionSourceTest {
+
+  private static int calls;
+
+  private AnnotationFunctionSource functionSource;
+
+  public static class Functions {
+    @EdmFunctionImport(returnType = @ReturnType(type = ReturnType.Type.SIMPLE))
+    @CachedFunction(dependsOn = "Rooms")
+    public String cached(@EdmFunctionImportParameter(name = "name", type = EdmType.STRING) String name) {
+      calls++;
+      return "Hello " + name;
+    }
+
+    @EdmFunctionImport(returnType = @ReturnType(type = ReturnType.Type.SIMPLE))
+    public String uncached(@EdmFunctionImportParameter(name = "name", type = EdmType.STRING) String name) {
+      calls++;
+      return "Hello " + name;
+    }
+  }
+
+  @Before
+  public void init() {
+    calls = 0;
+    functionSource = AnnotationFunctionSource.with(Collections.singletonList(Functions.class)).build();
+  }
+
+  @Test
+  public void uncachedFunction() throws Exception {
+    Assert.assertEquals("Hello A", functionSource.executeFunction("uncached", Collections.singletonMap("name", "A")));
+    Assert.assertEquals("Hello A", functionSource.executeFunction("uncached", Collections.singletonMap("name", "A")));
+    Assert.assertEquals(2, calls);
+  }
+
+  @Test
+  public void cachedFunction() throws Exception {
+    Assert.assertEquals("Hello A", functionSource.executeFunction("cached", Collections.singletonMap("name", "A")));
+    Assert.assertEquals("Hello A", functionSource.executeFunction("cached", Collections.singletonMap("name", "A")));
+    Assert.assertEquals(1, calls);
+    Assert.assertEquals("Hello B", functionSource.executeFunction("cached", Collections.singletonMap("name", "B")));
+    Assert.assertEquals(2, calls);
+  }
+
+  @Test
+  public void invalidationByDependentEntitySet() throws Exception {
+    functionSource.executeFunction("cached", Collections.singletonMap("name", "A"));
+
+    EdmEntitySet buildings = Mockito.mock(EdmEntitySet.class);
+    Mockito.when(buildings.getName()).thenReturn("Buildings");
+    functionSource.dataChanged(buildings);
+    functionSource.executeFunction("cached", Collections.singletonMap("name", "A"));
+    Assert.assertEquals(1, calls);
+
+    EdmEntitySet rooms = Mockito.mock(EdmEntitySet.class);
+    Mockito.when(rooms.getName()).thenReturn("Rooms");
+    functionSource.dataChanged(rooms);
+    functionSource.executeFunction("cached", Collections.singletonMap("name", "A"));
+    Assert.assertEquals(2, calls);
+  }
+
+  @Test
+  public void arrayParametersComparedByContent() throws Exception {
+    byte[] binary = new byte[] {1, 2, 3};
+    Object[] parameters = new Object[] {"A", binary};
+    Object key = AnnotationFunctionSource.createCacheKey(parameters);
+
+    Assert.assertEquals(key, AnnotationFunctionSource.createCacheKey(new Object[] {"A", new byte[] {1, 2, 3}}));
+    Assert.assertEquals(key.hashCode(),
+        AnnotationFunctionSource.createCacheKey(new Object[] {"A", new byte[] {1, 2, 3}}).hashCode());
+    Assert.assertFalse(key.equals(AnnotationFunctionSource.createCacheKey(new Object[] {"A", new byte[] {1, 2}})));
+    // a later change of the array does not change the key
+    binary[0] = 9;
+    Assert.assertEquals(key, AnnotationFunctionSource.createCacheKey(new Object[] {"A", new byte[] {1, 2, 3}}));
+  }
+
+  @Test
+  public void expirationAndEviction() throws Exception {
+    AtomicLong time = new AtomicLong();
+    FunctionResultCache cache = new FunctionResultCache(100, 2, time::get);
+
+    Assert.assertEquals("a", cache.get(Collections.singletonList("a"), () -> "a"));
+    Assert.assertEquals("a", cache.get(Collections.singletonList("a"), () -> "changed"));
+    time.set(100);
+    Assert.assertEquals("changed", cache.get(Collections.singletonList("a"), () -> "changed"));
+
+    cache.get(Collections.singletonList("b"), () -> "b");
+    cache.get(Collections.singletonList("c"), () -> "c");
+    Assert.assertEquals(2, cache.size());
+    Assert.assertEquals("new", cache.get(Collections.singletonList("a"), () -> "new"));
+  }
+}
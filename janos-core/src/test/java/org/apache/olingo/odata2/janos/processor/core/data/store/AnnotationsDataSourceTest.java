@@ -16,6 +16,8 @@
 package org.apache.olingo.odata2.janos.processor.core.data.store;
 
 import org.apache.olingo.odata2.api.annotation.edm.EdmKey;
+import org.apache.olingo.odata2.api.annotation.edm.EdmMediaResourceContent;
+import org.apache.olingo.odata2.api.annotation.edm.EdmMediaResourceMimeType;
 import org.apache.olingo.odata2.api.annotation.edm.EdmProperty;
 import org.apache.olingo.odata2.api.edm.EdmEntitySet;
 import org.apache.olingo.odata2.api.edm.EdmEntityType;
@@ -28,6 +30,7 @@ import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource;
 import org.apache.olingo.odata2.janos.processor.api.data.source.DataSource.BinaryData;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
+import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreManager;
 import org.apache.olingo.odata2.janos.processor.core.data.source.AnnotationDataSource;
 import org.apache.olingo.odata2.janos.processor.core.edm.AnnotationEdmProvider;
@@ -39,7 +42,12 @@ import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
@@ -291,6 +299,158 @@ public class AnnotationsDataSourceTest {
     Assert.assertEquals("image/png", storedPhoto.getImageType());
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void writeBinaryDataUpdatesEntity() throws Exception {
+    final List<Object> updates = new ArrayList<>();
+    DualDataStoreManager recordingManager = new DualDataStoreManager() {
+      @Override
+      public DataStore<Object> getDataStore(final String name) {
+        final DataStore<Object> store = super.getDataStore(name);
+        if (store == null || !"Photos".equals(name)) {
+          return store;
+        }
+        return (DataStore<Object>) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { DataStore.class }, (proxy, method, args) -> {
+              if (method.getName().equals("update")) {
+                updates.add(args[0]);
+              }
+              try {
+                return method.invoke(store, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            });
+      }
+    };
+    recordingManager.setDefaultProperty(DataStoreManager.KEEP_PERSISTENT, Boolean.FALSE.toString());
+    AnnotationDataSource recordingSource = new AnnotationDataSource(Building.class.getPackage().getName(),
+        recordingManager);
+    EdmEntitySet entitySet = createMockedEdmEntitySet("Photos");
+    Photo photo = new Photo();
+    photo.setName("SomePic");
+    photo.setType("PNG");
+    recordingSource.createData(entitySet, photo);
+
+    recordingSource.writeBinaryData(entitySet, photo,
+        new BinaryData("binary".getBytes(Charset.defaultCharset()), "image/png"));
+
+    Assert.assertEquals(Collections.singletonList(photo), updates);
+  }
+
+  @org.apache.olingo.odata2.api.annotation.edm.EdmEntitySet(name = "MediaFiles")
+  @org.apache.olingo.odata2.api.annotation.edm.EdmEntityType(name = "MediaFile")
+  public static class MediaFile {
+    @EdmKey
+    @EdmProperty(name = "Id")
+    public Integer id;
+    @EdmMediaResourceMimeType
+    public String mimeType;
+    @EdmMediaResourceContent
+    public Path content;
+  }
+
+  @Test
+  public void mediaFilesOfReplacedAndDeletedMediaResourcesAreDeleted() throws Exception {
+    Path directory = Files.createTempDirectory("janos-media");
+    System.setProperty(AnnotationDataSource.MEDIA_DIRECTORY, directory.toString());
+    try {
+      AnnotationDataSource fileDataSource = new AnnotationDataSource(
+          Collections.<Class<?>>singletonList(MediaFile.class), dataStoreFactory);
+      EdmEntitySet entitySet = Mockito.mock(EdmEntitySet.class);
+      Mockito.when(entitySet.getName()).thenReturn("MediaFiles");
+      MediaFile mediaFile = new MediaFile();
+      mediaFile.id = 1;
+      fileDataSource.createData(entitySet, mediaFile);
+
+      fileDataSource.writeBinaryData(entitySet, mediaFile,
+          new BinaryData("first".getBytes(StandardCharsets.UTF_8), "text/plain"));
+      Path first = mediaFile.content;
+      Assert.assertTrue(first.startsWith(directory));
+      Assert.assertEquals("first", new String(Files.readAllBytes(first), StandardCharsets.UTF_8));
+
+      // replaced media resource
+      fileDataSource.writeBinaryData(entitySet, mediaFile,
+          new BinaryData("second".getBytes(StandardCharsets.UTF_8), "text/plain"));
+      Path second = mediaFile.content;
+      Assert.assertFalse(Files.exists(first));
+      Assert.assertEquals("second", new String(Files.readAllBytes(second), StandardCharsets.UTF_8));
+
+      // deleted media resource
+      fileDataSource.writeBinaryData(entitySet, mediaFile, new BinaryData(null, null));
+      Assert.assertNull(mediaFile.content);
+      Assert.assertFalse(Files.exists(second));
+
+      // deleted entity
+      fileDataSource.writeBinaryData(entitySet, mediaFile,
+          new BinaryData("third".getBytes(StandardCharsets.UTF_8), "text/plain"));
+      Path third = mediaFile.content;
+      Assert.assertTrue(Files.exists(third));
+      fileDataSource.deleteData(entitySet, Collections.<String, Object>singletonMap("Id", 1));
+      Assert.assertFalse(Files.exists(third));
+      Assert.assertEquals(0, directory.toFile().list().length);
+    } finally {
+      System.clearProperty(AnnotationDataSource.MEDIA_DIRECTORY);
+      Files.walk(directory).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test
+  public void mediaFilesOfUnitOfWorkAreDeletedAfterCommit() throws Exception {
+    Path directory = Files.createTempDirectory("janos-media");
+    System.setProperty(AnnotationDataSource.MEDIA_DIRECTORY, directory.toString());
+    try {
+      AnnotationDataSource fileDataSource = new AnnotationDataSource(
+          Collections.<Class<?>>singletonList(MediaFile.class), dataStoreFactory);
+      EdmEntitySet entitySet = Mockito.mock(EdmEntitySet.class);
+      Mockito.when(entitySet.getName()).thenReturn("MediaFiles");
+      MediaFile mediaFile = new MediaFile();
+      mediaFile.id = 3;
+      fileDataSource.createData(entitySet, mediaFile);
+      fileDataSource.writeBinaryData(entitySet, mediaFile,
+          new BinaryData("first".getBytes(StandardCharsets.UTF_8), "text/plain"));
+      Path first = mediaFile.content;
+
+      // replaced in a unit of work which is rolled back
+      fileDataSource.beginUnitOfWork();
+      fileDataSource.writeBinaryData(entitySet, mediaFile,
+          new BinaryData("second".getBytes(StandardCharsets.UTF_8), "text/plain"));
+      Path second = mediaFile.content;
+      Assert.assertTrue(Files.exists(first));
+      fileDataSource.rollbackUnitOfWork();
+      Assert.assertTrue(Files.exists(first));
+
+      // replaced in a nested unit of work which is committed
+      fileDataSource.beginUnitOfWork();
+      fileDataSource.beginUnitOfWork();
+      fileDataSource.writeBinaryData(entitySet, mediaFile,
+          new BinaryData("third".getBytes(StandardCharsets.UTF_8), "text/plain"));
+      fileDataSource.commitUnitOfWork();
+      Assert.assertTrue(Files.exists(second));
+      fileDataSource.commitUnitOfWork();
+      Assert.assertFalse(Files.exists(second));
+      Assert.assertEquals("third", new String(Files.readAllBytes(mediaFile.content), StandardCharsets.UTF_8));
+    } finally {
+      System.clearProperty(AnnotationDataSource.MEDIA_DIRECTORY);
+      Files.walk(directory).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Test(expected = DataStoreException.class)
+  public void mediaDirectoryRequiredForMediaFiles() throws Exception {
+    System.clearProperty(AnnotationDataSource.MEDIA_DIRECTORY);
+    AnnotationDataSource fileDataSource = new AnnotationDataSource(
+        Collections.<Class<?>>singletonList(MediaFile.class), dataStoreFactory);
+    EdmEntitySet entitySet = Mockito.mock(EdmEntitySet.class);
+    Mockito.when(entitySet.getName()).thenReturn("MediaFiles");
+    MediaFile mediaFile = new MediaFile();
+    mediaFile.id = 2;
+    fileDataSource.createData(entitySet, mediaFile);
+
+    fileDataSource.writeBinaryData(entitySet, mediaFile,
+        new BinaryData("content".getBytes(StandardCharsets.UTF_8), "text/plain"));
+  }
+
   @Test(expected = ODataNotFoundException.class)
   public void writeBinaryDataNotFound() throws Exception {
     EdmEntitySet entitySet = createMockedEdmEntitySet("Photos");
@@ -504,6 +664,107 @@ public class AnnotationsDataSourceTest {
     Assert.assertNull("Related data must be null.", relatedData);
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void readRelatedEntitiesForAllSources() throws Exception {
+    EdmEntitySet buildingsEntitySet = createMockedEdmEntitySet("Buildings");
+    EdmEntitySet roomsEntitySet = createMockedEdmEntitySet("Rooms");
+
+    List<Building> buildings = new ArrayList<>();
+    for (int b = 0; b < 3; b++) {
+      Building building = new Building();
+      building.setName("Building " + b);
+      datasource.createData(buildingsEntitySet, building);
+      buildings.add(building);
+      for (int r = 0; r <= b; r++) {
+        Room room = new Room(10 * b + r, "Room " + b + "." + r);
+        room.setBuilding(building);
+        datasource.createData(roomsEntitySet, room);
+      }
+    }
+    Building otherBuilding = new Building();
+    otherBuilding.setName("Other Building");
+    datasource.createData(buildingsEntitySet, otherBuilding);
+    buildings.add(otherBuilding);
+
+    // execute
+    Map<Object, Object> relatedData = datasource.readRelatedData(buildingsEntitySet, buildings, roomsEntitySet);
+
+    // validate
+    Assert.assertEquals(4, relatedData.size());
+    for (int b = 0; b < 3; b++) {
+      Collection<Room> rooms = (Collection<Room>) relatedData.get(buildings.get(b));
+      Assert.assertEquals(b + 1, rooms.size());
+      for (Room room : rooms) {
+        Assert.assertSame(buildings.get(b), room.getBuilding());
+      }
+    }
+    Assert.assertEquals(Collections.emptyList(), relatedData.get(otherBuilding));
+
+    // single valued navigation
+    Map<String, Object> keys = new HashMap<>();
+    keys.put("Id", 21);
+    Object room = datasource.readData(roomsEntitySet, keys);
+    relatedData = datasource.readRelatedData(roomsEntitySet, Collections.singletonList(room), buildingsEntitySet);
+    Assert.assertSame(buildings.get(2), relatedData.get(room));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void readSingleValuedRelatedEntitiesForAllSourcesWithOneRead() throws Exception {
+    final List<String> roomReads = new ArrayList<>();
+    DualDataStoreManager countingManager = new DualDataStoreManager() {
+      @Override
+      public DataStore<Object> getDataStore(final String name) {
+        final DataStore<Object> store = super.getDataStore(name);
+        if (store == null || !"Rooms".equals(name)) {
+          return store;
+        }
+        return (DataStore<Object>) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { DataStore.class }, (proxy, method, args) -> {
+              if (method.getName().startsWith("read")) {
+                roomReads.add(method.getName());
+              }
+              try {
+                return method.invoke(store, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            });
+      }
+    };
+    countingManager.setDefaultProperty(DataStoreManager.KEEP_PERSISTENT, Boolean.FALSE.toString());
+    AnnotationDataSource countingSource = new AnnotationDataSource(Building.class.getPackage().getName(),
+        countingManager);
+    EdmEntitySet employeesEntitySet = createMockedEdmEntitySet("Employees");
+    EdmEntitySet roomsEntitySet = createMockedEdmEntitySet("Rooms");
+
+    Room first = new Room(1, "First Room");
+    Room second = new Room(2, "Second Room");
+    countingSource.createData(roomsEntitySet, first);
+    countingSource.createData(roomsEntitySet, second);
+    List<Employee> employees = new ArrayList<>();
+    for (int e = 0; e < 5; e++) {
+      Employee employee = new Employee(String.valueOf(e), "Employee " + e);
+      employee.setRoom(e == 4 ? null : e % 2 == 0 ? first : second);
+      countingSource.createData(employeesEntitySet, employee);
+      employees.add(employee);
+    }
+    roomReads.clear();
+
+    // execute
+    Map<Object, Object> relatedData = countingSource.readRelatedData(employeesEntitySet, employees, roomsEntitySet);
+
+    // validate
+    Assert.assertEquals(Collections.singletonList("readAll"), roomReads);
+    Assert.assertEquals(4, relatedData.size());
+    Assert.assertSame(first, relatedData.get(employees.get(0)));
+    Assert.assertSame(second, relatedData.get(employees.get(1)));
+    Assert.assertSame(first, relatedData.get(employees.get(2)));
+    Assert.assertSame(second, relatedData.get(employees.get(3)));
+    Assert.assertFalse(relatedData.containsKey(employees.get(4)));
+  }
+
   @Test
   public void readRelatedTargetEntity() throws Exception {
     EdmEntitySet buildingsEntitySet = createMockedEdmEntitySet("Buildings");
@@ -866,6 +1127,15 @@ public class AnnotationsDataSourceTest {
     Assert.assertEquals(123, readRoom.getSeats());
     Assert.assertEquals(4711, readRoom.getVersion());
     Assert.assertEquals(readBuilding, readRoom.getBuilding());
+
+    // relation is visible for navigation from both sides
+    readBuilding.getRooms().clear();
+    Object relatedRooms = datasource.readRelatedData(
+        buildingsEntitySet, readBuilding, roomsEntitySet, Collections.<String, Object>emptyMap());
+    Assert.assertEquals(Collections.singletonList(readRoom), relatedRooms);
+    Object relatedBuilding = datasource.readRelatedData(
+        roomsEntitySet, readRoom, buildingsEntitySet, Collections.<String, Object>emptyMap());
+    Assert.assertSame(readBuilding, relatedBuilding);
   }
 
   private EdmEntitySet createMockedEdmEntitySet(final String entitySetName) throws ODataException {
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2013 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
+import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
+import org.apache.olingo.odata2.janos.processor.core.model.Employee;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH contention benchmark for the {@link InMemoryDataStore}.
+ * <br/>
+ * The <code>mixed</code> group runs a read/write load on one shared store (8 threads read by key, one thread
+ * updates and one thread creates entries, hence 80% reads, 10% updates and 10% creates), the number of threads
+ * per group method can be changed via the <code>-tg</code> option. The reads by key alone are measured with
+ * all available threads.
+ * <br/>
+ * The collection reads (<code>readAll</code>) are measured on a store which is not changed and after each
+ * update of an entry (<code>updateThenReadAll</code>, the worst case for the snapshots of the store).
+ * <br/>
+ * Run via the <code>main</code> method from the test classpath (it is no unit test).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryDataStoreBenchmark {
+
+  private static final int INITIAL_ENTRIES = 10000;
+
+  /**
+   * Store with the initial entries.
+   */
+  public abstract static class Store {
+    InMemoryDataStore<Employee> dataStore;
+
+    @Setup
+    public void setup() throws DataStoreException {
+      dataStore = InMemoryDataStore.createInMemory(Employee.class);
+      for (int i = 0; i < INITIAL_ENTRIES; i++) {
+        dataStore.create(new Employee(String.valueOf(i), "Employee " + i));
+      }
+    }
+
+    Employee read() {
+      return dataStore.read(new Employee(String.valueOf(ThreadLocalRandom.current().nextInt(INITIAL_ENTRIES)), null));
+    }
+  }
+
+  /**
+   * Store shared by the threads of the <code>mixed</code> group.
+   */
+  @State(Scope.Group)
+  public static class GroupStore extends Store {
+  }
+
+  /**
+   * Store shared by all threads of a benchmark.
+   */
+  @State(Scope.Benchmark)
+  public static class SharedStore extends Store {
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(8)
+  public Employee mixedRead(final GroupStore store) {
+    return store.read();
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(1)
+  public Employee mixedUpdate(final GroupStore store) throws DataStoreException {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String id = String.valueOf(random.nextInt(INITIAL_ENTRIES));
+    Employee employee = new Employee(id, "Updated " + id);
+    employee.setAge(random.nextInt(100));
+    return store.dataStore.update(employee);
+  }
+
+  @Benchmark
+  @Group("mixed")
+  @GroupThreads(1)
+  public Employee mixedCreate(final GroupStore store) throws DataStoreException {
+    return store.dataStore.create(new Employee(null, "Created"));
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public Employee readByKey(final SharedStore store) {
+    return store.read();
+  }
+
+  @Benchmark
+  public int readAll(final SharedStore store) {
+    return store.dataStore.read(ReadOptions.none()).getResult().size();
+  }
+
+  @Benchmark
+  public int updateThenReadAll(final SharedStore store) throws DataStoreException {
+    String id = String.valueOf(ThreadLocalRandom.current().nextInt(INITIAL_ENTRIES));
+    store.dataStore.update(new Employee(id, "Updated " + id));
+    return store.dataStore.read(ReadOptions.none()).getResult().size();
+  }
+
+  public static void main(final String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(InMemoryDataStoreBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright 2013 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.edm.EdmEntityType;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.core.uri.UriParserImpl;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
+import org.apache.olingo.odata2.janos.processor.core.model.Employee;
+import org.apache.olingo.odata2.janos.processor.core.model.Manager;
+import org.apache.olingo.odata2.testutil.mock.EdmMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ *
+ */
+public class InMemoryDataStoreTest {
+
+  private final Edm edm;
+  private final InMemoryDataStore<Employee> dataStore;
+
+  public InMemoryDataStoreTest() throws ODataException {
+    edm = EdmMock.createMockEdm();
+    dataStore = InMemoryDataStore.createInMemory(Employee.class);
+    for (int i = 1; i <= 20; i++) {
+      Employee employee = new Employee(String.valueOf(i), "Employee " + (i % 5));
+      employee.setAge(20 + i);
+      dataStore.create(employee);
+    }
+  }
+
+  @Test
+  public void readWithHashIndex() throws Exception {
+    ReadResult<Employee> result = read("EmployeeName eq 'Employee 3'");
+
+    Assert.assertTrue(result.isFilterApplied());
+    Assert.assertEquals(ids("3", "8", "13", "18"), ids(result));
+  }
+
+  @Test
+  public void readWithSortedIndex() throws Exception {
+    Assert.assertEquals(ids("18", "19", "20"), ids(read("Age gt 37")));
+    Assert.assertEquals(ids("17", "18", "19", "20"), ids(read("Age ge 37")));
+    Assert.assertEquals(ids("1", "2"), ids(read("Age lt 23")));
+    Assert.assertEquals(ids("1", "2", "3"), ids(read("Age le 23")));
+    Assert.assertEquals(ids("1", "2"), ids(read("23 gt Age")));
+    Assert.assertEquals(ids("5"), ids(read("Age eq 25")));
+  }
+
+  @Test
+  public void readWithCombinedIndexes() throws Exception {
+    ReadResult<Employee> result = read("Age gt 30 and EmployeeName eq 'Employee 3'");
+    Assert.assertTrue(result.isFilterApplied());
+    Assert.assertEquals(ids("13", "18"), ids(result));
+
+    result = read("Age lt 22 or EmployeeName eq 'Employee 3'");
+    Assert.assertTrue(result.isFilterApplied());
+    Assert.assertEquals(ids("1", "3", "8", "13", "18"), ids(result));
+
+    // not indexed part of an 'and' is applied on the index result
+    result = read("Age gt 30 and startswith(EmployeeName, 'Employee 3')");
+    Assert.assertTrue(result.isFilterApplied());
+    Assert.assertEquals(ids("13", "18"), ids(result));
+  }
+
+  @Test
+  public void readWithoutUsableIndex() throws Exception {
+    ReadResult<Employee> result = read("startswith(EmployeeName, 'Employee 3') or Age gt 30");
+    Assert.assertFalse(result.isFilterApplied());
+    Assert.assertEquals(20, result.getResult().size());
+
+    result = read("Age ne 30");
+    Assert.assertFalse(result.isFilterApplied());
+    Assert.assertEquals(20, result.getResult().size());
+  }
+
+  @Test
+  public void readWithOrderSkipAndTop() throws Exception {
+    ReadResult<Employee> result = read(null, "Age desc", null, 3);
+    Assert.assertTrue(result.isOrderApplied());
+    Assert.assertTrue(result.isTopApplied());
+    Assert.assertEquals(Arrays.asList("20", "19", "18"), orderedIds(result));
+
+    result = read("EmployeeName eq 'Employee 3'", "Age desc", 1, 2);
+    Assert.assertTrue(result.isFilterApplied());
+    Assert.assertTrue(result.isSkipApplied());
+    Assert.assertEquals(Arrays.asList("13", "8"), orderedIds(result));
+
+    // more entries requested than available
+    result = read(null, "EmployeeName,Age", 18, 5);
+    Assert.assertEquals(Arrays.asList("14", "19"), orderedIds(result));
+
+    result = read(null, "Age", 17, null);
+    Assert.assertTrue(result.isSkipApplied());
+    Assert.assertFalse(result.isTopApplied());
+    Assert.assertEquals(Arrays.asList("18", "19", "20"), orderedIds(result));
+  }
+
+  @Test
+  public void readOrderNotAppliedWithoutFilter() throws Exception {
+    // filter is applied by the caller, hence order, skip and top must be applied by the caller as well
+    ReadResult<Employee> result = read("startswith(EmployeeName, 'Employee 3')", "Age", null, 1);
+    Assert.assertFalse(result.isFilterApplied());
+    Assert.assertFalse(result.isOrderApplied());
+    Assert.assertFalse(result.isTopApplied());
+    Assert.assertEquals(20, result.getResult().size());
+  }
+
+  @Test
+  public void readPageInKeyOrder() throws Exception {
+    // without order the entries are paged in (string) key order: 1, 10, 11, ..., 19, 2, 20, 3, ..., 9
+    ReadResult<Employee> result = read(null, null, 2, 3);
+    Assert.assertTrue(result.isSkipApplied());
+    Assert.assertTrue(result.isTopApplied());
+    Assert.assertEquals(Arrays.asList("11", "12", "13"), orderedIds(result));
+
+    result = readPage(null, "EmployeeId='19'", 3);
+    Assert.assertEquals(Arrays.asList("19", "2", "20"), orderedIds(result));
+
+    // resume from a token of an entry which was deleted in the meantime
+    dataStore.delete(new Employee("19", null));
+    result = readPage(null, "EmployeeId='19'", 3);
+    Assert.assertEquals(Arrays.asList("2", "20", "3"), orderedIds(result));
+
+    result = readPage("EmployeeName eq 'Employee 3'", "EmployeeId='14'", 2);
+    Assert.assertTrue(result.isFilterApplied());
+    Assert.assertTrue(result.isSkipApplied());
+    Assert.assertEquals(Arrays.asList("18", "3"), orderedIds(result));
+
+    result = readPage(null, "EmployeeId='99'", 3);
+    Assert.assertTrue(result.getResult().isEmpty());
+
+    // token in the former (string based) format is left to the caller
+    result = readPage(null, "19", 3);
+    Assert.assertFalse(result.isSkipApplied());
+    Assert.assertEquals(19, result.getResult().size());
+  }
+
+  @Test
+  public void indexUpdatedOnWrite() throws Exception {
+    Employee employee = dataStore.read(new Employee("3", null));
+    employee.setAge(99);
+    employee.setEmployeeName("Updated");
+    dataStore.update(employee);
+
+    Assert.assertEquals(ids("3"), ids(read("Age eq 99")));
+    Assert.assertEquals(ids("3"), ids(read("EmployeeName eq 'Updated'")));
+    Assert.assertEquals(ids("8", "13", "18"), ids(read("EmployeeName eq 'Employee 3'")));
+    Assert.assertEquals(ids(), ids(read("Age eq 23")));
+
+    dataStore.delete(employee);
+    Assert.assertEquals(ids(), ids(read("Age eq 99")));
+    Assert.assertEquals(ids(), ids(read("EmployeeName eq 'Updated'")));
+  }
+
+  @Test
+  public void count() throws Exception {
+    Assert.assertEquals(Integer.valueOf(20), dataStore.count(ReadOptions.none()));
+    // counted via the indexes
+    Assert.assertEquals(Integer.valueOf(4), count("EmployeeName eq 'Employee 3'"));
+    Assert.assertEquals(Integer.valueOf(3), count("Age gt 37"));
+    Assert.assertEquals(Integer.valueOf(2), count("Age gt 30 and EmployeeName eq 'Employee 3'"));
+    // counted via the filter
+    Assert.assertEquals(Integer.valueOf(19), count("Age ne 30"));
+
+    Employee employee = dataStore.read(new Employee("3", null));
+    dataStore.delete(employee);
+    Assert.assertEquals(Integer.valueOf(19), dataStore.count(ReadOptions.none()));
+    Assert.assertEquals(Integer.valueOf(3), count("EmployeeName eq 'Employee 3'"));
+    dataStore.update(employee);
+    dataStore.update(employee);
+    Assert.assertEquals(Integer.valueOf(20), dataStore.count(ReadOptions.none()));
+  }
+
+  @Test
+  public void countRechecksIndexedEntries() throws Exception {
+    // an entry which is changed without an update is still indexed with its previous value
+    Employee employee = dataStore.read(new Employee("20", null));
+    employee.setAge(10);
+    employee.setEmployeeName("Changed");
+
+    Assert.assertEquals(ids("18", "19"), ids(read("Age gt 37")));
+    Assert.assertEquals(Integer.valueOf(2), count("Age gt 37"));
+    Assert.assertEquals(Integer.valueOf(3), count("EmployeeName eq 'Employee 0'"));
+    Assert.assertEquals(read("EmployeeName eq 'Employee 0'").getResult().size(),
+        count("EmployeeName eq 'Employee 0'").intValue());
+  }
+
+  @Test
+  public void readRelatedWithRelationIndex() throws Exception {
+    Manager manager = new Manager(null, "Manager");
+    for (String id : Arrays.asList("2", "4", "6")) {
+      Employee employee = dataStore.read(new Employee(id, null));
+      employee.setManager(manager);
+      dataStore.update(employee);
+    }
+    // the manager key is generated after the references were set
+    InMemoryDataStore.createInMemory(Manager.class).create(manager);
+    Field managerField = Employee.class.getDeclaredField("manager");
+
+    Assert.assertEquals(ids("2", "4", "6"), ids(dataStore.readRelated(managerField, manager)));
+    Assert.assertEquals(ids("2", "4", "6"),
+        ids(dataStore.readRelated(managerField, new Manager(manager.getId(), null))));
+    Assert.assertEquals(ids(), ids(dataStore.readRelated(managerField, new Manager("4711", null))));
+
+    Employee employee = dataStore.read(new Employee("4", null));
+    employee.setManager(null);
+    dataStore.update(employee);
+    dataStore.delete(new Employee("6", null));
+    Assert.assertEquals(ids("2"), ids(dataStore.readRelated(managerField, manager)));
+
+    // no relation index for other than navigation fields
+    Assert.assertNull(dataStore.readRelated(Employee.class.getDeclaredField("employeeName"), manager));
+  }
+
+  @Test
+  public void snapshotRead() throws Exception {
+    Collection<Employee> snapshot = dataStore.read();
+    Assert.assertEquals(20, snapshot.size());
+    // without writes the same snapshot is shared
+    Assert.assertSame(snapshot, dataStore.read());
+
+    Iterator<Employee> iterator = snapshot.iterator();
+    iterator.next();
+    dataStore.create(new Employee(null, "New"));
+    dataStore.delete(new Employee("1", null));
+    // snapshot is not affected by later writes (and iteration does not fail)
+    iterator.next();
+    Assert.assertEquals(20, snapshot.size());
+    Assert.assertEquals(20, dataStore.read().size());
+    Assert.assertNotSame(snapshot, dataStore.read());
+
+    try {
+      snapshot.clear();
+      Assert.fail("Expected an UnsupportedOperationException for a modification of the snapshot.");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void concurrentCreateWithGeneratedKeys() throws Exception {
+    final int threadCount = 8;
+    final int createsPerThread = 500;
+    final CountDownLatch start = new CountDownLatch(1);
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < threadCount; t++) {
+      Thread thread = new Thread(() -> {
+        try {
+          start.await();
+          for (int i = 0; i < createsPerThread; i++) {
+            // existing (or missing) keys are replaced by generated keys
+            dataStore.create(new Employee(i % 2 == 0 ? "1" : null, "Concurrent"));
+          }
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    Assert.assertEquals(20 + threadCount * createsPerThread, dataStore.read().size());
+    Assert.assertEquals(threadCount * createsPerThread, read("EmployeeName eq 'Concurrent'").getResult().size());
+  }
+
+  private ReadResult<Employee> read(final String filter) throws ODataException {
+    return dataStore.read(ReadOptions.start(
+        UriParserImpl.parseFilter(edm, edm.getEntityType("RefScenario", "Employee"), filter)).build());
+  }
+
+  private Integer count(final String filter) throws ODataException {
+    return dataStore.count(ReadOptions.start(
+        UriParserImpl.parseFilter(edm, edm.getEntityType("RefScenario", "Employee"), filter)).build());
+  }
+
+  private ReadResult<Employee> read(final String filter, final String orderBy, final Integer skip,
+      final Integer top) throws ODataException {
+    EdmEntityType entityType = edm.getEntityType("RefScenario", "Employee");
+    return dataStore.read(ReadOptions.start()
+        .filter(filter == null ? null : UriParserImpl.parseFilter(edm, entityType, filter))
+        .order(orderBy == null ? null : UriParserImpl.parseOrderBy(edm, entityType, orderBy))
+        .skip(null, skip)
+        .top(top).build());
+  }
+
+  private ReadResult<Employee> readPage(final String filter, final String skipToken, final Integer top)
+      throws ODataException {
+    EdmEntityType entityType = edm.getEntityType("RefScenario", "Employee");
+    return dataStore.read(ReadOptions.start()
+        .filter(filter == null ? null : UriParserImpl.parseFilter(edm, entityType, filter))
+        .skip(skipToken, null)
+        .top(top).build());
+  }
+
+  private List<String> orderedIds(final ReadResult<Employee> result) {
+    List<String> ids = new ArrayList<>();
+    for (Employee employee : result.getResult()) {
+      ids.add(employee.getId());
+    }
+    return ids;
+  }
+
+  private Set<String> ids(final Collection<Employee> employees) {
+    Set<String> ids = new HashSet<>();
+    for (Employee employee : employees) {
+      ids.add(employee.getId());
+    }
+    return ids;
+  }
+
+  private Set<String> ids(final ReadResult<Employee> result) {
+    Set<String> ids = new HashSet<>();
+    for (Employee employee : result.getResult()) {
+      ids.add(employee.getId());
+    }
+    return ids;
+  }
+
+  private Set<String> ids(final String... ids) {
+    Set<String> result = new HashSet<>();
+    for (String id : ids) {
+      result.add(id);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2013 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.janos.processor.api.data.ReadOptions;
+import org.apache.olingo.odata2.janos.processor.api.data.ReadResult;
+import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
+import org.apache.olingo.odata2.janos.processor.core.model.Building;
+import org.apache.olingo.odata2.janos.processor.core.model.Room;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ */
+public class JpaAnnotationDataStoreTest {
+
+  private static final int ENTITIES = 3 * JpaAnnotationDataStore.CHUNK_SIZE + 10;
+
+  /** the simulated persistence context of the entity manager (which manages entity instances) */
+  private final Set<Object> managed = Collections.newSetFromMap(new IdentityHashMap<>());
+  private int maxManaged;
+  private int first;
+  private int max;
+  private EntityManager entityManager;
+  private EntityTransaction transaction;
+  private EntityManagerFactory factory;
+  private DataStore<Building> dataStore;
+
+  @Before
+  public void prepare() {
+    transaction = mock(EntityTransaction.class);
+    entityManager = mock(EntityManager.class);
+    when(entityManager.getTransaction()).thenReturn(transaction);
+    doAnswer(invocation -> {
+      managed.clear();
+      return null;
+    }).when(entityManager).clear();
+    doAnswer(invocation -> {
+      managed.remove(invocation.getArguments()[0]);
+      return null;
+    }).when(entityManager).detach(any());
+    doAnswer(invocation -> {
+      managed.add(invocation.getArguments()[0]);
+      maxManaged = Math.max(maxManaged, managed.size());
+      return null;
+    }).when(entityManager).persist(any());
+    when(entityManager.contains(any())).thenAnswer(invocation -> managed.contains(invocation.getArguments()[0]));
+
+    Query query = mock(Query.class);
+    when(query.setFirstResult(anyInt())).thenAnswer(invocation -> {
+      first = (Integer) invocation.getArguments()[0];
+      return query;
+    });
+    when(query.setMaxResults(anyInt())).thenAnswer(invocation -> {
+      max = (Integer) invocation.getArguments()[0];
+      return query;
+    });
+    when(query.getResultList()).thenAnswer(invocation -> {
+      List<Building> chunk = new ArrayList<>();
+      for (int i = first; i < Math.min(first + max, ENTITIES); i++) {
+        Building building = new Building();
+        building.setId(String.valueOf(i));
+        chunk.add(building);
+      }
+      managed.addAll(chunk);
+      maxManaged = Math.max(maxManaged, managed.size());
+      return chunk;
+    });
+    when(entityManager.createQuery(anyString())).thenReturn(query);
+
+    factory = mock(EntityManagerFactory.class);
+    when(factory.createEntityManager()).thenReturn(entityManager);
+    dataStore = JpaAnnotationDataStore.createInstance(Building.class, factory);
+  }
+
+  @After
+  public void cleanup() {
+    while (JpaRequestScope.current() != null) {
+      JpaRequestScope.end();
+    }
+  }
+
+  @Test
+  public void streamedReadBoundsPersistenceContext() throws Exception {
+    JpaRequestScope.begin();
+    ReadResult<Building> result = dataStore.read(ReadOptions.none());
+
+    Assert.assertTrue(result.isStreamed());
+    Assert.assertEquals(ENTITIES, result.stream().count());
+    Assert.assertEquals(JpaAnnotationDataStore.CHUNK_SIZE, maxManaged);
+    Assert.assertTrue(managed.size() <= JpaAnnotationDataStore.CHUNK_SIZE);
+  }
+
+  @Test
+  public void streamedReadDetachesOnlyConsumedChunks() throws Exception {
+    Building other = new Building();
+    managed.add(other);
+    JpaRequestScope.begin();
+    ReadResult<Building> result = dataStore.read(ReadOptions.none());
+
+    Assert.assertEquals(ENTITIES, result.stream().count());
+    // entities which are not part of the streamed result are still managed
+    verify(entityManager, never()).clear();
+    Assert.assertTrue(managed.contains(other));
+  }
+
+  @Test
+  public void streamedReadInUnitOfWorkKeepsPersistenceContext() throws Exception {
+    when(transaction.isActive()).thenReturn(true);
+    JpaRequestScope.beginUnitOfWork();
+    ReadResult<Building> result = dataStore.read(ReadOptions.none());
+
+    Iterator<Building> values = result.stream().iterator();
+    int count = 0;
+    while (values.hasNext()) {
+      values.next();
+      count++;
+    }
+    Assert.assertEquals(ENTITIES, count);
+    // pending writes of the unit of work must not be detached
+    verify(entityManager, never()).clear();
+    Assert.assertEquals(ENTITIES, managed.size());
+    JpaRequestScope.rollbackUnitOfWork();
+  }
+
+  @Test
+  public void unitOfWorkWritesBoundPersistenceContext() throws Exception {
+    when(transaction.isActive()).thenReturn(true);
+    JpaRequestScope.beginUnitOfWork();
+    for (int i = 0; i < 2 * JpaAnnotationDataStore.FLUSH_SIZE + 1; i++) {
+      Building building = new Building();
+      building.setId(String.valueOf(i));
+      dataStore.create(building);
+    }
+
+    verify(entityManager, times(2)).flush();
+    verify(entityManager, times(2)).clear();
+    Assert.assertEquals(JpaAnnotationDataStore.FLUSH_SIZE, maxManaged);
+    Assert.assertEquals(1, managed.size());
+    JpaRequestScope.commitUnitOfWork();
+    verify(transaction).commit();
+  }
+
+  @Test
+  public void createReattachesDetachedReference() throws Exception {
+    when(transaction.isActive()).thenReturn(true);
+    Building detached = new Building();
+    detached.setId("1");
+    Building attached = new Building();
+    attached.setId("1");
+    when(entityManager.find(Building.class, "1")).thenReturn(attached);
+    managed.add(attached);
+
+    JpaRequestScope.beginUnitOfWork();
+    Room room = new Room(1, "Room 1");
+    room.setBuilding(detached);
+    JpaAnnotationDataStore.createInstance(Room.class, factory).create(room);
+
+    Assert.assertSame(attached, room.getBuilding());
+    Assert.assertTrue(managed.contains(room));
+    JpaRequestScope.commitUnitOfWork();
+  }
+}
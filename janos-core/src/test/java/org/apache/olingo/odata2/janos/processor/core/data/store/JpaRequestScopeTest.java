@@ -0,0 +1,118 @@
+/*
+ * Copyright 2013 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import javax.persistence.RollbackException;
+
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ */
+public class JpaRequestScopeTest {
+
+  @Test
+  public void entityManagerPerScope() throws Exception {
+    EntityManagerFactory factory = mock(EntityManagerFactory.class);
+    EntityManager first = mockEntityManager(false);
+    EntityManager second = mockEntityManager(false);
+    when(factory.createEntityManager()).thenReturn(first, second);
+
+    Assert.assertNull(JpaRequestScope.current());
+    JpaRequestScope.begin();
+    Assert.assertSame(first, JpaRequestScope.current().getEntityManager(factory));
+    // nested scope (e.g. batch part) uses the same entity manager
+    JpaRequestScope.begin();
+    Assert.assertSame(first, JpaRequestScope.current().getEntityManager(factory));
+    JpaRequestScope.end();
+    verify(first, never()).close();
+    JpaRequestScope.end();
+
+    Assert.assertNull(JpaRequestScope.current());
+    verify(first).clear();
+    verify(first).close();
+
+    JpaRequestScope.begin();
+    Assert.assertSame(second, JpaRequestScope.current().getEntityManager(factory));
+    JpaRequestScope.end();
+    verify(second).close();
+  }
+
+  @Test
+  public void activeTransactionRolledBack() throws Exception {
+    EntityManagerFactory factory = mock(EntityManagerFactory.class);
+    EntityManager entityManager = mockEntityManager(true);
+    when(factory.createEntityManager()).thenReturn(entityManager);
+
+    JpaRequestScope.begin();
+    JpaRequestScope.current().getEntityManager(factory);
+    JpaRequestScope.end();
+
+    verify(entityManager.getTransaction()).rollback();
+    verify(entityManager).close();
+  }
+
+  @Test
+  public void unitOfWorkCommitted() throws Exception {
+    EntityManagerFactory factory = mock(EntityManagerFactory.class);
+    EntityManager entityManager = mockEntityManager(true);
+    when(factory.createEntityManager()).thenReturn(entityManager);
+
+    JpaRequestScope.beginUnitOfWork();
+    Assert.assertTrue(JpaRequestScope.current().isUnitOfWork());
+    JpaRequestScope.current().getEntityManager(factory);
+    JpaRequestScope.beginUnitOfWork();
+    JpaRequestScope.commitUnitOfWork();
+    verify(entityManager.getTransaction(), never()).commit();
+    JpaRequestScope.commitUnitOfWork();
+
+    verify(entityManager.getTransaction()).commit();
+    Assert.assertNull(JpaRequestScope.current());
+  }
+
+  @Test(expected = RollbackException.class)
+  public void nestedUnitOfWorkRolledBack() throws Exception {
+    EntityManagerFactory factory = mock(EntityManagerFactory.class);
+    EntityManager entityManager = mockEntityManager(true);
+    when(factory.createEntityManager()).thenReturn(entityManager);
+
+    JpaRequestScope.beginUnitOfWork();
+    JpaRequestScope.current().getEntityManager(factory);
+    JpaRequestScope.beginUnitOfWork();
+    JpaRequestScope.rollbackUnitOfWork();
+    try {
+      JpaRequestScope.commitUnitOfWork();
+    } finally {
+      verify(entityManager.getTransaction(), never()).commit();
+      verify(entityManager.getTransaction(), atLeastOnce()).rollback();
+      Assert.assertNull(JpaRequestScope.current());
+    }
+  }
+
+  private EntityManager mockEntityManager(final boolean activeTransaction) {
+    EntityTransaction transaction = mock(EntityTransaction.class);
+    when(transaction.isActive()).thenReturn(activeTransaction);
+    EntityManager entityManager = mock(EntityManager.class);
+    when(entityManager.getTransaction()).thenReturn(transaction);
+    return entityManager;
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.olingo.odata2.janos.processor.core.data.store;
+
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.edm.EdmEntityType;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.api.exception.ODataNotImplementedException;
+import org.apache.olingo.odata2.core.uri.UriParserImpl;
+import org.apache.olingo.odata2.janos.processor.core.data.SkipToken;
+import org.apache.olingo.odata2.janos.processor.core.model.Employee;
+import org.apache.olingo.odata2.testutil.mock.EdmMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ *
+ */
+public class JpqlTranslatorTest {
+
+  private final Edm edm;
+  private final EdmEntityType entityType;
+  private final JpqlTranslator translator = new JpqlTranslator(Employee.class, "t");
+
+  public JpqlTranslatorTest() throws ODataException {
+    edm = EdmMock.createMockEdm();
+    entityType = edm.getEntityType("RefScenario", "Employee");
+  }
+
+  @Test
+  public void whereEqualsWithParameter() throws Exception {
+    Assert.assertEquals("((t.employeeName = ?1 AND t.employeeName IS NOT NULL))",
+        where("EmployeeName eq 'Employee 3'"));
+    Assert.assertEquals(Arrays.<Object>asList("Employee 3"), translator.getParameters());
+  }
+
+  @Test
+  public void whereNotEqualsContainsNull() throws Exception {
+    Assert.assertEquals("((t.employeeName <> ?1 AND t.employeeName IS NOT NULL) OR (t.employeeName IS NULL))",
+        where("EmployeeName ne 'Employee 3'"));
+    Assert.assertEquals("(t.employeeName IS NULL)", where("EmployeeName eq null"));
+  }
+
+  @Test
+  public void whereComparisonAndLike() throws Exception {
+    Assert.assertEquals("((t.age > ?1) AND (t.employeeName LIKE ?2 ESCAPE '\\'))",
+        where("Age gt 30 and startswith(EmployeeName,'Emp_')"));
+    Assert.assertEquals(Arrays.<Object>asList(30, "Emp\\_%"), translator.getParameters());
+  }
+
+  @Test
+  public void whereNot() throws Exception {
+    Assert.assertEquals("(NOT (t.age > ?1))", where("not (Age gt 30)"));
+  }
+
+  @Test
+  public void whereDivisionOnlyOfFloatingPointNumbers() throws Exception {
+    // an integral division has a remainder in memory
+    assertNotSupported("Age div 2 eq 10");
+    Assert.assertEquals("(((t.age / ?1) = ?2 AND (t.age / ?1) IS NOT NULL))", where("Age div 2.5d eq 10"));
+  }
+
+  @Test
+  public void whereNotOfNullableComparisonNotSupported() throws Exception {
+    assertNotSupported("not (EmployeeName gt 'Employee 3')");
+  }
+
+  @Test
+  public void whereNotSupported() throws Exception {
+    assertNotSupported("year(EntryDate) eq 2000");
+    assertNotSupported("Location/City/CityName eq 'Walldorf'");
+    assertNotSupported("endswith(EmployeeName,ImageUrl)");
+    Assert.assertTrue(translator.getParameters().isEmpty());
+  }
+
+  @Test
+  public void orderByWithKey() throws Exception {
+    Assert.assertEquals("t.age DESC, t.employeeId",
+        translator.orderBy(UriParserImpl.parseOrderBy(edm, entityType, "Age desc")));
+    Assert.assertEquals("t.employeeId", translator.orderBy(null));
+  }
+
+  @Test(expected = ODataNotImplementedException.class)
+  public void orderByNullablePropertyNotSupported() throws Exception {
+    translator.orderBy(UriParserImpl.parseOrderBy(edm, entityType, "EmployeeName desc, Age"));
+  }
+
+  @Test
+  public void keySet() throws Exception {
+    Assert.assertEquals("((t.employeeId >= ?1))", translator.keySet(SkipToken.parse("EmployeeId='5'")));
+    Assert.assertEquals(Arrays.<Object>asList("5"), translator.getParameters());
+  }
+
+  private String where(final String filter) throws ODataException {
+    return translator.where(UriParserImpl.parseFilter(edm, entityType, filter));
+  }
+
+  private void assertNotSupported(final String filter) throws ODataException {
+    try {
+      where(filter);
+      Assert.fail("Expected ODataNotImplementedException for: " + filter);
+    } catch (ODataNotImplementedException e) {
+      // expected
+    }
+  }
+}
@@ -244,6 +244,29 @@ public class AnnotationEdmProviderTest {
     assertEquals("r_Rooms", asBuildingRooms.getEnd2().getRole());
   }
 
+  @Test
+  public void annotationProviderLookups() throws Exception {
+    AssociationSet asRoomsBuilding = aep.getAssociationSet(
+        ModelSharedConstants.CONTAINER_1, defaultFqn("BuildingRooms"), "Rooms", "r_Rooms");
+    assertNotNull(asRoomsBuilding);
+    assertSame(asRoomsBuilding, aep.getAssociationSet(
+        ModelSharedConstants.CONTAINER_1, defaultFqn("BuildingRooms"), "Buildings", "r_Building"));
+    assertNull(aep.getAssociationSet(
+        ModelSharedConstants.CONTAINER_1, defaultFqn("BuildingRooms"), "Rooms", "r_Building"));
+    assertNull(aep.getAssociationSet("NoContainer", defaultFqn("BuildingRooms"), "Rooms", "r_Rooms"));
+
+    EntitySet rooms = aep.getEntitySet(ModelSharedConstants.CONTAINER_1, "Rooms");
+    assertNotNull(rooms);
+    assertSame(rooms, aep.getEntitySet(ModelSharedConstants.CONTAINER_1, "Rooms"));
+    assertNull(aep.getEntitySet("NoContainer", "Rooms"));
+
+    EntityType room = aep.getEntityType(defaultFqn("Room"));
+    assertNotNull(room);
+    assertEquals("Room", room.getName());
+    assertNull(aep.getEntityType(new FullQualifiedName("NoNamespace", "Room")));
+    assertNull(aep.getComplexType(defaultFqn("Room")));
+  }
+
   @Test
   public void annotationProviderGetDefaultContainer() throws Exception {
     assertNotNull(aep);
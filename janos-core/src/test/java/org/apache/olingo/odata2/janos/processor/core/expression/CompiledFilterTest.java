@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.core.expression;
+
+import org.apache.olingo.odata2.api.edm.Edm;
+import org.apache.olingo.odata2.api.exception.ODataException;
+import org.apache.olingo.odata2.core.uri.UriParserImpl;
+import org.apache.olingo.odata2.janos.processor.core.data.access.BeanPropertyAccess;
+import org.apache.olingo.odata2.janos.processor.core.model.Employee;
+import org.apache.olingo.odata2.janos.processor.core.model.Location;
+import org.apache.olingo.odata2.janos.processor.core.model.Room;
+import org.apache.olingo.odata2.testutil.mock.EdmMock;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ *
+ */
+public class CompiledFilterTest {
+
+  private final Edm edm;
+
+  public CompiledFilterTest() throws ODataException {
+    edm = EdmMock.createMockEdm();
+  }
+
+  @Test
+  public void numericComparison() throws Exception {
+    Room room = createRoom(7);
+
+    Assert.assertTrue(matchesRoom("Version gt 105", room));
+    Assert.assertTrue(matchesRoom("Version ge 107", room));
+    Assert.assertFalse(matchesRoom("Version lt 107", room));
+    Assert.assertTrue(matchesRoom("Version le 107", room));
+    Assert.assertTrue(matchesRoom("Version eq 107", room));
+    Assert.assertTrue(matchesRoom("Seats ne 10", room));
+    // numeric (not lexicographic) comparison
+    Assert.assertTrue(matchesRoom("Seats lt 100", room));
+  }
+
+  @Test
+  public void arithmeticAndLogical() throws Exception {
+    Room room = createRoom(7);
+
+    Assert.assertTrue(matchesRoom("Seats add 3 eq 20", room));
+    Assert.assertTrue(matchesRoom("Seats sub 7 eq 10", room));
+    Assert.assertTrue(matchesRoom("Seats mul 2 eq 34", room));
+    Assert.assertTrue(matchesRoom("Seats div 2 eq 8.5d", room));
+    Assert.assertTrue(matchesRoom("Seats mod 5 eq 2", room));
+    Assert.assertTrue(matchesRoom("-Seats eq -17", room));
+    Assert.assertTrue(matchesRoom("Seats gt 10 and Version gt 100", room));
+    Assert.assertFalse(matchesRoom("Seats gt 100 and Version gt 100", room));
+    Assert.assertTrue(matchesRoom("Seats gt 100 or Version gt 100", room));
+    Assert.assertTrue(matchesRoom("not (Seats gt 100)", room));
+  }
+
+  @Test
+  public void stringMethods() throws Exception {
+    Room room = createRoom(7);
+
+    Assert.assertTrue(matchesRoom("Name eq 'Room with id: 7'", room));
+    Assert.assertTrue(matchesRoom("startswith(Name, 'Room')", room));
+    Assert.assertTrue(matchesRoom("endswith(Name, ': 7')", room));
+    Assert.assertTrue(matchesRoom("substringof('with', Name)", room));
+    Assert.assertTrue(matchesRoom("indexof(Name, 'with') eq 5", room));
+    Assert.assertTrue(matchesRoom("length(Name) eq 15", room));
+    Assert.assertTrue(matchesRoom("toupper(Name) eq 'ROOM WITH ID: 7'", room));
+    Assert.assertTrue(matchesRoom("substring(Name, 5, 4) eq 'with'", room));
+    Assert.assertTrue(matchesRoom("concat(Name, '!') eq 'Room with id: 7!'", room));
+    // an invalid substring range does not match (instead of failing)
+    Assert.assertFalse(matchesRoom("substring(Name, 50, 4) eq 'with'", room));
+  }
+
+  @Test
+  public void dateAndMemberAccess() throws Exception {
+    Employee employee = new Employee("1", "Walter Winter");
+    employee.setAge(52);
+    Calendar entryDate = Calendar.getInstance(TimeZone.getTimeZone("GMT"));
+    entryDate.clear();
+    entryDate.set(1999, Calendar.JANUARY, 1);
+    employee.setEntryDate(entryDate);
+    employee.setLocation(new Location("Germany", "69124", "Heidelberg"));
+
+    Assert.assertTrue(matchesEmployee("EntryDate eq datetime'1999-01-01T00:00:00'", employee));
+    Assert.assertTrue(matchesEmployee("EntryDate lt datetime'2000-01-01T00:00:00'", employee));
+    Assert.assertTrue(matchesEmployee("year(EntryDate) eq 1999 and month(EntryDate) eq 1", employee));
+    Assert.assertTrue(matchesEmployee("Location/City/CityName eq 'Heidelberg'", employee));
+    Assert.assertTrue(matchesEmployee("Age gt 50 and Location/Country eq 'Germany'", employee));
+  }
+
+  @Test
+  public void nullValues() throws Exception {
+    Employee employee = new Employee("1", null);
+
+    Assert.assertTrue(matchesEmployee("EmployeeName eq null", employee));
+    Assert.assertFalse(matchesEmployee("EmployeeName ne null", employee));
+    Assert.assertFalse(matchesEmployee("startswith(EmployeeName, 'W')", employee));
+    Assert.assertFalse(matchesEmployee("Location/Country eq 'Germany'", employee));
+    Assert.assertFalse(CompiledFilter.compile(UriParserImpl.parseFilter(edm,
+        edm.getEntityType("RefScenario", "Employee"), "Age eq 0"), new BeanPropertyAccess()).matches(null));
+  }
+
+  @Test
+  public void filterList() throws Exception {
+    // sequentially filtered (small) and parallel filtered (large) lists
+    for (int size : new int[] { 100, 100000 }) {
+      List<Object> rooms = new ArrayList<>();
+      for (int id = 0; id < size; id++) {
+        rooms.add(createRoom(id));
+      }
+      CompiledFilter.compile(UriParserImpl.parseFilter(edm, edm.getEntityType("RefScenario", "Room"),
+          "Seats mod 3 eq 1"), new BeanPropertyAccess()).filter(rooms);
+
+      Assert.assertEquals(size / 3 + (size % 3 == 0 ? 0 : 1), rooms.size());
+      for (int i = 0; i < rooms.size(); i++) {
+        Assert.assertEquals(10 + 3 * i, ((Room) rooms.get(i)).getSeats());
+      }
+    }
+  }
+
+  private boolean matchesRoom(final String filter, final Room room) throws ODataException {
+    return CompiledFilter.compile(UriParserImpl.parseFilter(edm, edm.getEntityType("RefScenario", "Room"), filter),
+        new BeanPropertyAccess()).matches(room);
+  }
+
+  private boolean matchesEmployee(final String filter, final Employee employee) throws ODataException {
+    return CompiledFilter.compile(UriParserImpl.parseFilter(edm, edm.getEntityType("RefScenario", "Employee"),
+        filter), new BeanPropertyAccess()).matches(employee);
+  }
+
+  private Room createRoom(final int id) {
+    Room r = new Room(id, "Room with id: " + id);
+    r.setSeats(10 + id);
+    r.setVersion(100 + id);
+    return r;
+  }
+}
@@ -19,6 +19,7 @@
 package org.apache.olingo.odata2.janos.processor.core.model;
 
 import org.apache.olingo.odata2.api.annotation.edm.*;
+import org.apache.olingo.odata2.janos.processor.api.data.store.Indexed;
 
 import java.text.DateFormat;
 import java.util.Calendar;
@@ -33,8 +34,10 @@ public class Employee {
   @EdmProperty(name = "EmployeeId", type = EdmType.STRING, facets = @EdmFacets(nullable = false))
   private String employeeId;
   @EdmProperty(name = "EmployeeName", facets = @EdmFacets(maxLength = 20))
+  @Indexed
   private String employeeName;
   @EdmProperty
+  @Indexed(Indexed.Type.SORTED)
   private int age;
   @EdmNavigationProperty(name = "ne_Manager", association = "ManagerEmployees")
   private Manager manager;
@@ -253,6 +253,36 @@ public class AnnotationHelperTest {
     Assert.assertEquals("SimpleEntity", returnType.getTypeName().getName());
   }
 
+  @Test
+  public void inheritedProperties() throws Exception {
+    InheritedEntity instance = new InheritedEntity(7L, "Name");
+    instance.description = "Description";
+
+    Assert.assertEquals("Name", annotationHelper.getValueForProperty(instance, "Name"));
+    Assert.assertEquals("Description", annotationHelper.getValueForProperty(instance, "Description"));
+    annotationHelper.setValueForProperty(instance, "Name", "Other Name");
+    Assert.assertEquals("Other Name", instance.name);
+
+    List<Field> fields = annotationHelper.getAnnotatedFields(InheritedEntity.class, EdmProperty.class);
+    Assert.assertEquals(3, fields.size());
+    Assert.assertEquals("description", fields.get(0).getName());
+    // the metadata is created once per class
+    Assert.assertSame(fields, annotationHelper.getAnnotatedFields(instance, EdmProperty.class));
+
+    Map<String, Object> keys = annotationHelper.getValueForAnnotatedFields(instance, EdmKey.class);
+    Assert.assertEquals(1, keys.size());
+    Assert.assertEquals(7L, keys.get("Id"));
+  }
+
+  @Test
+  public void isEdmAnnotated() throws Exception {
+    Assert.assertTrue(annotationHelper.isEdmAnnotated(InheritedEntity.class));
+    Assert.assertTrue(annotationHelper.isEdmAnnotated(FunctionExecutor.class));
+    Assert.assertTrue(annotationHelper.hasEdmFunction(FunctionExecutor.class));
+    Assert.assertFalse(annotationHelper.isEdmAnnotated(NotAnnotatedBean.class));
+    Assert.assertFalse(annotationHelper.isEdmAnnotated(String.class));
+  }
+
   @EdmEntityType
   private class SimpleEntity {
     @EdmKey
@@ -269,6 +299,16 @@ public class AnnotationHelperTest {
     }
   }
 
+  @EdmEntityType
+  private class InheritedEntity extends SimpleEntity {
+    @EdmProperty
+    String description;
+
+    public InheritedEntity(final Long id, final String name) {
+      super(id, name);
+    }
+  }
+
   @EdmEntityType
   private class NavigationAnnotated {
     @EdmNavigationProperty(toType = SimpleEntity.class)
@@ -120,6 +120,27 @@ public class EntitySetJsonTest extends AbstractRefJsonTest {
     assertEquals(2.0, roomToCheck.get("Version"));
   }
 
+  @Test
+  @SuppressWarnings(value = "unchecked")
+  public void entitySetRoomsCount() throws Exception {
+    HttpResponse response = callUri("Rooms?$filter=Seats%20gt%2020&$inlinecount=allpages",
+        HttpHeaders.ACCEPT, HttpContentType.APPLICATION_JSON, HttpStatusCodes.OK);
+    LinkedTreeMap<?, ?> map = getLinkedTreeMap(getBody(response));
+    List<LinkedTreeMap<String, String>> results = (List) map.get("results");
+    assertEquals(String.valueOf(results.size()), map.get("__count"));
+
+    response = callUri("Rooms/$count?$filter=Seats%20gt%2020",
+        HttpHeaders.ACCEPT, HttpContentType.APPLICATION_JSON, HttpStatusCodes.OK);
+    assertEquals(results.size(), Integer.parseInt(getBody(response)));
+
+    // the inline count is not restricted by $top
+    response = callUri("Rooms?$inlinecount=allpages&$top=1",
+        HttpHeaders.ACCEPT, HttpContentType.APPLICATION_JSON, HttpStatusCodes.OK);
+    map = getLinkedTreeMap(getBody(response));
+    assertEquals(1, ((List) map.get("results")).size());
+    assertEquals(String.valueOf(roomsCount()), map.get("__count"));
+  }
+
   private int roomsCount() throws Exception {
     HttpResponse response =
         callUri("Rooms/$count", HttpHeaders.ACCEPT, HttpContentType.APPLICATION_JSON, HttpStatusCodes.OK);
@@ -20,11 +20,14 @@ package org.apache.olingo.odata2.janos.processor.ref;
 
 import org.apache.http.HttpResponse;
 import org.apache.olingo.odata2.api.commons.HttpContentType;
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
 import org.junit.Before;
 import org.junit.Test;
 
 import static org.custommonkey.xmlunit.XMLAssert.assertXpathExists;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 
 /**
  * Tests employing the reference scenario reading the metadata document in XML format
@@ -53,6 +56,17 @@ public class MetadataTest extends AbstractRefXmlTest {
     badRequest("$metadata?$format=atom");
   }
 
+  @Test
+  public void metadataDocumentNotModified() throws Exception {
+    final HttpResponse response = callUri("$metadata");
+    assertNotNull(response.getFirstHeader("ETag"));
+    final String eTag = response.getFirstHeader("ETag").getValue();
+    assertEquals(payload, getBody(response));
+
+    callUri("$metadata", "If-None-Match", eTag, HttpStatusCodes.NOT_MODIFIED);
+    assertEquals(payload, getBody(callUri("$metadata", "If-None-Match", "\"other\"")));
+  }
+
   @Test
   public void testGeneral() throws Exception {
     assertXpathExists("/edmx:Edmx[@Version='1.0']", payload);
@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.ref.jpa;
+
+import com.google.gson.internal.LinkedTreeMap;
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests employing the reference scenario with change sets in $batch requests
+ * (which are executed in one transaction).
+ */
+public class BatchChangeSetTest extends AbstractRefJsonTest {
+
+  private static final String CRLF = "\r\n";
+
+  @Test
+  public void changeSetCommitted() throws Exception {
+    final String prefix = UUID.randomUUID().toString().substring(0, 8);
+    executeBatch(createRoomPart(prefix + " A") + createRoomPart(prefix + " B"));
+
+    assertEquals(2, readRooms(prefix).size());
+  }
+
+  @Test
+  public void changeSetRolledBack() throws Exception {
+    final String prefix = UUID.randomUUID().toString().substring(0, 8);
+    executeBatch(createRoomPart(prefix + " A") + createRoomPart(prefix + " B")
+        + changeSetPart("POST Rooms HTTP/1.1", "{\"d\":{\"Id\":"));
+
+    assertEquals(0, readRooms(prefix).size());
+  }
+
+  private void executeBatch(final String changeSetParts) throws Exception {
+    final String body = "--batch_1" + CRLF
+        + "Content-Type: multipart/mixed; boundary=changeset_1" + CRLF + CRLF
+        + changeSetParts
+        + "--changeset_1--" + CRLF + CRLF
+        + "--batch_1--" + CRLF;
+    getBody(postUri("$batch", body, "multipart/mixed; boundary=batch_1", HttpStatusCodes.ACCEPTED));
+  }
+
+  private String createRoomPart(final String name) {
+    return changeSetPart("POST Rooms HTTP/1.1",
+        "{\"d\":{\"Id\":\"" + UUID.randomUUID() + "\",\"Name\":\"" + name + "\",\"Seats\":1,\"Version\":1}}");
+  }
+
+  private String changeSetPart(final String requestLine, final String content) {
+    return "--changeset_1" + CRLF
+        + "Content-Type: application/http" + CRLF
+        + "Content-Transfer-Encoding: binary" + CRLF + CRLF
+        + requestLine + CRLF
+        + "Content-Type: application/json" + CRLF
+        + "Content-Length: " + content.length() + CRLF + CRLF
+        + content + CRLF;
+  }
+
+  private List<?> readRooms(final String prefix) throws Exception {
+    final String body = getBody(callUri("Rooms?$filter=startswith(Name,'" + prefix + "')&$format=json"));
+    return (List<?>) ((LinkedTreeMap<?, ?>) getLinkedTreeMap(body)).get("results");
+  }
+}
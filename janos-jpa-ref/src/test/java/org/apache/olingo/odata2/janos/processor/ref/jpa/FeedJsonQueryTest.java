@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ ******************************************************************************/
+package org.apache.olingo.odata2.janos.processor.ref.jpa;
+
+import com.google.gson.internal.LinkedTreeMap;
+import org.apache.http.HttpHeaders;
+import org.apache.olingo.odata2.api.commons.HttpContentType;
+import org.apache.olingo.odata2.api.commons.HttpStatusCodes;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests employing the reference scenario reading feeds with $filter, $orderby, paging options and $expand
+ * (which are translated into JPQL).
+ */
+public class FeedJsonQueryTest extends AbstractRefJsonTest {
+
+  @Test
+  public void readWithFilterOrderAndTop() throws Exception {
+    final String prefix = UUID.randomUUID().toString().substring(0, 8);
+    createRoom(prefix + " A", 4);
+    createRoom(prefix + " B", 2);
+    createRoom(prefix + " C", null);
+    createRoom(prefix + " D", 6);
+
+    assertEquals(Arrays.asList(prefix + " D", prefix + " A"),
+        readNames("$filter=startswith(Name,'" + prefix + "')%20and%20Seats%20ge%204&$orderby=Seats%20desc"));
+    assertEquals(Arrays.asList(prefix + " B", prefix + " A", prefix + " D", prefix + " C"),
+        readNames("$filter=startswith(Name,'" + prefix + "')&$orderby=Seats"));
+    assertEquals(Arrays.asList(prefix + " B", prefix + " C"),
+        readNames("$filter=startswith(Name,'" + prefix + "')%20and%20Seats%20ne%204%20and%20Seats%20ne%206"
+            + "&$orderby=Name&$top=2"));
+    // the negation of a comparison with a nullable property is not translated and hence applied in memory
+    assertEquals(Arrays.asList(prefix + " A", prefix + " B"),
+        readNames("$filter=startswith(Name,'" + prefix + "')%20and%20not%20(Seats%20gt%205)"
+            + "&$orderby=Name&$skip=0&$top=2"));
+  }
+
+  @Test
+  public void readWithSelect() throws Exception {
+    final String prefix = UUID.randomUUID().toString().substring(0, 8);
+    createRoom(prefix + " A", 4);
+    createRoom(prefix + " B", 2);
+    createRoom(prefix + " C", 6);
+
+    // only the selected (and key) columns are queried
+    final String body = getBody(callUri("Rooms?$filter=startswith(Name,'" + prefix + "')&$orderby=Seats%20desc"
+        + "&$select=Name&$format=json"));
+    final List<?> results = (List<?>) getLinkedTreeMap(body).get("results");
+    assertEquals(3, results.size());
+    LinkedTreeMap<?, ?> first = (LinkedTreeMap<?, ?>) results.get(0);
+    assertEquals(prefix + " C", first.get("Name"));
+    assertFalse(first.containsKey("Seats"));
+
+    // a filter which is applied in memory needs all properties
+    assertEquals(Arrays.asList(prefix + " A", prefix + " B"),
+        readNames("$filter=startswith(Name,'" + prefix + "')%20and%20not%20(Seats%20gt%205)"
+            + "&$orderby=Name&$select=Name"));
+  }
+
+  @Test
+  public void readWithExpand() throws Exception {
+    final String prefix = UUID.randomUUID().toString().substring(0, 8);
+    for (int b = 1; b <= 3; b++) {
+      StringBuilder content = new StringBuilder("{\"d\":{\"Name\":\"" + prefix + " " + b + "\",\"nb_Rooms\":[");
+      for (int r = 1; r <= b; r++) {
+        content.append(r == 1 ? "" : ",").append("{\"Name\":\"" + prefix + " " + b + "." + r + "\"}");
+      }
+      content.append("]}}");
+      getBody(postUri("Buildings", content.toString(), HttpContentType.APPLICATION_JSON, HttpHeaders.ACCEPT,
+          HttpContentType.APPLICATION_JSON, HttpStatusCodes.CREATED));
+    }
+
+    final String body = getBody(callUri("Buildings?$filter=startswith(Name,'" + prefix + "')&$orderby=Name"
+        + "&$expand=nb_Rooms&$format=json"));
+    final List<?> results = (List<?>) getLinkedTreeMap(body).get("results");
+    assertEquals(3, results.size());
+    for (int b = 1; b <= 3; b++) {
+      LinkedTreeMap<?, ?> building = (LinkedTreeMap<?, ?>) results.get(b - 1);
+      List<?> rooms = (List<?>) ((LinkedTreeMap<?, ?>) building.get("nb_Rooms")).get("results");
+      List<String> names = new ArrayList<>();
+      for (Object room : rooms) {
+        names.add((String) ((LinkedTreeMap<?, ?>) room).get("Name"));
+      }
+      Collections.sort(names);
+      List<String> expected = new ArrayList<>();
+      for (int r = 1; r <= b; r++) {
+        expected.add(prefix + " " + b + "." + r);
+      }
+      assertEquals(expected, names);
+    }
+  }
+
+  private void createRoom(final String name, final Integer seats) throws Exception {
+    final String content = "{\"d\":{\"Id\":\"" + UUID.randomUUID() + "\",\"Name\":\"" + name + "\","
+        + "\"Seats\":" + seats + ",\"Version\":1}}";
+    getBody(postUri("Rooms", content, HttpContentType.APPLICATION_JSON, HttpHeaders.ACCEPT,
+        HttpContentType.APPLICATION_JSON, HttpStatusCodes.CREATED));
+  }
+
+  private List<String> readNames(final String query) throws Exception {
+    final String body = getBody(callUri("Rooms?" + query.replace(" ", "%20") + "&$format=json"));
+    final List<?> results = (List<?>) getLinkedTreeMap(body).get("results");
+    List<String> names = new ArrayList<>();
+    for (Object result : results) {
+      names.add((String) ((LinkedTreeMap<?, ?>) result).get("Name"));
+    }
+    return names;
+  }
+}
@@ -3,6 +3,7 @@ package org.apache.olingo.odata2.janos.processor.ref.model;
 import org.apache.olingo.odata2.api.annotation.edm.EdmFunctionImport;
 import org.apache.olingo.odata2.api.annotation.edm.EdmFunctionImportParameter;
 import org.apache.olingo.odata2.api.annotation.edm.EdmType;
+import org.apache.olingo.odata2.janos.processor.api.data.source.CachedFunction;
 import org.apache.olingo.odata2.janos.processor.api.data.source.FunctionExecutor;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStore;
 import org.apache.olingo.odata2.janos.processor.api.data.store.DataStoreException;
@@ -29,6 +30,7 @@ public class RefFunctions implements FunctionExecutor {
   }
 
   @EdmFunctionImport(returnType = @ReturnType(type = ReturnType.Type.COMPLEX))
+  @CachedFunction(dependsOn = "Employees")
   public City citySearch(@EdmFunctionImportParameter(name = "cityName", type = EdmType.STRING) String name) {
     try {
       DataStore<Employee> ds = dataStoreManager.getDataStore("Employees", Employee.class);
@@ -18,6 +18,10 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
@@ -25,6 +29,7 @@ import java.util.stream.Stream;
  * Created by michael on 26.09.15.
  */
 public class PersonStore implements DataStore<Person> {
+  private static final String FILE_PREFIX = "Person_";
   private AtomicLong currentId = new AtomicLong();
   private final File storeRoot;
 
@@ -103,7 +108,7 @@ public class PersonStore implements DataStore<Person> {
   }
 
   private Path getPath(Person person) {
-    return new File(storeRoot, "Person_" + person.getId()).toPath();
+    return new File(storeRoot, FILE_PREFIX + person.getId()).toPath();
   }
 
   public Collection<Person> read() throws DataStoreException {
@@ -118,8 +123,28 @@ public class PersonStore implements DataStore<Person> {
   }
 
   public ReadResult<Person> read(ReadOptions readOptions) throws DataStoreException {
-    // currently no read options are supported
-    return ReadResult.forResult(read()).build();
+    // currently no read options are supported, but the persons are streamed in the order of their ids
+    // (only the file names are listed upfront, each person is read when it is consumed)
+    List<Path> paths;
+    try (Stream<Path> files = Files.list(storeRoot.toPath())) {
+      paths = files.filter(path -> getId(path) != null)
+          .sorted(Comparator.comparing(this::getId))
+          .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new DataStoreException("Failure during read.", e);
+    }
+    ReadResult.Builder<Person> result = ReadResult.forStream(
+        paths.stream().map(this::readFromPath).filter(Objects::nonNull));
+    return readOptions.getOrderBy() == null ? result.orderApplied().build() : result.build();
+  }
+
+  private Long getId(Path path) {
+    String name = path.getFileName().toString();
+    try {
+      return name.startsWith(FILE_PREFIX) ? Long.valueOf(name.substring(FILE_PREFIX.length())) : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
   }
 
   public Person update(Person person) throws DataStoreException {
@@ -153,7 +178,7 @@ public class PersonStore implements DataStore<Person> {
   }
 
   private File getFile(Person result) {
-    return new File(storeRoot, "Person_" + result.getId());
+    return new File(storeRoot, FILE_PREFIX + result.getId());
   }
 
   private String toJson(Person p) {